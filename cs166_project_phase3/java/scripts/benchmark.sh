@@ -0,0 +1,22 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# with SCALE set, first generate a synthetic data set of that scale (seeded
+# by SEED, default 1) and reload the database from it, e.g. SCALE=100
+if [ -n "$SCALE" ]; then
+   DATA=${TMPDIR:-/tmp}/$USER"_gamerental_scale"$SCALE"_seed"${SEED:-1}
+   if [ ! -f $DATA/gamesinorder.csv ]; then
+      java -cp $DIR/../classes DataGenerator $DATA --scale $SCALE --seed ${SEED:-1} || exit 1
+   fi
+   java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar BulkLoader $USER"_project_phase_3_DB" $PGPORT $USER $DATA \
+      --indexes $DIR/../../sql/src/create_indexes.sql --truncate || exit 1
+   set -- --scale $SCALE "$@"
+fi
+
+# run the benchmarks against a throwaway database loaded from data/
+# (the order and ID benchmarks write to it); extra arguments are passed
+# through, e.g. --bench validate,catalog --threads 1,8 --csv results.csv
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar GameRentalBenchmark $USER"_project_phase_3_DB" $PGPORT $USER "$@"
@@ -0,0 +1,9 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# write a synthetic data set in the data/*.csv format into the given directory,
+# e.g. ./generate_data.sh /tmp/scale100 --scale 100 --seed 42
+java -cp $DIR/../classes DataGenerator "$@"
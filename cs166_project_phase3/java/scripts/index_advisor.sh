@@ -0,0 +1,10 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# propose and time index changes for the query shapes recorded with
+# -Dgamerental.queryLog=queries.log, e.g.
+#   ./index_advisor.sh --log queries.log --out index_migration.sql [--apply]
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar IndexAdvisor $USER"_project_phase_3_DB" $PGPORT $USER "$@"
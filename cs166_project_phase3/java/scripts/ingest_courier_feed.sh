@@ -0,0 +1,9 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# apply courier status events from a .csv or .jsonl file, or a directory of
+# them, to TrackingInfo, e.g. ./ingest_courier_feed.sh feed/ --batch 2000 --threads 4
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar CourierFeedIngester $USER"_project_phase_3_DB" $PGPORT $USER "$@"
@@ -0,0 +1,10 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# stream data/*.csv into the database over the client connection; the
+# tables must already exist (create_tables.sql).  Extra arguments are passed
+# through, e.g. --truncate to reload an already populated database
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar BulkLoader $USER"_project_phase_3_DB" $PGPORT $USER $DIR/../../data "$@"
@@ -0,0 +1,9 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# bring Users.numOverDueGames up to date once; clients and the server also
+# run this in the background
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar OverdueMaintainer $USER"_project_phase_3_DB" $PGPORT $USER
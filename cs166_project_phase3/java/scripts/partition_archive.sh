@@ -0,0 +1,10 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# archive the order months before a month to compressed files and drop them,
+# restore one, create future partitions or list them, e.g.
+# ./partition_archive.sh archive 2020-01 archive/ | restore 2019-06 archive/ | extend 24 | list
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar PartitionArchiver $USER"_project_phase_3_DB" $PGPORT $USER "$@"
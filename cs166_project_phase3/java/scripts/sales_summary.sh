@@ -0,0 +1,9 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# add the orders placed since the last run to the sales summaries, or pass
+# --rebuild to recompute them from every order
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar SalesSummarizer $USER"_project_phase_3_DB" $PGPORT $USER "$@"
@@ -0,0 +1,11 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program
+javac -d $DIR/../classes $DIR/../src/*.java
+
+# serve the menu to many sessions from one process; connect with e.g.
+#    nc localhost 7166                      (default, or --listen [host:]port)
+#    socat - UNIX-CONNECT:/tmp/gamerental   (with --socket /tmp/gamerental)
+# extra arguments are passed through, e.g. --pool 16 --max-sessions 5000
+java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar GameRentalServer $USER"_project_phase_3_DB" $PGPORT $USER "$@"
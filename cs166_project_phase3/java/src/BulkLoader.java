@@ -0,0 +1,408 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Loads data/*.csv into the database from the client, replacing the
+ * server-side COPY ... FROM '/home/...' statements of load_data.sql.
+ *
+ * Each file is streamed through the COPY FROM STDIN protocol, so neither
+ * superuser rights nor server file paths are needed and no file is held in
+ * memory.  Tables are loaded in foreign-key order, in three phases whose
+ * tables run in parallel on their own connections:
+ *    Users, Catalog  ->  RentalOrder  ->  TrackingInfo, GamesInOrder
+ * The secondary indexes from create_indexes.sql are dropped before the
+ * load and built in parallel afterwards, which is much cheaper than
+ * maintaining them row by row.
+ *
+ * TrackingInfo and GamesInOrder are partitioned by their order's
+ * orderTimestamp, which their files leave out.  They are copied into a
+ * temporary table without that column and moved into place with one
+ * INSERT ... SELECT that takes it from RentalOrder.  The order and
+ * tracking IDs of the loaded rows are then claimed in OrderIDs, which
+ * refuses an ID that repeats.
+ *
+ * COPY needs the CopyManager API of a post-8.4 PostgreSQL JDBC driver on the
+ * classpath.  It is looked up reflectively so the program still compiles
+ * against the bundled driver.  With an older driver each table falls back
+ * to batched multi-row INSERTs in large transactions.
+ *
+ */
+public class BulkLoader {
+
+   // tables in load order; tables in the same phase have no foreign keys between them
+   static final String[][] PHASES = {
+      { "Users", "Catalog" },
+      { "RentalOrder" },
+      { "TrackingInfo", "GamesInOrder" },
+   };
+
+   // tables whose files lack the orderTimestamp partition key of their order
+   static final List<String> STAGED = Arrays.asList("TrackingInfo", "GamesInOrder");
+
+   // rows per INSERT batch and per commit when COPY is not available
+   private static final int BATCH_SIZE = 1000;
+   private static final int BATCHES_PER_COMMIT = 50;
+
+   // start the ID sequences after the highest loaded number, as load_data.sql does
+   static final String[] RESET_SEQUENCES = {
+      "SELECT setval('gameID_seq', (SELECT COALESCE(MAX(CAST(substring(gameID FROM 5) AS integer)), 0) + 1 FROM Catalog), false)",
+      "SELECT setval('rentalOrderID_seq', (SELECT COALESCE(MAX(CAST(substring(rentalOrderID FROM 16) AS integer)), 0) + 1 FROM RentalOrder), false)",
+      "SELECT setval('trackingID_seq', (SELECT COALESCE(MAX(CAST(substring(trackingID FROM 11) AS integer)), 0) + 1 FROM TrackingInfo), false)",
+   };
+
+   private final GameRental esql;
+   private final File dataDir;
+   private final File indexFile;
+
+   public BulkLoader(GameRental esql, File dataDir, File indexFile) {
+      this.esql = esql;
+      this.dataDir = dataDir;
+      this.indexFile = indexFile;
+   }//end BulkLoader
+
+   /**
+    * Loads every table, rebuilding indexes and sequences afterwards.
+    *
+    * @param truncate empty the tables first
+    * @return the total number of rows loaded
+    */
+   public long load(boolean truncate) throws Exception {
+      long start = System.nanoTime();
+      if (truncate) {
+         esql.executeUpdate("TRUNCATE Users, Catalog, RentalOrder, TrackingInfo, GamesInOrder, OrderIDs, "
+                            + "SalesByGenreDay, SalesByGame, SalesByUser");
+      }
+
+      List<String> dropIndexes = new ArrayList<String>();
+      List<String> createIndexes = new ArrayList<String>();
+      readIndexStatements(dropIndexes, createIndexes);
+      for (String drop : dropIndexes) {
+         esql.executeUpdate(drop);
+      }
+
+      long totalRows = 0;
+      ExecutorService pool = Executors.newFixedThreadPool(2);
+      try {
+         for (String[] phase : PHASES) {
+            List<Future<Long>> loads = new ArrayList<Future<Long>>();
+            for (final String table : phase) {
+               loads.add(pool.submit(() -> loadTable(table)));
+            }
+            for (Future<Long> f : loads) {
+               totalRows += get(f);
+            }
+         }
+         // reserve the loaded IDs the way restore does, so place_order checks new IDs against them
+         PartitionArchiver.claimIds(esql, 0, "RentalOrder");
+         PartitionArchiver.claimIds(esql, 1, "TrackingInfo");
+
+         long indexStart = System.nanoTime();
+         List<Future<Long>> builds = new ArrayList<Future<Long>>();
+         for (final String create : createIndexes) {
+            builds.add(pool.submit(() -> (long) esql.executeUpdate(create)));
+         }
+         for (Future<Long> f : builds) {
+            get(f);
+         }
+         System.out.println(String.format("%-14s %d indexes built in %.1fs", "indexes", createIndexes.size(),
+                                          (System.nanoTime() - indexStart) / 1e9));
+      }finally{
+         pool.shutdownNow();
+      }//end try
+
+      for (String[] phase : PHASES) {
+         for (String table : phase) {
+            esql.executeUpdate("ANALYZE " + table);
+         }
+      }
+      for (String reset : RESET_SEQUENCES) {
+         esql.executeQueryAndReturnResult(reset);
+      }
+      // the loaded counts and orders are not covered by the old watermark; the next run recomputes them
+      esql.executeUpdate("UPDATE MaintenanceWatermark SET dueDate = NULL, orderTimestamp = NULL, rentalOrderID = NULL");
+
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%-14s %,12d rows in %7.1fs  %,12.0f rows/s", "total",
+                                       totalRows, seconds, totalRows / seconds));
+      return totalRows;
+   }//end load
+
+   /**
+    * Streams one table's CSV file into the table.
+    *
+    * @param table the table name; the file is its lower-cased name + .csv
+    * @return the number of rows loaded
+    */
+   long loadTable(String table) throws Exception {
+      File csv = new File(dataDir, table.toLowerCase() + ".csv");
+      long start = System.nanoTime();
+      long rows;
+      Connection conn = esql.borrowConnection();
+      SQLException error = null;
+      boolean staged = STAGED.contains(table);
+      String target = staged ? "load_" + table : table;
+      try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8), 1 << 16)) {
+         if (staged) {
+            Statement stmt = conn.createStatement();
+            try {
+               stmt.executeUpdate("CREATE TEMP TABLE " + target + " (LIKE " + table + ")");
+               stmt.executeUpdate("ALTER TABLE " + target + " DROP COLUMN orderTimestamp");
+            }finally{
+               stmt.close();
+            }//end try
+         }
+         Object copyManager = copyManager(conn);
+         if (copyManager != null) {
+            rows = copyIn(copyManager, "COPY " + target + " FROM STDIN WITH DELIMITER ',' CSV HEADER", reader);
+         }
+         else {
+            rows = insertBatches(conn, target, reader);
+         }
+         if (staged) {
+            moveStaged(conn, table, rows);
+         }
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         esql.releaseConnection(conn, error);
+      }//end try
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%-14s %,12d rows in %7.1fs  %,12.0f rows/s", table, rows, seconds,
+                                       rows / Math.max(seconds, 1e-9)));
+      return rows;
+   }//end loadTable
+
+   // moves the staged rows of table into it with their order's orderTimestamp, all or nothing
+   private static void moveStaged(Connection conn, String table, long rows) throws SQLException {
+      conn.setAutoCommit(false);
+      Statement stmt = conn.createStatement();
+      try {
+         int moved = stmt.executeUpdate("INSERT INTO " + table + " SELECT L.*, R.orderTimestamp FROM load_" + table
+                                        + " L JOIN RentalOrder R ON R.rentalOrderID = L.rentalOrderID");
+         if (moved != rows) {
+            throw new SQLException(table + ": " + (rows - moved) + " of " + rows + " rows reference no RentalOrder");
+         }
+         conn.commit();
+         stmt.executeUpdate("DROP TABLE load_" + table);
+         conn.commit();
+      }finally{
+         stmt.close();
+      }//end try
+   }//end moveStaged
+
+   // returns the driver's CopyManager for conn, or null if the driver has none
+   static Object copyManager(Connection conn) {
+      try {
+         Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+         if (!pgConnection.isInstance(conn)) {
+            return null;
+         }
+         return pgConnection.getMethod("getCopyAPI").invoke(conn);
+      }catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+              | InvocationTargetException e) {
+         return null;
+      }//end try
+   }//end copyManager
+
+   static long copyIn(Object copyManager, String sql, Reader reader) throws SQLException, IOException {
+      try {
+         Method copyIn = copyManager.getClass().getMethod("copyIn", String.class, Reader.class);
+         return (Long) copyIn.invoke(copyManager, sql, reader);
+      }catch (InvocationTargetException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof SQLException) {
+            throw (SQLException) cause;
+         }
+         if (cause instanceof IOException) {
+            throw (IOException) cause;
+         }
+         throw new SQLException("COPY failed: " + cause);
+      }catch (NoSuchMethodException | IllegalAccessException e) {
+         throw new SQLException("COPY is not supported by this driver: " + e);
+      }//end try
+   }//end copyIn
+
+   // fallback for drivers without COPY: multi-row INSERT batches, committed every BATCHES_PER_COMMIT
+   static long insertBatches(Connection conn, String table, Reader reader) throws SQLException, IOException {
+      // the rows are bound as escaped literals; make sure the session reads them that way
+      ConnectionPool.setUpSession(conn);
+      int[] types;
+      Statement probe = conn.createStatement();
+      try {
+         ResultSetMetaData rsmd = probe.executeQuery("SELECT * FROM " + table + " WHERE false").getMetaData();
+         types = new int[rsmd.getColumnCount()];
+         for (int c = 0; c < types.length; c++) {
+            types[c] = rsmd.getColumnType(c + 1);
+         }
+      }finally{
+         probe.close();
+      }//end try
+
+      StringBuilder row = new StringBuilder("(");
+      for (int c = 0; c < types.length; c++) {
+         row.append(c == 0 ? "?" : ", ?");
+      }
+      row.append(")");
+      StringBuilder sql = new StringBuilder("INSERT INTO " + table + " VALUES ");
+      for (int r = 0; r < BATCH_SIZE; r++) {
+         sql.append(r == 0 ? "" : ", ").append(row);
+      }
+
+      conn.setAutoCommit(false);
+      CsvReader csv = new CsvReader(reader);
+      csv.next(); // header
+      long rows = 0;
+      PreparedStatement full = conn.prepareStatement(sql.toString());
+      try {
+         List<String[]> batch = new ArrayList<String[]>(BATCH_SIZE);
+         int batches = 0;
+         String[] record;
+         while ((record = csv.next()) != null) {
+            batch.add(record);
+            if (batch.size() == BATCH_SIZE) {
+               bindRows(full, batch, types);
+               full.executeUpdate();
+               rows += batch.size();
+               batch.clear();
+               if (++batches % BATCHES_PER_COMMIT == 0) {
+                  conn.commit();
+               }
+            }
+         }
+         if (!batch.isEmpty()) {
+            // the tail is shorter than a full statement; insert it row by row in the same transaction
+            PreparedStatement single = conn.prepareStatement("INSERT INTO " + table + " VALUES " + row);
+            try {
+               for (String[] rest : batch) {
+                  bindRows(single, Arrays.asList(new String[][] { rest }), types);
+                  single.executeUpdate();
+                  rows++;
+               }
+            }finally{
+               single.close();
+            }//end try
+         }
+         conn.commit();
+      }finally{
+         full.close();
+      }//end try
+      return rows;
+   }//end insertBatches
+
+   private static void bindRows(PreparedStatement stmt, List<String[]> records, int[] types) throws SQLException {
+      int p = 1;
+      for (String[] record : records) {
+         for (int c = 0; c < types.length; c++, p++) {
+            String value = c < record.length ? record[c] : null;
+            if (value == null) {
+               stmt.setNull(p, types[c]);
+               continue;
+            }
+            switch (types[c]) {
+               case Types.INTEGER: case Types.SMALLINT: stmt.setInt(p, Integer.parseInt(value)); break;
+               case Types.NUMERIC: case Types.DECIMAL: stmt.setBigDecimal(p, new BigDecimal(value)); break;
+               case Types.TIMESTAMP: case Types.DATE:
+                  stmt.setTimestamp(p, Timestamp.valueOf(value.length() == 10 ? value + " 00:00:00" : value));
+                  break;
+               default: stmt.setString(p, value); break;
+            }
+         }
+      }
+   }//end bindRows
+
+   // splits create_indexes.sql into its DROP INDEX and CREATE INDEX statements
+   private void readIndexStatements(List<String> drops, List<String> creates) throws IOException {
+      if (indexFile == null || !indexFile.exists()) {
+         return;
+      }
+      String text = new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8);
+      for (String statement : text.split(";")) {
+         String sql = statement.replaceAll("(?m)--.*$", "").trim();
+         String upper = sql.toUpperCase();
+         if (upper.startsWith("DROP INDEX")) {
+            drops.add(sql);
+         }
+         else if (upper.startsWith("CREATE INDEX") || upper.startsWith("CREATE UNIQUE INDEX")) {
+            creates.add(sql);
+         }
+      }
+   }//end readIndexStatements
+
+   private static long get(Future<Long> f) throws Exception {
+      try {
+         return f.get();
+      }catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         throw cause instanceof Exception ? (Exception) cause : e;
+      }//end try
+   }//end get
+
+   /**
+    * The main execution method
+    *
+    * @param args &lt;dbname&gt; &lt;port&gt; &lt;user&gt; &lt;data dir&gt;
+    *        [--indexes create_indexes.sql] [--truncate]
+    */
+   public static void main(String[] args) {
+      if (args.length < 4) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            BulkLoader.class.getName() +
+            " <dbname> <port> <user> <data dir> [--indexes create_indexes.sql] [--truncate]");
+         return;
+      }
+      File dataDir = new File(args[3]);
+      File indexFile = new File(dataDir, "../sql/src/create_indexes.sql");
+      boolean truncate = false;
+      for (int i = 4; i < args.length; i++) {
+         if (args[i].equals("--truncate")) {
+            truncate = true;
+         }
+         else if (args[i].equals("--indexes") && i + 1 < args.length) {
+            indexFile = new File(args[++i]);
+         }
+         else {
+            System.err.println("Unknown option " + args[i]);
+            return;
+         }
+      }
+
+      GameRental esql = null;
+      try {
+         esql = new GameRental(args[0], args[1], args[2], "", 2);
+         new BulkLoader(esql, dataDir, indexFile).load(truncate);
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }
+   }//end main
+
+}//end BulkLoader
@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages through the game catalog for one viewCatalog session.
+ *
+ * Pages are fetched with keyset pagination on (price, gameID): each page
+ * query seeks past the last row of the previous page instead of using
+ * OFFSET, so every page costs one indexed round trip no matter how deep the
+ * user browses.  The start key of every visited page is kept so previous
+ * pages can be fetched the same way.  The total row count is queried once
+ * per filter and cached.
+ *
+ */
+public class CatalogBrowser {
+
+   public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("gamerental.catalog.pageSize", 20);
+
+   private final int pageSize;
+   private String genre = "";
+   private Double price = 0.0;
+   private String sort = "DESC";
+
+   // pageStarts.get(i) is the (price, gameID) key page i starts after; null for the first page
+   private final List<Object[]> pageStarts = new ArrayList<Object[]>();
+   private int currentPage = -1;
+   private Object[] nextStart = null;
+   private Integer cachedCount = null;
+
+   public CatalogBrowser() {
+      this(DEFAULT_PAGE_SIZE);
+   }
+
+   public CatalogBrowser(int pageSize) {
+      this.pageSize = pageSize;
+   }
+
+   /**
+    * Changes the filters and sort order.  Any change resets paging and the
+    * cached row count.
+    *
+    * @param genre the genre to show, or "" for all genres
+    * @param price the exclusive maximum price, or 0 for no limit
+    * @param sort ASC or DESC price order
+    */
+   public void setFilters(String genre, Double price, String sort) {
+      if (!genre.equals(this.genre) || !price.equals(this.price) || !sort.equals(this.sort)) {
+         this.genre = genre;
+         this.price = price;
+         this.sort = sort;
+         this.reset();
+      }
+   }//end setFilters
+
+   /**
+    * Forgets the visited pages so the next call to firstPage starts over.
+    */
+   public void reset() {
+      pageStarts.clear();
+      currentPage = -1;
+      nextStart = null;
+      cachedCount = null;
+   }//end reset
+
+   /**
+    * Prints the first page of the catalog.
+    */
+   public void firstPage(GameRental esql) throws SQLException {
+      reset();
+      pageStarts.add(null);
+      showPage(esql, 0);
+   }//end firstPage
+
+   /**
+    * Prints the page after the one last shown.
+    */
+   public void nextPage(GameRental esql) throws SQLException {
+      if (currentPage < 0) {
+         firstPage(esql);
+         return;
+      }
+      if (nextStart == null) {
+         System.out.println("Already on the last page.");
+         return;
+      }
+      if (pageStarts.size() == currentPage + 1) {
+         pageStarts.add(nextStart);
+      }
+      showPage(esql, currentPage + 1);
+   }//end nextPage
+
+   /**
+    * Prints the page before the one last shown.
+    */
+   public void previousPage(GameRental esql) throws SQLException {
+      if (currentPage <= 0) {
+         System.out.println("Already on the first page.");
+         return;
+      }
+      showPage(esql, currentPage - 1);
+   }//end previousPage
+
+   /**
+    * Fetches pageSize + 1 rows after start with the current filters.  The
+    * extra row tells whether a next page exists.
+    *
+    * @param start the (price, gameID) key the page starts after, or null
+    * @return the rows of the page
+    */
+   TypedResult fetchPage(GameRental esql, Object[] start) throws SQLException {
+      List<Object> params = new ArrayList<Object>();
+      String where = filterClause(params);
+      if (start != null) {
+         // row-value comparison matches the (price, gameID) index order
+         where += (where.isEmpty() ? " WHERE " : " AND ")
+                  + (sort.equals("DESC") ? "(price, gameID) < (?, ?)" : "(price, gameID) > (?, ?)");
+         params.add(start[0]);
+         params.add(start[1]);
+      }
+      String query = "SELECT gameID, gameName, genre, price, description FROM Catalog" + where
+                     + " ORDER BY price " + sort + ", gameID " + sort + " LIMIT " + (pageSize + 1);
+      return esql.executeQueryTyped(query, params.toArray());
+   }//end fetchPage
+
+   private void showPage(GameRental esql, int page) throws SQLException {
+      TypedResult rows = fetchPage(esql, pageStarts.get(page));
+
+      if (cachedCount == null) {
+         cachedCount = countRows(esql);
+      }
+      int shown = Math.min(rows.size(), pageSize);
+      // the browser pages itself, so the renderer prints the whole page
+      ResultRenderer renderer = new ResultRenderer(ResultRenderer.DEFAULT_MODE, 0);
+      try {
+         try {
+            // a result without rows has no columns either
+            if (rows.columnCount() > 0) {
+               renderer.begin(rows);
+            }
+            TypedResult.Row row = rows.row(0);
+            for (int i = 0; i < shown; i++) {
+               renderer.row(row.at(i));
+            }
+         }finally{
+            renderer.end();
+         }//end try
+      }catch (IOException e) {
+         throw new SQLException(e.getMessage());
+      }//end try
+      if (shown == 0) {
+         System.out.println("No games found.");
+      }
+      currentPage = page;
+      if (rows.size() > pageSize) {
+         TypedResult.Row last = rows.row(pageSize - 1);
+         nextStart = new Object[] { Money.toBigDecimal(last.getCents(3)), last.getString(0) };
+      }
+      else {
+         nextStart = null;
+      }
+
+      int totalPages = Math.max(1, (cachedCount + pageSize - 1) / pageSize);
+      System.out.println("Page " + (page + 1) + " of " + totalPages + ", total row(s): " + cachedCount);
+      System.out.println(describeFilters());
+   }//end showPage
+
+   private int countRows(GameRental esql) throws SQLException {
+      List<Object> params = new ArrayList<Object>();
+      String query = "SELECT COUNT(*) FROM Catalog" + filterClause(params);
+      List<List<String>> result = esql.executeQueryAndReturnResult(query, params.toArray());
+      return Integer.parseInt(result.get(0).get(0));
+   }//end countRows
+
+   private String filterClause(List<Object> params) {
+      if (!genre.isEmpty() && price > 0) {
+         params.add(genre);
+         params.add(BigDecimal.valueOf(price));
+         return " WHERE genre = ? AND price < ?";
+      }
+      else if (!genre.isEmpty()) {
+         params.add(genre);
+         return " WHERE genre = ?";
+      }
+      else if (price > 0) {
+         params.add(BigDecimal.valueOf(price));
+         return " WHERE price < ?";
+      }
+      return "";
+   }//end filterClause
+
+   private String describeFilters() {
+      if (!genre.isEmpty() && price > 0) {
+         return "Displaying results for: Genre = \"" + genre + "\", Price < " + price;
+      }
+      else if (!genre.isEmpty()) {
+         return "Displaying results for: Genre = \"" + genre + "\"";
+      }
+      else if (price > 0) {
+         return "Displaying results for: Price < " + price;
+      }
+      return "Displaying full catalog";
+   }//end describeFilters
+
+}//end CatalogBrowser
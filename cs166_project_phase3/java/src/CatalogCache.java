@@ -0,0 +1,355 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-process read-through cache of the Catalog table.
+ *
+ * The whole catalog is loaded on first use, or its most recently used
+ * rows when it is larger than the capacity.  Hits are answered from memory.
+ * A miss is always read through, even when the snapshot is complete, since
+ * another process may have added the game since the snapshot was taken.
+ * Cached prices are for display; place_order charges the prices it reads
+ * itself.
+ *
+ * Writes made by this process (the updateCatalog menu) refresh or remove
+ * the affected entry and bump the version, which keeps a read-through load
+ * that raced a write from installing a stale row.  Writes made by other
+ * processes are picked up when the snapshot is reloaded after the TTL.
+ *
+ * A reload reads the catalog into a new map without holding the cache's
+ * lock and swaps it in, so lookups keep being answered from the old
+ * snapshot meanwhile; only lookups before the first load wait for it.
+ * Rows this process writes during a reload are carried over into the new
+ * map.
+ *
+ */
+public class CatalogCache {
+
+   public static final int DEFAULT_CAPACITY = Integer.getInteger("gamerental.catalogCache.capacity", 100000);
+   public static final long DEFAULT_TTL_MS = Long.getLong("gamerental.catalogCache.ttlMs", 300000L);
+
+   private static final String SELECT_GAMES =
+      "SELECT gameID, gameName, genre, price, description, imageURL FROM Catalog";
+
+   /**
+    * One immutable Catalog row.
+    */
+   public static final class Game {
+      public final String gameID;
+      public final String gameName;
+      public final String genre;
+      public final long priceCents;
+      public final String description;
+      public final String imageURL;
+
+      Game(ResultSet rs) throws SQLException {
+         this.gameID = rs.getString(1);
+         this.gameName = rs.getString(2);
+         this.genre = rs.getString(3);
+         this.priceCents = Money.toCents(rs.getBigDecimal(4));
+         this.description = rs.getString(5);
+         this.imageURL = rs.getString(6);
+      }
+   }//end Game
+
+   private final GameRental esql;
+   private final int capacity;
+   private final long ttlMs;
+
+   private LinkedHashMap<String, Game> games;
+   private boolean loaded = false;
+   private boolean loading = false;
+   // rows written by this process while a reload runs; null values are removals
+   private HashMap<String, Game> written = null;
+   private boolean complete = false;
+   private long loadedAt = 0;
+   private long version = 0;
+
+   public CatalogCache(GameRental esql) {
+      this(esql, DEFAULT_CAPACITY, DEFAULT_TTL_MS);
+   }
+
+   public CatalogCache(GameRental esql, int capacity, long ttlMs) {
+      this.esql = esql;
+      this.capacity = capacity;
+      this.ttlMs = ttlMs;
+      this.games = newMap();
+   }//end CatalogCache
+
+   // an LRU map that marks the snapshot incomplete when it evicts
+   private LinkedHashMap<String, Game> newMap() {
+      return new LinkedHashMap<String, Game>(1024, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, Game> eldest) {
+            if (size() > CatalogCache.this.capacity) {
+               // an evicted row can no longer be answered from memory
+               complete = false;
+               return true;
+            }
+            return false;
+         }
+      };
+   }//end newMap
+
+   /**
+    * Returns the row for gameID, reading it from the database when it is not
+    * cached.
+    *
+    * @param gameID the game to look up
+    * @return the row, or null when the game does not exist
+    * @throws java.sql.SQLException when the catalog could not be read
+    */
+   public Game get(String gameID) throws SQLException {
+      long seenVersion;
+      ensureLoaded();
+      synchronized (this) {
+         Game game = games.get(gameID);
+         if (game != null) {
+            return game;
+         }
+         seenVersion = version;
+      }
+      Game game = loadOne(gameID);
+      synchronized (this) {
+         // a write since the read started may have made this row stale
+         if (game != null && version == seenVersion) {
+            games.put(gameID, game);
+         }
+      }
+      return game;
+   }//end get
+
+   /**
+    * Resolves many games at once.  Rows are taken from the cache, and all
+    * the misses are read in a single query.
+    *
+    * @param gameIDs the games to look up; duplicates are allowed
+    * @return the row of every game that exists, keyed by gameID
+    * @throws java.sql.SQLException when the catalog could not be read
+    */
+   public Map<String, Game> getAll(Collection<String> gameIDs) throws SQLException {
+      Map<String, Game> found = new HashMap<String, Game>();
+      Set<String> missing = new LinkedHashSet<String>();
+      long seenVersion;
+      ensureLoaded();
+      synchronized (this) {
+         for (String gameID : gameIDs) {
+            Game game = games.get(gameID);
+            if (game != null) {
+               found.put(gameID, game);
+            }
+            else {
+               missing.add(gameID);
+            }
+         }
+         seenVersion = version;
+      }
+      if (missing.isEmpty()) {
+         return found;
+      }
+      List<Game> loaded = loadMany(missing);
+      synchronized (this) {
+         for (Game game : loaded) {
+            found.put(game.gameID, game);
+            // a write since the read started may have made this row stale
+            if (version == seenVersion) {
+               games.put(game.gameID, game);
+            }
+         }
+      }
+      return found;
+   }//end getAll
+
+   /**
+    * @return true if gameID is in the catalog
+    */
+   public boolean contains(String gameID) throws SQLException {
+      return get(gameID) != null;
+   }//end contains
+
+   /**
+    * Re-reads one row after this process changed or inserted it.
+    *
+    * @param gameID the game that was written
+    */
+   public void refresh(String gameID) throws SQLException {
+      synchronized (this) {
+         version++;
+      }
+      Game game = loadOne(gameID);
+      synchronized (this) {
+         version++;
+         if (game != null) {
+            games.put(gameID, game);
+         }
+         else {
+            games.remove(gameID);
+         }
+         if (written != null) {
+            written.put(gameID, game);
+         }
+      }
+   }//end refresh
+
+   /**
+    * Drops a row after this process deleted it.
+    *
+    * @param gameID the game that was removed
+    */
+   public synchronized void remove(String gameID) {
+      version++;
+      games.remove(gameID);
+      if (written != null) {
+         written.put(gameID, null);
+      }
+   }//end remove
+
+   /**
+    * Drops rows found to be stale, such as games whose price changed in
+    * another process, so the next lookup reads them through.
+    *
+    * @param gameIDs the games to drop
+    */
+   public synchronized void evict(Collection<String> gameIDs) {
+      version++;
+      for (String gameID : gameIDs) {
+         games.remove(gameID);
+      }
+   }//end evict
+
+   /**
+    * Forces the next lookup to reload the whole snapshot.
+    */
+   public synchronized void invalidateAll() {
+      version++;
+      loaded = false;
+   }//end invalidateAll
+
+   /**
+    * @return a copy of every cached row, taken under one version
+    */
+   public List<Game> snapshot() throws SQLException {
+      ensureLoaded();
+      synchronized (this) {
+         return new ArrayList<Game>(games.values());
+      }
+   }//end snapshot
+
+   /**
+    * @return a number that changes on every write seen by this cache
+    */
+   public synchronized long getVersion() {
+      return version;
+   }
+
+   /**
+    * @return true when every catalog row is cached
+    */
+   public synchronized boolean isComplete() {
+      return complete;
+   }
+
+   // (re)loads the snapshot on first use and after the TTL; while one thread
+   // reloads, the others keep using the old snapshot
+   private void ensureLoaded() throws SQLException {
+      synchronized (this) {
+         while (true) {
+            if (loaded && (loading || System.currentTimeMillis() - loadedAt < ttlMs)) {
+               return;
+            }
+            if (!loading) {
+               break;
+            }
+            try {
+               wait();
+            }catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw new SQLException("Interrupted while waiting for the catalog to load");
+            }//end try
+         }//end while
+         loading = true;
+         written = new HashMap<String, Game>();
+      }
+      long start = System.currentTimeMillis();
+      final LinkedHashMap<String, Game> fresh = newMap();
+      final boolean[] truncated = { false };
+      boolean done = false;
+      try {
+         esql.executeQueryStream(SELECT_GAMES, GameRental.DEFAULT_FETCH_SIZE, new GameRental.RowHandler() {
+            public boolean handleRow(ResultSet rs) throws SQLException {
+               if (fresh.size() >= capacity) {
+                  truncated[0] = true;
+                  return false;
+               }
+               Game game = new Game(rs);
+               fresh.put(game.gameID, game);
+               return true;
+            }
+         });
+         done = true;
+      }finally{
+         synchronized (this) {
+            if (done) {
+               games = fresh;
+               complete = !truncated[0];
+               // the read may predate this process's own writes; keep the written rows
+               for (Map.Entry<String, Game> write : written.entrySet()) {
+                  if (write.getValue() != null) {
+                     games.put(write.getKey(), write.getValue());
+                  }
+                  else {
+                     games.remove(write.getKey());
+                  }
+               }
+               loaded = true;
+               loadedAt = start;
+               version++;
+            }
+            loading = false;
+            written = null;
+            notifyAll();
+         }
+      }//end try
+   }//end ensureLoaded
+
+   // one round trip for any number of games; the array literal quotes every element
+   private List<Game> loadMany(Collection<String> gameIDs) throws SQLException {
+      StringBuilder array = new StringBuilder("{");
+      for (String gameID : gameIDs) {
+         if (array.length() > 1) {
+            array.append(',');
+         }
+         array.append('"').append(gameID.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+      }
+      array.append('}');
+      final List<Game> found = new ArrayList<Game>(gameIDs.size());
+      esql.executeQueryStream(SELECT_GAMES + " WHERE gameID = ANY (CAST(? AS text[]))", GameRental.DEFAULT_FETCH_SIZE,
+                              new GameRental.RowHandler() {
+         public boolean handleRow(ResultSet rs) throws SQLException {
+            found.add(new Game(rs));
+            return true;
+         }
+      }, array.toString());
+      return found;
+   }//end loadMany
+
+   private Game loadOne(String gameID) throws SQLException {
+      final Game[] found = { null };
+      esql.executeQueryStream(SELECT_GAMES + " WHERE gameID = ?", 1, new GameRental.RowHandler() {
+         public boolean handleRow(ResultSet rs) throws SQLException {
+            found[0] = new Game(rs);
+            return false;
+         }
+      }, gameID);
+      return found[0];
+   }//end loadOne
+
+}//end CatalogCache
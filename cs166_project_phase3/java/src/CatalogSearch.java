@@ -0,0 +1,294 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ranked, typo-tolerant search over the game names and descriptions
+ * (platform and publisher) of the catalog.
+ *
+ * Text is split into words and every word into trigrams, padded like
+ * pg_trgm so word starts weigh more.  An in-process inverted index maps
+ * each trigram to the games containing it.  A search walks only the
+ * posting lists of the query's trigrams and ranks games by the share of
+ * the query's trigrams found in the name, with a small bonus for names of
+ * about the query's length, or else found in the description at half
+ * weight.  A misspelt word still shares most of its trigrams with the
+ * right one, so typos cost rank but do not lose the match.
+ *
+ * The index is built from the CatalogCache snapshot on first use and
+ * rebuilt after the cache TTL.  addGame, changeGameName, changeDescription
+ * and removeGame update it in place: a changed game gets a new slot and
+ * its old slot is marked dead, and the index is compacted when half of
+ * its slots are dead.  Prices and genres are read from the cache when
+ * results are shown, so they never go stale here.
+ *
+ */
+public class CatalogSearch {
+
+   public static final int DEFAULT_LIMIT = Integer.getInteger("gamerental.search.limit", 10);
+   public static final double MIN_SCORE = Double.parseDouble(System.getProperty("gamerental.search.minScore", "0.3"));
+   public static final long TTL_MS = Long.getLong("gamerental.search.ttlMs", CatalogCache.DEFAULT_TTL_MS);
+
+   private static final double DESCRIPTION_WEIGHT = 0.5;
+   private static final double LENGTH_BONUS = 0.2;
+
+   /**
+    * One ranked match.
+    */
+   public static final class Hit {
+      public final String gameID;
+      public final double score;
+
+      Hit(String gameID, double score) {
+         this.gameID = gameID;
+         this.score = score;
+      }
+   }//end Hit
+
+   /**
+    * The games containing one trigram, as slot numbers in insertion order.
+    */
+   private static final class Postings {
+      int[] slots = new int[4];
+      int size = 0;
+
+      void add(int slot) {
+         if (size == slots.length) {
+            slots = Arrays.copyOf(slots, size * 2);
+         }
+         slots[size++] = slot;
+      }
+   }//end Postings
+
+   private final GameRental esql;
+   private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+   // trigram -> postings, separately for names and descriptions
+   private HashMap<Long, Postings> nameIndex = new HashMap<Long, Postings>();
+   private HashMap<Long, Postings> descriptionIndex = new HashMap<Long, Postings>();
+   // per slot: the game, its distinct trigram counts, and whether it was replaced
+   private String[] slotGame = new String[0];
+   private int[] nameTrigrams = new int[0];
+   private int[] descriptionTrigrams = new int[0];
+   private boolean[] dead = new boolean[0];
+   private int slots = 0;
+   private int deadSlots = 0;
+   private final HashMap<String, Integer> slotOf = new HashMap<String, Integer>();
+   private long builtAt = -1;
+
+   public CatalogSearch(GameRental esql) {
+      this.esql = esql;
+   }
+
+   /**
+    * @param query words of a game name, platform or publisher
+    * @param limit the most hits to return
+    * @return the best matches, best first
+    */
+   public List<Hit> search(String query, int limit) throws SQLException {
+      long[] terms = trigrams(query);
+      List<Hit> hits = new ArrayList<Hit>();
+      if (terms.length == 0 || limit <= 0) {
+         return hits;
+      }
+      ensureBuilt();
+      lock.readLock().lock();
+      try {
+         int[] nameShared = new int[slots];
+         int[] descriptionShared = new int[slots];
+         int[] touched = new int[slots];
+         int touchedCount = 0;
+         for (long term : terms) {
+            Postings names = nameIndex.get(term);
+            if (names != null) {
+               for (int i = 0; i < names.size; i++) {
+                  int slot = names.slots[i];
+                  if (nameShared[slot]++ == 0 && descriptionShared[slot] == 0) {
+                     touched[touchedCount++] = slot;
+                  }
+               }
+            }
+            Postings descriptions = descriptionIndex.get(term);
+            if (descriptions != null) {
+               for (int i = 0; i < descriptions.size; i++) {
+                  int slot = descriptions.slots[i];
+                  if (descriptionShared[slot]++ == 0 && nameShared[slot] == 0) {
+                     touched[touchedCount++] = slot;
+                  }
+               }
+            }
+         }
+
+         // keep the best limit hits in a min-heap
+         PriorityQueue<Hit> best = new PriorityQueue<Hit>(limit + 1, (a, b) -> Double.compare(a.score, b.score));
+         for (int i = 0; i < touchedCount; i++) {
+            int slot = touched[i];
+            if (dead[slot]) {
+               continue;
+            }
+            double nameScore = 0.0;
+            if (nameShared[slot] > 0) {
+               double containment = (double) nameShared[slot] / terms.length;
+               double similarity = (double) nameShared[slot] / (terms.length + nameTrigrams[slot] - nameShared[slot]);
+               nameScore = containment + LENGTH_BONUS * similarity;
+            }
+            double descriptionScore = DESCRIPTION_WEIGHT * descriptionShared[slot] / terms.length;
+            double score = Math.max(nameScore, descriptionScore);
+            if (score < MIN_SCORE) {
+               continue;
+            }
+            if (best.size() < limit) {
+               best.add(new Hit(slotGame[slot], score));
+            }
+            else if (score > best.peek().score) {
+               best.poll();
+               best.add(new Hit(slotGame[slot], score));
+            }
+         }
+         hits.addAll(best);
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+      hits.sort((a, b) -> Double.compare(b.score, a.score));
+      return hits;
+   }//end search
+
+   /**
+    * Re-indexes a game this process added or renamed, or whose description
+    * it changed.
+    */
+   public void update(String gameID) throws SQLException {
+      CatalogCache.Game game = esql._catalog.get(gameID);
+      lock.writeLock().lock();
+      try {
+         if (builtAt < 0) {
+            return; // not built yet; the first search reads the cache
+         }
+         removeLocked(gameID);
+         if (game != null) {
+            addLocked(game);
+         }
+      }finally{
+         lock.writeLock().unlock();
+      }//end try
+   }//end update
+
+   /**
+    * Drops a game this process removed.
+    */
+   public void remove(String gameID) {
+      lock.writeLock().lock();
+      try {
+         removeLocked(gameID);
+      }finally{
+         lock.writeLock().unlock();
+      }//end try
+   }//end remove
+
+   // builds on first use and after the TTL, or compacts when half of the slots are dead
+   private void ensureBuilt() throws SQLException {
+      lock.readLock().lock();
+      try {
+         if (builtAt >= 0 && System.currentTimeMillis() - builtAt < TTL_MS && deadSlots * 2 <= slots) {
+            return;
+         }
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+      List<CatalogCache.Game> games = esql._catalog.snapshot();
+      lock.writeLock().lock();
+      try {
+         nameIndex = new HashMap<Long, Postings>();
+         descriptionIndex = new HashMap<Long, Postings>();
+         slotGame = new String[games.size()];
+         nameTrigrams = new int[games.size()];
+         descriptionTrigrams = new int[games.size()];
+         dead = new boolean[games.size()];
+         slots = 0;
+         deadSlots = 0;
+         slotOf.clear();
+         for (CatalogCache.Game game : games) {
+            addLocked(game);
+         }
+         builtAt = System.currentTimeMillis();
+      }finally{
+         lock.writeLock().unlock();
+      }//end try
+   }//end ensureBuilt
+
+   private void addLocked(CatalogCache.Game game) {
+      if (slots == slotGame.length) {
+         int capacity = Math.max(16, slots * 2);
+         slotGame = Arrays.copyOf(slotGame, capacity);
+         nameTrigrams = Arrays.copyOf(nameTrigrams, capacity);
+         descriptionTrigrams = Arrays.copyOf(descriptionTrigrams, capacity);
+         dead = Arrays.copyOf(dead, capacity);
+      }
+      int slot = slots++;
+      slotGame[slot] = game.gameID;
+      nameTrigrams[slot] = index(nameIndex, trigrams(game.gameName), slot);
+      descriptionTrigrams[slot] = index(descriptionIndex, trigrams(game.description), slot);
+      slotOf.put(game.gameID, slot);
+   }//end addLocked
+
+   private void removeLocked(String gameID) {
+      Integer slot = slotOf.remove(gameID);
+      if (slot != null && !dead[slot]) {
+         dead[slot] = true;
+         deadSlots++;
+      }
+   }//end removeLocked
+
+   private static int index(HashMap<Long, Postings> index, long[] terms, int slot) {
+      for (long term : terms) {
+         index.computeIfAbsent(term, k -> new Postings()).add(slot);
+      }
+      return terms.length;
+   }//end index
+
+   /**
+    * @return the distinct trigrams of text: lower-cased letter and digit
+    *         runs, each padded with two spaces in front and one behind
+    */
+   static long[] trigrams(String text) {
+      if (text == null) {
+         return new long[0];
+      }
+      String lower = text.toLowerCase(Locale.ROOT);
+      long[] terms = new long[16];
+      int count = 0;
+      StringBuilder word = new StringBuilder("  ");
+      for (int i = 0; i <= lower.length(); i++) {
+         char c = i < lower.length() ? lower.charAt(i) : ' ';
+         if (Character.isLetterOrDigit(c)) {
+            word.append(c);
+            continue;
+         }
+         if (word.length() > 2) {
+            word.append(' ');
+            for (int j = 0; j + 3 <= word.length(); j++) {
+               if (count == terms.length) {
+                  terms = Arrays.copyOf(terms, count * 2);
+               }
+               terms[count++] = ((long) word.charAt(j) << 32) | ((long) word.charAt(j + 1) << 16) | word.charAt(j + 2);
+            }
+            word.setLength(2);
+         }
+      }
+      long[] distinct = Arrays.copyOf(terms, count);
+      Arrays.sort(distinct);
+      int n = 0;
+      for (int i = 0; i < distinct.length; i++) {
+         if (n == 0 || distinct[i] != distinct[n - 1]) {
+            distinct[n++] = distinct[i];
+         }
+      }
+      return Arrays.copyOf(distinct, n);
+   }//end trigrams
+
+}//end CatalogSearch
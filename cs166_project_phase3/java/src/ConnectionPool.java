@@ -0,0 +1,606 @@
+import java.lang.reflect.Method;
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of physical database connections shared by every session
+ * of a GameRental instance.
+ *
+ * Connections are validated before they are handed out, closed once they
+ * have been idle or alive for too long, and replaced when a caller reports
+ * them broken.  Callers must return every borrowed connection through
+ * release() or invalidate().
+ *
+ * Each connection keeps an LRU cache of PreparedStatements keyed by SQL
+ * text, so the driver builds a query shape's statement once per connection.
+ * With the bundled 7.3 driver that is all the cache saves: the driver
+ * substitutes the parameters on the client and the server parses and plans
+ * every execution.  New statements are switched to server-side prepare
+ * (PGStatement.setUseServerPrepare) when the driver offers it, but the 7.3
+ * driver only honours this for servers whose version string sorts at or
+ * above "7.3", which PostgreSQL 10 and later do not.  Plans are reused only
+ * with a driver that prepares on the server; serverPrepared in the stats
+ * counts the statements it did.
+ *
+ */
+public class ConnectionPool {
+
+   // default pool settings, overridable through system properties
+   public static final int DEFAULT_MAX_SIZE = Integer.getInteger("gamerental.pool.maxSize", 8);
+   public static final int DEFAULT_MIN_IDLE = Integer.getInteger("gamerental.pool.minIdle", 1);
+   public static final long DEFAULT_BORROW_TIMEOUT_MS = Long.getLong("gamerental.pool.borrowTimeoutMs", 30000L);
+   public static final long DEFAULT_IDLE_TIMEOUT_MS = Long.getLong("gamerental.pool.idleTimeoutMs", 600000L);
+   public static final long DEFAULT_MAX_LIFETIME_MS = Long.getLong("gamerental.pool.maxLifetimeMs", 1800000L);
+   public static final int STATEMENT_CACHE_SIZE = Integer.getInteger("gamerental.pool.statementCacheSize", 64);
+   public static final boolean SERVER_PREPARE =
+      Boolean.parseBoolean(System.getProperty("gamerental.pool.serverPrepare", "true"));
+
+   // the bundled driver jar has no META-INF/services entry, so DriverManager
+   // only finds it once this class is loaded
+   private static final String DRIVER = "org.postgresql.Driver";
+
+   // PGStatement.setUseServerPrepare and isUseServerPrepare, or null when the driver has no PGStatement
+   private static final Method[] SERVER_PREPARE_METHODS = serverPrepareMethods();
+
+   // connections idle for less than this are handed out without a round trip
+   private static final long VALIDATION_GRACE_MS = 500L;
+   private static final String VALIDATION_QUERY = "SELECT 1";
+   // the escaping the bundled driver's client-side binding relies on; see setUpSession
+   private static final String[] SESSION_SETUP =
+      { "SET standard_conforming_strings = off", "SET escape_string_warning = off" };
+
+   private final String url;
+   private final String user;
+   private final String passwd;
+   private final int maxSize;
+   private final int minIdle;
+   private final long borrowTimeoutMs;
+   private final long idleTimeoutMs;
+   private final long maxLifetimeMs;
+
+   private final ReentrantLock lock = new ReentrantLock();
+   private final Condition available = lock.newCondition();
+   // most recently returned connection is borrowed first
+   private final ArrayDeque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+   private final Map<Connection, PooledConnection> borrowed = new IdentityHashMap<Connection, PooledConnection>();
+   private final ScheduledExecutorService evictor;
+   private int totalConnections = 0;
+   private boolean closed = false;
+
+   // metrics, guarded by lock
+   private long borrowCount = 0;
+   private long totalWaitNanos = 0;
+   private long maxWaitNanos = 0;
+   private long timeoutCount = 0;
+   private long createdCount = 0;
+   private long destroyedCount = 0;
+   private long validationFailures = 0;
+   private long statementHits = 0;
+   private long statementMisses = 0;
+   private long serverPrepared = 0;
+
+   /**
+    * Bookkeeping for one physical connection.  The statement cache is only
+    * touched by the thread that currently holds the connection.
+    */
+   static final class PooledConnection {
+      final Connection connection;
+      final long createdAt;
+      long lastReturnedAt;
+      final LinkedHashMap<String, PreparedStatement> statements =
+         new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+               if (size() > STATEMENT_CACHE_SIZE) {
+                  closeQuietly(eldest.getValue());
+                  return true;
+               }
+               return false;
+            }
+         };
+
+      PooledConnection(Connection connection) {
+         this.connection = connection;
+         this.createdAt = System.currentTimeMillis();
+         this.lastReturnedAt = this.createdAt;
+      }
+   }//end PooledConnection
+
+   /**
+    * Creates a pool with the default settings.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    */
+   public ConnectionPool(String url, String user, String passwd) {
+      this(url, user, passwd, DEFAULT_MAX_SIZE, DEFAULT_MIN_IDLE, DEFAULT_BORROW_TIMEOUT_MS,
+           DEFAULT_IDLE_TIMEOUT_MS, DEFAULT_MAX_LIFETIME_MS);
+   }//end ConnectionPool
+
+   /**
+    * Creates a pool.  No connection is opened until the first borrow.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param maxSize the maximum number of physical connections
+    * @param minIdle the number of idle connections kept open by eviction
+    * @param borrowTimeoutMs how long borrow() waits for a free connection
+    * @param idleTimeoutMs idle time after which a connection is closed
+    * @param maxLifetimeMs age after which a connection is retired
+    */
+   public ConnectionPool(String url, String user, String passwd, int maxSize, int minIdle,
+                         long borrowTimeoutMs, long idleTimeoutMs, long maxLifetimeMs) {
+      if (maxSize < 1) {
+         throw new IllegalArgumentException("maxSize must be at least 1");
+      }
+      try {
+         Class.forName(DRIVER);
+      }catch (ClassNotFoundException e) {
+         throw new IllegalStateException("JDBC driver " + DRIVER + " is not on the classpath");
+      }//end try
+      this.url = url;
+      this.user = user;
+      this.passwd = passwd;
+      this.maxSize = maxSize;
+      this.minIdle = Math.min(minIdle, maxSize);
+      this.borrowTimeoutMs = borrowTimeoutMs;
+      this.idleTimeoutMs = idleTimeoutMs;
+      this.maxLifetimeMs = maxLifetimeMs;
+
+      this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "gamerental-pool-evictor");
+         t.setDaemon(true);
+         return t;
+      });
+      long period = Math.max(1000L, Math.min(idleTimeoutMs, maxLifetimeMs) / 4);
+      this.evictor.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.MILLISECONDS);
+   }//end ConnectionPool
+
+   /**
+    * Borrows a validated connection, opening a new one if the pool is not
+    * yet full and waiting up to the borrow timeout otherwise.
+    *
+    * @return a connection that must be handed back with release()
+    * @throws java.sql.SQLException when no connection could be obtained
+    */
+   public Connection borrow() throws SQLException {
+      long start = System.nanoTime();
+      long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMs);
+      while (true) {
+         PooledConnection pc = null;
+         boolean create = false;
+         lock.lock();
+         try {
+            while (pc == null && !create) {
+               if (closed) {
+                  throw new SQLException("Connection pool is closed");
+               }
+               pc = idle.pollFirst();
+               if (pc == null) {
+                  if (totalConnections < maxSize) {
+                     // reserve a slot and open the connection outside the lock
+                     totalConnections++;
+                     create = true;
+                  }
+                  else {
+                     long remaining = deadline - System.nanoTime();
+                     if (remaining <= 0) {
+                        timeoutCount++;
+                        throw new SQLException("Timed out after " + borrowTimeoutMs
+                              + "ms waiting for a database connection (pool size " + maxSize + ")");
+                     }
+                     try {
+                        available.awaitNanos(remaining);
+                     }catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection");
+                     }//end try
+                  }
+               }
+            }//end while
+         }finally{
+            lock.unlock();
+         }//end try
+
+         if (create) {
+            try {
+               pc = new PooledConnection(open());
+            }catch (SQLException e) {
+               lock.lock();
+               try {
+                  totalConnections--;
+                  available.signal();
+               }finally{
+                  lock.unlock();
+               }//end try
+               throw e;
+            }//end try
+            lock.lock();
+            try {
+               createdCount++;
+            }finally{
+               lock.unlock();
+            }//end try
+         }
+         else if (isExpired(pc, System.currentTimeMillis()) || !validate(pc)) {
+            destroy(pc);
+            continue;
+         }
+
+         lock.lock();
+         try {
+            borrowed.put(pc.connection, pc);
+            long waited = System.nanoTime() - start;
+            borrowCount++;
+            totalWaitNanos += waited;
+            maxWaitNanos = Math.max(maxWaitNanos, waited);
+         }finally{
+            lock.unlock();
+         }//end try
+         return pc.connection;
+      }//end while
+   }//end borrow
+
+   /**
+    * Returns a prepared statement for sql on a borrowed connection, reusing
+    * the cached statement when this connection has prepared it before.  The
+    * statement stays owned by the cache: callers close its ResultSets but
+    * never the statement itself.
+    *
+    * @param connection a connection obtained from borrow()
+    * @param sql the SQL text with ? placeholders
+    * @return the prepared statement
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+      PooledConnection pc;
+      lock.lock();
+      try {
+         pc = borrowed.get(connection);
+      }finally{
+         lock.unlock();
+      }//end try
+      if (pc == null) {
+         throw new SQLException("Connection was not borrowed from this pool");
+      }
+      PreparedStatement stmt = pc.statements.get(sql);
+      boolean hit = stmt != null;
+      boolean onServer = false;
+      if (!hit) {
+         stmt = connection.prepareStatement(sql);
+         onServer = SERVER_PREPARE && useServerPrepare(stmt);
+         pc.statements.put(sql, stmt);
+      }
+      lock.lock();
+      try {
+         if (hit) {
+            statementHits++;
+         }
+         else {
+            statementMisses++;
+            if (onServer) {
+               serverPrepared++;
+            }
+         }
+      }finally{
+         lock.unlock();
+      }//end try
+      return stmt;
+   }//end prepare
+
+   /**
+    * Returns a healthy connection to the pool.  The connection is reset to
+    * autocommit mode before it can be borrowed again.
+    *
+    * @param connection a connection obtained from borrow()
+    */
+   public void release(Connection connection) {
+      if (connection == null) {
+         return;
+      }
+      PooledConnection pc;
+      lock.lock();
+      try {
+         pc = borrowed.remove(connection);
+      }finally{
+         lock.unlock();
+      }//end try
+      if (pc == null) {
+         return;
+      }
+      try {
+         if (connection.isClosed()) {
+            destroy(pc);
+            return;
+         }
+         if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+         }
+      }catch (SQLException e) {
+         destroy(pc);
+         return;
+      }//end try
+
+      lock.lock();
+      try {
+         if (closed) {
+            closeQuietly(pc);
+            totalConnections--;
+            destroyedCount++;
+            return;
+         }
+         pc.lastReturnedAt = System.currentTimeMillis();
+         idle.addFirst(pc);
+         available.signal();
+      }finally{
+         lock.unlock();
+      }//end try
+   }//end release
+
+   /**
+    * Discards a connection that failed in use (e.g. a dropped socket) so a
+    * fresh one is opened on the next borrow.
+    *
+    * @param connection a connection obtained from borrow()
+    */
+   public void invalidate(Connection connection) {
+      if (connection == null) {
+         return;
+      }
+      PooledConnection pc;
+      lock.lock();
+      try {
+         pc = borrowed.remove(connection);
+      }finally{
+         lock.unlock();
+      }//end try
+      if (pc != null) {
+         destroy(pc);
+      }
+   }//end invalidate
+
+   /**
+    * Decides whether a failed connection should be discarded instead of
+    * being returned to the pool.  The bundled 7.3 driver sets no SQLState
+    * and its isClosed() only reports an explicit close, so unless the state
+    * names a connection failure the connection is rolled back and probed
+    * with the validation query before it may go back to the pool.
+    *
+    * @param connection the connection the error was raised on
+    * @param e the error
+    * @return true when the connection is no longer usable
+    */
+   public static boolean isBroken(Connection connection, SQLException e) {
+      String state = e.getSQLState();
+      if (state != null && (state.startsWith("08") || state.startsWith("57P"))) {
+         return true; // connection exception or operator intervention
+      }
+      Statement stmt = null;
+      try {
+         if (connection.isClosed()) {
+            return true;
+         }
+         if (!connection.getAutoCommit()) {
+            // an aborted transaction would fail the probe on a healthy connection
+            connection.rollback();
+         }
+         stmt = connection.createStatement();
+         stmt.executeQuery(VALIDATION_QUERY).close();
+         return false;
+      }catch (SQLException ce) {
+         return true;
+      }finally{
+         if (stmt != null) {
+            closeQuietly(stmt);
+         }
+      }//end try
+   }//end isBroken
+
+   /**
+    * Closes every idle connection and refuses further borrows.  Borrowed
+    * connections are closed as they are released.
+    */
+   public void close() {
+      evictor.shutdownNow();
+      lock.lock();
+      try {
+         closed = true;
+         PooledConnection pc;
+         while ((pc = idle.pollFirst()) != null) {
+            closeQuietly(pc);
+            totalConnections--;
+            destroyedCount++;
+         }
+         available.signalAll();
+      }finally{
+         lock.unlock();
+      }//end try
+   }//end close
+
+   /**
+    * @return a one-line summary of the pool metrics
+    */
+   public String getStats() {
+      lock.lock();
+      try {
+         double avgWaitMs = borrowCount == 0 ? 0.0 : totalWaitNanos / 1e6 / borrowCount;
+         return String.format("pool: size=%d/%d idle=%d borrowed=%d borrows=%d avgWait=%.3fms maxWait=%.3fms "
+                              + "timeouts=%d created=%d destroyed=%d validationFailures=%d "
+                              + "stmtCacheHits=%d stmtCacheMisses=%d serverPrepared=%d",
+                              totalConnections, maxSize, idle.size(), borrowed.size(), borrowCount,
+                              avgWaitMs, maxWaitNanos / 1e6, timeoutCount, createdCount,
+                              destroyedCount, validationFailures, statementHits, statementMisses,
+                              serverPrepared);
+      }finally{
+         lock.unlock();
+      }//end try
+   }//end getStats
+
+   public int getMaxSize() {
+      return maxSize;
+   }
+
+   // closes idle connections past their idle timeout or lifetime, keeping minIdle open
+   private void evict() {
+      long now = System.currentTimeMillis();
+      ArrayDeque<PooledConnection> expired = new ArrayDeque<PooledConnection>();
+      lock.lock();
+      try {
+         // the least recently used connections sit at the tail
+         int keep = idle.size();
+         for (PooledConnection pc : idle.toArray(new PooledConnection[0])) {
+            boolean tooOld = now - pc.createdAt >= maxLifetimeMs;
+            boolean tooIdle = now - pc.lastReturnedAt >= idleTimeoutMs && keep > minIdle;
+            if (tooOld || tooIdle) {
+               idle.remove(pc);
+               expired.add(pc);
+               keep--;
+            }
+         }
+      }finally{
+         lock.unlock();
+      }//end try
+      for (PooledConnection pc : expired) {
+         destroy(pc);
+      }
+   }//end evict
+
+   // asks the driver to prepare stmt on the server; returns true if the driver agreed
+   private static boolean useServerPrepare(PreparedStatement stmt) {
+      if (SERVER_PREPARE_METHODS == null || !SERVER_PREPARE_METHODS[0].getDeclaringClass().isInstance(stmt)) {
+         return false;
+      }
+      try {
+         SERVER_PREPARE_METHODS[0].invoke(stmt, Boolean.TRUE);
+         return (Boolean) SERVER_PREPARE_METHODS[1].invoke(stmt);
+      }catch (ReflectiveOperationException e) {
+         return false;
+      }//end try
+   }//end useServerPrepare
+
+   private static Method[] serverPrepareMethods() {
+      try {
+         Class<?> pgStatement = Class.forName("org.postgresql.PGStatement");
+         return new Method[] { pgStatement.getMethod("setUseServerPrepare", boolean.class),
+                               pgStatement.getMethod("isUseServerPrepare") };
+      }catch (ClassNotFoundException | NoSuchMethodException e) {
+         return null;
+      }//end try
+   }//end serverPrepareMethods
+
+   // opens a physical connection set up by setUpSession
+   private Connection open() throws SQLException {
+      Connection connection = DriverManager.getConnection(url, user, passwd);
+      try {
+         setUpSession(connection);
+      }catch (SQLException e) {
+         try {
+            connection.close();
+         }catch (SQLException ce) {
+            // ignored.
+         }//end try
+         throw e;
+      }//end try
+      return connection;
+   }//end open
+
+   /**
+    * Sets a session up for the bundled driver, which binds parameters on
+    * the client and escapes a quote as \' and a backslash as \\.  Servers
+    * since PostgreSQL 9.1 read backslashes in '...' literally unless
+    * standard_conforming_strings is off, which would turn a bound ' into the
+    * end of the literal.  Every pooled connection is set up this way when it
+    * is opened; running it again is harmless.
+    */
+   static void setUpSession(Connection connection) throws SQLException {
+      Statement stmt = connection.createStatement();
+      try {
+         for (String sql : SESSION_SETUP) {
+            stmt.executeUpdate(sql);
+         }
+      }finally{
+         stmt.close();
+      }//end try
+   }//end setUpSession
+
+   private boolean isExpired(PooledConnection pc, long now) {
+      return now - pc.createdAt >= maxLifetimeMs;
+   }
+
+   // validation-on-borrow; skipped for connections that were just returned
+   private boolean validate(PooledConnection pc) {
+      if (System.currentTimeMillis() - pc.lastReturnedAt < VALIDATION_GRACE_MS) {
+         return true;
+      }
+      Statement stmt = null;
+      try {
+         stmt = pc.connection.createStatement();
+         stmt.executeQuery(VALIDATION_QUERY).close();
+         return true;
+      }catch (SQLException e) {
+         lock.lock();
+         try {
+            validationFailures++;
+         }finally{
+            lock.unlock();
+         }//end try
+         return false;
+      }finally{
+         if (stmt != null) {
+            try {
+               stmt.close();
+            }catch (SQLException e) {
+               // ignored.
+            }//end try
+         }
+      }//end try
+   }//end validate
+
+   private void destroy(PooledConnection pc) {
+      closeQuietly(pc);
+      lock.lock();
+      try {
+         totalConnections--;
+         destroyedCount++;
+         available.signal();
+      }finally{
+         lock.unlock();
+      }//end try
+   }//end destroy
+
+   private static void closeQuietly(PooledConnection pc) {
+      for (PreparedStatement stmt : pc.statements.values()) {
+         closeQuietly(stmt);
+      }
+      pc.statements.clear();
+      try {
+         pc.connection.close();
+      }catch (SQLException e) {
+         // ignored.
+      }//end try
+   }//end closeQuietly
+
+   private static void closeQuietly(Statement stmt) {
+      try {
+         stmt.close();
+      }catch (SQLException e) {
+         // ignored.
+      }//end try
+   }//end closeQuietly
+
+}//end ConnectionPool
@@ -0,0 +1,502 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Applies courier status events to TrackingInfo in set-based batches.
+ *
+ * Events are read from a CSV file with a header row, or a JSON lines file
+ * with one object per line, or from every such file in a directory, with
+ * the fields trackingID, status, currentLocation, courierName, timestamp
+ * and comment.  Each batch keeps only the latest event of every trackingID
+ * and is applied with a single UPDATE ... FROM (VALUES ...) statement that
+ * only touches rows whose lastUpdateDate is older than the event.  Events
+ * for unknown trackingIDs match no row, and out-of-order or replayed events
+ * are skipped by the lastUpdateDate check, so feeding the same file twice
+ * changes nothing.  Batches are applied on several connections while the
+ * next batch is parsed; rows are locked in trackingID order, so concurrent
+ * batches cannot deadlock.
+ *
+ */
+public class CourierFeedIngester {
+
+   public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("gamerental.feed.batchSize", 1000);
+   public static final int DEFAULT_THREADS = Integer.getInteger("gamerental.feed.threads", 2);
+
+   // rejected events printed before the rest are only counted
+   private static final int MAX_REPORTED = 10;
+
+   // lastUpdateDate is the timestamp of the latest applied event; the counts tell unknown IDs from stale events
+   private static final String UPDATE_PREFIX =
+      "WITH v (trackingID, status, currentLocation, courierName, ts, comment) AS (VALUES ";
+   private static final String UPDATE_ROW = "(?, ?, ?, ?, CAST(? AS timestamp), ?)";
+   private static final String UPDATE_SUFFIX =
+      "), updated AS (" +
+      "   UPDATE TrackingInfo T SET status = v.status, currentLocation = v.currentLocation," +
+      "   courierName = v.courierName, lastUpdateDate = v.ts, additionalComments = v.comment" +
+      "   FROM v WHERE T.trackingID = v.trackingID AND T.lastUpdateDate < v.ts" +
+      "   RETURNING T.trackingID" +
+      ") " +
+      "SELECT (SELECT COUNT(*) FROM updated), (SELECT COUNT(*) FROM v JOIN TrackingInfo T ON T.trackingID = v.trackingID)";
+
+   /**
+    * One status event.
+    */
+   static final class Event {
+      final String trackingID;
+      final String status;
+      final String currentLocation;
+      final String courierName;
+      final Timestamp timestamp;
+      final String comment;
+
+      Event(String trackingID, String status, String currentLocation, String courierName,
+            Timestamp timestamp, String comment) {
+         this.trackingID = trackingID;
+         this.status = status;
+         this.currentLocation = currentLocation;
+         this.courierName = courierName;
+         this.timestamp = timestamp;
+         this.comment = comment;
+      }
+   }//end Event
+
+   private final GameRental esql;
+   private final int batchSize;
+   private final ExecutorService appliers;
+   private final Semaphore inFlight;
+   private final AtomicReference<SQLException> failure = new AtomicReference<SQLException>();
+
+   private final AtomicLong read = new AtomicLong();
+   private final AtomicLong rejected = new AtomicLong();
+   private final AtomicLong superseded = new AtomicLong();
+   private final AtomicLong applied = new AtomicLong();
+   private final AtomicLong stale = new AtomicLong();
+   private final AtomicLong unknown = new AtomicLong();
+
+   // latest event per trackingID of the batch being filled, in lock order
+   private TreeMap<String, Event> batch = new TreeMap<String, Event>();
+
+   public CourierFeedIngester(GameRental esql, int batchSize, int threads) {
+      this.esql = esql;
+      this.batchSize = batchSize;
+      this.appliers = Executors.newFixedThreadPool(threads);
+      // one batch queued per applier at most, so reading never runs far ahead
+      this.inFlight = new Semaphore(threads * 2);
+   }//end CourierFeedIngester
+
+   /**
+    * Reads and applies every event of a file or of the feed files in a directory.
+    */
+   public void ingest(File input) throws IOException, SQLException {
+      List<File> files = new ArrayList<File>();
+      if (input.isDirectory()) {
+         File[] children = input.listFiles((dir, name) -> formatOf(name) != null);
+         Arrays.sort(children);
+         files.addAll(Arrays.asList(children));
+      }
+      else {
+         files.add(input);
+      }
+      for (File file : files) {
+         String format = formatOf(file.getName());
+         try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                                                                            StandardCharsets.UTF_8), 1 << 16)) {
+            if ("json".equals(format)) {
+               readJsonLines(file, in);
+            }
+            else {
+               readCsv(file, in);
+            }
+         }
+      }
+      flush();
+   }//end ingest
+
+   /**
+    * Waits for the batches in flight and stops the appliers.
+    *
+    * @throws java.sql.SQLException the first error a batch raised
+    */
+   public void finish() throws SQLException {
+      appliers.shutdown();
+      try {
+         appliers.awaitTermination(1, TimeUnit.HOURS);
+      }catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }//end try
+      if (failure.get() != null) {
+         throw failure.get();
+      }
+   }//end finish
+
+   private void readCsv(File file, BufferedReader in) throws IOException, SQLException {
+      CsvReader csv = new CsvReader(in);
+      String[] header = csv.next();
+      if (header == null) {
+         return;
+      }
+      Map<String, Integer> columns = new HashMap<String, Integer>();
+      for (int i = 0; i < header.length; i++) {
+         if (header[i] != null) {
+            columns.put(header[i].trim().toLowerCase(Locale.ROOT), i);
+         }
+      }
+      String[] record;
+      while ((record = csv.next()) != null) {
+         Map<String, String> fields = new HashMap<String, String>();
+         for (Map.Entry<String, Integer> column : columns.entrySet()) {
+            if (column.getValue() < record.length) {
+               fields.put(column.getKey(), record[column.getValue()]);
+            }
+         }
+         accept(file, csv.getRecordCount(), fields);
+      }
+   }//end readCsv
+
+   private void readJsonLines(File file, BufferedReader in) throws IOException, SQLException {
+      String line;
+      long lineNo = 0;
+      while ((line = in.readLine()) != null) {
+         lineNo++;
+         if (line.trim().isEmpty()) {
+            continue;
+         }
+         Map<String, String> fields;
+         try {
+            fields = parseJsonObject(line);
+         }catch (IllegalArgumentException e) {
+            read.incrementAndGet();
+            reject(file, lineNo, e.getMessage());
+            continue;
+         }//end try
+         accept(file, lineNo, fields);
+      }
+   }//end readJsonLines
+
+   // validates one event and adds it to the batch; fields are keyed by lower-case name
+   private void accept(File file, long line, Map<String, String> fields) throws SQLException {
+      read.incrementAndGet();
+      String trackingID = field(fields, "trackingid");
+      String status = field(fields, "status");
+      String location = field(fields, "currentlocation");
+      String courier = field(fields, "couriername");
+      String time = fields.containsKey("timestamp") ? field(fields, "timestamp") : field(fields, "lastupdatedate");
+      String comment = fields.containsKey("comment") ? fields.get("comment") : fields.get("additionalcomments");
+      if (trackingID == null || status == null || location == null || courier == null || time == null) {
+         reject(file, line, "missing trackingID, status, currentLocation, courierName or timestamp");
+         return;
+      }
+      if (trackingID.length() > 50 || status.length() > 50 || location.length() > 60 || courier.length() > 60) {
+         reject(file, line, "field too long");
+         return;
+      }
+      Timestamp timestamp = parseTimestamp(time);
+      if (timestamp == null) {
+         reject(file, line, "bad timestamp " + time);
+         return;
+      }
+      Event event = new Event(trackingID, status, location, courier, timestamp, comment);
+      Event previous = batch.get(trackingID);
+      if (previous == null) {
+         batch.put(trackingID, event);
+      }
+      else {
+         superseded.incrementAndGet();
+         if (timestamp.after(previous.timestamp)) {
+            batch.put(trackingID, event);
+         }
+      }
+      if (batch.size() >= batchSize) {
+         flush();
+      }
+   }//end accept
+
+   private static String field(Map<String, String> fields, String name) {
+      String value = fields.get(name);
+      return value == null || value.trim().isEmpty() ? null : value.trim();
+   }//end field
+
+   private void reject(File file, long line, String reason) {
+      if (rejected.incrementAndGet() <= MAX_REPORTED) {
+         System.err.println(file.getName() + ":" + line + ": " + reason);
+      }
+   }//end reject
+
+   // hands the current batch to an applier
+   private void flush() throws SQLException {
+      if (failure.get() != null) {
+         throw failure.get();
+      }
+      if (batch.isEmpty()) {
+         return;
+      }
+      final List<Event> events = new ArrayList<Event>(batch.values());
+      batch = new TreeMap<String, Event>();
+      inFlight.acquireUninterruptibly();
+      appliers.execute(() -> {
+         try {
+            apply(events);
+         }catch (SQLException e) {
+            failure.compareAndSet(null, e);
+         }finally{
+            inFlight.release();
+         }//end try
+      });
+   }//end flush
+
+   // one UPDATE ... FROM (VALUES ...) for the whole batch
+   private void apply(List<Event> events) throws SQLException {
+      StringBuilder sql = new StringBuilder(UPDATE_PREFIX.length() + events.size() * (UPDATE_ROW.length() + 2)
+                                            + UPDATE_SUFFIX.length());
+      sql.append(UPDATE_PREFIX);
+      Object[] params = new Object[events.size() * 6];
+      int p = 0;
+      for (int i = 0; i < events.size(); i++) {
+         Event event = events.get(i);
+         sql.append(i == 0 ? "" : ", ").append(UPDATE_ROW);
+         params[p++] = event.trackingID;
+         params[p++] = event.status;
+         params[p++] = event.currentLocation;
+         params[p++] = event.courierName;
+         params[p++] = event.timestamp;
+         params[p++] = event.comment;
+      }
+      sql.append(UPDATE_SUFFIX);
+      List<String> counts = esql.executeQueryAndReturnResult(sql.toString(), params).get(0);
+      long updated = Long.parseLong(counts.get(0));
+      long known = Long.parseLong(counts.get(1));
+      applied.addAndGet(updated);
+      stale.addAndGet(known - updated);
+      unknown.addAndGet(events.size() - known);
+   }//end apply
+
+   /**
+    * @return the counts of the run, with events per second over seconds
+    */
+   public String summary(double seconds) {
+      return String.format(Locale.ROOT,
+         "%d event(s) read in %.1fs (%.0f events/s): %d applied, %d older than the stored update or replayed, " +
+         "%d superseded in their batch, %d for unknown trackingIDs, %d rejected",
+         read.get(), seconds, read.get() / Math.max(seconds, 1e-9), applied.get(), stale.get(),
+         superseded.get(), unknown.get(), rejected.get());
+   }//end summary
+
+   // csv or json for the feed file names this reads, null for other files
+   static String formatOf(String name) {
+      String lower = name.toLowerCase(Locale.ROOT);
+      if (lower.endsWith(".csv")) {
+         return "csv";
+      }
+      if (lower.endsWith(".json") || lower.endsWith(".jsonl") || lower.endsWith(".ndjson")) {
+         return "json";
+      }
+      return null;
+   }//end formatOf
+
+   /**
+    * Accepts the JDBC format (2024-05-01 13:45:00), ISO 8601 with or without
+    * an offset (an offset is converted to local time, as lastUpdateDate has
+    * no zone) and epoch milliseconds.
+    *
+    * @return the timestamp, or null if text is none of those
+    */
+   static Timestamp parseTimestamp(String text) {
+      try {
+         if (text.chars().allMatch(Character::isDigit)) {
+            return new Timestamp(Long.parseLong(text));
+         }
+         if (text.endsWith("Z") || text.matches(".*T.*[+-]\\d\\d:?\\d\\d$")) {
+            return Timestamp.valueOf(OffsetDateTime.parse(text).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime());
+         }
+         if (text.indexOf('T') > 0) {
+            return Timestamp.valueOf(LocalDateTime.parse(text));
+         }
+         return Timestamp.valueOf(text);
+      }catch (IllegalArgumentException | DateTimeParseException e) {
+         return null;
+      }//end try
+   }//end parseTimestamp
+
+   /**
+    * Parses one flat JSON object.  Values are kept as text; nested objects
+    * and arrays are not supported.
+    *
+    * @return the members keyed by lower-case name; JSON null is a null value
+    * @throws IllegalArgumentException when the line is not such an object
+    */
+   static Map<String, String> parseJsonObject(String line) {
+      Map<String, String> fields = new HashMap<String, String>();
+      int[] pos = { skipSpace(line, 0) };
+      expect(line, pos, '{');
+      if (peek(line, pos) == '}') {
+         pos[0]++;
+         return fields;
+      }
+      while (true) {
+         String key = jsonString(line, pos);
+         expect(line, pos, ':');
+         char c = peek(line, pos);
+         String value;
+         if (c == '"') {
+            value = jsonString(line, pos);
+         }
+         else {
+            int start = pos[0];
+            while (pos[0] < line.length() && ",} \t".indexOf(line.charAt(pos[0])) < 0) {
+               pos[0]++;
+            }
+            value = line.substring(start, pos[0]);
+            if (value.isEmpty() || value.equals("{") || value.startsWith("[")) {
+               throw new IllegalArgumentException("unsupported value for " + key);
+            }
+            if (value.equals("null")) {
+               value = null;
+            }
+         }
+         fields.put(key.toLowerCase(Locale.ROOT), value);
+         c = peek(line, pos);
+         pos[0]++;
+         if (c == '}') {
+            return fields;
+         }
+         if (c != ',') {
+            throw new IllegalArgumentException("expected , or } at " + pos[0]);
+         }
+      }
+   }//end parseJsonObject
+
+   private static String jsonString(String line, int[] pos) {
+      expect(line, pos, '"');
+      StringBuilder out = new StringBuilder();
+      while (pos[0] < line.length()) {
+         char c = line.charAt(pos[0]++);
+         if (c == '"') {
+            return out.toString();
+         }
+         if (c != '\\') {
+            out.append(c);
+            continue;
+         }
+         if (pos[0] >= line.length()) {
+            break;
+         }
+         char e = line.charAt(pos[0]++);
+         switch (e) {
+            case 'b': out.append('\b'); break;
+            case 'f': out.append('\f'); break;
+            case 'n': out.append('\n'); break;
+            case 'r': out.append('\r'); break;
+            case 't': out.append('\t'); break;
+            case 'u':
+               if (pos[0] + 4 > line.length()) {
+                  throw new IllegalArgumentException("bad \\u escape");
+               }
+               out.append((char) Integer.parseInt(line.substring(pos[0], pos[0] + 4), 16));
+               pos[0] += 4;
+               break;
+            default: out.append(e);
+         }
+      }
+      throw new IllegalArgumentException("unterminated string");
+   }//end jsonString
+
+   private static void expect(String line, int[] pos, char c) {
+      if (peek(line, pos) != c) {
+         throw new IllegalArgumentException("expected " + c + " at " + pos[0]);
+      }
+      pos[0]++;
+   }//end expect
+
+   // the next non-blank character, leaving pos on it
+   private static char peek(String line, int[] pos) {
+      pos[0] = skipSpace(line, pos[0]);
+      if (pos[0] >= line.length()) {
+         throw new IllegalArgumentException("unexpected end of line");
+      }
+      return line.charAt(pos[0]);
+   }//end peek
+
+   private static int skipSpace(String line, int pos) {
+      while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+         pos++;
+      }
+      return pos;
+   }//end skipSpace
+
+   public static void main(String[] args) {
+      if (args.length < 4) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            CourierFeedIngester.class.getName() +
+            " <dbname> <port> <user> <feed file or directory> [--batch n] [--threads n]");
+         return;
+      }
+      File input = new File(args[3]);
+      int batchSize = DEFAULT_BATCH_SIZE;
+      int threads = DEFAULT_THREADS;
+      for (int i = 4; i < args.length; i++) {
+         if (args[i].equals("--batch") && i + 1 < args.length) {
+            batchSize = Math.max(1, Integer.parseInt(args[++i]));
+         }
+         else if (args[i].equals("--threads") && i + 1 < args.length) {
+            threads = Math.max(1, Integer.parseInt(args[++i]));
+         }
+         else {
+            System.err.println("Unknown option " + args[i]);
+            return;
+         }
+      }
+      if (!input.exists()) {
+         System.err.println(input + " does not exist");
+         return;
+      }
+
+      GameRental esql = null;
+      CourierFeedIngester ingester = null;
+      long start = System.nanoTime();
+      try {
+         esql = new GameRental(args[0], args[1], args[2], "", threads);
+         ingester = new CourierFeedIngester(esql, batchSize, threads);
+         try {
+            ingester.ingest(input);
+         }finally{
+            ingester.finish();
+         }//end try
+         System.out.println(ingester.summary((System.nanoTime() - start) / 1e9));
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+         if (ingester != null) {
+            System.err.println("Stopped after: " + ingester.summary((System.nanoTime() - start) / 1e9));
+         }
+      }finally{
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }
+   }//end main
+
+}//end CourierFeedIngester
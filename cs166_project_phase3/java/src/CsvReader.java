@@ -0,0 +1,133 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for the CSV dialect Postgres COPY ... CSV reads and
+ * writes: comma separated, double-quoted fields, "" for a quote inside a
+ * quoted field, and line breaks allowed inside quotes.  As in COPY, an
+ * unquoted empty field is NULL and a quoted empty field is an empty
+ * string.
+ *
+ */
+public class CsvReader implements Closeable {
+
+   private final Reader in;
+   private final char[] buffer = new char[64 * 1024];
+   private int position = 0;
+   private int limit = 0;
+   private long recordCount = 0;
+
+   public CsvReader(Reader in) {
+      this.in = in;
+   }
+
+   /**
+    * @return the fields of the next record, or null at end of input
+    * @throws java.io.IOException when the input cannot be read
+    */
+   public String[] next() throws IOException {
+      if (!fill()) {
+         return null;
+      }
+      List<String> fields = new ArrayList<String>();
+      StringBuilder field = new StringBuilder();
+      boolean quoted = false;
+      boolean inQuotes = false;
+      while (true) {
+         if (!fill()) {
+            break; // last record without a trailing newline
+         }
+         char c = buffer[position++];
+         if (inQuotes) {
+            if (c == '"') {
+               if (fill() && buffer[position] == '"') {
+                  field.append('"');
+                  position++;
+               }
+               else {
+                  inQuotes = false;
+               }
+            }
+            else {
+               field.append(c);
+            }
+         }
+         else if (c == '"') {
+            inQuotes = true;
+            quoted = true;
+         }
+         else if (c == ',') {
+            fields.add(value(field, quoted));
+            field.setLength(0);
+            quoted = false;
+         }
+         else if (c == '\n' || c == '\r') {
+            if (c == '\r' && fill() && buffer[position] == '\n') {
+               position++;
+            }
+            break;
+         }
+         else {
+            field.append(c);
+         }
+      }
+      fields.add(value(field, quoted));
+      recordCount++;
+      return fields.toArray(new String[0]);
+   }//end next
+
+   /**
+    * @return the number of records returned so far
+    */
+   public long getRecordCount() {
+      return recordCount;
+   }
+
+   public void close() throws IOException {
+      in.close();
+   }
+
+   private static String value(StringBuilder field, boolean quoted) {
+      return field.length() == 0 && !quoted ? null : field.toString();
+   }//end value
+
+   // makes sure at least one unread character is buffered; false at end of input
+   private boolean fill() throws IOException {
+      if (position < limit) {
+         return true;
+      }
+      limit = in.read(buffer, 0, buffer.length);
+      position = 0;
+      if (limit <= 0) {
+         limit = 0;
+         return false;
+      }
+      return true;
+   }//end fill
+
+   /**
+    * Quotes a value for a CSV field the way COPY ... CSV writes it.  null
+    * becomes an empty unquoted field.
+    *
+    * @param value the field value
+    * @return the field text
+    */
+   public static String quote(String value) {
+      if (value == null) {
+         return "";
+      }
+      StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+      for (int i = 0; i < value.length(); i++) {
+         char c = value.charAt(i);
+         if (c == '"') {
+            out.append('"');
+         }
+         out.append(c);
+      }
+      return out.append('"').toString();
+   }//end quote
+
+}//end CsvReader
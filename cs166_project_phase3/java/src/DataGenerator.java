@@ -0,0 +1,436 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes a synthetic data set in the format of data/*.csv, scaled from the
+ * shipped 500 users, 500 games and 3000 orders.
+ *
+ * The output depends only on the seed and the scale factor.  Every table is
+ * cut into fixed-size chunks, each generated from its own random stream
+ * derived from (seed, table, chunk), so chunks are built in parallel on all
+ * cores and still come out identical on every run.  Finished chunks are
+ * written in order while later ones are being generated, so memory use is
+ * bounded by a few chunks per thread whatever the scale.
+ *
+ * Popularity is skewed the way rentals are: games and renters are drawn
+ * from Zipf distributions, so a few games appear in most orders and a few
+ * customers place most of them.  The popular ranks are scattered over the
+ * ID space rather than being the lowest IDs.
+ *
+ */
+public class DataGenerator {
+
+   // rows per table at scale 1, the size of the shipped data set
+   static final int BASE_USERS = 500;
+   static final int BASE_GAMES = 500;
+   static final int BASE_ORDERS = 3000;
+
+   // first order and tracking numbers, as in the shipped data
+   static final int FIRST_ORDER = 1000;
+
+   static final double GAME_SKEW = Double.parseDouble(System.getProperty("gamerental.gen.gameSkew", "0.9"));
+   static final double RENTER_SKEW = Double.parseDouble(System.getProperty("gamerental.gen.renterSkew", "0.8"));
+
+   private static final int CHUNK_ROWS = 10000;
+
+   private static final String[] GENRES = {
+      "Action", "Shooter", "Platform", "Sports", "Role-Playing", "Misc",
+      "Racing", "Fighting", "Simulation", "Puzzle", "Adventure", "Strategy" };
+   // relative genre frequencies of the shipped catalog
+   private static final int[] GENRE_WEIGHTS = { 94, 75, 59, 57, 56, 43, 38, 29, 22, 11, 9, 7 };
+   private static final String[] PLATFORMS = {
+      "Wii", "DS", "X360", "PS3", "PS2", "PS4", "PS", "GBA", "GC", "N64", "NES", "3DS", "PSP", "PC", "XOne", "Multi" };
+   private static final String[] PUBLISHERS = {
+      "Nintendo", "Electronic Arts", "Activision", "Ubisoft", "THQ", "Sony Computer Entertainment",
+      "Take-Two Interactive", "Konami Digital Entertainment", "Sega", "Capcom", "Namco Bandai Games",
+      "Square Enix", "Microsoft Game Studios", "Bethesda Softworks", "Eidos Interactive", "Epic Games" };
+   private static final String[] TITLE_WORDS_1 = {
+      "Super", "Grand", "Final", "Dark", "Mega", "Legend of", "Call of", "Rise of", "Shadow", "Star",
+      "Crystal", "Iron", "Neon", "Wild", "Lost", "Eternal", "Rocket", "Dragon", "Pixel", "Turbo" };
+   private static final String[] TITLE_WORDS_2 = {
+      "Quest", "Racer", "Warriors", "Kart", "Souls", "Fantasy", "Tactics", "Odyssey", "League", "Arena",
+      "Chronicles", "Legends", "Heroes", "Empire", "Frontier", "Sports", "Party", "Saga", "Strike", "Rally" };
+   private static final String[] SEQUELS = { "", "", "", " 2", " 3", " II", " III", " IV", " Deluxe", " HD" };
+   private static final String[] FAVORITES = {
+      "Minecraft", "Fortnite", "Roblox", "League of Legends", "Dota 2", "Counter-Strike", "Call of Duty",
+      "World of Warcraft", "Genshin Impact", "The Sims", "Grand Theft Auto V", "Overwatch", "Apex Legends",
+      "Valorant", "Among Us", "Animal Crossing", "Mario Kart", "The Legend of Zelda" };
+   private static final String[] FIRST_NAMES = {
+      "aaron", "alexis", "amanda", "andrew", "angela", "anthony", "ashley", "brandon", "brian", "brittany",
+      "carlos", "chris", "daniel", "david", "emily", "eric", "gabriel", "hannah", "jacob", "james",
+      "jennifer", "jessica", "john", "jose", "joshua", "justin", "katie", "kevin", "laura", "maria",
+      "matthew", "megan", "michael", "nicole", "rachel", "robert", "ryan", "samantha", "sarah", "stephanie",
+      "taylor", "thomas", "tiffany", "tyler", "victoria", "whitney", "william", "zachary" };
+   private static final String[] LAST_NAMES = {
+      "adams", "allen", "baker", "bowen", "brown", "carter", "clark", "davis", "evans", "garcia",
+      "green", "hall", "haley", "harris", "henson", "hill", "hodge", "jackson", "johnson", "jones",
+      "king", "lee", "lewis", "lopez", "martin", "miller", "moore", "nelson", "perez", "potts",
+      "roberts", "robinson", "sanchez", "scott", "smith", "taylor", "thomas", "thompson", "walker", "watson",
+      "white", "williams", "wilson", "wright", "young" };
+   private static final String[] STATUSES = {
+      "Order Received", "In Transit", "Arrived at Facility", "Out for Delivery", "Delivered",
+      "Delayed", "Attempted Delivery", "Ready for Pickup", "Returned to Sender" };
+   private static final String[] COURIERS = { "USPS", "UPS", "FedEx", "DHL", "TNT" };
+   private static final String[] CITIES = {
+      "Los Angeles,CA", "San Diego,CA", "San Jose,CA", "San Francisco,CA", "Riverside,CA", "Sacramento,CA",
+      "Houston,TX", "San Antonio,TX", "Dallas,TX", "Austin,TX", "El Paso,TX", "Phoenix,AZ", "Tucson,AZ",
+      "New York,NY", "Buffalo,NY", "Chicago,IL", "Philadelphia,PA", "Pittsburgh,PA", "Jacksonville,FL",
+      "Miami,FL", "Tampa,FL", "Orlando,FL", "Columbus,OH", "Cleveland,OH", "Indianapolis,IN", "Charlotte,NC",
+      "Raleigh,NC", "Seattle,WA", "Spokane,WA", "Denver,CO", "Washington,DC", "Boston,MA", "Nashville,TN",
+      "Memphis,TN", "Detroit,MI", "Portland,OR", "Las Vegas,NV", "Louisville,KY", "Baltimore,MD",
+      "Milwaukee,WI", "Albuquerque,NM", "Kansas City,MO", "Atlanta,GA", "Omaha,NE", "Minneapolis,MN",
+      "Tulsa,OK", "New Orleans,LA", "Salt Lake City,UT", "Honolulu,HI", "Anchorage,AK" };
+
+   // order timestamps are spread uniformly over the range of the shipped data
+   private static final LocalDateTime FIRST_ORDER_TIME = LocalDateTime.of(2011, 12, 11, 0, 0);
+   private static final long ORDER_TIME_SPAN_S = 12L * 365 * 24 * 3600;
+   private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+   private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+   private final long seed;
+   private final int users;
+   private final int games;
+   private final int orders;
+   private final ExecutorService pool;
+   private final int window;
+
+   private final ZipfSampler gamePopularity;
+   private final ZipfSampler renterActivity;
+   private final long gameStep;
+   private final long userStep;
+   private long[] priceCents;
+
+   public DataGenerator(long seed, int scale, int threads) {
+      this.seed = seed;
+      this.users = BASE_USERS * scale;
+      this.games = BASE_GAMES * scale;
+      this.orders = BASE_ORDERS * scale;
+      this.pool = Executors.newFixedThreadPool(threads);
+      this.window = threads * 2;
+      this.gamePopularity = new ZipfSampler(games, GAME_SKEW);
+      this.renterActivity = new ZipfSampler(users, RENTER_SKEW);
+      this.gameStep = coprimeStep(games);
+      this.userStep = coprimeStep(users);
+   }//end DataGenerator
+
+   /**
+    * Inverse-CDF sampler for ranks 0..n-1 with P(rank k) proportional to
+    * 1 / (k + 1)^skew.
+    */
+   static final class ZipfSampler {
+      private final double[] cdf;
+
+      ZipfSampler(int n, double skew) {
+         cdf = new double[n];
+         double sum = 0;
+         for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, skew);
+            cdf[k] = sum;
+         }
+         for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+         }
+      }
+
+      int sample(SplittableRandom rnd) {
+         int k = Arrays.binarySearch(cdf, rnd.nextDouble());
+         return Math.min(k >= 0 ? k : -k - 1, cdf.length - 1);
+      }
+   }//end ZipfSampler
+
+   /**
+    * One chunk's rows for each file the table writes to.
+    */
+   interface ChunkBuilder {
+      StringBuilder[] build(int chunk, SplittableRandom rnd);
+   }//end ChunkBuilder
+
+   /**
+    * Writes all five files into outDir.
+    */
+   public void generate(File outDir) throws Exception {
+      outDir.mkdirs();
+      try {
+         priceCents = new long[games];
+         long start = System.nanoTime();
+         long rows = 0;
+         rows += writeTable(outDir, 1, games,
+                            new String[] { "catalog.csv" },
+                            new String[] { "\"gameID\",\"gameName\",\"genre\",\"price\",\"description\",\"imageURL\"" },
+                            this::catalogChunk);
+         rows += writeTable(outDir, 2, users,
+                            new String[] { "users.csv" },
+                            new String[] { "\"login\",\"password\",\"role\",\"favGames\",\"phoneNumber\",\"numOverDueGames\"" },
+                            this::usersChunk);
+         rows += writeTable(outDir, 3, orders,
+                            new String[] { "rentalorder.csv", "trackinginfo.csv", "gamesinorder.csv" },
+                            new String[] {
+                               "\"rentalorderid\",\"login\",\"noOfGames\",\"totalprice\",\"orderTimestamp\",\"dueDate\"",
+                               "\"trackingID\",\"rentalorderid\",\"status\",\"currentLocation\",\"courierName\",\"lastUpdateDate\",\"additionalComments\"",
+                               "\"rentalorderid\",\"gameID\",\"unitsOrdered\"" },
+                            this::ordersChunk);
+         double seconds = (System.nanoTime() - start) / 1e9;
+         System.out.println(String.format("%,d rows in %.1fs (%,.0f rows/s)", rows, seconds, rows / seconds));
+      }finally{
+         pool.shutdownNow();
+      }//end try
+   }//end generate
+
+   // generates rows [0, count) in parallel chunks and writes them to the files in chunk order
+   private long writeTable(File outDir, int table, int count, String[] files, String[] headers,
+                           ChunkBuilder builder) throws Exception {
+      Writer[] out = new Writer[files.length];
+      long[] rows = new long[files.length];
+      try {
+         for (int f = 0; f < files.length; f++) {
+            out[f] = new BufferedWriter(new OutputStreamWriter(
+               new FileOutputStream(new File(outDir, files[f])), StandardCharsets.UTF_8), 1 << 16);
+            out[f].write(headers[f]);
+            out[f].write('\n');
+         }
+         int chunks = (count + CHUNK_ROWS - 1) / CHUNK_ROWS;
+         ArrayDeque<Future<StringBuilder[]>> pending = new ArrayDeque<Future<StringBuilder[]>>();
+         int next = 0;
+         while (next < chunks || !pending.isEmpty()) {
+            while (next < chunks && pending.size() < window) {
+               final int chunk = next++;
+               final SplittableRandom rnd = new SplittableRandom(mix(seed, table, chunk));
+               pending.add(pool.submit(() -> builder.build(chunk, rnd)));
+            }
+            StringBuilder[] parts;
+            try {
+               parts = pending.poll().get();
+            }catch (ExecutionException e) {
+               Throwable cause = e.getCause();
+               throw cause instanceof Exception ? (Exception) cause : e;
+            }//end try
+            for (int f = 0; f < files.length; f++) {
+               out[f].append(parts[f]);
+               rows[f] += lines(parts[f]);
+            }
+         }
+      }finally{
+         for (Writer w : out) {
+            if (w != null) {
+               w.close();
+            }
+         }
+      }//end try
+      long written = 0;
+      for (int f = 0; f < files.length; f++) {
+         System.out.println(String.format("%-16s %,12d rows", files[f], rows[f]));
+         written += rows[f];
+      }
+      return written;
+   }//end writeTable
+
+   private StringBuilder[] catalogChunk(int chunk, SplittableRandom rnd) {
+      StringBuilder sb = new StringBuilder(CHUNK_ROWS * 96);
+      int end = Math.min(games, (chunk + 1) * CHUNK_ROWS);
+      for (int g = chunk * CHUNK_ROWS; g < end; g++) {
+         // $15.99 to $50.99 in whole dollars, like the shipped catalog
+         long cents = (15 + rnd.nextInt(36)) * 100L + 99;
+         priceCents[g] = cents;
+         String name = pick(rnd, TITLE_WORDS_1) + " " + pick(rnd, TITLE_WORDS_2) + pick(rnd, SEQUELS);
+         String description = "Platform: " + pick(rnd, PLATFORMS) + ";  Publisher: " + pick(rnd, PUBLISHERS);
+         sb.append(CsvReader.quote(gameID(g))).append(',')
+           .append(CsvReader.quote(name)).append(',')
+           .append(CsvReader.quote(GENRES[weighted(rnd, GENRE_WEIGHTS)])).append(',')
+           .append(Money.format(cents)).append(',')
+           .append(CsvReader.quote(description)).append(',')
+           .append("\"\"\n");
+      }
+      return new StringBuilder[] { sb };
+   }//end catalogChunk
+
+   private StringBuilder[] usersChunk(int chunk, SplittableRandom rnd) {
+      StringBuilder sb = new StringBuilder(CHUNK_ROWS * 96);
+      int end = Math.min(users, (chunk + 1) * CHUNK_ROWS);
+      for (int u = chunk * CHUNK_ROWS; u < end; u++) {
+         int roll = rnd.nextInt(100);
+         String role = roll < 1 ? "manager" : roll < 4 ? "employee" : "customer";
+         StringBuilder favorites = new StringBuilder();
+         for (int f = rnd.nextInt(6); f > 0; f--) {
+            favorites.append(favorites.length() == 0 ? "" : ",").append(pick(rnd, FAVORITES));
+         }
+         String phone = String.format("+1-%03d-%03d-%04d", 200 + rnd.nextInt(800), rnd.nextInt(1000), rnd.nextInt(10000));
+         sb.append(CsvReader.quote(login(u))).append(',')
+           .append(CsvReader.quote(password(rnd))).append(',')
+           .append(CsvReader.quote(role)).append(',')
+           .append(CsvReader.quote(favorites.toString())).append(',')
+           .append(CsvReader.quote(phone)).append(',')
+           .append("0\n");
+      }
+      return new StringBuilder[] { sb };
+   }//end usersChunk
+
+   private StringBuilder[] ordersChunk(int chunk, SplittableRandom rnd) {
+      StringBuilder orderRows = new StringBuilder(CHUNK_ROWS * 96);
+      StringBuilder trackingRows = new StringBuilder(CHUNK_ROWS * 128);
+      StringBuilder gameRows = new StringBuilder(CHUNK_ROWS * 80);
+      int[] picked = new int[5];
+      int end = Math.min(orders, (chunk + 1) * CHUNK_ROWS);
+      for (int o = chunk * CHUNK_ROWS; o < end; o++) {
+         String orderID = GameRental.ORDER_PREFIX + (FIRST_ORDER + o);
+         String user = login(scatter(renterActivity.sample(rnd), userStep, users));
+         LocalDateTime ordered = FIRST_ORDER_TIME.plusSeconds((long) (rnd.nextDouble() * ORDER_TIME_SPAN_S));
+
+         int wanted = 1 + rnd.nextInt(picked.length);
+         int distinct = 0;
+         int noOfGames = 0;
+         long totalCents = 0;
+         for (int attempt = 0; attempt < wanted; attempt++) {
+            int game = scatter(gamePopularity.sample(rnd), gameStep, games);
+            boolean repeat = false;
+            for (int j = 0; j < distinct; j++) {
+               repeat |= picked[j] == game;
+            }
+            if (repeat) {
+               // (rentalOrderID, gameID) is the key of GamesInOrder
+               continue;
+            }
+            picked[distinct++] = game;
+            int units = 1 + rnd.nextInt(5);
+            noOfGames += units;
+            totalCents += units * priceCents[game];
+            gameRows.append(CsvReader.quote(orderID)).append(',')
+                    .append(CsvReader.quote(gameID(game))).append(',')
+                    .append(units).append('\n');
+         }
+
+         orderRows.append(CsvReader.quote(orderID)).append(',')
+                  .append(CsvReader.quote(user)).append(',')
+                  .append(noOfGames).append(',')
+                  .append(Money.format(totalCents)).append(',')
+                  .append(CsvReader.quote(ordered.format(TIMESTAMP))).append(',')
+                  .append(CsvReader.quote(ordered.plusDays(30).format(DATE))).append('\n');
+         trackingRows.append(CsvReader.quote(GameRental.TRACKING_PREFIX + (FIRST_ORDER + o))).append(',')
+                     .append(CsvReader.quote(orderID)).append(',')
+                     .append(CsvReader.quote(pick(rnd, STATUSES))).append(',')
+                     .append(CsvReader.quote(pick(rnd, CITIES))).append(',')
+                     .append(CsvReader.quote(pick(rnd, COURIERS))).append(',')
+                     .append(CsvReader.quote(ordered.plusDays(2).format(TIMESTAMP))).append(',')
+                     .append("\"\"\n");
+      }
+      return new StringBuilder[] { orderRows, trackingRows, gameRows };
+   }//end ordersChunk
+
+   private static int lines(CharSequence text) {
+      int n = 0;
+      for (int i = 0; i < text.length(); i++) {
+         if (text.charAt(i) == '\n') {
+            n++;
+         }
+      }
+      return n;
+   }
+
+   private static String gameID(int g) {
+      return IdAllocator.formatId(GameRental.GAME_PREFIX, g + 1);
+   }
+
+   // first and last name plus the user number, which keeps logins unique
+   private static String login(int u) {
+      return FIRST_NAMES[u % FIRST_NAMES.length] + LAST_NAMES[(u / FIRST_NAMES.length) % LAST_NAMES.length] + u;
+   }
+
+   private static String password(SplittableRandom rnd) {
+      String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+      char[] pw = new char[9 + rnd.nextInt(2)];
+      for (int i = 0; i < pw.length; i++) {
+         pw[i] = chars.charAt(rnd.nextInt(chars.length()));
+      }
+      return new String(pw);
+   }//end password
+
+   // maps a popularity rank to an ID; step is coprime with n, so this is a permutation
+   private static int scatter(int rank, long step, int n) {
+      return (int) (rank * step % n);
+   }
+
+   // a step near n / golden ratio that is coprime with n, so neighbouring ranks land far apart
+   private static long coprimeStep(int n) {
+      long step = Math.max(1, (long) (n * 0.6180339887));
+      while (step > 1 && gcd(step, n) != 1) {
+         step--;
+      }
+      return step;
+   }
+
+   private static long gcd(long a, long b) {
+      return b == 0 ? a : gcd(b, a % b);
+   }
+
+   private static String pick(SplittableRandom rnd, String[] values) {
+      return values[rnd.nextInt(values.length)];
+   }
+
+   private static int weighted(SplittableRandom rnd, int[] weights) {
+      int total = 0;
+      for (int w : weights) {
+         total += w;
+      }
+      int roll = rnd.nextInt(total);
+      for (int i = 0; i < weights.length; i++) {
+         roll -= weights[i];
+         if (roll < 0) {
+            return i;
+         }
+      }
+      return weights.length - 1;
+   }//end weighted
+
+   // independent stream seed for one chunk of one table (SplitMix64 finalizer)
+   private static long mix(long seed, int table, int chunk) {
+      long z = seed + 0x9E3779B97F4A7C15L * (((long) table << 32) | chunk);
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+   }//end mix
+
+   /**
+    * The main execution method
+    *
+    * @param args &lt;output dir&gt; [--scale n] [--seed n] [--threads n]
+    */
+   public static void main(String[] args) {
+      if (args.length < 1) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            DataGenerator.class.getName() +
+            " <output dir> [--scale n] [--seed n] [--threads n]");
+         return;
+      }
+      int scale = 1;
+      long seed = 1;
+      int threads = Runtime.getRuntime().availableProcessors();
+      try {
+         for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+               case "--scale": scale = Integer.parseInt(args[i + 1]); break;
+               case "--seed": seed = Long.parseLong(args[i + 1]); break;
+               case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+               default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+         }
+         new DataGenerator(seed, scale, threads).generate(new File(args[0]));
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }//end main
+
+}//end DataGenerator
@@ -1,1668 +1,2241 @@
-/*
- * Template JAVA User Interface
- * =============================
- *
- * Database Management Systems
- * Department of Computer Science &amp; Engineering
- * University of California - Riverside
- *
- * Target DBMS: 'Postgres'
- *
- */
-
-
-import java.sql.DriverManager;
-import java.sql.Connection;
-import java.sql.Statement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
-import java.sql.SQLException;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
-import java.util.ArrayList;
-import java.time.*;
-
-/**
- * This class defines a simple embedded SQL utility class that is designed to
- * work with PostgreSQL JDBC drivers.
- *
- */
-public class GameRental {
-
-   // reference to physical database connection.
-   private Connection _connection = null;
-
-   // handling the keyboard inputs through a BufferedReader
-   // This variable can be global for convenience.
-   static BufferedReader in = new BufferedReader(
-                                new InputStreamReader(System.in));
-
-   /**
-    * Creates a new instance of GameRental store
-    *
-    * @param hostname the MySQL or PostgreSQL server hostname
-    * @param database the name of the database
-    * @param username the user name used to login to the database
-    * @param password the user login password
-    * @throws java.sql.SQLException when failed to make a connection.
-    */
-   public GameRental(String dbname, String dbport, String user, String passwd) throws SQLException {
-
-      System.out.print("Connecting to database...");
-      try{
-         // constructs the connection URL
-         String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
-         System.out.println ("Connection URL: " + url + "\n");
-
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
-         System.out.println("Done");
-      }catch (Exception e){
-         System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
-         System.out.println("Make sure you started postgres on this machine");
-         System.exit(-1);
-      }//end catch
-   }//end GameRental
-
-   /**
-    * Method to execute an update SQL statement.  Update SQL instructions
-    * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
-    *
-    * @param sql the input SQL string
-    * @throws java.sql.SQLException when update failed
-    */
-   public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the update instruction
-      stmt.executeUpdate (sql);
-
-      // close the instruction
-      stmt.close ();
-   }//end executeUpdate
-
-   /**
-    * Method to execute an input query SQL instruction (i.e. SELECT).  This
-    * method issues the query to the DBMS and outputs the results to
-    * standard out.
-    *
-    * @param query the input query string
-    * @return the number of rows returned
-    * @throws java.sql.SQLException when failed to execute the query
-    */
-   public int executeQueryAndPrintResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and output them to standard out.
-      boolean outputHeader = true;
-      while (rs.next()){
-		 if(outputHeader){
-			for(int i = 1; i <= numCol; i++){
-			System.out.print(rsmd.getColumnName(i) + "\t");
-			}
-			System.out.println();
-			outputHeader = false;
-		 }
-         for (int i=1; i<=numCol; ++i)
-            System.out.print (rs.getString (i) + "\t");
-         System.out.println ();
-         ++rowCount;
-      }//end while
-      stmt.close();
-      return rowCount;
-   }//end executeQuery
-
-   /**
-    * Method to execute an input query SQL instruction (i.e. SELECT).  This
-    * method issues the query to the DBMS and returns the results as
-    * a list of records. Each record in turn is a list of attribute values
-    *
-    * @param query the input query string
-    * @return the query result as a list of records
-    * @throws java.sql.SQLException when failed to execute the query
-    */
-   public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and saves the data returned by the query.
-      boolean outputHeader = false;
-      List<List<String>> result  = new ArrayList<List<String>>();
-      while (rs.next()){
-        List<String> record = new ArrayList<String>();
-		for (int i=1; i<=numCol; ++i)
-			record.add(rs.getString (i));
-        result.add(record);
-      }//end while
-      stmt.close ();
-      return result;
-   }//end executeQueryAndReturnResult
-
-   /**
-    * Method to execute an input query SQL instruction (i.e. SELECT).  This
-    * method issues the query to the DBMS and returns the number of results
-    *
-    * @param query the input query string
-    * @return the number of rows returned
-    * @throws java.sql.SQLException when failed to execute the query
-    */
-   public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
-
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
-
-       int rowCount = 0;
-
-       // iterates through the result set and count nuber of results.
-       while (rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
-   }
-
-   /**
-    * Method to fetch the last value from sequence. This
-    * method issues the query to the DBMS and returns the current
-    * value of sequence used for autogenerated keys
-    *
-    * @param sequence name of the DB sequence
-    * @return current value of a sequence
-    * @throws java.sql.SQLException when failed to execute the query
-    */
-   public int getCurrSeqVal(String sequence) throws SQLException {
-	Statement stmt = this._connection.createStatement ();
-
-	ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-	if (rs.next())
-		return rs.getInt(1);
-	return -1;
-   }
-
-   /**
-    * Method to close the physical connection if it is open.
-    */
-   public void cleanup(){
-      try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
-      }catch (SQLException e){
-         // ignored.
-      }//end try
-   }//end cleanup
-
-   /**
-    * The main execution method
-    *
-    * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
-    */
-   public static void main (String[] args) {
-      if (args.length != 3) {
-         System.err.println (
-            "Usage: " +
-            "java [-classpath <classpath>] " +
-            GameRental.class.getName () +
-            " <dbname> <port> <user>");
-         return;
-      }//end if
-
-      Greeting();
-      GameRental esql = null;
-      try{
-         // use postgres JDBC driver.
-         Class.forName ("org.postgresql.Driver").newInstance ();
-         // instantiate the GameRental object and creates a physical
-         // connection.
-         String dbname = args[0];
-         String dbport = args[1];
-         String user = args[2];
-         esql = new GameRental (dbname, dbport, user, "");
-
-         boolean keepon = true;
-         while(keepon) {
-            // These are sample SQL statements
-            System.out.println("MAIN MENU");
-            System.out.println("---------");
-            System.out.println("1. Create user");
-            System.out.println("2. Log in");
-            System.out.println("9. < EXIT");
-            String authorisedUser = null;
-            switch (readChoice()){
-               case 1: CreateUser(esql); break;
-               case 2: authorisedUser = LogIn(esql); break;
-               case 9: keepon = false; break;
-               default : System.out.println("Unrecognized choice!"); break;
-            }//end switch
-            if (authorisedUser != null) {
-              boolean usermenu = true;
-              while(usermenu) {
-                System.out.println("MAIN MENU");
-                System.out.println("---------");
-                System.out.println("1. View Profile");
-                System.out.println("2. Update Profile");
-                System.out.println("3. View Catalog");
-                System.out.println("4. Place Rental Order");
-                System.out.println("5. View Full Rental Order History");
-                System.out.println("6. View Past 5 Rental Orders");
-                System.out.println("7. View Rental Order Information");
-                System.out.println("8. View Tracking Information");
-
-                //the following functionalities basically used by employees & managers
-                System.out.println("9. Update Tracking Information");
-
-                //the following functionalities basically used by managers
-                System.out.println("10. Update Catalog");
-                System.out.println("11. Update User");
-
-                System.out.println(".........................");
-                System.out.println("20. Log out");
-                switch (readChoice()){
-                   case 1: viewProfile(esql, authorisedUser); break;
-                   case 2: updateProfile(esql, authorisedUser); break;
-                   case 3: viewCatalog(esql); break;
-                   case 4: placeOrder(esql, authorisedUser); break;
-                   case 5: viewAllOrders(esql, authorisedUser); break;
-                   case 6: viewRecentOrders(esql, authorisedUser); break;
-                   case 7: viewOrderInfo(esql, authorisedUser); break;
-                   case 8: viewTrackingInfo(esql, authorisedUser); break;
-                   case 9: updateTrackingInfo(esql, authorisedUser); break;
-                   case 10: updateCatalog(esql, authorisedUser); break;
-                   case 11: updateUser(esql, authorisedUser); break;
-
-
-
-                   case 20: usermenu = false; break;
-                   default : System.out.println("Unrecognized choice!"); break;
-                }
-              }
-            }
-         }//end while
-      }catch(Exception e) {
-         System.err.println (e.getMessage ());
-      }finally{
-         // make sure to cleanup the created table and close the connection.
-         try{
-            if(esql != null) {
-               System.out.print("Disconnecting from database...");
-               esql.cleanup ();
-               System.out.println("Done\n\nBye !");
-            }//end if
-         }catch (Exception e) {
-            // ignored.
-         }//end try
-      }//end try
-   }//end main
-
-   public static void Greeting(){
-      System.out.println(
-         "\n\n*******************************************************\n" +
-         "              User Interface      	               \n" +
-         "*******************************************************\n");
-   }//end Greeting
-
-   /*
-    * Reads the users choice given from the keyboard
-    * @int
-    **/
-   public static int readChoice() {
-      int input;
-      // returns only if a correct value is given.
-      do {
-         System.out.print("Please make your choice: ");
-         try { // read the integer, parse it and break.
-            input = Integer.parseInt(in.readLine());
-            break;
-         }catch (Exception e) {
-            System.out.println("Your input is invalid!");
-            continue;
-         }//end try
-      }while (true);
-      return input;
-   }//end readChoice
-
-   /*
-    * Creates a new user
-    **/
-   public static void CreateUser(GameRental esql){
-      try{
-         System.out.println(
-                 "\n\n*******************************************************\n" +
-                         "              Create New User      	               \n" +
-                         "*******************************************************\n");
-         // Username Selection
-         System.out.println("Username Selection");
-         System.out.println("Usernames should be no longer than 50 characters.");
-         System.out.println("Please enter your username: ");
-         String user = in.readLine();
-
-         // validate username
-         while (true) { // loop until username has not been taken
-            if (user.length() <= 50) { // username <= 50 characters
-               boolean userTaken = validateUser(esql, user);
-               if (!userTaken) { // username is available to register
-                  break;
-               }
-            }
-            System.out.println("Invalid username");
-            System.out.println("Please enter your username: ");
-            user = in.readLine();
-         }
-
-         // Password Selection
-         System.out.println("Set Your Password");
-         System.out.println("Passwords should be no longer than 30 characters.");
-         System.out.println("Please enter your password: ");
-         String password = in.readLine();
-
-         // validate password
-         while (password.length() >= 30) {
-            System.out.println("Invalid password");
-            System.out.println("Please enter your password: ");
-            password = in.readLine();
-         }
-
-         // Phone Number
-         System.out.println("Contact Information");
-         System.out.println("Please enter your phone number (123-456-7890): ");
-         String phone = in.readLine();
-
-         // validate phone number
-         boolean validPN = validatePhoneNumber(phone);
-
-         while(!validPN) {
-            System.out.println("Invalid phone number");
-            System.out.println("Please enter your phone number: ");
-            phone = in.readLine();
-
-            validPN = validatePhoneNumber(phone);
-         }
-         String countryCode = "+1-";
-         String update = "INSERT INTO Users Values('" + user + "', '" + password + "', 'customer', NULL, '" + countryCode + phone + "', 0)";
-         esql.executeUpdate(update);
-         System.out.println("Account Created Successfully");
-         System.out.println("Returning to Main Menu...\n");
-
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }//end CreateUser
-
-
-
-   /*
-    * Check log in credentials for an existing user
-    * @return User login or null is the user does not exist
-    **/
-   public static String LogIn(GameRental esql) {
-      try{
-         System.out.println(
-                 "\n\n*******************************************************\n" +
-                         "              Log In      	               \n" +
-                         "*******************************************************\n");
-         System.out.println("Please enter your username: ");
-         String user = in.readLine();
-         System.out.println("Please enter your password: ");
-         String password = in.readLine();
-
-         String query = "SELECT login, password FROM Users WHERE login = '" + user + "' AND password = '" + password + "'";
-         int rowCount = esql.executeQuery(query);
-         if (rowCount == 1) {
-            return user;
-         }
-         // Username-password combination not found in users database
-         System.out.println("Incorrect username or password.\n");
-         System.out.println("Returning to main menu.");
-
-         return null;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return null;
-   }//end
-
-// Rest of the functions definition go in here
-
-   public static void viewProfile(GameRental esql, String user) {
-      try{
-          String query = "SELECT login, favGames, phoneNum, numOverDueGames FROM USERS WHERE login = '" + user + "'";
-          List<List<String>> profile = esql.executeQueryAndReturnResult(query);
-          System.out.println(
-                 "\n\n*******************************************************\n" +
-                         "              User Profile      	               \n" +
-                         "*******************************************************\n");
-          System.out.println("Username: " + profile.get(0).get(0));
-          System.out.println("Favorite Games: " + profile.get(0).get(1));
-          System.out.println("Phone Number: " + profile.get(0).get(2));
-          System.out.println("# of Overdue Games: " + profile.get(0).get(3) + "\n") ;
-
-      }catch(Exception e) {
-          System.err.println(e.getMessage());
-      }
-   }
-   public static void updateProfile(GameRental esql, String user) {
-      try{
-         boolean updateMenu = true;
-         while (updateMenu) {
-            System.out.println(
-                    "\n\n*******************************************************\n" +
-                            "              Update Profile      	               \n" +
-                            "*******************************************************\n");
-
-            System.out.println("PROFILE SETTINGS");
-            System.out.println("----------------");
-
-            System.out.println("1. Change Password");
-            System.out.println("2. Change Phone Number");
-            System.out.println("3. Change Favorite Games");
-            System.out.println("9. Return to Main Menu");
-
-            switch (readChoice()) {
-               case 1: changePassword(esql, user); break;
-               case 2: changePhoneNumber(esql, user); break;
-               case 3: changeFavoriteGames(esql, user); break;
-
-
-               case 9: updateMenu = false; break;
-
-               default: System.out.println("Unrecognized choice!");
-            }
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void viewCatalog(GameRental esql) {
-      try{
-         boolean showCatalog = true;
-         String genre = "";
-         Double price = 0.0;
-         String sort = "DESC";
-         while(showCatalog){
-            System.out.println(
-                    "\n\n*******************************************************\n" +
-                            "              Game Catalog      	               \n" +
-                            "*******************************************************\n");
-
-            System.out.println("CATALOG SETTINGS");
-            System.out.println("----------------");
-
-            System.out.println("1. View Catalog");
-            System.out.println("2. Set Genre");
-            System.out.println("3. Set Price Range");
-            System.out.println("4. Reset Genre");
-            System.out.println("5. Reset Price");
-            System.out.println("6. Change Sort");
-
-            System.out.println("9. Return to Main Menu");
-
-            switch(readChoice()){
-               case 1: filterCatalog(esql, genre, price, sort); break;
-               case 2: genre = filterGenre(); break;
-               case 3: price = filterPrice(); break;
-               case 4: genre = ""; System.out.println("Genre set to default."); break;
-               case 5: price = 0.0; System.out.println("Price set to default."); break;
-               case 6: sort = changeSort(sort); break;
-
-               case 9: showCatalog = false; break;
-               default: System.out.println("Unrecognized choice!");
-            }
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void placeOrder(GameRental esql, String user) {
-      try {
-         System.out.println(
-                 "\n\n*******************************************************\n" +
-                         "              Place Order      	               \n" +
-                         "*******************************************************\n");
-
-         System.out.println("How many different games would you like to order?");
-         String num = in.readLine();
-         boolean validNum = validateInteger(num);
-         while(!validNum) {
-            System.out.println("Invalid input");
-            System.out.println("How many different games would you like to order?");
-            num = in.readLine();
-            validNum = validateInteger(num);
-         }
-         int numGames = Integer.parseInt(num);
-
-         // retrieve gameIDs and number of copies for rental order
-         List<String> gameIDs = new ArrayList<>();
-         List<Integer> numCopies = new ArrayList<>();
-         String gameID = "";
-         for (int i = 0; i < numGames; i++) {
-            gameID = inputGameID(esql);
-            gameIDs.add(gameID);
-            System.out.println("Please enter number of copies: ");
-            String copies = in.readLine();
-            boolean validCopies = validateInteger(copies);
-            while(!validCopies) {
-               System.out.println("Invalid input");
-               System.out.println("Please enter number of copies: ");
-               copies = in.readLine();
-               validCopies = validateInteger(copies);
-            }
-            numCopies.add(Integer.parseInt(copies));
-         }
-
-         // calculate total price
-         String query = "SELECT price FROM CATALOG WHERE gameID = '" + gameIDs.get(0) + "'";
-         for (int i = 1; i < numGames; i++) {
-            // retrieve game price
-            query += " OR gameID = '" + gameIDs.get(i) + "'";
-         }
-         List<List<String>> priceResult = esql.executeQueryAndReturnResult(query);
-         double totalPrice = 0.0;
-         for (int i = 0; i < numGames; i++) {
-            totalPrice += (numCopies.get(i) * Double.parseDouble(priceResult.get(i).get(0)));
-         }
-
-         // summarize rental order
-         System.out.println("\nItems in Order");
-         System.out.println("--------------");
-         System.out.println("gameID  \tnumCopies\tPrice");
-         Integer totalCopies = 0;
-         for(int i = 0; i < numGames; i++) {
-            System.out.println(gameIDs.get(i) + "\t    " + numCopies.get(i) + "\t\t" + priceResult.get(i).get(0));
-            totalCopies += numCopies.get(i);
-         }
-         System.out.println("Total: numGames = " + numGames + ", totalCopies = " + totalCopies);
-         System.out.println("Total Cost: $" + totalPrice);
-
-
-         boolean validConfirm = false;
-         while(!validConfirm){
-            System.out.println("Please confirm order (y/n): ");
-            String confirm = in.readLine();
-            switch (confirm) {
-               case "y": validConfirm = true; break;
-               case "n": System.out.println("Order canceled\nReturning to Main Menu...\n"); return;
-
-               default: System.out.println("Invalid input");
-            }
-
-         }
-
-         // create unique rental order
-         String rentalID = createOrderID(esql);
-         DateTimeFormatter f = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-         String orderTS = LocalDateTime.now().format(f);
-         LocalDate dueDate = LocalDate.now().plusDays(30);
-         String rentalOrder = "INSERT INTO RentalOrder VALUES('" +
-                 rentalID + "', '" +
-                 user + "', " +
-                 totalCopies + ", " +
-                 totalPrice + ", '" +
-                 orderTS + "', '" +
-                 dueDate + "')";
-         esql.executeUpdate(rentalOrder);
-
-         // create unique tracking info
-         String trackingID = createTrackingID(esql);
-         String trackingInfo = "INSERT INTO TrackingInfo VALUES('" +
-                 trackingID + "', '" +
-                 rentalID + "', " +
-                 "'Order Received', " +
-                 "'Los Angeles,CA', " +
-                 "'USPS', '" +
-                 orderTS + "')";
-         esql.executeUpdate(trackingInfo);
-
-         String gamesInOrder = "INSERT INTO GamesInOrder VALUES";
-         for (int i = 0; i < numGames; i++) {
-            gamesInOrder += "('" + rentalID + "', '" + gameIDs.get(i) + "', " + numCopies.get(i) + ")";
-            if (i < numGames - 1) {
-               gamesInOrder += ", ";
-            }
-         }
-         esql.executeUpdate(gamesInOrder);
-
-         System.out.println("Order placed successfully\n");
-         System.gc();
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void viewAllOrders(GameRental esql, String user) {
-      try{
-         System.out.println("You have selected: View Full Rental Order History");
-         System.out.println("Retrieving all orders...\n");
-         String RentalHistory = "SELECT rentalOrderID FROM RentalOrder WHERE login = '" +  user  + "' ORDER BY orderTimestamp DESC";
-         esql.executeQueryAndPrintResult(RentalHistory);
-         System.out.println("\n");
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void viewRecentOrders(GameRental esql, String user) {
-      try{
-         System.out.println("You have selected: View Past 5 Rental Orders");
-         System.out.println("Retrieving Past 5 Orders...\n");
-         String recent5 = "SELECT rentalOrderID FROM RentalOrder WHERE login = '" + user + "' ORDER BY orderTimestamp DESC LIMIT 5";
-         esql.executeQueryAndPrintResult(recent5);
-         System.out.println("\n");
-      }
-      catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void viewOrderInfo(GameRental esql, String user) {
-      try{
-         System.out.println("You have selected: View Rental Order Information");
-         System.out.println("Please enter rental order id (gamerentalorder0000): ");
-         String rentalOrderID = in.readLine();
-         boolean validRental = validateRentalID(esql, rentalOrderID, user);
-         while(!validRental) {
-            System.out.println("Invalid rental order id");
-            System.out.println("Please enter rental order id (gamerentalorder0000): ");
-            rentalOrderID = in.readLine();
-            validRental = validateRentalID(esql, rentalOrderID, user);
-         }
-
-         System.out.println("Retrieving order details...\n");
-         String orderDet = "SELECT r.orderTimestamp, r.dueDate, r.totalPrice, t.trackingID, g.gameID, g.unitsOrdered " +
-                 "FROM RentalOrder r, GamesInOrder g, TrackingInfo t " +
-                 "WHERE r.rentalOrderID = t.rentalOrderID AND r.rentalOrderID = g.rentalOrderID AND " +
-                 "r.rentalOrderID = '" + rentalOrderID + "' AND r.login = '" +  user  + "'";
-         List<List<String>> result = esql.executeQueryAndReturnResult(orderDet);
-         System.out.println("Order timestamp: " + result.get(0).get(0));
-         System.out.println("Due date: " + result.get(0).get(1));
-         System.out.println("Total Price: $" + result.get(0).get(2));
-         System.out.println("Tracking id: " + result.get(0).get(3));
-         System.out.println("gameID  \tNumCopies");
-
-         for(List<String> orders: result) {
-            System.out.println(orders.get(4) + "\t    " + orders.get(5));
-         }
-         System.out.println("\n");
-      }
-      catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void viewTrackingInfo(GameRental esql, String user) {
-      try{
-         System.out.println("You have selected: View Tracking Information");
-         System.out.println("Please enter tracking id (trackingid0000): ");
-         String trackingID = in.readLine();
-         boolean validTracking = validateTrackingID(esql, trackingID);
-         while (!validTracking) {
-            System.out.println("Invalid tracking id");
-            System.out.println("Please enter tracking id (trackingid0000): ");
-            trackingID = in.readLine();
-            validTracking = validateTrackingID(esql, trackingID);
-         }
-
-         System.out.println("Retrieving tracking details...\n");
-         String trackInfo = "SELECT courierName, rentalOrderID, currentLocation, status, lastUpdateDate, additionalComments "  +
-                 "FROM TrackingInfo "  +
-                 "WHERE trackingID = '" + trackingID + "' AND rentalOrderID IN (SELECT rentalOrderID FROM RentalOrder WHERE login = '" + user + "')";
-         List<List<String>> result = esql.executeQueryAndReturnResult(trackInfo);
-         System.out.println("Courier name: " + result.get(0).get(0));
-         System.out.println("Rental order id: " + result.get(0).get(1));
-         System.out.println("Current location: " + result.get(0).get(2));
-         System.out.println("Status: " + result.get(0).get(3));
-         System.out.println("Last update date: " + result.get(0).get(4));
-         System.out.println("Additional comments: " + result.get(0).get(5) + "\n");
-      }
-      catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void updateTrackingInfo(GameRental esql, String employee) {
-      try{
-         System.out.println("You have selected: Update Tracking Information");
-         if (checkUserRole(esql, employee, "customer")) {
-            System.out.println("You are unauthorized to update tracking information");
-            System.out.println("Returning to Main Menu...\n");
-            return;
-         }
-         System.out.println("Please enter tracking id (trackingid0000): ");
-         String trackingID = in.readLine();
-         boolean validTracking = validateTrackingID(esql, trackingID);
-         while(!validTracking) {
-            System.out.println("Invalid tracking id");
-            System.out.println("Please enter tracking id (trackingid0000): ");
-            trackingID = in.readLine();
-            validTracking = validateTrackingID(esql, trackingID);
-         }
-         System.out.println("Please enter status: ");
-         String status = in.readLine();
-         System.out.println("Please enter current location: ");
-         String currentLocation = in.readLine();
-         System.out.println("Please enter courier name: ");
-         String courierName = in.readLine();
-         System.out.println("Please enter additional comments: ");
-         String additionalComments = in.readLine();
-         System.out.println("Updating Tracking Info");
-         DateTimeFormatter f = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-         String updateTS = f.format(LocalDateTime.now());
-         String updateInfo = "UPDATE TrackingInfo "  +
-                 "SET status = '" + status + "', currentLocation = '" + currentLocation + "', courierName = '" + courierName + "', additionalComments = '" + additionalComments + "', lastUpdateDate = '" + updateTS + "' " +
-                 "WHERE trackingID = '" + trackingID + "'";
-         esql.executeUpdate(updateInfo);
-         System.out.println("Successfully updated tracking information of " + trackingID);
-      }
-      catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void updateCatalog(GameRental esql, String manager) {
-      try {
-         if (!checkUserRole(esql, manager, "manager")) {
-            System.out.println("You are unauthorized to update the catalog");
-            System.out.println("Returning to Main Menu...\n");
-            return;
-         }
-
-         boolean updateCatalog = true;
-         while(updateCatalog) {
-            System.out.println(
-                    "\n\n*******************************************************\n" +
-                            "              Update Game Catalog      	               \n" +
-                            "*******************************************************\n");
-
-            System.out.println("CATALOG OPTIONS");
-            System.out.println("---------------");
-            System.out.println("1. Change Game Name");
-            System.out.println("2. Change Genre");
-            System.out.println("3. Change Price");
-            System.out.println("4. Change Description");
-            System.out.println("5. Change Image URL");
-            System.out.println("6. Add Game to Catalog");
-            System.out.println("7. Remove Game from Catalog");
-            System.out.println("9. Return to Main Menu");
-
-
-            switch(readChoice()){
-               case 1: changeGameName(esql); break;
-               case 2: changeGenre(esql); break;
-               case 3: changePrice(esql); break;
-               case 4: changeDescription(esql); break;
-               case 5: changeImage(esql); break;
-               case 6: addGame(esql); break;
-               case 7: removeGame(esql); break;
-
-               case 9: updateCatalog = false; break;
-               default: System.out.println("Unrecognized choice!");
-            }
-         }
-
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void updateUser(GameRental esql, String manager) {
-      try{
-         if (!checkUserRole(esql, manager, "manager")) {
-            System.out.println("You are unauthorized to update other users");
-            System.out.println("Returning to Main Menu...\n");
-            return;
-         }
-         System.out.println("Username should not match current user");
-         System.out.println("Please enter username of profile to change: ");
-         String user = in.readLine();
-         boolean validUser = validateUser(esql, user) && !user.equals(manager);
-         while(!validUser) {
-            System.out.println("Invalid user");
-            System.out.println("Please enter username of profile to change: ");
-            user = in.readLine();
-            validUser = validateUser(esql, user);
-         }
-
-
-         boolean updateMenu = true;
-         while (updateMenu) {
-            System.out.println(
-                    "\n\n*******************************************************\n" +
-                            "              Update User      	               \n" +
-                            "*******************************************************\n");
-
-            System.out.println("PROFILE SETTINGS");
-            System.out.println("----------------");
-
-            System.out.println("1. Change Password");
-            System.out.println("2. Change Phone Number");
-            System.out.println("3. Change Favorite Games");
-            System.out.println("4. Change User Role");
-            System.out.println("5. Change Username");
-            System.out.println("6. Change Different User");
-            System.out.println("9. Return to Main Menu");
-
-            switch (readChoice()) {
-               case 1: changePassword(esql, user); break;
-               case 2: changePhoneNumber(esql, user); break;
-               case 3: changeFavoriteGames(esql, user); break;
-               case 4: changeRole(esql, user); break;
-               case 5: user = changeUsername(esql, user); break;
-               case 6: user = changeDifferentUser(esql, user); break;
-
-
-               case 9:
-                  updateMenu = false; break;
-
-               default:
-                  System.out.println("Unrecognized choice!");
-            }
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-
-   // input validation
-   public static boolean validatePhoneNumber(String phone) {
-      if (phone.length() == 12) { // correct phone number length
-         for(int i = 0; i < 12; i++) { // correct phone number formatting
-            if (i == 3 || i == 7) { // check hyphens are in correct locations
-               if (phone.charAt(i) != '-') {
-                  return false;
-               }
-            }
-            else {
-               if (!Character.isDigit(phone.charAt(i))) {
-                  return false;
-               }
-            }
-         }
-         return true;
-      }
-      return false;
-   }
-   public static boolean validateGameID(GameRental esql, String gameID){
-      try{
-         if (gameID.length() == 8) {
-            if (gameID.startsWith("game")) {
-               // check if gameID exists in catalog
-               String availableUser = "SELECT EXISTS (Select 1 FROM Catalog WHERE gameID = '" + gameID + "' LIMIT 1)";
-               List<List<String>> gameResult = esql.executeQueryAndReturnResult(availableUser);
-               return gameResult.get(0).contains("t"); // true if gameID found in database
-            }
-            return false;
-         }
-         return false;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return false;
-   }
-   public static boolean validateRentalID (GameRental esql, String rentalOrderID, String user) {
-      try{
-         if (rentalOrderID.length() == 19) {
-            if (rentalOrderID.startsWith("gamerentalorder")) {
-               // check if gameID exists in catalog
-               String availableUser = "SELECT EXISTS (Select 1 FROM RentalOrder WHERE rentalOrderID = '" + rentalOrderID + "' AND login = '" + user + "' LIMIT 1)";
-               List<List<String>> gameResult = esql.executeQueryAndReturnResult(availableUser);
-               return gameResult.get(0).contains("t"); // true if gameID found in database
-            }
-            return false;
-         }
-         return false;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return false;
-   }
-   public static boolean validateTrackingID(GameRental esql, String trackingID) {
-      try{
-         if (trackingID.length() == 14) {
-            if (trackingID.startsWith("trackingid")) {
-               // check if gameID exists in catalog
-               String availableUser = "SELECT EXISTS (Select 1 FROM TrackingInfo WHERE trackingID = '" + trackingID + "' LIMIT 1)";
-               List<List<String>> gameResult = esql.executeQueryAndReturnResult(availableUser);
-               return gameResult.get(0).contains("t"); // true if gameID found in database
-            }
-            return false;
-         }
-         return false;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return false;
-   }
-   public static boolean validateUser(GameRental esql, String user) {
-      try{
-         String query = "SELECT EXISTS (SELECT 1 FROM Users WHERE login = '" + user + "' LIMIT 1)";
-         List<List<String>> result = esql.executeQueryAndReturnResult(query);
-         return result.get(0).get(0).contains("t");
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return false;
-   }
-   public static boolean validateInteger(String string) {
-      if (!string.isEmpty()) {
-         for (int i = 0; i < string.length(); i++) {
-            if (!Character.isDigit(string.charAt(i))) {
-               return false;
-            }
-         }
-         return true;
-      }
-      return false;
-   }
-   public static boolean validateDouble(String string) {
-      if (!string.contains(".")) {
-         return validateInteger(string);
-      }
-      int numDecimals = 0;
-      for (int i = 0; i < string.length(); i++) {
-         if (string.charAt(i) == '.') {
-            numDecimals += 1;
-            if (numDecimals > 1) {
-               return false;
-            }
-         }
-         else if(!Character.isDigit((string.charAt(i)))) {
-            return false;
-         }
-      }
-      return true;
-   }
-   public static boolean retryInput() {
-      try {
-         while (true) {
-            System.out.println("Would you like to try again? (y/n): ");
-            String retry = in.readLine();
-            switch (retry) {
-               case "y": return true;
-               case "n": return false;
-
-               default: System.out.println("Invalid input");
-            }
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return true;
-   }
-
-   // functions for updating profile
-   public static void changePassword(GameRental esql, String user) {
-      try{
-         System.out.println("You have selected: Change Password\n");
-
-         boolean pwMatch = false;
-         while (!pwMatch) {
-            System.out.println("Passwords should be no longer than 30 characters.");
-            System.out.println("Please enter new password: ");
-            String newPW1 = in.readLine();
-            while(newPW1.length() > 30) {
-               System.out.println("Invalid password");
-               System.out.println("Please enter new password");
-               newPW1 = in.readLine();
-            }
-
-            System.out.println("Please confirm password: ");
-            String newPW2 = in.readLine();
-
-            // new password is confirmed, update in database
-            if (newPW1.equals(newPW2)) {
-               pwMatch = true;
-               System.out.println("Updating password...");
-               String update = "UPDATE Users SET password = '" + newPW1 + "' WHERE login = '" + user + "'";
-               esql.executeUpdate(update);
-
-               System.out.println("Password changed successfully");
-            }
-            // allow user to retry changing password
-            else {
-               System.out.println("Passwords do not match!");
-
-               // let user cancel
-               boolean validRetry = retryInput();
-               if (!validRetry) {
-                  System.out.println("Returning to Profile Settings...\n");
-                  return;
-               }
-            }
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void changePhoneNumber(GameRental esql, String user) {
-      try{
-         System.out.println("You have selected: Change Phone Number\n");
-
-         boolean pnMatch = false;
-         while (!pnMatch) {
-            System.out.println("Please enter new phone number (123-456-7890): ");
-            String phone1 = in.readLine();
-            boolean validPN = validatePhoneNumber(phone1);
-            while (!validPN) {
-               System.out.println("Invalid phone number");
-               System.out.println("Please enter your phone number (123-456-7890): ");
-               phone1 = in.readLine();
-               validPN = validatePhoneNumber(phone1);
-            }
-            System.out.println("Please confirm your phone number: ");
-            String phone2 = in.readLine();
-            validPN = validatePhoneNumber(phone2);
-            while (!validPN) {
-               System.out.println("Invalid phone number");
-               System.out.println("Please confirm your phone number: ");
-               phone2 = in.readLine();
-               validPN = validatePhoneNumber(phone2);
-            }
-
-            // new phone number confirmed, update in database
-            if (phone1.equals(phone2)) {
-               pnMatch = true;
-               String countryCode = "+1-";
-               System.out.println("Updating phone number...");
-               String update = "UPDATE Users SET phoneNum = '" + countryCode + phone1 + "' WHERE login = '" + user +"'";
-               esql.executeUpdate(update);
-
-               System.out.println("Phone number changed successfully");
-               System.out.println("New phone number: " + countryCode + phone1);
-
-            }
-            // allow user to retry changing password
-            else {
-               System.out.println("Phone numbers do not match!");
-
-               // let user cancel
-               boolean validRetry = retryInput();
-               if (!validRetry) {
-                  System.out.println("Returning to Profile Settings...\n");
-                  return;
-               }
-            }
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void changeFavoriteGames(GameRental esql, String user) {
-      try{
-         System.out.println("You have selected: Change Favorite Games\n");
-
-         System.out.println("Please enter total number of favorite games: ");
-         String numStr = in.readLine();
-         boolean validNum = validateInteger(numStr);
-         while(!validNum) {
-            System.out.println("Invalid input");
-            System.out.println("Please enter total number of favorite games: ");
-            numStr = in.readLine();
-            validNum = validateInteger(numStr);
-         }
-         int numGames = Integer.parseInt(numStr);
-
-         String games = "";
-         for (int i = 0; i < numGames; i++) {
-            System.out.println("\nPlease enter game: ");
-            games += in.readLine();
-            if (i < numGames - 1) {
-               games += ", ";
-            }
-         }
-
-         System.out.println("Updating favorite games...");
-         String update = "UPDATE Users SET favGames = '" + games + "' WHERE login = '" + user + "'";
-         esql.executeUpdate(update);
-
-         System.out.println("Favorite games changed successfully");
-         System.out.println("Favorite Games: " + games);
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void changeRole(GameRental esql, String user) {
-      try{
-         System.out.println("You have selected: Change User Role\n");
-
-         String newRole = null;
-         System.out.println("USER ROLES");
-         System.out.println("----------");
-         System.out.println("1. Customer");
-         System.out.println("2. Employee");
-         System.out.println("3. Manager");
-         System.out.println("4. Cancel Change");
-
-         switch(readChoice()) {
-            case 1: newRole = "customer"; break;
-            case 2: newRole = "employee"; break;
-            case 3: newRole = "manager"; break;
-            case 4: System.out.println("Returning to Profile Settings...\n"); return;
-
-            default: System.out.println("Unrecognized choice!");
-         }
-         String update = "UPDATE Users SET role = '" + newRole + "' WHERE login = '" + user + "'";
-         esql.executeUpdate(update);
-         System.out.println("Successfully changed role of " + user);
-         System.out.println("Role changed to " + newRole);
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static String changeUsername(GameRental esql, String user) {
-      try {
-         System.out.println("You have selected: Change Username");
-
-         while(true) {
-            System.out.println("Usernames should be no longer than 50 characters");
-            System.out.println("Please enter new username: ");
-            String newUser1 = in.readLine();
-            while(true) { // prompt user until valid username is entered
-               if (newUser1.length() <= 50) {
-                  boolean userTaken = validateUser(esql, newUser1);
-                  if (!userTaken) { // username is available to register
-                     break;
-                  }
-               }
-               System.out.println("Invalid username");
-
-               System.out.println("Please enter new username: ");
-               newUser1 = in.readLine();
-            }
-
-            System.out.println("Please confirm new username: ");
-            String newUser2 = in.readLine();
-
-            if (newUser1.equals(newUser2)) {
-               String update = "UPDATE Users SET login = '" + newUser1 + "' WHERE login = '" + user + "'";
-               esql.executeUpdate(update);
-               System.out.println("Successfully changed username");
-               System.out.println("Username changed from " + user + " to " + newUser1);
-               return newUser1;
-            }
-            else {
-               System.out.println("Usernames do not match");
-               boolean validRetry = retryInput();
-               if (!validRetry) {
-                  System.out.println();
-                  return user;
-               }
-            }
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return user;
-   }
-   public static String changeDifferentUser(GameRental esql, String user) {
-      try{
-         System.out.println("You have selected: Change Different User");
-
-         System.out.println("Please enter new user to change: ");
-         String newUser = in.readLine();
-         boolean validUser = validateUser(esql, newUser);
-
-         while(!validUser) {
-            System.out.println("Invalid user");
-            System.out.println("Please enter new user to change: ");
-            newUser = in.readLine();
-            validUser = validateUser(esql, newUser);
-         }
-         System.out.println("Now changing profile of " + newUser);
-         return newUser;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return user;
-   }
-
-   // functions for changing catalog filters
-   public static void filterCatalog(GameRental esql, String genre, Double price, String sort) {
-      try{
-         String filters = "Displaying results for: ";
-         String query = "SELECT gameID, gameName, genre, price, description FROM Catalog";
-         if (!genre.isEmpty() && price > 0) {
-            query += " WHERE genre = '" + genre + "' AND price < " + price;
-            filters += "Genre = \" " + genre + "\", Price < " + price;
-         }
-         else if (!genre.isEmpty() && price == 0) {
-            query += " WHERE genre = '" + genre + "'";
-            filters += "Genre = \"" + genre + "\"";
-         }
-         else if (genre.isEmpty() && price > 0) {
-            query += " WHERE price < " + price;
-            filters += "Price < " + price;
-         }
-         else {
-            filters = "Displaying full catalog";
-         }
-         query += " ORDER BY price " + sort;
-
-         // implement pages if time
-         esql.executeQueryAndPrintResult(query);
-         int rowCount = esql.executeQuery(query);
-         System.out.println("total row(s): " + rowCount);
-         System.out.println(filters);
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static String filterGenre(){
-      try{
-         System.out.println("Only 1 genre can be viewed at a time.");
-         System.out.println("Please enter genre: ");
-         String genre = in.readLine();
-         System.out.println("Returning to Catalog Options...\n");
-
-         return genre;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return null;
-   }
-   public static Double filterPrice(){
-      try{
-         System.out.println("Please enter maximum price: ");
-         String priceStr = in.readLine();
-         boolean validPrice = validateDouble(priceStr);
-         while(!validPrice) {
-            System.out.println("Invalid input");
-            System.out.println("Please enter maximum price: ");
-            priceStr = in.readLine();
-            validPrice = validateDouble(priceStr);
-         }
-         Double price = Double.parseDouble(priceStr);
-         System.out.println("Returning to Catalog Options...\n");
-
-         return price;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return null;
-   }
-   public static String changeSort(String sort){
-      try{
-         if (sort.equals("DESC")) {
-            System.out.println("Sorting by: Price Ascending");
-            return "ASC";
-         }
-         else {
-            System.out.println("Sorting by: Price Descending");
-            return "DESC";
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return null;
-   }
-
-   // functions for creating rental order and tracking info
-   public static String createOrderID (GameRental esql) {
-      try {
-         String query = "SELECT rentalOrderID FROM RentalOrder ORDER BY rentalOrderID DESC LIMIT 1";
-         List<List<String>> IDResult = esql.executeQueryAndReturnResult(query);
-         String maxID = IDResult.get(0).get(0).substring(15); // retrieve id of last placed order
-         int nextID = Integer.parseInt(maxID) + 1;
-          return "gamerentalorder" + nextID;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return null;
-   }
-   public static String createTrackingID (GameRental esql) {
-      try {
-         String query = "SELECT trackingID FROM TrackingInfo ORDER BY trackingID DESC LIMIT 1";
-         List<List<String>> IDResult = esql.executeQueryAndReturnResult(query);
-         String maxID = IDResult.get(0).get(0).substring(10); // retrieve id of last placed order
-         int nextID = Integer.parseInt(maxID) + 1;
-          return "trackingid" + nextID;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return null;
-   }
-   // functions for editing catalog
-   public static boolean checkUserRole(GameRental esql, String user, String role) {
-      try {
-         String query = "SELECT EXISTS(SELECT 1 FROM Users WHERE login = '" + user + "' AND role = '" + role + "')";
-         List<List<String>> result = esql.executeQueryAndReturnResult(query);
-
-         return result.get(0).get(0).equals("t");
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return false;
-   }
-   public static String inputGameID(GameRental esql) {
-      try{
-         System.out.println("Please enter gameID (game0000): ");
-         String gameID = in.readLine();
-
-         boolean validGame = validateGameID(esql, gameID);
-         while (!validGame) {
-            System.out.println("Invalid gameID");
-            System.out.println("Please enter gameID (game0000): ");
-            gameID = in.readLine();
-            validGame = validateGameID(esql, gameID);
-         }
-         return gameID;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return null;
-   }
-   public static void changeGameName(GameRental esql) {
-      try {
-         System.out.println("You have selected: Change Game Name");
-         String gameID = inputGameID(esql);
-
-         boolean namesMatch = false;
-         while(!namesMatch) {
-
-            System.out.println("Please enter new game name: ");
-            String name1 = in.readLine();
-            System.out.println("Please confirm new game name: ");
-            String name2 = in.readLine();
-
-            if(name1.equals(name2)) {
-               namesMatch = true;
-
-               System.out.println("Updating game name...");
-               String update = "UPDATE Catalog SET gameName = '" + name1 + "' WHERE gameID = '" + gameID +"'";
-               esql.executeUpdate(update);
-
-
-               System.out.println("Game name changed successfully");
-               System.out.println("Name of " + gameID + " changed to " + name1);
-            }
-            else {
-               System.out.println("Game names do not match!");
-
-               // let user cancel
-               boolean validRetry = retryInput();
-               if (!validRetry) {
-                  System.out.println("Returning to Catalog Settings...\n");
-                  return;
-               }
-            }
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void changeGenre(GameRental esql) {
-      try {
-         System.out.println("You have selected Change Genre");
-
-         String gameID = inputGameID(esql);
-         boolean genresMatch = false;
-         while(!genresMatch) {
-
-            System.out.println("Please enter new game genre: ");
-            String genre1 = in.readLine();
-            System.out.println("Please confirm new game genre: ");
-            String genre2 = in.readLine();
-
-            if(genre1.equals(genre2)) {
-               genresMatch = true;
-
-               System.out.println("Updating game genre...");
-               String update = "UPDATE Catalog SET genre = '" + genre1 + "' WHERE gameID = '" + gameID +"'";
-               esql.executeUpdate(update);
-
-
-               System.out.println("Game name changed successfully");
-               System.out.println("Genre of " + gameID + " changed to " + genre1);
-            }
-            else {
-               System.out.println("Game genres do not match!");
-
-               // let user cancel
-               boolean validRetry = retryInput();
-               if (!validRetry) {
-                  System.out.println("Returning to Catalog Settings...\n");
-                  return;
-               }
-            }
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void changePrice(GameRental esql) {
-      try {
-         System.out.println("You have selected: Change Price");
-
-         String gameID = inputGameID(esql);
-         boolean pricesMatch = false;
-         while(!pricesMatch) {
-
-            System.out.println("Please enter new game price: ");
-            String price = in.readLine();
-            boolean validPrice = validateDouble(price);
-            while (!validPrice) {
-               System.out.println("Invalid price");
-               System.out.println("Please enter new game price: ");
-               price = in.readLine();
-               validPrice = validateDouble(price);
-            }
-            Double price1 = Double.parseDouble(price);
-            price1 = Math.floor(price1 * 100) / 100; // truncate to 2 decimal places
-
-            System.out.println("Please confirm new game price: ");
-            price = in.readLine();
-            validPrice = validateDouble(price);
-            while (!validPrice) {
-               System.out.println("Invalid price");
-               System.out.println("Please confirm new game price: ");
-               price = in.readLine();
-               validPrice = validateDouble(price);
-            }
-            Double price2 = Double.parseDouble(price);
-            price2 = Math.floor(price2 * 100) / 100;
-
-            if (price1.equals(price2)) {
-               pricesMatch = true;
-
-               System.out.println("Updating game genre...");
-               String update = "UPDATE Catalog SET price = " + String.format("%.2f", price1) + " WHERE gameID = '" + gameID + "'";
-               esql.executeUpdate(update);
-
-               System.out.println("Game name changed successfully");
-               System.out.println("Price of " + gameID + " changed to " + String.format("%.2f", price1));
-            }
-            else {
-               System.out.println("Game prices do not match!");
-
-               // let user cancel
-               boolean validRetry = retryInput();
-               if (!validRetry) {
-                  System.out.println("Returning to Catalog Settings...\n");
-                  return;
-               }
-            }
-         }
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void changeDescription(GameRental esql) {
-      try {
-         System.out.println("You have selected: Change Description");
-
-         String gameID = inputGameID(esql);
-
-         System.out.println("Please enter game platform: ");
-         String platform = "Platform: " + in.readLine();
-         System.out.println("Please enter game publisher: ");
-         String publisher = "Publisher: "+ in.readLine();
-         String update = "UPDATE Catalog SET description = '" + platform + "; "+ publisher + "' WHERE gameID = '" + gameID + "'";
-         esql.executeUpdate(update);
-
-         System.out.println("Successfully changed description");
-         System.out.println("Description changed to:\n" + platform + "\n" + publisher);
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void changeImage(GameRental esql) {
-      try {
-         System.out.println("You have selected: Change Image URL");
-
-         String gameID = inputGameID(esql);
-
-         System.out.println("Please enter image url: ");
-         String url = in.readLine();
-         String update = "UPDATE Catalog SET imageURL = '" + url + "' WHERE gameID = '" + gameID + "'";
-         esql.executeUpdate(update);
-
-         System.out.println("Successfully changed description");
-         System.out.println("Image url changed to: " + url);
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void addGame(GameRental esql) {
-      try{
-         System.out.println("You have selected: Add Game to Catalog");
-
-         System.out.println("Please enter game name: ");
-         String name = in.readLine();
-
-         System.out.println("Please enter game genre: ");
-         String genre = in.readLine();
-
-         System.out.println("Please enter game price: ");
-         String priceStr = in.readLine();
-         boolean validPrice = validateDouble(priceStr);
-         while(!validPrice) {
-            System.out.println("Invalid price");
-            System.out.println("Please enter game price: ");
-            priceStr = in.readLine();
-            validPrice = validateDouble(priceStr);
-         }
-         Double price = Double.parseDouble(priceStr);
-         price = Math.floor(price * 100) / 100; // truncate price to 2 decimal places
-
-         System.out.println("Please enter game platform: ");
-         String platform = "Platform: " + in.readLine();
-         System.out.println("Please enter game publisher: ");
-         String publisher = "Publisher: "+ in.readLine();
-
-         System.out.println("Please enter image url: ");
-         String url = in.readLine();
-
-         System.out.println("Summary of new game");
-         System.out.println("Name: " + name);
-         System.out.println("Genre: " + genre);
-         System.out.println("Price: " + String.format("%.2f", price));
-         System.out.println("Description: " + platform + "; " + publisher);
-         System.out.println("Image URL: " + url);
-
-         boolean validConfirm = false;
-         while(!validConfirm) {
-            System.out.println("Please confirm new game (y/n): ");
-            String confirm = in.readLine();
-            switch (confirm) {
-               case "y": validConfirm = true; break;
-               case "n": System.out.println("Addition to catalog cancelled\nReturning to Catalog Settings...\n"); return;
-
-               default: System.out.println("Invalid input");
-            }
-         }
-
-         String gameID = createGameID(esql);
-
-         String update = "INSERT INTO Catalog VALUES('" +
-                 gameID + "', '" +
-                 name + "', '" +
-                 genre + "', " +
-                 String.format("%.2f", price) + ", '" +
-                 platform + "; " + publisher + "', '" +
-                 url + "')";
-         esql.executeUpdate(update);
-
-         System.out.println("Successfully added game to catalog");
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static void removeGame(GameRental esql) {
-      try{
-         System.out.println("You have selected: Remove Game from Catalog");
-
-         System.out.println("Please enter gameID to remove: ");
-         String gameID = in.readLine();
-         boolean validID = validateGameID(esql, gameID);
-         while(!validID) {
-            System.out.println("Invalid gameID");
-            System.out.println("Please enter gameID to remove: ");
-            gameID = in.readLine();
-            validID = validateGameID(esql, gameID);
-         }
-         System.out.println("Retrieving game information...");
-         String query = "SELECT gameName, genre, price, description FROM Catalog WHERE gameID = '" + gameID + "' LIMIT 1";
-         List<List<String>> game = esql.executeQueryAndReturnResult(query);
-         System.out.println("Name: " + game.get(0).get(0));
-         System.out.println("Genre: " + game.get(0).get(1));
-         System.out.println("Price: " + game.get(0).get(2));
-         System.out.println("Description: " + game.get(0).get(3));
-
-         boolean validConfirm = false;
-         while(!validConfirm) {
-            System.out.println("Please confirm deletion (y/n): ");
-            String confirm = in.readLine();
-            switch (confirm) {
-               case "y": validConfirm = true; break;
-               case "n": System.out.println("Removal from catalog cancelled\nReturning to Catalog Settings...\n"); return;
-
-               default: System.out.println("Invalid input");
-            }
-         }
-
-         String update = "DELETE FROM Catalog WHERE gameID = '" + gameID + "'";
-         esql.executeUpdate(update);
-
-         System.out.println("Successfully removed " + gameID + "from catalog");
-         System.out.println("Returning to Catalog Settings...\n");
-
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-   }
-   public static String createGameID(GameRental esql) {
-      try{
-         String query = "SELECT gameID FROM Catalog ORDER BY gameID DESC LIMIT 1";
-         List<List<String>> IDResult = esql.executeQueryAndReturnResult(query);
-         String maxID = IDResult.get(0).get(0).substring(4); // retrieve id of latest game
-         int nextID = Integer.parseInt(maxID) + 1;
-         if (nextID < 1000) {
-            return "game0" + nextID;
-         }
-         return "game" + nextID;
-      }catch(Exception e) {
-         System.err.println(e.getMessage());
-      }
-      return null;
-   }
-}//end GameRental
-
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.time.*;
+
+/**
+ * This class defines a simple embedded SQL utility class that is designed to
+ * work with PostgreSQL JDBC drivers.
+ *
+ */
+public class GameRental {
+
+   // pool of physical database connections shared by all sessions.
+   private ConnectionPool _pool = null;
+
+   // key prefixes and the sequences their numbers are allocated from
+   public static final String GAME_PREFIX = "game";
+   public static final String ORDER_PREFIX = "gamerentalorder";
+   public static final String TRACKING_PREFIX = "trackingid";
+
+   // allocators for new keys, shared by every session of this process
+   final IdAllocator _gameIds = new IdAllocator(this, "gameID_seq", GAME_PREFIX);
+   final IdAllocator _orderIds = new IdAllocator(this, "rentalOrderID_seq", ORDER_PREFIX);
+   final IdAllocator _trackingIds = new IdAllocator(this, "trackingID_seq", TRACKING_PREFIX);
+
+   // cached Catalog rows, kept current by the updateCatalog menu
+   final CatalogCache _catalog = new CatalogCache(this);
+
+   // logged-in users, invalidated by the profile-change methods
+   final UserSession.Registry _sessions = new UserSession.Registry();
+
+   // which game, order and tracking IDs exist, kept current by the write paths
+   final IdIndex _ids = new IdIndex(this);
+
+   // calls and time per query shape, for IndexAdvisor
+   final QueryRecorder _queries = new QueryRecorder();
+
+   // latency histograms per query shape and per menu action
+   final Metrics _metrics = new Metrics(_queries);
+
+   // background upkeep of Users.numOverDueGames
+   final OverdueMaintainer _overdue = new OverdueMaintainer(this);
+
+   // background upkeep of the sales summaries behind the manager reports
+   final SalesSummarizer _sales = new SalesSummarizer(this);
+
+   // trigram index over game names and descriptions, kept current by the write paths
+   final CatalogSearch _search = new CatalogSearch(this);
+
+   // games rented together, kept current by submitOrder
+   final Recommender _recommender = new Recommender(this);
+
+   // rows fetched per round trip by streaming queries
+   public static final int DEFAULT_FETCH_SIZE = Integer.getInteger("gamerental.fetchSize", 256);
+   // set once the driver has refused setFetchSize, as the bundled 7.3 driver does
+   private static volatile boolean noCursorFetch = false;
+
+   // handling the keyboard inputs through a BufferedReader
+   // This variable can be global for convenience; in server mode it reads
+   // from the calling thread's session (see SessionIO).
+   static BufferedReader in = SessionIO.newInput();
+
+   /**
+    * Creates a new instance of GameRental store
+    *
+    * @param hostname the MySQL or PostgreSQL server hostname
+    * @param database the name of the database
+    * @param username the user name used to login to the database
+    * @param password the user login password
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public GameRental(String dbname, String dbport, String user, String passwd) throws SQLException {
+      this(dbname, dbport, user, passwd, ConnectionPool.DEFAULT_MAX_SIZE);
+   }//end GameRental
+
+   /**
+    * Creates a new instance of GameRental store backed by a pool of at most
+    * poolSize physical connections
+    *
+    * @param dbname the name of the database
+    * @param dbport the port the database listens on
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param poolSize the maximum number of physical connections
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public GameRental(String dbname, String dbport, String user, String passwd, int poolSize) throws SQLException {
+
+      System.out.print("Connecting to database...");
+      try{
+         // constructs the connection URL
+         String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+         System.out.println ("Connection URL: " + url + "\n");
+
+         // create the pool and open the first physical connection
+         this._pool = new ConnectionPool(url, user, passwd, poolSize, ConnectionPool.DEFAULT_MIN_IDLE,
+                                         ConnectionPool.DEFAULT_BORROW_TIMEOUT_MS,
+                                         ConnectionPool.DEFAULT_IDLE_TIMEOUT_MS,
+                                         ConnectionPool.DEFAULT_MAX_LIFETIME_MS);
+         this._pool.release(this._pool.borrow());
+         System.out.println("Done");
+      }catch (Exception e){
+         System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
+         System.out.println("Make sure you started postgres on this machine");
+         System.exit(-1);
+      }//end catch
+   }//end GameRental
+
+   /**
+    * Borrows a connection from the pool.  Every borrowed connection must be
+    * handed back with releaseConnection.
+    *
+    * @return a validated connection
+    * @throws java.sql.SQLException when no connection is available
+    */
+   public Connection borrowConnection() throws SQLException {
+      return this._pool.borrow();
+   }//end borrowConnection
+
+   /**
+    * Returns a borrowed connection to the pool, discarding it if the error
+    * raised while using it means the connection is no longer usable.
+    *
+    * @param conn the borrowed connection
+    * @param error the error raised while using it, or null
+    */
+   public void releaseConnection(Connection conn, SQLException error) {
+      if (error != null && ConnectionPool.isBroken(conn, error)) {
+         this._pool.invalidate(conn);
+      }
+      else {
+         this._pool.release(conn);
+      }
+   }//end releaseConnection
+
+   /**
+    * @return a one-line summary of the connection pool metrics
+    */
+   public String getPoolStats() {
+      return this._pool.getStats();
+   }//end getPoolStats
+
+   /**
+    * Prepares sql on a borrowed connection through the pool's statement
+    * cache and binds the positional parameters.  A null parameter is bound
+    * as SQL NULL.
+    *
+    * @param conn the borrowed connection
+    * @param sql the SQL text with ? placeholders
+    * @param params values for the placeholders, in order
+    * @return the bound statement, owned by the statement cache
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   private PreparedStatement prepare(Connection conn, String sql, Object... params) throws SQLException {
+      PreparedStatement stmt = this._pool.prepare(conn, sql);
+      for (int i = 0; i < params.length; i++) {
+         if (params[i] == null) {
+            stmt.setNull(i + 1, Types.VARCHAR);
+         }
+         else {
+            stmt.setObject(i + 1, params[i]);
+         }
+      }
+      return stmt;
+   }//end prepare
+
+   /**
+    * Method to execute an update SQL statement.  Update SQL instructions
+    * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+    *
+    * @param sql the input SQL string with ? placeholders
+    * @param params values bound to the placeholders, in order
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      Connection conn = this.borrowConnection();
+      SQLException error = null;
+      long start = System.nanoTime();
+      int rowCount = 0;
+      try {
+         // issues the update instruction through the cached statement
+         rowCount = this.prepare(conn, sql, params).executeUpdate ();
+         return rowCount;
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         this._metrics.query(sql, params, System.nanoTime() - start, rowCount, error != null);
+         this.releaseConnection(conn, error);
+      }//end try
+   }//end executeUpdate
+
+   /**
+    * Callback used by executeQueryStream.  It is invoked once per row with
+    * the ResultSet positioned on that row.
+    */
+   public interface RowHandler {
+      /**
+       * @param rs the result set positioned on the current row
+       * @return true to keep reading, false to stop early
+       * @throws java.sql.SQLException when a column cannot be read
+       */
+      boolean handleRow(ResultSet rs) throws SQLException;
+   }//end RowHandler
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and hand
+    * each row to handler.  With a driver that supports cursor fetches
+    * (PostgreSQL JDBC 8.0 and later) the query runs with autocommit off and
+    * the driver reads through a server-side cursor, fetchSize rows per round
+    * trip, so memory use does not depend on the size of the result.  The
+    * bundled 7.3 driver cannot: it reads the whole result before the first
+    * row is handled, and the query runs in autocommit mode.
+    *
+    * @param query the input query string with ? placeholders
+    * @param fetchSize the number of rows fetched per round trip
+    * @param handler the row consumer
+    * @param params values bound to the placeholders, in order
+    * @return the number of rows handed to handler
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryStream (String query, int fetchSize, RowHandler handler, Object... params) throws SQLException {
+      Connection conn = this.borrowConnection();
+      SQLException error = null;
+      PreparedStatement stmt = null;
+      long start = System.nanoTime();
+      int rowCount = 0;
+      boolean cursor = fetchSize > 0 && !noCursorFetch;
+      try {
+         stmt = this.prepare(conn, query, params);
+         if (cursor) {
+            try {
+               stmt.setFetchSize(fetchSize);
+            }catch (SQLException e) {
+               // the driver has no cursor fetch; read the whole result as before
+               noCursorFetch = true;
+               cursor = false;
+            }//end try
+         }
+         if (cursor) {
+            // a cursor only lives inside a transaction
+            conn.setAutoCommit(false);
+         }
+
+         ResultSet rs = stmt.executeQuery ();
+         while (rs.next()){
+            ++rowCount;
+            if (!handler.handleRow(rs)) {
+               break;
+            }
+         }//end while
+         rs.close();
+         if (cursor) {
+            conn.commit();
+         }
+         return rowCount;
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         this._metrics.query(query, params, System.nanoTime() - start, rowCount, error != null);
+         if (cursor && stmt != null && error == null) {
+            // the statement is cached, so restore the default for the next user
+            stmt.setFetchSize(0);
+         }
+         // the pool rolls back and restores autocommit on release
+         this.releaseConnection(conn, error);
+      }//end try
+   }//end executeQueryStream
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and outputs the results to
+    * standard out as they are fetched.  The query is declared as a cursor
+    * in a transaction and read DEFAULT_FETCH_SIZE rows per FETCH, so no more
+    * than one batch is held, whatever the driver.  When the renderer pauses
+    * between pages the connection and cursor stay open, so the next page
+    * continues the same scan.  query must be a single SELECT.
+    *
+    * @param query the input query string with ? placeholders
+    * @param params values bound to the placeholders, in order
+    * @return the number of rows printed
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+      ResultRenderer renderer = new ResultRenderer();
+      Connection conn = this.borrowConnection();
+      SQLException error = null;
+      int batch = Math.max(1, DEFAULT_FETCH_SIZE);
+      long queryTime = 0;
+      int rowCount = 0;
+      long printed;
+      try {
+         try {
+            long start = System.nanoTime();
+            // a cursor only lives inside a transaction
+            conn.setAutoCommit(false);
+            this.prepare(conn, "DECLARE print_rows NO SCROLL CURSOR FOR " + query, params).execute();
+            Statement fetch = conn.createStatement();
+            try {
+               boolean more = true;
+               while (more) {
+                  ResultSet rs = fetch.executeQuery("FETCH FORWARD " + batch + " FROM print_rows");
+                  queryTime += System.nanoTime() - start;
+                  // the columns are known even when there are no rows, so an empty result still prints its header
+                  if (!renderer.hasBegun()) {
+                     renderer.begin(rs.getMetaData());
+                  }
+                  int fetched = 0;
+                  while (more && rs.next()) {
+                     ++fetched;
+                     // a full page refuses the row; it opens the next page unless the user stops
+                     while (more && !renderer.row(rs)) {
+                        more = renderer.isPageFull() && renderer.nextPage();
+                     }
+                  }//end while
+                  rs.close();
+                  rowCount += fetched;
+                  more = more && fetched == batch;
+                  start = System.nanoTime();
+               }//end while
+            }finally{
+               fetch.close();
+            }//end try
+            conn.commit();
+         }finally{
+            // closes the output even when the query fails part way
+            printed = renderer.end();
+         }//end try
+         return (int) printed;
+      }catch (IOException e) {
+         error = new SQLException(e.getMessage());
+         throw error;
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         // time spent waiting for the user between pages is not query time
+         this._metrics.query(query, params, queryTime, rowCount, error != null);
+         // the pool rolls back and restores autocommit on release
+         this.releaseConnection(conn, error);
+      }//end try
+   }//end executeQueryAndPrintResult
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the results as
+    * a list of records. Each record in turn is a list of attribute values
+    *
+    * @param query the input query string with ? placeholders
+    * @param params values bound to the placeholders, in order
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+      Connection conn = this.borrowConnection();
+      SQLException error = null;
+      long start = System.nanoTime();
+      int rowCount = 0;
+      try {
+         // issues the query instruction
+         ResultSet rs = this.prepare(conn, query, params).executeQuery ();
+
+         /*
+          ** obtains the metadata object for the returned result set.  The metadata
+          ** contains row and column info.
+          */
+         ResultSetMetaData rsmd = rs.getMetaData ();
+         int numCol = rsmd.getColumnCount ();
+
+         // iterates through the result set and saves the data returned by the query.
+         List<List<String>> result  = new ArrayList<List<String>>();
+         while (rs.next()){
+            List<String> record = new ArrayList<String>();
+            for (int i=1; i<=numCol; ++i)
+               record.add(rs.getString (i));
+            result.add(record);
+         }//end while
+         rs.close ();
+         rowCount = result.size();
+         return result;
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         this._metrics.query(query, params, System.nanoTime() - start, rowCount, error != null);
+         this.releaseConnection(conn, error);
+      }//end try
+   }//end executeQueryAndReturnResult
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the results decoded
+    * into typed columns: prices as long cents, integers as int, timestamps
+    * as epoch milliseconds and low-cardinality text dictionary encoded.
+    *
+    * @param query the input query string with ? placeholders
+    * @param params values bound to the placeholders, in order
+    * @return the query result
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public TypedResult executeQueryTyped (String query, Object... params) throws SQLException {
+      final TypedResult[] result = { null };
+      this.executeQueryStream(query, DEFAULT_FETCH_SIZE, new RowHandler() {
+         public boolean handleRow(ResultSet rs) throws SQLException {
+            if (result[0] == null) {
+               result[0] = new TypedResult(rs.getMetaData());
+            }
+            result[0].append(rs);
+            return true;
+         }
+      }, params);
+      return result[0] != null ? result[0] : TypedResult.empty();
+   }//end executeQueryTyped
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the number of results
+    *
+    * @param query the input query string with ? placeholders
+    * @param params values bound to the placeholders, in order
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery (String query, Object... params) throws SQLException {
+      // iterates through the result set and count number of results.
+      return this.executeQueryStream(query, DEFAULT_FETCH_SIZE, new RowHandler() {
+         public boolean handleRow(ResultSet rs) {
+            return true;
+         }
+      }, params);
+   }
+
+   /**
+    * Method to fetch the last value from sequence. This
+    * method issues the query to the DBMS and returns the current
+    * value of sequence used for autogenerated keys.  currval is scoped to
+    * the database session, so this only works for a sequence advanced on
+    * the same pooled connection.
+    *
+    * @param sequence name of the DB sequence
+    * @return current value of a sequence
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int getCurrSeqVal(String sequence) throws SQLException {
+      Connection conn = this.borrowConnection();
+      SQLException error = null;
+      try {
+         Statement stmt = conn.createStatement ();
+
+         ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
+         int value = -1;
+         if (rs.next())
+            value = rs.getInt(1);
+         stmt.close ();
+         return value;
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         this.releaseConnection(conn, error);
+      }//end try
+   }
+
+   /**
+    * Method to advance a sequence and return the new value.  Unlike currval
+    * this does not depend on which pooled connection runs it.
+    *
+    * @param sequence name of the DB sequence
+    * @return the next value of the sequence
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public long getNextSeqVal(String sequence) throws SQLException {
+      List<List<String>> result = this.executeQueryAndReturnResult("SELECT nextval(CAST(? AS regclass))", sequence);
+      return Long.parseLong(result.get(0).get(0));
+   }//end getNextSeqVal
+
+   /**
+    * Method to close the connection pool and every idle connection in it.
+    */
+   public void cleanup(){
+      this._overdue.close();
+      this._sales.close();
+      this._ids.close();
+      if (QueryRecorder.LOG_FILE != null) {
+         try {
+            this._queries.writeLog(new java.io.File(QueryRecorder.LOG_FILE));
+         }catch (java.io.IOException e) {
+            System.err.println("Cannot write query log: " + e.getMessage());
+         }//end try
+      }//end if
+      this._metrics.close();
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
+   }//end cleanup
+
+   /**
+    * The main execution method
+    *
+    * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
+    */
+   public static void main (String[] args) {
+      if (args.length != 3) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            GameRental.class.getName () +
+            " <dbname> <port> <user>");
+         return;
+      }//end if
+
+      Greeting();
+      GameRental esql = null;
+      try{
+         // instantiate the GameRental object and creates a physical
+         // connection.
+         String dbname = args[0];
+         String dbport = args[1];
+         String user = args[2];
+         esql = new GameRental (dbname, dbport, user, "");
+         esql._overdue.start();
+         esql._sales.start();
+         esql._ids.start();
+         runSession(esql);
+      }catch(Exception e) {
+         System.err.println (e.getMessage ());
+      }finally{
+         // make sure to cleanup the created table and close the connection.
+         try{
+            if(esql != null) {
+               System.out.print("Disconnecting from database...");
+               esql.cleanup ();
+               System.out.println("Done\n\nBye !");
+            }//end if
+         }catch (Exception e) {
+            // ignored.
+         }//end try
+      }//end try
+   }//end main
+
+   /**
+    * Runs the main menu until the user exits.  Reads and writes the calling
+    * thread's terminal, which is the console or, in server mode, the
+    * session's socket.
+    *
+    * @param esql the store shared by all sessions
+    */
+   public static void runSession(GameRental esql) {
+      boolean keepon = true;
+      while(keepon) {
+         // These are sample SQL statements
+         System.out.println("MAIN MENU");
+         System.out.println("---------");
+         System.out.println("1. Create user");
+         System.out.println("2. Log in");
+         System.out.println("9. < EXIT");
+         UserSession session = null;
+         int choice = readChoice();
+         Metrics.Timer timer = esql._metrics.startAction();
+         switch (choice){
+            case 1: CreateUser(esql); break;
+            case 2: session = LogIn(esql); break;
+            case 9: keepon = false; break;
+            default : System.out.println("Unrecognized choice!"); break;
+         }//end switch
+         timer.stop(actionName(MAIN_ACTIONS, choice));
+         if (session != null) {
+           try {
+             boolean usermenu = true;
+             while(usermenu) {
+               // the login follows renames made by a manager while logged in
+               String authorisedUser = session.getLogin();
+               System.out.println("MAIN MENU");
+               System.out.println("---------");
+               System.out.println("1. View Profile");
+               System.out.println("2. Update Profile");
+               System.out.println("3. View Catalog");
+               System.out.println("4. Place Rental Order");
+               System.out.println("5. View Full Rental Order History");
+               System.out.println("6. View Past 5 Rental Orders");
+               System.out.println("7. View Rental Order Information");
+               System.out.println("8. View Tracking Information");
+
+               //the following functionalities basically used by employees & managers
+               System.out.println("9. Update Tracking Information");
+
+               //the following functionalities basically used by managers
+               System.out.println("10. Update Catalog");
+               System.out.println("11. Update User");
+               System.out.println("12. Manager Reports");
+
+               System.out.println(".........................");
+               System.out.println("20. Log out");
+               int userChoice = readChoice();
+               Metrics.Timer userTimer = esql._metrics.startAction();
+               switch (userChoice){
+                  case 1: usermenu = viewProfile(esql, session); break;
+                  case 2: updateProfile(esql, authorisedUser); break;
+                  case 3: viewCatalog(esql); break;
+                  case 4: placeOrder(esql, authorisedUser); break;
+                  case 5: viewAllOrders(esql, authorisedUser); break;
+                  case 6: viewRecentOrders(esql, authorisedUser); break;
+                  case 7: viewOrderInfo(esql, authorisedUser); break;
+                  case 8: viewTrackingInfo(esql, authorisedUser); break;
+                  case 9: updateTrackingInfo(esql, session); break;
+                  case 10: updateCatalog(esql, session); break;
+                  case 11: updateUser(esql, session); break;
+                  case 12: managerReports(esql, session); break;
+
+
+
+                  case 20: usermenu = false; break;
+                  default : System.out.println("Unrecognized choice!"); break;
+               }
+               userTimer.stop(actionName(USER_ACTIONS, userChoice));
+             }
+           }finally{
+             session.close();
+           }//end try
+         }
+      }//end while
+   }//end runSession
+
+   // metric names of the menu actions, by choice number
+   private static final String[] MAIN_ACTIONS = { null, "createUser", "logIn" };
+   private static final String[] USER_ACTIONS = {
+      null, "viewProfile", "updateProfile", "viewCatalog", "placeOrder", "viewAllOrders", "viewRecentOrders",
+      "viewOrderInfo", "viewTrackingInfo", "updateTrackingInfo", "updateCatalog", "updateUser", "managerReports",
+   };
+
+   private static String actionName(String[] actions, int choice) {
+      return choice > 0 && choice < actions.length ? actions[choice] : null;
+   }//end actionName
+
+   public static void Greeting(){
+      System.out.println(
+         "\n\n*******************************************************\n" +
+         "              User Interface      	               \n" +
+         "*******************************************************\n");
+   }//end Greeting
+
+   /*
+    * Reads the users choice given from the keyboard
+    * @int
+    **/
+   public static int readChoice() {
+      int input;
+      // returns only if a correct value is given.
+      do {
+         System.out.print("Please make your choice: ");
+         try { // read the integer, parse it and break.
+            input = Integer.parseInt(in.readLine());
+            break;
+         }catch (Exception e) {
+            System.out.println("Your input is invalid!");
+            continue;
+         }//end try
+      }while (true);
+      return input;
+   }//end readChoice
+
+   /*
+    * Creates a new user
+    **/
+   public static void CreateUser(GameRental esql){
+      try{
+         System.out.println(
+                 "\n\n*******************************************************\n" +
+                         "              Create New User      	               \n" +
+                         "*******************************************************\n");
+         // Username Selection
+         System.out.println("Username Selection");
+         System.out.println("Usernames should be no longer than 50 characters.");
+         System.out.println("Please enter your username: ");
+         String user = in.readLine();
+
+         // validate username
+         while (true) { // loop until username has not been taken
+            if (user.length() <= 50) { // username <= 50 characters
+               boolean userTaken = validateUser(esql, user);
+               if (!userTaken) { // username is available to register
+                  break;
+               }
+            }
+            System.out.println("Invalid username");
+            System.out.println("Please enter your username: ");
+            user = in.readLine();
+         }
+
+         // Password Selection
+         System.out.println("Set Your Password");
+         System.out.println("Passwords should be no longer than 30 characters.");
+         System.out.println("Please enter your password: ");
+         String password = in.readLine();
+
+         // validate password
+         while (password.length() >= 30) {
+            System.out.println("Invalid password");
+            System.out.println("Please enter your password: ");
+            password = in.readLine();
+         }
+
+         // Phone Number
+         System.out.println("Contact Information");
+         System.out.println("Please enter your phone number (123-456-7890): ");
+         String phone = in.readLine();
+
+         // validate phone number
+         boolean validPN = validatePhoneNumber(phone);
+
+         while(!validPN) {
+            System.out.println("Invalid phone number");
+            System.out.println("Please enter your phone number: ");
+            phone = in.readLine();
+
+            validPN = validatePhoneNumber(phone);
+         }
+         String countryCode = "+1-";
+         String update = "INSERT INTO Users Values(?, ?, 'customer', NULL, ?, 0)";
+         esql.executeUpdate(update, user, password, countryCode + phone);
+         System.out.println("Account Created Successfully");
+         System.out.println("Returning to Main Menu...\n");
+
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }//end CreateUser
+
+
+
+   /*
+    * Check log in credentials for an existing user
+    * @return the user's session or null is the user does not exist
+    **/
+   public static UserSession LogIn(GameRental esql) {
+      try{
+         System.out.println(
+                 "\n\n*******************************************************\n" +
+                         "              Log In      	               \n" +
+                         "*******************************************************\n");
+         System.out.println("Please enter your username: ");
+         String user = in.readLine();
+         System.out.println("Please enter your password: ");
+         String password = in.readLine();
+
+         // one read of the user's row serves the role checks and profile of the session
+         UserSession session = UserSession.logIn(esql, user, password);
+         if (session != null) {
+            return session;
+         }
+         // Username-password combination not found in users database
+         System.out.println("Incorrect username or password.\n");
+         System.out.println("Returning to main menu.");
+
+         return null;
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return null;
+   }//end
+
+// Rest of the functions definition go in here
+
+   // returns false when the user no longer exists, which ends the session
+   public static boolean viewProfile(GameRental esql, UserSession session) {
+      try{
+          UserSession.Profile profile = session.getProfile();
+          if (profile == null) {
+             System.out.println("Profile not found; the user may have been deleted. Logging out.");
+             return false;
+          }
+          System.out.println(
+                 "\n\n*******************************************************\n" +
+                         "              User Profile      	               \n" +
+                         "*******************************************************\n");
+          System.out.println("Username: " + session.getLogin());
+          System.out.println("Favorite Games: " + profile.favGames);
+          System.out.println("Phone Number: " + profile.phoneNum);
+          System.out.println("# of Overdue Games: " + profile.numOverDueGames + "\n") ;
+
+          List<Recommender.Recommendation> recommended =
+             esql._recommender.recommendForFavorites(profile.favGames, Recommender.DEFAULT_LIMIT);
+          if (!recommended.isEmpty()) {
+             System.out.println("Fans of your favorite games also rented:");
+             printRecommendations(esql, recommended);
+          }
+
+      }catch(Exception e) {
+          System.err.println(e.getMessage());
+      }
+      return true;
+   }
+   public static void updateProfile(GameRental esql, String user) {
+      try{
+         boolean updateMenu = true;
+         while (updateMenu) {
+            System.out.println(
+                    "\n\n*******************************************************\n" +
+                            "              Update Profile      	               \n" +
+                            "*******************************************************\n");
+
+            System.out.println("PROFILE SETTINGS");
+            System.out.println("----------------");
+
+            System.out.println("1. Change Password");
+            System.out.println("2. Change Phone Number");
+            System.out.println("3. Change Favorite Games");
+            System.out.println("9. Return to Main Menu");
+
+            switch (readChoice()) {
+               case 1: changePassword(esql, user); break;
+               case 2: changePhoneNumber(esql, user); break;
+               case 3: changeFavoriteGames(esql, user); break;
+
+
+               case 9: updateMenu = false; break;
+
+               default: System.out.println("Unrecognized choice!");
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void viewCatalog(GameRental esql) {
+      try{
+         boolean showCatalog = true;
+         String genre = "";
+         Double price = 0.0;
+         String sort = "DESC";
+         CatalogBrowser browser = new CatalogBrowser();
+         while(showCatalog){
+            System.out.println(
+                    "\n\n*******************************************************\n" +
+                            "              Game Catalog      	               \n" +
+                            "*******************************************************\n");
+
+            System.out.println("CATALOG SETTINGS");
+            System.out.println("----------------");
+
+            System.out.println("1. View Catalog");
+            System.out.println("2. Set Genre");
+            System.out.println("3. Set Price Range");
+            System.out.println("4. Reset Genre");
+            System.out.println("5. Reset Price");
+            System.out.println("6. Change Sort");
+            System.out.println("7. Next Page");
+            System.out.println("8. Previous Page");
+            System.out.println("10. Search Catalog");
+
+            System.out.println("9. Return to Main Menu");
+
+            switch(readChoice()){
+               case 1: filterCatalog(esql, browser, genre, price, sort); break;
+               case 2: genre = filterGenre(); break;
+               case 3: price = filterPrice(); break;
+               case 4: genre = ""; System.out.println("Genre set to default."); break;
+               case 5: price = 0.0; System.out.println("Price set to default."); break;
+               case 6: sort = changeSort(sort); break;
+               case 7: browser.setFilters(genre, price, sort); browser.nextPage(esql); break;
+               case 8: browser.setFilters(genre, price, sort); browser.previousPage(esql); break;
+               case 10: searchCatalog(esql); break;
+
+               case 9: showCatalog = false; break;
+               default: System.out.println("Unrecognized choice!");
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void placeOrder(GameRental esql, String user) {
+      try {
+         System.out.println(
+                 "\n\n*******************************************************\n" +
+                         "              Place Order      	               \n" +
+                         "*******************************************************\n");
+
+         System.out.println("How many different games would you like to order?");
+         String num = in.readLine();
+         boolean validNum = validateInteger(num);
+         while(!validNum) {
+            System.out.println("Invalid input");
+            System.out.println("How many different games would you like to order?");
+            num = in.readLine();
+            validNum = validateInteger(num);
+         }
+         int numGames = Integer.parseInt(num);
+
+         // retrieve gameIDs and number of copies for rental order; only the
+         // format is checked here, existence is checked for all games at once
+         List<String> gameIDs = new ArrayList<>();
+         List<Integer> numCopies = new ArrayList<>();
+         for (int i = 0; i < numGames; i++) {
+            gameIDs.add(inputGameIDFormat(esql));
+            numCopies.add(inputCopies());
+         }
+
+         // resolve every game in one lookup, keyed by gameID; re-prompt for the ones not found
+         Map<String, CatalogCache.Game> found = esql._catalog.getAll(gameIDs);
+         for (int i = 0; i < numGames; i++) {
+            while (!found.containsKey(gameIDs.get(i))) {
+               System.out.println("Invalid gameID: " + gameIDs.get(i));
+               gameIDs.set(i, inputGameIDFormat(esql));
+               found.putAll(esql._catalog.getAll(gameIDs.subList(i, i + 1)));
+            }
+         }
+
+         // merge repeated games and calculate the total price in exact cents
+         Map<String, Integer> lines = new LinkedHashMap<>();
+         for (int i = 0; i < numGames; i++) {
+            lines.merge(gameIDs.get(i), numCopies.get(i), Integer::sum);
+         }
+         long totalPrice = 0;
+         Integer totalCopies = 0;
+         for (Map.Entry<String, Integer> line : lines.entrySet()) {
+            totalPrice += line.getValue() * found.get(line.getKey()).priceCents;
+            totalCopies += line.getValue();
+         }
+
+         // summarize rental order
+         System.out.println("\nItems in Order");
+         System.out.println("--------------");
+         System.out.println("gameID  \tnumCopies\tPrice\tName");
+         for (Map.Entry<String, Integer> line : lines.entrySet()) {
+            CatalogCache.Game game = found.get(line.getKey());
+            System.out.println(line.getKey() + "\t    " + line.getValue() + "\t\t" + Money.format(game.priceCents)
+                               + "\t" + game.gameName);
+         }
+         System.out.println("Total: numGames = " + lines.size() + ", totalCopies = " + totalCopies);
+         System.out.println("Total Cost: $" + Money.format(totalPrice));
+
+
+         boolean validConfirm = false;
+         while(!validConfirm){
+            System.out.println("Please confirm order (y/n): ");
+            String confirm = in.readLine();
+            switch (confirm) {
+               case "y": validConfirm = true; break;
+               case "n": System.out.println("Order canceled\nReturning to Main Menu...\n"); return;
+
+               default: System.out.println("Invalid input");
+            }
+
+         }
+
+         // write the order, its tracking info and its games atomically
+         String rentalID = submitOrder(esql, user, gameIDs, numCopies, totalPrice);
+         System.out.println("Rental order id: " + rentalID);
+         System.out.println("Order placed successfully\n");
+
+         List<Recommender.Recommendation> recommended =
+            esql._recommender.recommend(lines.keySet(), Recommender.DEFAULT_LIMIT);
+         if (!recommended.isEmpty()) {
+            System.out.println("Customers who rented these games also rented:");
+            printRecommendations(esql, recommended);
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void viewAllOrders(GameRental esql, String user) {
+      try{
+         System.out.println("You have selected: View Full Rental Order History");
+         System.out.println("Retrieving all orders...\n");
+         // one page at a time, newest first, through the (login, orderTimestamp) index
+         OrderHistory history = new OrderHistory(user);
+         history.firstPage(esql);
+         boolean showHistory = true;
+         while (showHistory) {
+            System.out.println("\nORDER HISTORY");
+            System.out.println("-------------");
+            System.out.println("1. Next Page (older orders)");
+            System.out.println("2. Previous Page (newer orders)");
+            System.out.println("9. Return to Main Menu");
+            switch (readChoice()) {
+               case 1: history.nextPage(esql); break;
+               case 2: history.previousPage(esql); break;
+
+               case 9: showHistory = false; break;
+               default: System.out.println("Unrecognized choice!");
+            }
+         }
+         System.out.println("\n");
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void viewRecentOrders(GameRental esql, String user) {
+      try{
+         System.out.println("You have selected: View Past 5 Rental Orders");
+         System.out.println("Retrieving Past 5 Orders...\n");
+         new OrderHistory(user, 5).showLatest(esql);
+         System.out.println("\n");
+      }
+      catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void viewOrderInfo(GameRental esql, String user) {
+      try{
+         System.out.println("You have selected: View Rental Order Information");
+         System.out.println("Please enter rental order id (gamerentalorder0000): ");
+         String rentalOrderID = in.readLine();
+         boolean validRental = validateRentalID(esql, rentalOrderID, user);
+         while(!validRental) {
+            System.out.println("Invalid rental order id");
+            System.out.println("Please enter rental order id (gamerentalorder0000): ");
+            rentalOrderID = in.readLine();
+            validRental = validateRentalID(esql, rentalOrderID, user);
+         }
+
+         System.out.println("Retrieving order details...\n");
+         String orderDet = "SELECT r.orderTimestamp, r.dueDate, r.totalPrice, t.trackingID, g.gameID, g.unitsOrdered " +
+                 "FROM RentalOrder r, GamesInOrder g, TrackingInfo t " +
+                 "WHERE r.rentalOrderID = t.rentalOrderID AND r.orderTimestamp = t.orderTimestamp AND " +
+                 "r.rentalOrderID = g.rentalOrderID AND r.orderTimestamp = g.orderTimestamp AND " +
+                 "r.rentalOrderID = ? AND r.login = ?";
+         // bound every table by the order's month so each reads only that month's partition
+         Timestamp[] month = esql._ids.orderMonth(rentalOrderID);
+         TypedResult result;
+         if (month == null) {
+            result = esql.executeQueryTyped(orderDet, rentalOrderID, user);
+         }
+         else {
+            orderDet += " AND r.orderTimestamp >= ? AND r.orderTimestamp < ? AND g.orderTimestamp >= ? AND g.orderTimestamp < ?" +
+                    " AND t.orderTimestamp >= ? AND t.orderTimestamp < ?";
+            result = esql.executeQueryTyped(orderDet, rentalOrderID, user, month[0], month[1], month[0], month[1],
+                                            month[0], month[1]);
+         }
+         TypedResult.Row order = result.row(0);
+         System.out.println("Order timestamp: " + order.getString(0));
+         System.out.println("Due date: " + order.getString(1));
+         System.out.println("Total Price: $" + Money.format(order.getCents(2)));
+         System.out.println("Tracking id: " + order.getString(3));
+         System.out.println("gameID  \tNumCopies");
+
+         for(int i = 0; i < result.size(); i++) {
+            order.at(i);
+            System.out.println(order.getString(4) + "\t    " + order.getInt(5));
+         }
+         System.out.println("\n");
+      }
+      catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void viewTrackingInfo(GameRental esql, String user) {
+      try{
+         System.out.println("You have selected: View Tracking Information");
+         System.out.println("Please enter tracking id (trackingid0000): ");
+         String trackingID = in.readLine();
+         boolean validTracking = validateTrackingID(esql, trackingID);
+         while (!validTracking) {
+            System.out.println("Invalid tracking id");
+            System.out.println("Please enter tracking id (trackingid0000): ");
+            trackingID = in.readLine();
+            validTracking = validateTrackingID(esql, trackingID);
+         }
+
+         System.out.println("Retrieving tracking details...\n");
+         String trackInfo = "SELECT t.courierName, t.rentalOrderID, t.currentLocation, t.status, t.lastUpdateDate, t.additionalComments "  +
+                 "FROM TrackingInfo t JOIN RentalOrder r ON r.rentalOrderID = t.rentalOrderID AND r.orderTimestamp = t.orderTimestamp "  +
+                 "WHERE t.trackingID = ? AND r.login = ?";
+         Timestamp[] month = esql._ids.trackingMonth(trackingID);
+         TypedResult.Row result;
+         if (month == null) {
+            result = esql.executeQueryTyped(trackInfo, trackingID, user).row(0);
+         }
+         else {
+            trackInfo += " AND t.orderTimestamp >= ? AND t.orderTimestamp < ? AND r.orderTimestamp >= ? AND r.orderTimestamp < ?";
+            result = esql.executeQueryTyped(trackInfo, trackingID, user, month[0], month[1], month[0], month[1]).row(0);
+         }
+         System.out.println("Courier name: " + result.getString(0));
+         System.out.println("Rental order id: " + result.getString(1));
+         System.out.println("Current location: " + result.getString(2));
+         System.out.println("Status: " + result.getString(3));
+         System.out.println("Last update date: " + result.getString(4));
+         System.out.println("Additional comments: " + result.getString(5) + "\n");
+      }
+      catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void updateTrackingInfo(GameRental esql, UserSession employee) {
+      try{
+         System.out.println("You have selected: Update Tracking Information");
+         if (checkUserRole(esql, employee, "customer")) {
+            System.out.println("You are unauthorized to update tracking information");
+            System.out.println("Returning to Main Menu...\n");
+            return;
+         }
+         System.out.println("Please enter tracking id (trackingid0000): ");
+         String trackingID = in.readLine();
+         boolean validTracking = validateTrackingID(esql, trackingID);
+         while(!validTracking) {
+            System.out.println("Invalid tracking id");
+            System.out.println("Please enter tracking id (trackingid0000): ");
+            trackingID = in.readLine();
+            validTracking = validateTrackingID(esql, trackingID);
+         }
+         System.out.println("Please enter status: ");
+         String status = in.readLine();
+         System.out.println("Please enter current location: ");
+         String currentLocation = in.readLine();
+         System.out.println("Please enter courier name: ");
+         String courierName = in.readLine();
+         System.out.println("Please enter additional comments: ");
+         String additionalComments = in.readLine();
+         System.out.println("Updating Tracking Info");
+         DateTimeFormatter f = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+         Timestamp updateTS = Timestamp.valueOf(f.format(LocalDateTime.now()));
+         String updateInfo = "UPDATE TrackingInfo "  +
+                 "SET status = ?, currentLocation = ?, courierName = ?, additionalComments = ?, lastUpdateDate = ? " +
+                 "WHERE trackingID = ?";
+         Timestamp[] month = esql._ids.trackingMonth(trackingID);
+         if (month == null) {
+            esql.executeUpdate(updateInfo, status, currentLocation, courierName, additionalComments, updateTS, trackingID);
+         }
+         else {
+            updateInfo += " AND orderTimestamp >= ? AND orderTimestamp < ?";
+            esql.executeUpdate(updateInfo, status, currentLocation, courierName, additionalComments, updateTS, trackingID,
+                               month[0], month[1]);
+         }
+         System.out.println("Successfully updated tracking information of " + trackingID);
+      }
+      catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void updateCatalog(GameRental esql, UserSession manager) {
+      try {
+         if (!checkUserRole(esql, manager, "manager")) {
+            System.out.println("You are unauthorized to update the catalog");
+            System.out.println("Returning to Main Menu...\n");
+            return;
+         }
+
+         boolean updateCatalog = true;
+         while(updateCatalog) {
+            System.out.println(
+                    "\n\n*******************************************************\n" +
+                            "              Update Game Catalog      	               \n" +
+                            "*******************************************************\n");
+
+            System.out.println("CATALOG OPTIONS");
+            System.out.println("---------------");
+            System.out.println("1. Change Game Name");
+            System.out.println("2. Change Genre");
+            System.out.println("3. Change Price");
+            System.out.println("4. Change Description");
+            System.out.println("5. Change Image URL");
+            System.out.println("6. Add Game to Catalog");
+            System.out.println("7. Remove Game from Catalog");
+            System.out.println("9. Return to Main Menu");
+
+
+            switch(readChoice()){
+               case 1: changeGameName(esql); break;
+               case 2: changeGenre(esql); break;
+               case 3: changePrice(esql); break;
+               case 4: changeDescription(esql); break;
+               case 5: changeImage(esql); break;
+               case 6: addGame(esql); break;
+               case 7: removeGame(esql); break;
+
+               case 9: updateCatalog = false; break;
+               default: System.out.println("Unrecognized choice!");
+            }
+         }
+
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void updateUser(GameRental esql, UserSession manager) {
+      try{
+         if (!checkUserRole(esql, manager, "manager")) {
+            System.out.println("You are unauthorized to update other users");
+            System.out.println("Returning to Main Menu...\n");
+            return;
+         }
+         System.out.println("Username should not match current user");
+         System.out.println("Please enter username of profile to change: ");
+         String user = in.readLine();
+         boolean validUser = validateUser(esql, user) && !user.equals(manager.getLogin());
+         while(!validUser) {
+            System.out.println("Invalid user");
+            System.out.println("Please enter username of profile to change: ");
+            user = in.readLine();
+            validUser = validateUser(esql, user);
+         }
+
+
+         boolean updateMenu = true;
+         while (updateMenu) {
+            System.out.println(
+                    "\n\n*******************************************************\n" +
+                            "              Update User      	               \n" +
+                            "*******************************************************\n");
+
+            System.out.println("PROFILE SETTINGS");
+            System.out.println("----------------");
+
+            System.out.println("1. Change Password");
+            System.out.println("2. Change Phone Number");
+            System.out.println("3. Change Favorite Games");
+            System.out.println("4. Change User Role");
+            System.out.println("5. Change Username");
+            System.out.println("6. Change Different User");
+            System.out.println("9. Return to Main Menu");
+
+            switch (readChoice()) {
+               case 1: changePassword(esql, user); break;
+               case 2: changePhoneNumber(esql, user); break;
+               case 3: changeFavoriteGames(esql, user); break;
+               case 4: changeRole(esql, user); break;
+               case 5: user = changeUsername(esql, user); break;
+               case 6: user = changeDifferentUser(esql, user); break;
+
+
+               case 9:
+                  updateMenu = false; break;
+
+               default:
+                  System.out.println("Unrecognized choice!");
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void managerReports(GameRental esql, UserSession manager) {
+      try {
+         if (!checkUserRole(esql, manager, "manager")) {
+            System.out.println("You are unauthorized to view reports");
+            System.out.println("Returning to Main Menu...\n");
+            return;
+         }
+
+         boolean showReports = true;
+         while(showReports) {
+            System.out.println(
+                    "\n\n*******************************************************\n" +
+                            "              Manager Reports      	               \n" +
+                            "*******************************************************\n");
+
+            System.out.println("REPORTS");
+            System.out.println("-------");
+            System.out.println("1. Sales by Genre");
+            System.out.println("2. Rentals per Month");
+            System.out.println("3. Top Games");
+            System.out.println("4. Top Customers");
+            System.out.println("5. Rebuild Sales Summaries");
+            System.out.println("9. Return to Main Menu");
+
+            switch(readChoice()){
+               case 1: {
+                  Date[] days = inputDateRange(30);
+                  if (esql._sales.printGenreReport(days[0], days[1]) == 0) {
+                     System.out.println("No sales in that period.");
+                  }
+                  break;
+               }
+               case 2: {
+                  Date[] days = inputDateRange(365);
+                  if (esql._sales.printMonthReport(days[0], days[1]) == 0) {
+                     System.out.println("No sales in that period.");
+                  }
+                  break;
+               }
+               case 3: esql._sales.printGameReport(REPORT_ROWS); break;
+               case 4: esql._sales.printUserReport(REPORT_ROWS); break;
+               case 5:
+                  System.out.println("Rebuilding sales summaries...");
+                  long orders = esql._sales.rebuild(SalesSummarizer.DEFAULT_THREADS);
+                  System.out.println("Summarized " + orders + " order(s)");
+                  break;
+
+               case 9: showReports = false; break;
+               default: System.out.println("Unrecognized choice!");
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   // rows shown by the top games and top customers reports
+   private static final int REPORT_ROWS = 10;
+   // asks for the first and last day of a report, by default the last days days up to today
+   public static Date[] inputDateRange(int days) throws IOException {
+      LocalDate today = LocalDate.now();
+      LocalDate first = inputDate("first day", today.minusDays(days - 1));
+      LocalDate last = inputDate("last day", today);
+      while (last.isBefore(first)) {
+         System.out.println("The last day is before the first day");
+         last = inputDate("last day", today);
+      }
+      return new Date[] { Date.valueOf(first), Date.valueOf(last) };
+   }
+   public static LocalDate inputDate(String name, LocalDate defaultDay) throws IOException {
+      while (true) {
+         System.out.println("Please enter " + name + " (yyyy-mm-dd, Enter for " + defaultDay + "): ");
+         String day = in.readLine();
+         if (day == null || day.trim().isEmpty()) {
+            return defaultDay;
+         }
+         try {
+            return LocalDate.parse(day.trim());
+         }catch (java.time.format.DateTimeParseException e) {
+            System.out.println("Invalid date");
+         }
+      }
+   }
+
+   // input validation
+   public static boolean validatePhoneNumber(String phone) {
+      if (phone.length() == 12) { // correct phone number length
+         for(int i = 0; i < 12; i++) { // correct phone number formatting
+            if (i == 3 || i == 7) { // check hyphens are in correct locations
+               if (phone.charAt(i) != '-') {
+                  return false;
+               }
+            }
+            else {
+               if (!Character.isDigit(phone.charAt(i))) {
+                  return false;
+               }
+            }
+         }
+         return true;
+      }
+      return false;
+   }
+   public static boolean validateGameID(GameRental esql, String gameID){
+      try{
+         if (IdAllocator.hasIdFormat(gameID, GAME_PREFIX)) {
+            // check if gameID exists in the in-memory ID index
+            return esql._ids.hasGame(gameID);
+         }
+         return false;
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return false;
+   }
+   public static boolean validateRentalID (GameRental esql, String rentalOrderID, String user) {
+      try{
+         if (IdAllocator.hasIdFormat(rentalOrderID, ORDER_PREFIX)) {
+            // check if the order exists and belongs to user in the in-memory ID index
+            return esql._ids.isOrderOf(rentalOrderID, user);
+         }
+         return false;
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return false;
+   }
+   public static boolean validateTrackingID(GameRental esql, String trackingID) {
+      try{
+         if (IdAllocator.hasIdFormat(trackingID, TRACKING_PREFIX)) {
+            // check if trackingID exists in the in-memory ID index
+            return esql._ids.hasTracking(trackingID);
+         }
+         return false;
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return false;
+   }
+   public static boolean validateUser(GameRental esql, String user) {
+      try{
+         String query = "SELECT EXISTS (SELECT 1 FROM Users WHERE login = ? LIMIT 1)";
+         List<List<String>> result = esql.executeQueryAndReturnResult(query, user);
+         return result.get(0).get(0).contains("t");
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return false;
+   }
+   public static boolean validateInteger(String string) {
+      if (!string.isEmpty()) {
+         for (int i = 0; i < string.length(); i++) {
+            if (!Character.isDigit(string.charAt(i))) {
+               return false;
+            }
+         }
+         return true;
+      }
+      return false;
+   }
+   public static boolean validateDouble(String string) {
+      if (!string.contains(".")) {
+         return validateInteger(string);
+      }
+      int numDecimals = 0;
+      for (int i = 0; i < string.length(); i++) {
+         if (string.charAt(i) == '.') {
+            numDecimals += 1;
+            if (numDecimals > 1) {
+               return false;
+            }
+         }
+         else if(!Character.isDigit((string.charAt(i)))) {
+            return false;
+         }
+      }
+      return true;
+   }
+   public static boolean retryInput() {
+      try {
+         while (true) {
+            System.out.println("Would you like to try again? (y/n): ");
+            String retry = in.readLine();
+            switch (retry) {
+               case "y": return true;
+               case "n": return false;
+
+               default: System.out.println("Invalid input");
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return true;
+   }
+
+   // functions for updating profile
+   public static void changePassword(GameRental esql, String user) {
+      try{
+         System.out.println("You have selected: Change Password\n");
+
+         boolean pwMatch = false;
+         while (!pwMatch) {
+            System.out.println("Passwords should be no longer than 30 characters.");
+            System.out.println("Please enter new password: ");
+            String newPW1 = in.readLine();
+            while(newPW1.length() > 30) {
+               System.out.println("Invalid password");
+               System.out.println("Please enter new password");
+               newPW1 = in.readLine();
+            }
+
+            System.out.println("Please confirm password: ");
+            String newPW2 = in.readLine();
+
+            // new password is confirmed, update in database
+            if (newPW1.equals(newPW2)) {
+               pwMatch = true;
+               System.out.println("Updating password...");
+               String update = "UPDATE Users SET password = ? WHERE login = ?";
+               esql.executeUpdate(update, newPW1, user);
+               esql._sessions.invalidate(user);
+
+               System.out.println("Password changed successfully");
+            }
+            // allow user to retry changing password
+            else {
+               System.out.println("Passwords do not match!");
+
+               // let user cancel
+               boolean validRetry = retryInput();
+               if (!validRetry) {
+                  System.out.println("Returning to Profile Settings...\n");
+                  return;
+               }
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void changePhoneNumber(GameRental esql, String user) {
+      try{
+         System.out.println("You have selected: Change Phone Number\n");
+
+         boolean pnMatch = false;
+         while (!pnMatch) {
+            System.out.println("Please enter new phone number (123-456-7890): ");
+            String phone1 = in.readLine();
+            boolean validPN = validatePhoneNumber(phone1);
+            while (!validPN) {
+               System.out.println("Invalid phone number");
+               System.out.println("Please enter your phone number (123-456-7890): ");
+               phone1 = in.readLine();
+               validPN = validatePhoneNumber(phone1);
+            }
+            System.out.println("Please confirm your phone number: ");
+            String phone2 = in.readLine();
+            validPN = validatePhoneNumber(phone2);
+            while (!validPN) {
+               System.out.println("Invalid phone number");
+               System.out.println("Please confirm your phone number: ");
+               phone2 = in.readLine();
+               validPN = validatePhoneNumber(phone2);
+            }
+
+            // new phone number confirmed, update in database
+            if (phone1.equals(phone2)) {
+               pnMatch = true;
+               String countryCode = "+1-";
+               System.out.println("Updating phone number...");
+               String update = "UPDATE Users SET phoneNum = ? WHERE login = ?";
+               esql.executeUpdate(update, countryCode + phone1, user);
+               esql._sessions.invalidate(user);
+
+               System.out.println("Phone number changed successfully");
+               System.out.println("New phone number: " + countryCode + phone1);
+
+            }
+            // allow user to retry changing password
+            else {
+               System.out.println("Phone numbers do not match!");
+
+               // let user cancel
+               boolean validRetry = retryInput();
+               if (!validRetry) {
+                  System.out.println("Returning to Profile Settings...\n");
+                  return;
+               }
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void changeFavoriteGames(GameRental esql, String user) {
+      try{
+         System.out.println("You have selected: Change Favorite Games\n");
+
+         System.out.println("Please enter total number of favorite games: ");
+         String numStr = in.readLine();
+         boolean validNum = validateInteger(numStr);
+         while(!validNum) {
+            System.out.println("Invalid input");
+            System.out.println("Please enter total number of favorite games: ");
+            numStr = in.readLine();
+            validNum = validateInteger(numStr);
+         }
+         int numGames = Integer.parseInt(numStr);
+
+         String games = "";
+         for (int i = 0; i < numGames; i++) {
+            System.out.println("\nPlease enter game: ");
+            games += in.readLine();
+            if (i < numGames - 1) {
+               games += ", ";
+            }
+         }
+
+         System.out.println("Updating favorite games...");
+         String update = "UPDATE Users SET favGames = ? WHERE login = ?";
+         esql.executeUpdate(update, games, user);
+         esql._sessions.invalidate(user);
+
+         System.out.println("Favorite games changed successfully");
+         System.out.println("Favorite Games: " + games);
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void changeRole(GameRental esql, String user) {
+      try{
+         System.out.println("You have selected: Change User Role\n");
+
+         String newRole = null;
+         System.out.println("USER ROLES");
+         System.out.println("----------");
+         System.out.println("1. Customer");
+         System.out.println("2. Employee");
+         System.out.println("3. Manager");
+         System.out.println("4. Cancel Change");
+
+         switch(readChoice()) {
+            case 1: newRole = "customer"; break;
+            case 2: newRole = "employee"; break;
+            case 3: newRole = "manager"; break;
+            case 4: System.out.println("Returning to Profile Settings...\n"); return;
+
+            default: System.out.println("Unrecognized choice!\nReturning to Profile Settings...\n"); return;
+         }
+         String update = "UPDATE Users SET role = ? WHERE login = ?";
+         esql.executeUpdate(update, newRole, user);
+         esql._sessions.invalidate(user);
+         System.out.println("Successfully changed role of " + user);
+         System.out.println("Role changed to " + newRole);
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static String changeUsername(GameRental esql, String user) {
+      try {
+         System.out.println("You have selected: Change Username");
+
+         while(true) {
+            System.out.println("Usernames should be no longer than 50 characters");
+            System.out.println("Please enter new username: ");
+            String newUser1 = in.readLine();
+            while(true) { // prompt user until valid username is entered
+               if (newUser1.length() <= 50) {
+                  boolean userTaken = validateUser(esql, newUser1);
+                  if (!userTaken) { // username is available to register
+                     break;
+                  }
+               }
+               System.out.println("Invalid username");
+
+               System.out.println("Please enter new username: ");
+               newUser1 = in.readLine();
+            }
+
+            System.out.println("Please confirm new username: ");
+            String newUser2 = in.readLine();
+
+            if (newUser1.equals(newUser2)) {
+               String update = "UPDATE Users SET login = ? WHERE login = ?";
+               esql.executeUpdate(update, newUser1, user);
+               esql._sessions.rename(user, newUser1);
+               esql._ids.renameUser(user, newUser1);
+               System.out.println("Successfully changed username");
+               System.out.println("Username changed from " + user + " to " + newUser1);
+               return newUser1;
+            }
+            else {
+               System.out.println("Usernames do not match");
+               boolean validRetry = retryInput();
+               if (!validRetry) {
+                  System.out.println();
+                  return user;
+               }
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return user;
+   }
+   public static String changeDifferentUser(GameRental esql, String user) {
+      try{
+         System.out.println("You have selected: Change Different User");
+
+         System.out.println("Please enter new user to change: ");
+         String newUser = in.readLine();
+         boolean validUser = validateUser(esql, newUser);
+
+         while(!validUser) {
+            System.out.println("Invalid user");
+            System.out.println("Please enter new user to change: ");
+            newUser = in.readLine();
+            validUser = validateUser(esql, newUser);
+         }
+         System.out.println("Now changing profile of " + newUser);
+         return newUser;
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return user;
+   }
+
+   // functions for changing catalog filters
+   public static void filterCatalog(GameRental esql, CatalogBrowser browser, String genre, Double price, String sort) {
+      try{
+         // show the first page; Next/Previous Page continue from here
+         browser.setFilters(genre, price, sort);
+         browser.firstPage(esql);
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static String filterGenre(){
+      try{
+         System.out.println("Only 1 genre can be viewed at a time.");
+         System.out.println("Please enter genre: ");
+         String genre = in.readLine();
+         System.out.println("Returning to Catalog Options...\n");
+
+         return genre;
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return null;
+   }
+   public static Double filterPrice(){
+      try{
+         System.out.println("Please enter maximum price: ");
+         String priceStr = in.readLine();
+         boolean validPrice = validateDouble(priceStr);
+         while(!validPrice) {
+            System.out.println("Invalid input");
+            System.out.println("Please enter maximum price: ");
+            priceStr = in.readLine();
+            validPrice = validateDouble(priceStr);
+         }
+         Double price = Double.parseDouble(priceStr);
+         System.out.println("Returning to Catalog Options...\n");
+
+         return price;
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return null;
+   }
+   public static String changeSort(String sort){
+      try{
+         if (sort.equals("DESC")) {
+            System.out.println("Sorting by: Price Ascending");
+            return "ASC";
+         }
+         else {
+            System.out.println("Sorting by: Price Descending");
+            return "DESC";
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return null;
+   }
+
+   // functions for creating rental order and tracking info
+
+   /**
+    * Places a rental order with one call to the place_order database
+    * function, which inserts the RentalOrder, TrackingInfo and GamesInOrder
+    * rows in a single statement.  Either the whole order is written or
+    * nothing is.  A game listed more than once is written as one row with
+    * the copies added up.  place_order charges the catalog prices it reads
+    * and refuses the order when they no longer add up to totalPrice; the
+    * games are then dropped from the catalog cache so the next quote reads
+    * the current prices.
+    *
+    * @param esql the database
+    * @param user login of the customer
+    * @param gameIDs the games ordered
+    * @param numCopies copies of each game, parallel to gameIDs
+    * @param totalPrice the order total in cents the customer confirmed
+    * @return the rentalOrderID of the new order
+    * @throws java.sql.SQLException when the order could not be written
+    */
+   public static String submitOrder(GameRental esql, String user, List<String> gameIDs,
+                                    List<Integer> numCopies, long totalPrice) throws SQLException {
+      Map<String, Integer> lines = new LinkedHashMap<>();
+      for (int i = 0; i < gameIDs.size(); i++) {
+         lines.merge(gameIDs.get(i), numCopies.get(i), Integer::sum);
+      }
+      String games = String.join(",", lines.keySet());
+      StringBuilder copies = new StringBuilder();
+      for (Integer c : lines.values()) {
+         if (copies.length() > 0) {
+            copies.append(',');
+         }
+         copies.append(c);
+      }
+
+      DateTimeFormatter f = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+      Timestamp orderTS = Timestamp.valueOf(LocalDateTime.now().format(f));
+      Timestamp dueDate = Timestamp.valueOf(LocalDate.now().plusDays(30).atStartOfDay());
+      String placeOrder = "SELECT place_order(?, ?, ?, ?, ?, ?, ?, ?)";
+      String rentalID = esql._orderIds.nextId();
+      String trackingID = esql._trackingIds.nextId();
+      try {
+         esql.executeQueryAndReturnResult(placeOrder, rentalID, trackingID, user, games,
+                                          copies.toString(), Money.toBigDecimal(totalPrice), orderTS, dueDate);
+      }catch (SQLException e) {
+         // the cached prices or games may be stale; read them again next time
+         esql._catalog.evict(lines.keySet());
+         throw e;
+      }
+      esql._ids.addOrder(rentalID, trackingID, user, orderTS);
+      esql._recommender.recordOrder(orderTS, lines.keySet());
+      return rentalID;
+   }
+   public static String createOrderID (GameRental esql) {
+      try {
+         // taken from this process's reserved block; no round trip per order
+         return esql._orderIds.nextId();
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return null;
+   }
+   public static String createTrackingID (GameRental esql) {
+      try {
+         return esql._trackingIds.nextId();
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return null;
+   }
+   // functions for editing catalog
+   public static boolean checkUserRole(GameRental esql, UserSession user, String role) {
+      try {
+         // answered from the row read at login unless it was invalidated
+         return user.hasRole(role);
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return false;
+   }
+   public static String inputGameIDFormat(GameRental esql) throws IOException, SQLException {
+      System.out.println("Please enter gameID (game0000) or a game name to search for: ");
+      String gameID = in.readLine();
+      while (!IdAllocator.hasIdFormat(gameID, GAME_PREFIX)) {
+         // anything else is taken as a search, so the customer can look the ID up
+         if (gameID == null || printSearchResults(esql, gameID) == 0) {
+            System.out.println("Invalid gameID");
+         }
+         System.out.println("Please enter gameID (game0000) or a game name to search for: ");
+         gameID = in.readLine();
+      }
+      return gameID;
+   }
+   public static void searchCatalog(GameRental esql) {
+      try{
+         System.out.println("Please enter a game name, platform or publisher: ");
+         String query = in.readLine();
+         if (query == null || query.trim().isEmpty()) {
+            System.out.println("Nothing to search for.");
+            return;
+         }
+         if (printSearchResults(esql, query) == 0) {
+            System.out.println("No games match \"" + query.trim() + "\".");
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   private static final String[] RECOMMENDATION_COLUMNS = { "gameID", "gameName", "genre", "price", "rentedTogether" };
+   private static final boolean[] RECOMMENDATION_NUMERIC_COLUMNS = { false, false, false, true, true };
+
+   // prints recommendations with their catalog rows, skipping games removed since
+   public static void printRecommendations(GameRental esql, List<Recommender.Recommendation> recommended)
+      throws IOException, SQLException {
+      List<String> gameIDs = new ArrayList<>();
+      for (Recommender.Recommendation recommendation : recommended) {
+         gameIDs.add(recommendation.gameID);
+      }
+      Map<String, CatalogCache.Game> games = esql._catalog.getAll(gameIDs);
+      // a short list read from memory, printed without paging
+      ResultRenderer renderer = new ResultRenderer(ResultRenderer.DEFAULT_MODE, 0);
+      try {
+         renderer.begin(RECOMMENDATION_COLUMNS, RECOMMENDATION_NUMERIC_COLUMNS);
+         for (Recommender.Recommendation recommendation : recommended) {
+            CatalogCache.Game game = games.get(recommendation.gameID);
+            if (game != null) {
+               renderer.row(new String[] { game.gameID, game.gameName, game.genre, Money.format(game.priceCents),
+                                           Integer.toString(recommendation.score) });
+            }
+         }
+      }finally{
+         renderer.end();
+      }//end try
+      System.out.println();
+   }
+   private static final String[] SEARCH_COLUMNS = { "gameID", "gameName", "genre", "price", "description" };
+   private static final boolean[] SEARCH_NUMERIC_COLUMNS = { false, false, false, true, false };
+
+   // prints the best matches of query, best first, and returns how many were printed
+   public static int printSearchResults(GameRental esql, String query) throws IOException, SQLException {
+      List<CatalogSearch.Hit> hits = esql._search.search(query, CatalogSearch.DEFAULT_LIMIT);
+      Map<String, CatalogCache.Game> games = new HashMap<>();
+      if (!hits.isEmpty()) {
+         List<String> gameIDs = new ArrayList<>();
+         for (CatalogSearch.Hit hit : hits) {
+            gameIDs.add(hit.gameID);
+         }
+         games = esql._catalog.getAll(gameIDs);
+      }
+      // a short list read from memory, printed without paging
+      ResultRenderer renderer = new ResultRenderer(ResultRenderer.DEFAULT_MODE, 0);
+      int printed = 0;
+      try {
+         for (CatalogSearch.Hit hit : hits) {
+            CatalogCache.Game game = games.get(hit.gameID);
+            if (game == null) {
+               continue; // removed by another client since the index was built
+            }
+            if (!renderer.hasBegun()) {
+               renderer.begin(SEARCH_COLUMNS, SEARCH_NUMERIC_COLUMNS);
+            }
+            renderer.row(new String[] { game.gameID, game.gameName, game.genre, Money.format(game.priceCents),
+                                        game.description });
+            printed++;
+         }
+      }finally{
+         renderer.end();
+      }//end try
+      return printed;
+   }
+   public static int inputCopies() throws IOException {
+      System.out.println("Please enter number of copies: ");
+      String copies = in.readLine();
+      boolean validCopies = validateInteger(copies);
+      while(!validCopies) {
+         System.out.println("Invalid input");
+         System.out.println("Please enter number of copies: ");
+         copies = in.readLine();
+         validCopies = validateInteger(copies);
+      }
+      return Integer.parseInt(copies);
+   }
+   public static String inputGameID(GameRental esql) {
+      try{
+         System.out.println("Please enter gameID (game0000): ");
+         String gameID = in.readLine();
+
+         boolean validGame = validateGameID(esql, gameID);
+         while (!validGame) {
+            System.out.println("Invalid gameID");
+            System.out.println("Please enter gameID (game0000): ");
+            gameID = in.readLine();
+            validGame = validateGameID(esql, gameID);
+         }
+         return gameID;
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return null;
+   }
+   public static void changeGameName(GameRental esql) {
+      try {
+         System.out.println("You have selected: Change Game Name");
+         String gameID = inputGameID(esql);
+
+         boolean namesMatch = false;
+         while(!namesMatch) {
+
+            System.out.println("Please enter new game name: ");
+            String name1 = in.readLine();
+            System.out.println("Please confirm new game name: ");
+            String name2 = in.readLine();
+
+            if(name1.equals(name2)) {
+               namesMatch = true;
+
+               System.out.println("Updating game name...");
+               String update = "UPDATE Catalog SET gameName = ? WHERE gameID = ?";
+               esql.executeUpdate(update, name1, gameID);
+               esql._catalog.refresh(gameID);
+               esql._search.update(gameID);
+
+
+               System.out.println("Game name changed successfully");
+               System.out.println("Name of " + gameID + " changed to " + name1);
+            }
+            else {
+               System.out.println("Game names do not match!");
+
+               // let user cancel
+               boolean validRetry = retryInput();
+               if (!validRetry) {
+                  System.out.println("Returning to Catalog Settings...\n");
+                  return;
+               }
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void changeGenre(GameRental esql) {
+      try {
+         System.out.println("You have selected Change Genre");
+
+         String gameID = inputGameID(esql);
+         boolean genresMatch = false;
+         while(!genresMatch) {
+
+            System.out.println("Please enter new game genre: ");
+            String genre1 = in.readLine();
+            System.out.println("Please confirm new game genre: ");
+            String genre2 = in.readLine();
+
+            if(genre1.equals(genre2)) {
+               genresMatch = true;
+
+               System.out.println("Updating game genre...");
+               String update = "UPDATE Catalog SET genre = ? WHERE gameID = ?";
+               esql.executeUpdate(update, genre1, gameID);
+               esql._catalog.refresh(gameID);
+
+
+               System.out.println("Game name changed successfully");
+               System.out.println("Genre of " + gameID + " changed to " + genre1);
+            }
+            else {
+               System.out.println("Game genres do not match!");
+
+               // let user cancel
+               boolean validRetry = retryInput();
+               if (!validRetry) {
+                  System.out.println("Returning to Catalog Settings...\n");
+                  return;
+               }
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void changePrice(GameRental esql) {
+      try {
+         System.out.println("You have selected: Change Price");
+
+         String gameID = inputGameID(esql);
+         boolean pricesMatch = false;
+         while(!pricesMatch) {
+
+            System.out.println("Please enter new game price: ");
+            String price = in.readLine();
+            boolean validPrice = validateDouble(price);
+            while (!validPrice) {
+               System.out.println("Invalid price");
+               System.out.println("Please enter new game price: ");
+               price = in.readLine();
+               validPrice = validateDouble(price);
+            }
+            long price1 = Money.parseCents(price); // truncate to 2 decimal places
+
+            System.out.println("Please confirm new game price: ");
+            price = in.readLine();
+            validPrice = validateDouble(price);
+            while (!validPrice) {
+               System.out.println("Invalid price");
+               System.out.println("Please confirm new game price: ");
+               price = in.readLine();
+               validPrice = validateDouble(price);
+            }
+            long price2 = Money.parseCents(price);
+
+            if (price1 == price2) {
+               pricesMatch = true;
+
+               System.out.println("Updating game genre...");
+               String update = "UPDATE Catalog SET price = ? WHERE gameID = ?";
+               esql.executeUpdate(update, Money.toBigDecimal(price1), gameID);
+               esql._catalog.refresh(gameID);
+
+               System.out.println("Game name changed successfully");
+               System.out.println("Price of " + gameID + " changed to " + Money.format(price1));
+            }
+            else {
+               System.out.println("Game prices do not match!");
+
+               // let user cancel
+               boolean validRetry = retryInput();
+               if (!validRetry) {
+                  System.out.println("Returning to Catalog Settings...\n");
+                  return;
+               }
+            }
+         }
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void changeDescription(GameRental esql) {
+      try {
+         System.out.println("You have selected: Change Description");
+
+         String gameID = inputGameID(esql);
+
+         System.out.println("Please enter game platform: ");
+         String platform = "Platform: " + in.readLine();
+         System.out.println("Please enter game publisher: ");
+         String publisher = "Publisher: "+ in.readLine();
+         String update = "UPDATE Catalog SET description = ? WHERE gameID = ?";
+         esql.executeUpdate(update, platform + "; "+ publisher, gameID);
+         esql._catalog.refresh(gameID);
+         esql._search.update(gameID);
+
+         System.out.println("Successfully changed description");
+         System.out.println("Description changed to:\n" + platform + "\n" + publisher);
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void changeImage(GameRental esql) {
+      try {
+         System.out.println("You have selected: Change Image URL");
+
+         String gameID = inputGameID(esql);
+
+         System.out.println("Please enter image url: ");
+         String url = in.readLine();
+         String update = "UPDATE Catalog SET imageURL = ? WHERE gameID = ?";
+         esql.executeUpdate(update, url, gameID);
+         esql._catalog.refresh(gameID);
+
+         System.out.println("Successfully changed description");
+         System.out.println("Image url changed to: " + url);
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void addGame(GameRental esql) {
+      try{
+         System.out.println("You have selected: Add Game to Catalog");
+
+         System.out.println("Please enter game name: ");
+         String name = in.readLine();
+
+         System.out.println("Please enter game genre: ");
+         String genre = in.readLine();
+
+         System.out.println("Please enter game price: ");
+         String priceStr = in.readLine();
+         boolean validPrice = validateDouble(priceStr);
+         while(!validPrice) {
+            System.out.println("Invalid price");
+            System.out.println("Please enter game price: ");
+            priceStr = in.readLine();
+            validPrice = validateDouble(priceStr);
+         }
+         long price = Money.parseCents(priceStr); // truncate price to 2 decimal places
+
+         System.out.println("Please enter game platform: ");
+         String platform = "Platform: " + in.readLine();
+         System.out.println("Please enter game publisher: ");
+         String publisher = "Publisher: "+ in.readLine();
+
+         System.out.println("Please enter image url: ");
+         String url = in.readLine();
+
+         System.out.println("Summary of new game");
+         System.out.println("Name: " + name);
+         System.out.println("Genre: " + genre);
+         System.out.println("Price: " + Money.format(price));
+         System.out.println("Description: " + platform + "; " + publisher);
+         System.out.println("Image URL: " + url);
+
+         boolean validConfirm = false;
+         while(!validConfirm) {
+            System.out.println("Please confirm new game (y/n): ");
+            String confirm = in.readLine();
+            switch (confirm) {
+               case "y": validConfirm = true; break;
+               case "n": System.out.println("Addition to catalog cancelled\nReturning to Catalog Settings...\n"); return;
+
+               default: System.out.println("Invalid input");
+            }
+         }
+
+         String gameID = createGameID(esql);
+
+         String update = "INSERT INTO Catalog VALUES(?, ?, ?, ?, ?, ?)";
+         esql.executeUpdate(update, gameID, name, genre, Money.toBigDecimal(price),
+                            platform + "; " + publisher, url);
+         esql._catalog.refresh(gameID);
+         esql._ids.addGame(gameID);
+         esql._search.update(gameID);
+
+         System.out.println("Successfully added game to catalog");
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void removeGame(GameRental esql) {
+      try{
+         System.out.println("You have selected: Remove Game from Catalog");
+
+         System.out.println("Please enter gameID to remove: ");
+         String gameID = in.readLine();
+         boolean validID = validateGameID(esql, gameID);
+         while(!validID) {
+            System.out.println("Invalid gameID");
+            System.out.println("Please enter gameID to remove: ");
+            gameID = in.readLine();
+            validID = validateGameID(esql, gameID);
+         }
+         System.out.println("Retrieving game information...");
+         CatalogCache.Game game = esql._catalog.get(gameID);
+         System.out.println("Name: " + game.gameName);
+         System.out.println("Genre: " + game.genre);
+         System.out.println("Price: " + Money.format(game.priceCents));
+         System.out.println("Description: " + game.description);
+
+         boolean validConfirm = false;
+         while(!validConfirm) {
+            System.out.println("Please confirm deletion (y/n): ");
+            String confirm = in.readLine();
+            switch (confirm) {
+               case "y": validConfirm = true; break;
+               case "n": System.out.println("Removal from catalog cancelled\nReturning to Catalog Settings...\n"); return;
+
+               default: System.out.println("Invalid input");
+            }
+         }
+
+         String update = "DELETE FROM Catalog WHERE gameID = ?";
+         esql.executeUpdate(update, gameID);
+         esql._catalog.remove(gameID);
+         esql._ids.removeGame(gameID);
+         esql._search.remove(gameID);
+
+         System.out.println("Successfully removed " + gameID + "from catalog");
+         System.out.println("Returning to Catalog Settings...\n");
+
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static String createGameID(GameRental esql) {
+      try{
+         return esql._gameIds.nextId();
+      }catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+      return null;
+   }
+}//end GameRental
+
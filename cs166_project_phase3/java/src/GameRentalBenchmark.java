@@ -0,0 +1,290 @@
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Throughput and latency benchmarks for the data-access and order paths of
+ * GameRental, run against a live database.
+ *
+ * Each benchmark is warmed up and then measured for a fixed time at every
+ * requested thread count.  Every thread calls the operation in a closed
+ * loop on one shared GameRental, so the connection pool, statement cache
+ * and catalog cache are exercised as they are by concurrent sessions.  With
+ * the bundled driver the statement cache saves client work only; the pool
+ * stats printed at the end show whether any statement was prepared on the
+ * server.
+ * Results go to standard out and, with --csv, are appended to a file so
+ * runs can be compared release over release.
+ *
+ * The order and ID benchmarks write to the database and consume sequence
+ * values, so run them against a throwaway copy loaded from data/.
+ *
+ */
+public class GameRentalBenchmark {
+
+   /**
+    * One benchmarked operation.
+    */
+   interface Operation {
+      /**
+       * @param rnd the calling thread's random source
+       */
+      void run(SplittableRandom rnd) throws Exception;
+   }//end Operation
+
+   private final GameRental esql;
+   private final Map<String, Operation> operations = new LinkedHashMap<String, Operation>();
+
+   // sample keys drawn from the loaded data
+   private String[] gameIDs;
+   private String[] orderIDs;
+   private String[] orderOwners;
+   private String[] trackingIDs;
+   private String[] logins;
+   private String[] genres;
+
+   public GameRentalBenchmark(GameRental esql) throws SQLException {
+      this.esql = esql;
+      loadSamples();
+      defineOperations();
+   }//end GameRentalBenchmark
+
+   private void loadSamples() throws SQLException {
+      gameIDs = column(esql.executeQueryAndReturnResult("SELECT gameID FROM Catalog"), 0);
+      genres = column(esql.executeQueryAndReturnResult("SELECT DISTINCT genre FROM Catalog"), 0);
+      logins = column(esql.executeQueryAndReturnResult("SELECT login FROM Users"), 0);
+      List<List<String>> orders = esql.executeQueryAndReturnResult(
+         "SELECT rentalOrderID, login FROM RentalOrder ORDER BY random() LIMIT 10000");
+      orderIDs = column(orders, 0);
+      orderOwners = column(orders, 1);
+      trackingIDs = column(esql.executeQueryAndReturnResult(
+         "SELECT trackingID FROM TrackingInfo ORDER BY random() LIMIT 10000"), 0);
+      if (gameIDs.length == 0 || logins.length == 0 || orderIDs.length == 0 || trackingIDs.length == 0) {
+         throw new SQLException("Benchmark database is empty; load data/*.csv first");
+      }
+   }//end loadSamples
+
+   private void defineOperations() {
+      operations.put("returnResult.catalogScan", rnd -> esql.executeQueryAndReturnResult(
+         "SELECT gameID, gameName, genre, price, description FROM Catalog"));
+      operations.put("returnResult.userOrders", rnd -> esql.executeQueryAndReturnResult(
+         "SELECT rentalOrderID FROM RentalOrder WHERE login = ? ORDER BY orderTimestamp DESC",
+         pick(rnd, logins)));
+
+      operations.put("catalog.firstPage", rnd -> catalogPage(rnd, "", 0.0, false));
+      operations.put("catalog.genrePage", rnd -> catalogPage(rnd, pick(rnd, genres), 0.0, false));
+      operations.put("catalog.pricePage", rnd -> catalogPage(rnd, "", 10.0 + rnd.nextInt(50), false));
+      operations.put("catalog.deepPage", rnd -> catalogPage(rnd, "", 0.0, true));
+      operations.put("catalog.count", rnd -> esql.executeQueryAndReturnResult(
+         "SELECT COUNT(*) FROM Catalog WHERE genre = ?", pick(rnd, genres)));
+
+      operations.put("validate.gameID", rnd -> check(GameRental.validateGameID(esql, pick(rnd, gameIDs))));
+      operations.put("validate.rentalID", rnd -> {
+         int i = rnd.nextInt(orderIDs.length);
+         check(GameRental.validateRentalID(esql, orderIDs[i], orderOwners[i]));
+      });
+      operations.put("validate.trackingID", rnd -> check(GameRental.validateTrackingID(esql, pick(rnd, trackingIDs))));
+
+      operations.put("ids.order", rnd -> check(GameRental.createOrderID(esql) != null));
+      operations.put("ids.tracking", rnd -> check(GameRental.createTrackingID(esql) != null));
+      operations.put("ids.game", rnd -> check(GameRental.createGameID(esql) != null));
+
+      operations.put("order.place", rnd -> {
+         int lines = 1 + rnd.nextInt(3);
+         List<String> games = new ArrayList<String>();
+         List<Integer> copies = new ArrayList<Integer>();
+         for (int i = 0; i < lines; i++) {
+            games.add(pick(rnd, gameIDs));
+            copies.add(1 + rnd.nextInt(3));
+         }
+         Map<String, CatalogCache.Game> found = esql._catalog.getAll(games);
+         long total = 0;
+         for (int i = 0; i < lines; i++) {
+            total += copies.get(i) * found.get(games.get(i)).priceCents;
+         }
+         GameRental.submitOrder(esql, pick(rnd, logins), games, copies, total);
+      });
+   }//end defineOperations
+
+   private void catalogPage(SplittableRandom rnd, String genre, double maxPrice, boolean deep) throws SQLException {
+      CatalogBrowser browser = new CatalogBrowser();
+      browser.setFilters(genre, maxPrice, rnd.nextBoolean() ? "ASC" : "DESC");
+      Object[] start = null;
+      if (deep) {
+         // seek from a random key, as a user several pages in would
+         String gameID = pick(rnd, gameIDs);
+         start = new Object[] { Money.toBigDecimal(esql._catalog.get(gameID).priceCents), gameID };
+      }
+      browser.fetchPage(esql, start);
+   }//end catalogPage
+
+   /**
+    * Runs one benchmark at one thread count.
+    *
+    * @return the measured histogram and the number of failed calls
+    */
+   long[] run(final Operation op, int threads, long warmupMs, long measureMs, final LatencyHistogram histogram)
+         throws InterruptedException {
+      final long warmupEnd = System.nanoTime() + warmupMs * 1000000L;
+      final long measureEnd = warmupEnd + measureMs * 1000000L;
+      final long[] errors = new long[threads];
+      final CountDownLatch done = new CountDownLatch(threads);
+      for (int t = 0; t < threads; t++) {
+         final int id = t;
+         Thread worker = new Thread(() -> {
+            SplittableRandom rnd = new SplittableRandom(42L + id);
+            try {
+               while (true) {
+                  long start = System.nanoTime();
+                  if (start >= measureEnd) {
+                     break;
+                  }
+                  boolean failed = false;
+                  try {
+                     op.run(rnd);
+                  }catch (Exception e) {
+                     failed = true;
+                  }
+                  if (start >= warmupEnd) {
+                     if (failed) {
+                        errors[id]++;
+                     }
+                     else {
+                        histogram.record(System.nanoTime() - start);
+                     }
+                  }
+               }
+            }finally{
+               done.countDown();
+            }
+         }, "bench-" + t);
+         worker.start();
+      }
+      done.await();
+      long totalErrors = 0;
+      for (long e : errors) {
+         totalErrors += e;
+      }
+      return new long[] { histogram.count(), totalErrors };
+   }//end run
+
+   /**
+    * The main execution method
+    *
+    * @param args &lt;dbname&gt; &lt;port&gt; &lt;user&gt; followed by options:
+    *        --bench a,b (name prefixes), --threads 1,4,16, --scale label,
+    *        --warmup seconds, --measure seconds, --csv file
+    */
+   public static void main(String[] args) {
+      if (args.length < 3) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            GameRentalBenchmark.class.getName() +
+            " <dbname> <port> <user> [--bench prefix,...] [--threads 1,4,16]" +
+            " [--scale label] [--warmup s] [--measure s] [--csv file]");
+         return;
+      }
+      List<String> prefixes = new ArrayList<String>();
+      int[] threadCounts = { 1, 4, 16 };
+      String scale = "1";
+      long warmupMs = 5000;
+      long measureMs = 10000;
+      String csv = null;
+      for (int i = 3; i + 1 < args.length; i += 2) {
+         switch (args[i]) {
+            case "--bench": prefixes.addAll(Arrays.asList(args[i + 1].split(","))); break;
+            case "--threads": threadCounts = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray(); break;
+            case "--scale": scale = args[i + 1]; break;
+            case "--warmup": warmupMs = Long.parseLong(args[i + 1]) * 1000; break;
+            case "--measure": measureMs = Long.parseLong(args[i + 1]) * 1000; break;
+            case "--csv": csv = args[i + 1]; break;
+            default: System.err.println("Unknown option " + args[i]); return;
+         }
+      }
+
+      GameRental esql = null;
+      PrintWriter out = null;
+      try {
+         int maxThreads = Arrays.stream(threadCounts).max().getAsInt();
+         esql = new GameRental(args[0], args[1], args[2], "", maxThreads);
+         GameRentalBenchmark bench = new GameRentalBenchmark(esql);
+         if (csv != null) {
+            out = new PrintWriter(new FileWriter(csv, true));
+         }
+
+         System.out.println(String.format("%-28s %7s %6s %12s %10s %10s %10s %10s %7s",
+            "benchmark", "threads", "scale", "ops/s", "p50(us)", "p99(us)", "p99.9(us)", "max(us)", "errors"));
+         for (Map.Entry<String, Operation> entry : bench.operations.entrySet()) {
+            if (!selected(entry.getKey(), prefixes)) {
+               continue;
+            }
+            for (int threads : threadCounts) {
+               LatencyHistogram histogram = new LatencyHistogram();
+               long[] counts = bench.run(entry.getValue(), threads, warmupMs, measureMs, histogram);
+               double opsPerSec = counts[0] * 1000.0 / measureMs;
+               String line = String.format("%-28s %7d %6s %12.1f %10.0f %10.0f %10.0f %10.0f %7d",
+                  entry.getKey(), threads, scale, opsPerSec, histogram.quantile(0.5),
+                  histogram.quantile(0.99), histogram.quantile(0.999), histogram.quantile(1.0), counts[1]);
+               System.out.println(line);
+               if (out != null) {
+                  out.println(String.join(",", String.valueOf(System.currentTimeMillis()), entry.getKey(),
+                     String.valueOf(threads), scale, String.format("%.1f", opsPerSec),
+                     String.format("%.0f", histogram.quantile(0.5)), String.format("%.0f", histogram.quantile(0.99)),
+                     String.format("%.0f", histogram.quantile(0.999)), String.format("%.0f", histogram.quantile(1.0)),
+                     String.valueOf(counts[1])));
+                  out.flush();
+               }
+            }
+         }
+         System.out.println(esql.getPoolStats());
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally{
+         if (out != null) {
+            out.close();
+         }
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }
+   }//end main
+
+   private static boolean selected(String name, List<String> prefixes) {
+      if (prefixes.isEmpty()) {
+         return true;
+      }
+      for (String prefix : prefixes) {
+         if (name.startsWith(prefix)) {
+            return true;
+         }
+      }
+      return false;
+   }//end selected
+
+   private static void check(boolean ok) throws SQLException {
+      if (!ok) {
+         throw new SQLException("benchmark operation returned an unexpected result");
+      }
+   }//end check
+
+   private static String pick(SplittableRandom rnd, String[] values) {
+      return values[rnd.nextInt(values.length)];
+   }//end pick
+
+   private static String[] column(List<List<String>> rows, int col) {
+      String[] values = new String[rows.size()];
+      for (int i = 0; i < values.length; i++) {
+         values[i] = rows.get(i).get(col);
+      }
+      return values;
+   }//end column
+
+}//end GameRentalBenchmark
@@ -0,0 +1,250 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the GameRental menu to many terminal sessions from one process.
+ *
+ * Clients connect over TCP or a UNIX domain socket with a line-based
+ * terminal client such as nc or socat.  Every session runs the normal menu
+ * flow (GameRental.runSession) on its own thread with its own socket
+ * streams bound through SessionIO, and all sessions share one GameRental,
+ * so they share its connection pool and catalog cache.  A session holds a
+ * database connection only while one of its queries runs, so idle sessions
+ * cost a parked thread and a socket.
+ *
+ * Sessions run on virtual threads when the JVM has them (Java 21+), found
+ * reflectively so the server still builds and runs on older JVMs with a
+ * cached pool of small-stack platform threads instead.
+ *
+ */
+public class GameRentalServer {
+
+   public static final int DEFAULT_PORT = Integer.getInteger("gamerental.server.port", 7166);
+   public static final int DEFAULT_MAX_SESSIONS = Integer.getInteger("gamerental.server.maxSessions", 10000);
+
+   // stack size of fallback platform session threads; the menu code is shallow
+   private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+   private final GameRental esql;
+   private final ServerSocketChannel server;
+   private final int maxSessions;
+   private final Method startVirtualThread;
+   private final ExecutorService platformThreads;
+
+   private final AtomicInteger activeSessions = new AtomicInteger();
+   private final AtomicLong sessionNumber = new AtomicLong();
+
+   public GameRentalServer(GameRental esql, ServerSocketChannel server, int maxSessions) {
+      this.esql = esql;
+      this.server = server;
+      this.maxSessions = maxSessions;
+      this.startVirtualThread = virtualThreadStarter();
+      if (startVirtualThread == null) {
+         this.platformThreads = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(null, r, "session", PLATFORM_STACK_SIZE);
+            t.setDaemon(true);
+            return t;
+         });
+      }
+      else {
+         this.platformThreads = null;
+      }
+   }//end GameRentalServer
+
+   /**
+    * Accepts sessions until the server socket is closed.
+    */
+   public void serve() throws IOException {
+      SessionIO.install();
+      SessionIO.log().println("Listening on " + server.getLocalAddress() + " with "
+                              + (startVirtualThread != null ? "virtual" : "platform") + " session threads");
+      while (true) {
+         final SocketChannel client;
+         try {
+            client = server.accept();
+         }catch (ClosedChannelException e) {
+            return;
+         }//end try
+         if (activeSessions.incrementAndGet() > maxSessions) {
+            activeSessions.decrementAndGet();
+            reject(client);
+            continue;
+         }
+         final long id = sessionNumber.incrementAndGet();
+         try {
+            start(() -> runSession(id, client));
+         }catch (Exception e) {
+            activeSessions.decrementAndGet();
+            SessionIO.logErr().println("Cannot start session " + id + ": " + e);
+            client.close();
+         }//end try
+      }
+   }//end serve
+
+   /**
+    * Stops accepting sessions.  Running sessions continue until they exit.
+    */
+   public void close() throws IOException {
+      server.close();
+      if (platformThreads != null) {
+         platformThreads.shutdown();
+      }
+   }//end close
+
+   /**
+    * @return the number of connected sessions
+    */
+   public int getActiveSessions() {
+      return activeSessions.get();
+   }
+
+   private void runSession(long id, SocketChannel client) {
+      long start = System.currentTimeMillis();
+      try (SocketChannel channel = client) {
+         BufferedReader in = new BufferedReader(
+            new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+         // flushed whenever the session waits for input, so each prompt is one write
+         PrintStream out = new PrintStream(
+            new BufferedOutputStream(Channels.newOutputStream(channel), 8192), false, "UTF-8");
+         SessionIO.bind(in, out);
+         GameRental.Greeting();
+         GameRental.runSession(esql);
+         System.out.println("Bye !");
+         out.flush();
+      }catch (SessionIO.SessionClosed e) {
+         // the client disconnected
+      }catch (Exception e) {
+         SessionIO.logErr().println("Session " + id + " failed: " + e);
+      }finally{
+         SessionIO.unbind();
+         int active = activeSessions.decrementAndGet();
+         SessionIO.log().println("Session " + id + " closed after "
+                                 + (System.currentTimeMillis() - start) / 1000 + "s, " + active + " active");
+      }//end try
+   }//end runSession
+
+   private void start(Runnable session) throws Exception {
+      if (startVirtualThread != null) {
+         startVirtualThread.invoke(null, session);
+      }
+      else {
+         platformThreads.execute(session);
+      }
+   }//end start
+
+   private static void reject(SocketChannel client) {
+      try (SocketChannel channel = client) {
+         channel.write(StandardCharsets.UTF_8.encode("Server busy, please try again later.\n"));
+      }catch (IOException e) {
+         // ignored.
+      }//end try
+   }//end reject
+
+   // Thread.startVirtualThread(Runnable) on Java 21+, otherwise null
+   private static Method virtualThreadStarter() {
+      try {
+         return Thread.class.getMethod("startVirtualThread", Runnable.class);
+      }catch (NoSuchMethodException e) {
+         return null;
+      }//end try
+   }//end virtualThreadStarter
+
+   /**
+    * The main execution method
+    *
+    * @param args &lt;dbname&gt; &lt;port&gt; &lt;user&gt; [--listen [host:]port]
+    *        [--socket path] [--pool n] [--max-sessions n]
+    */
+   public static void main(String[] args) {
+      if (args.length < 3) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            GameRentalServer.class.getName() +
+            " <dbname> <port> <user> [--listen [host:]port] [--socket path] [--pool n] [--max-sessions n]");
+         return;
+      }
+      String listen = String.valueOf(DEFAULT_PORT);
+      String socketPath = null;
+      int poolSize = ConnectionPool.DEFAULT_MAX_SIZE;
+      int maxSessions = DEFAULT_MAX_SESSIONS;
+      GameRental esql = null;
+      ServerSocketChannel channel = null;
+      try {
+         for (int i = 3; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+               case "--listen": listen = args[i + 1]; break;
+               case "--socket": socketPath = args[i + 1]; break;
+               case "--pool": poolSize = Integer.parseInt(args[i + 1]); break;
+               case "--max-sessions": maxSessions = Integer.parseInt(args[i + 1]); break;
+               default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+         }
+
+         SocketAddress address;
+         if (socketPath != null) {
+            Path path = Paths.get(socketPath);
+            Files.deleteIfExists(path); // left over from an earlier run
+            path.toFile().deleteOnExit();
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            address = UnixDomainSocketAddress.of(path);
+         }
+         else {
+            int colon = listen.lastIndexOf(':');
+            int port = Integer.parseInt(listen.substring(colon + 1));
+            address = colon < 0 ? new InetSocketAddress(port) : new InetSocketAddress(listen.substring(0, colon), port);
+            channel = ServerSocketChannel.open();
+         }
+         channel.bind(address, 1024);
+
+         esql = new GameRental(args[0], args[1], args[2], "", poolSize);
+         // load the ID index before the first session rather than during it
+         esql._ids.load();
+         esql._overdue.start();
+         esql._sales.start();
+         final GameRentalServer server = new GameRentalServer(esql, channel, maxSessions);
+         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+               server.close();
+            }catch (IOException e) {
+               // ignored.
+            }//end try
+         }));
+         server.serve();
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally{
+         try {
+            if (channel != null) {
+               channel.close();
+            }
+         }catch (IOException e) {
+            // ignored.
+         }//end try
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }//end try
+   }//end main
+
+}//end GameRentalServer
@@ -0,0 +1,97 @@
+import java.sql.SQLException;
+
+/**
+ * Hands out string keys such as gamerentalorder1042 from blocks reserved
+ * through a Postgres sequence.
+ *
+ * The backing sequence is created with INCREMENT BY BLOCK_SIZE, so each
+ * nextval reserves the block [value, value + BLOCK_SIZE) for this process
+ * alone.  IDs inside a block come from memory, which means only one in
+ * BLOCK_SIZE allocations costs a round trip and two processes can never
+ * produce the same key.  IDs left in a block when the process exits are
+ * skipped, not reused.
+ *
+ */
+public class IdAllocator {
+
+   // must match INCREMENT BY of the sequences in create_tables.sql
+   public static final int BLOCK_SIZE = 50;
+
+   // minimum number of digits after the prefix, matching the loaded data
+   public static final int MIN_DIGITS = 4;
+
+   private final GameRental esql;
+   private final String sequence;
+   private final String prefix;
+
+   private long next = 0;
+   private long limit = 0;
+
+   /**
+    * @param esql the database the sequence lives in
+    * @param sequence name of the backing sequence
+    * @param prefix text in front of the number, e.g. "trackingid"
+    */
+   public IdAllocator(GameRental esql, String sequence, String prefix) {
+      this.esql = esql;
+      this.sequence = sequence;
+      this.prefix = prefix;
+   }//end IdAllocator
+
+   /**
+    * @return the next unused key
+    * @throws java.sql.SQLException when a new block cannot be reserved
+    */
+   public synchronized String nextId() throws SQLException {
+      if (next >= limit) {
+         long start = esql.getNextSeqVal(sequence);
+         next = start;
+         limit = start + BLOCK_SIZE;
+      }
+      return format(next++);
+   }//end nextId
+
+   /**
+    * @param number the numeric part of a key
+    * @return the key for number, zero-padded to MIN_DIGITS
+    */
+   public String format(long number) {
+      return formatId(prefix, number);
+   }//end format
+
+   public String getPrefix() {
+      return prefix;
+   }
+
+   /**
+    * @return the key made of prefix and number, zero-padded to MIN_DIGITS
+    */
+   public static String formatId(String prefix, long number) {
+      String digits = Long.toString(number);
+      StringBuilder id = new StringBuilder(prefix.length() + Math.max(MIN_DIGITS, digits.length()));
+      id.append(prefix);
+      for (int i = digits.length(); i < MIN_DIGITS; i++) {
+         id.append('0');
+      }
+      return id.append(digits).toString();
+   }//end formatId
+
+   /**
+    * Checks that id is prefix followed by at least MIN_DIGITS digits.  The
+    * digit count is not fixed, so keys keep validating after 9999.
+    *
+    * @return true if id has the key format for prefix
+    */
+   public static boolean hasIdFormat(String id, String prefix) {
+      if (id == null || !id.startsWith(prefix) || id.length() < prefix.length() + MIN_DIGITS) {
+         return false;
+      }
+      for (int i = prefix.length(); i < id.length(); i++) {
+         if (!Character.isDigit(id.charAt(i))) {
+            return false;
+         }
+      }
+      return true;
+   }//end hasIdFormat
+
+}//end IdAllocator
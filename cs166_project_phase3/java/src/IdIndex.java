@@ -0,0 +1,491 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-process membership index over the game, rental order and tracking ID
+ * spaces, answering the validateGameID, validateRentalID and
+ * validateTrackingID checks for existing IDs without a query.
+ *
+ * Every ID space is a bitset over the numeric suffix of the key.  Rental
+ * orders also keep their owner as an int code into a dictionary of logins,
+ * so a rename is one dictionary update.  The index is loaded on first use
+ * and kept current by this process's write paths (submitOrder, addGame,
+ * removeGame, changeUsername).
+ *
+ * Only hits are answered from the index.  Other processes take IDs from
+ * their own blocks of the sequences, so a key missing from the index may
+ * have been written since the load at any number; misses, keys owned by
+ * another login, keys not in the canonical prefix + number form and keys
+ * numbered MAX_NUMBER or above, which the dense arrays do not hold, are
+ * checked in the database, and keys found that way are added to the index
+ * when they fit.  The bound keeps one outlier key from growing the arrays
+ * to gigabytes.  Once start() has been called, a daemon thread reloads
+ * the index every gamerental.idIndex.ttlMs (the catalog cache TTL by
+ * default), so keys deleted or renamed by other processes drop out.  A
+ * reload is read into a new copy while lookups keep using the old one, so
+ * no session waits for it, and this process's writes during the reload
+ * are replayed onto the new copy.
+ *
+ * Orders and tracking IDs also keep the month of their order's
+ * orderTimestamp, so the queries on one order can name the monthly
+ * partition holding it and the planner reads only that partition.
+ *
+ */
+public class IdIndex {
+
+   public static final long TTL_MS = Long.getLong("gamerental.idIndex.ttlMs", CatalogCache.DEFAULT_TTL_MS);
+
+   // keys numbered at or above this are not held in the index
+   public static final int MAX_NUMBER = Integer.getInteger("gamerental.idIndex.maxNumber", 1 << 22);
+
+   // keys with more digits than this cannot be an int
+   private static final int MAX_DIGITS = 9;
+
+   /**
+    * The numbers present in one ID space.
+    */
+   static final class IdSet {
+      final String prefix;
+      long[] bits = new long[16];
+
+      IdSet(String prefix) {
+         this.prefix = prefix;
+      }
+
+      boolean contains(int n) {
+         int word = n >>> 6;
+         return word < bits.length && (bits[word] & (1L << n)) != 0;
+      }
+
+      void add(int n) {
+         int word = n >>> 6;
+         if (word >= bits.length) {
+            bits = Arrays.copyOf(bits, grow(word + 1, bits.length, (MAX_NUMBER >>> 6) + 1));
+         }
+         bits[word] |= 1L << n;
+      }
+
+      void remove(int n) {
+         int word = n >>> 6;
+         if (word < bits.length) {
+            bits[word] &= ~(1L << n);
+         }
+      }
+   }//end IdSet
+
+   /**
+    * One loaded copy of the three ID spaces.
+    */
+   static final class State {
+      final IdSet games = new IdSet(GameRental.GAME_PREFIX);
+      final IdSet orders = new IdSet(GameRental.ORDER_PREFIX);
+      final IdSet tracking = new IdSet(GameRental.TRACKING_PREFIX);
+
+      // orderOwner[n] is the login code of order n
+      int[] orderOwner = new int[1024];
+      // orderMonth[n] and trackingMonth[n] are monthCode of the order's orderTimestamp, 0 if unknown
+      int[] orderMonth = new int[1024];
+      int[] trackingMonth = new int[1024];
+      final HashMap<String, Integer> loginCodes = new HashMap<String, Integer>();
+      final List<String> logins = new ArrayList<String>();
+
+      void addOrder(int n, String login, Timestamp orderTimestamp) {
+         orders.add(n);
+         if (n >= orderOwner.length) {
+            orderOwner = Arrays.copyOf(orderOwner, grow(n + 1, orderOwner.length, MAX_NUMBER));
+            orderMonth = Arrays.copyOf(orderMonth, orderOwner.length);
+         }
+         orderMonth[n] = monthCode(orderTimestamp);
+         Integer code = loginCodes.get(login);
+         if (code == null) {
+            logins.add(login);
+            code = logins.size(); // 0 is reserved for no owner
+            loginCodes.put(login, code);
+         }
+         orderOwner[n] = code;
+      }//end addOrder
+
+      void addTracking(int n, Timestamp orderTimestamp) {
+         tracking.add(n);
+         if (n >= trackingMonth.length) {
+            trackingMonth = Arrays.copyOf(trackingMonth, grow(n + 1, trackingMonth.length, MAX_NUMBER));
+         }
+         trackingMonth[n] = monthCode(orderTimestamp);
+      }//end addTracking
+
+      boolean isOrderOf(int n, String login) {
+         Integer code = loginCodes.get(login);
+         return orders.contains(n) && code != null && orderOwner[n] == code;
+      }//end isOrderOf
+
+      void renameUser(String oldLogin, String newLogin) {
+         Integer code = loginCodes.remove(oldLogin);
+         if (code != null) {
+            loginCodes.put(newLogin, code);
+            logins.set(code - 1, newLogin);
+         }
+      }//end renameUser
+   }//end State
+
+   private final GameRental esql;
+   private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+   // guarded by lock; state is null until the first load
+   private State state = null;
+   // writes made while a reload runs, replayed onto the new state; null when no reload runs
+   private List<Consumer<State>> pending = null;
+   private ScheduledExecutorService refresher = null;
+
+   public IdIndex(GameRental esql) {
+      this.esql = esql;
+   }
+
+   /**
+    * Reloads the index every TTL_MS on a daemon thread once it has been
+    * loaded.  Does nothing if TTL_MS is 0 or the reloads are already
+    * scheduled.
+    */
+   public synchronized void start() {
+      if (refresher != null || TTL_MS <= 0) {
+         return;
+      }
+      refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread thread = new Thread(r, "id-index-refresh");
+         thread.setDaemon(true);
+         return thread;
+      });
+      refresher.scheduleWithFixedDelay(() -> {
+         try {
+            if (isLoaded()) {
+               load();
+            }
+         }catch (SQLException e) {
+            SessionIO.logErr().println("ID index reload failed: " + e.getMessage());
+         }//end try
+      }, TTL_MS, TTL_MS, TimeUnit.MILLISECONDS);
+   }//end start
+
+   /**
+    * Stops the reloads, letting a running one finish.
+    */
+   public void close() {
+      ScheduledExecutorService stopping;
+      synchronized (this) {
+         stopping = refresher;
+         refresher = null;
+      }
+      if (stopping != null) {
+         stopping.shutdown();
+         try {
+            stopping.awaitTermination(10, TimeUnit.SECONDS);
+         }catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }//end try
+      }
+   }//end close
+
+   /**
+    * (Re)loads all three ID spaces from the database.  Lookups keep using
+    * the previous copy until the new one is complete.
+    */
+   public synchronized void load() throws SQLException {
+      lock.writeLock().lock();
+      try {
+         pending = new ArrayList<Consumer<State>>();
+      }finally{
+         lock.writeLock().unlock();
+      }//end try
+      final State fresh = new State();
+      boolean done = false;
+      try {
+         loadGames(fresh);
+         esql.executeQueryStream("SELECT trackingID, orderTimestamp FROM TrackingInfo", GameRental.DEFAULT_FETCH_SIZE,
+                                 new GameRental.RowHandler() {
+            public boolean handleRow(ResultSet rs) throws SQLException {
+               int n = number(rs.getString(1), fresh.tracking.prefix);
+               if (n >= 0) {
+                  fresh.addTracking(n, rs.getTimestamp(2));
+               }
+               return true;
+            }
+         });
+         esql.executeQueryStream("SELECT rentalOrderID, login, orderTimestamp FROM RentalOrder", GameRental.DEFAULT_FETCH_SIZE,
+                                 new GameRental.RowHandler() {
+            public boolean handleRow(ResultSet rs) throws SQLException {
+               int n = number(rs.getString(1), fresh.orders.prefix);
+               if (n >= 0) {
+                  fresh.addOrder(n, rs.getString(2), rs.getTimestamp(3));
+               }
+               return true;
+            }
+         });
+         done = true;
+      }finally{
+         lock.writeLock().lock();
+         try {
+            if (done) {
+               for (Consumer<State> write : pending) {
+                  write.accept(fresh);
+               }
+               state = fresh;
+            }
+            pending = null;
+         }finally{
+            lock.writeLock().unlock();
+         }//end try
+      }//end try
+   }//end load
+
+   /**
+    * @return true if gameID is in the catalog
+    */
+   public boolean hasGame(String gameID) throws SQLException {
+      final int n = number(gameID, GameRental.GAME_PREFIX);
+      ensureLoaded();
+      lock.readLock().lock();
+      try {
+         if (n >= 0 && state.games.contains(n)) {
+            return true;
+         }
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+      boolean exists = esql.executeQueryStream("SELECT 1 FROM Catalog WHERE gameID = ? LIMIT 1", 1,
+                                               new GameRental.RowHandler() {
+         public boolean handleRow(ResultSet rs) {
+            return false;
+         }
+      }, gameID) > 0;
+      if (exists && n >= 0) {
+         write(s -> s.games.add(n));
+      }
+      return exists;
+   }//end hasGame
+
+   /**
+    * @return true if trackingID exists
+    */
+   public boolean hasTracking(String trackingID) throws SQLException {
+      final int n = number(trackingID, GameRental.TRACKING_PREFIX);
+      ensureLoaded();
+      lock.readLock().lock();
+      try {
+         if (n >= 0 && state.tracking.contains(n)) {
+            return true;
+         }
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+      final Timestamp[] ordered = { null };
+      esql.executeQueryStream("SELECT orderTimestamp FROM TrackingInfo WHERE trackingID = ?", 1, new GameRental.RowHandler() {
+         public boolean handleRow(ResultSet rs) throws SQLException {
+            ordered[0] = rs.getTimestamp(1);
+            return false;
+         }
+      }, trackingID);
+      if (ordered[0] != null && n >= 0) {
+         write(s -> s.addTracking(n, ordered[0]));
+      }
+      return ordered[0] != null;
+   }//end hasTracking
+
+   /**
+    * @return true if rentalOrderID exists and belongs to login
+    */
+   public boolean isOrderOf(String rentalOrderID, String login) throws SQLException {
+      final int n = number(rentalOrderID, GameRental.ORDER_PREFIX);
+      ensureLoaded();
+      lock.readLock().lock();
+      try {
+         if (n >= 0 && state.isOrderOf(n, login)) {
+            return true;
+         }
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+      final String[] owner = { null };
+      final Timestamp[] ordered = { null };
+      esql.executeQueryStream("SELECT login, orderTimestamp FROM RentalOrder WHERE rentalOrderID = ?", 1,
+                              new GameRental.RowHandler() {
+         public boolean handleRow(ResultSet rs) throws SQLException {
+            owner[0] = rs.getString(1);
+            ordered[0] = rs.getTimestamp(2);
+            return false;
+         }
+      }, rentalOrderID);
+      if (owner[0] != null && n >= 0) {
+         write(s -> s.addOrder(n, owner[0], ordered[0]));
+      }
+      return login.equals(owner[0]);
+   }//end isOrderOf
+
+   /**
+    * @return the first orderTimestamp of the month partition holding
+    *         rentalOrderID and the first of the next month, or null when the
+    *         index does not know the order
+    */
+   public Timestamp[] orderMonth(String rentalOrderID) {
+      int n = number(rentalOrderID, GameRental.ORDER_PREFIX);
+      lock.readLock().lock();
+      try {
+         return state == null || n < 0 || n >= state.orderMonth.length ? null : monthRange(state.orderMonth[n]);
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+   }//end orderMonth
+
+   /**
+    * @return the month range of the order of trackingID, as for orderMonth
+    */
+   public Timestamp[] trackingMonth(String trackingID) {
+      int n = number(trackingID, GameRental.TRACKING_PREFIX);
+      lock.readLock().lock();
+      try {
+         return state == null || n < 0 || n >= state.trackingMonth.length ? null : monthRange(state.trackingMonth[n]);
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+   }//end trackingMonth
+
+   /**
+    * Records an order and its tracking ID written by this process.
+    */
+   public void addOrder(String rentalOrderID, String trackingID, final String login, final Timestamp orderTimestamp) {
+      final int order = number(rentalOrderID, GameRental.ORDER_PREFIX);
+      final int track = number(trackingID, GameRental.TRACKING_PREFIX);
+      write(s -> {
+         if (order >= 0) {
+            s.addOrder(order, login, orderTimestamp);
+         }
+         if (track >= 0) {
+            s.addTracking(track, orderTimestamp);
+         }
+      });
+   }//end addOrder
+
+   /**
+    * Records a game added by this process.
+    */
+   public void addGame(String gameID) {
+      final int n = number(gameID, GameRental.GAME_PREFIX);
+      if (n >= 0) {
+         write(s -> s.games.add(n));
+      }
+   }//end addGame
+
+   /**
+    * Forgets a game removed by this process.
+    */
+   public void removeGame(String gameID) {
+      final int n = number(gameID, GameRental.GAME_PREFIX);
+      if (n >= 0) {
+         write(s -> s.games.remove(n));
+      }
+   }//end removeGame
+
+   /**
+    * Moves the orders of a renamed user to the new login.
+    */
+   public void renameUser(final String oldLogin, final String newLogin) {
+      write(s -> s.renameUser(oldLogin, newLogin));
+   }//end renameUser
+
+   // applies a write to the current state, and to the one being loaded
+   private void write(Consumer<State> change) {
+      lock.writeLock().lock();
+      try {
+         if (state != null) {
+            change.accept(state);
+         }
+         if (pending != null) {
+            pending.add(change);
+         }
+      }finally{
+         lock.writeLock().unlock();
+      }//end try
+   }//end write
+
+   private boolean isLoaded() {
+      lock.readLock().lock();
+      try {
+         return state != null;
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+   }//end isLoaded
+
+   // loads on first use; reloads run on the refresh thread, so later lookups never wait
+   private void ensureLoaded() throws SQLException {
+      if (isLoaded()) {
+         return;
+      }
+      synchronized (this) {
+         if (!isLoaded()) { // another thread may have loaded it while this one waited
+            load();
+         }
+      }
+   }//end ensureLoaded
+
+   private void loadGames(final State fresh) throws SQLException {
+      esql.executeQueryStream("SELECT gameID FROM Catalog", GameRental.DEFAULT_FETCH_SIZE, new GameRental.RowHandler() {
+         public boolean handleRow(ResultSet rs) throws SQLException {
+            int n = number(rs.getString(1), fresh.games.prefix);
+            if (n >= 0) {
+               fresh.games.add(n);
+            }
+            return true;
+         }
+      });
+   }//end loadGames
+
+   // doubles an array length to hold needed entries, without passing max
+   private static int grow(int needed, int length, int max) {
+      return Math.max(needed, (int) Math.min(max, 2L * length));
+   }//end grow
+
+   // months since year 0, plus one so 0 means unknown
+   private static int monthCode(Timestamp ts) {
+      if (ts == null) {
+         return 0;
+      }
+      LocalDateTime t = ts.toLocalDateTime();
+      return t.getYear() * 12 + t.getMonthValue();
+   }//end monthCode
+
+   private static Timestamp[] monthRange(int code) {
+      if (code == 0) {
+         return null;
+      }
+      LocalDateTime start = LocalDateTime.of((code - 1) / 12, (code - 1) % 12 + 1, 1, 0, 0);
+      return new Timestamp[] { Timestamp.valueOf(start), Timestamp.valueOf(start.plusMonths(1)) };
+   }//end monthRange
+
+   /**
+    * @return the number of a key in canonical form (IdAllocator.formatId of
+    *         prefix and the number) below MAX_NUMBER, or -1 for any other
+    *         string
+    */
+   static int number(String id, String prefix) {
+      if (!IdAllocator.hasIdFormat(id, prefix)) {
+         return -1;
+      }
+      int digits = id.length() - prefix.length();
+      if (digits > MAX_DIGITS || (digits > IdAllocator.MIN_DIGITS && id.charAt(prefix.length()) == '0')) {
+         return -1;
+      }
+      int n = Integer.parseInt(id.substring(prefix.length()));
+      return n < MAX_NUMBER ? n : -1;
+   }//end number
+
+}//end IdIndex
@@ -0,0 +1,544 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Proposes index changes from the query shapes the application actually
+ * sends, and measures them.
+ *
+ * The shapes come from the log written by QueryRecorder
+ * (-Dgamerental.queryLog).  They are reported next to pg_stat_statements
+ * when that extension is installed, and every index is reported with its
+ * pg_stat_user_indexes scan count.  Changes are proposed for:
+ *    - redundant indexes, whose key columns are a leading prefix of another
+ *      index on the same table (such as a copy of the primary key)
+ *    - foreign keys whose referencing columns lead no index, which makes
+ *      every delete of a referenced row scan the referencing table
+ *    - equality filters of a recorded shape that EXPLAIN answers with a
+ *      sequential scan
+ * For each change the shapes on its table are timed with EXPLAIN ANALYZE
+ * before and after the change, both inside one transaction that is rolled
+ * back, so the database is left as it was.  The changes and their timings
+ * are written as a migration script, which --apply also runs.
+ *
+ */
+public class IndexAdvisor {
+
+   // timed EXPLAIN ANALYZE runs per shape, after one warm-up run
+   private static final int DEFAULT_RUNS = 5;
+
+   private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+   private static final Pattern EQUALITY = Pattern.compile("\\(?(\\w+)\\)?(?:::[\\w ]+?)? = ");
+   private static final Pattern EXECUTION_TIME = Pattern.compile("(?:Execution Time|Total runtime): ([0-9.]+) ms");
+
+   /**
+    * One index of a user table, as described by pg_index.
+    */
+   static final class Index {
+      String name;
+      String table;
+      String definition;
+      List<String> keys = new ArrayList<String>();
+      String options;
+      boolean unique;
+      boolean partial;
+      long scans = -1;
+
+      // true if the key columns, in order and direction, lead other's key columns
+      boolean isPrefixOf(Index other) {
+         return keys.size() <= other.keys.size()
+            && other.keys.subList(0, keys.size()).equals(keys)
+            && other.options.startsWith(options);
+      }
+   }//end Index
+
+   /**
+    * One proposed CREATE or DROP INDEX and its measurements.
+    */
+   static final class Change {
+      final String table;
+      final String sql;
+      final String reason;
+      final List<String> timings = new ArrayList<String>();
+
+      Change(String table, String sql, String reason) {
+         this.table = table;
+         this.sql = sql;
+         this.reason = reason;
+      }
+   }//end Change
+
+   private final GameRental esql;
+   private final List<QueryRecorder.Shape> shapes;
+   private final int runs;
+   private final List<Index> indexes = new ArrayList<Index>();
+   // column names of every user table, lower case
+   private final Map<String, Set<String>> columns = new HashMap<String, Set<String>>();
+
+   public IndexAdvisor(GameRental esql, List<QueryRecorder.Shape> shapes, int runs) {
+      this.esql = esql;
+      this.shapes = shapes;
+      this.runs = runs;
+   }//end IndexAdvisor
+
+   /**
+    * Prints the workload and index report and works out the changes.
+    *
+    * @return the proposed changes, each timed against the recorded shapes
+    */
+   public List<Change> advise() throws SQLException {
+      loadCatalog();
+      reportShapes();
+      reportIndexes();
+
+      List<Change> changes = new ArrayList<Change>();
+      changes.addAll(redundantIndexes());
+      Set<String> proposed = new LinkedHashSet<String>();
+      for (Change change : unindexedForeignKeys()) {
+         if (proposed.add(change.sql)) {
+            changes.add(change);
+         }
+      }
+      for (Change change : sequentialScans()) {
+         if (proposed.add(change.sql)) {
+            changes.add(change);
+         }
+      }
+      for (Change change : changes) {
+         measure(change);
+      }
+      return changes;
+   }//end advise
+
+   private void loadCatalog() throws SQLException {
+      List<List<String>> rows = esql.executeQueryAndReturnResult(
+         "SELECT c.relname, a.attname FROM pg_attribute a " +
+         "JOIN pg_class c ON c.oid = a.attrelid JOIN pg_namespace n ON n.oid = c.relnamespace " +
+         "WHERE n.nspname = 'public' AND c.relkind = 'r' AND a.attnum > 0 AND NOT a.attisdropped");
+      for (List<String> row : rows) {
+         columns.computeIfAbsent(row.get(0), k -> new LinkedHashSet<String>()).add(row.get(1));
+      }
+
+      // key columns are the first indnkeyatts of indkey; the rest are INCLUDE columns
+      rows = esql.executeQueryAndReturnResult(
+         "SELECT ic.relname, tc.relname, pg_get_indexdef(i.indexrelid), " +
+         "ARRAY(SELECT a.attname FROM unnest(i.indkey[0:i.indnkeyatts - 1]) WITH ORDINALITY k(attnum, n) " +
+         "JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = k.attnum ORDER BY k.n), " +
+         "array_to_string(i.indoption[0:i.indnkeyatts - 1], ' '), i.indisunique OR i.indisprimary, " +
+         "i.indpred IS NOT NULL OR i.indexprs IS NOT NULL, COALESCE(s.idx_scan, -1) " +
+         "FROM pg_index i JOIN pg_class ic ON ic.oid = i.indexrelid JOIN pg_class tc ON tc.oid = i.indrelid " +
+         "JOIN pg_namespace n ON n.oid = tc.relnamespace " +
+         "LEFT JOIN pg_stat_user_indexes s ON s.indexrelid = i.indexrelid " +
+         "WHERE n.nspname = 'public' ORDER BY tc.relname, ic.relname");
+      for (List<String> row : rows) {
+         Index index = new Index();
+         index.name = row.get(0);
+         index.table = row.get(1);
+         index.definition = row.get(2);
+         String keys = row.get(3).replaceAll("[{}\"]", "");
+         index.keys.addAll(Arrays.asList(keys.split(",")));
+         index.options = row.get(4);
+         index.unique = row.get(5).startsWith("t");
+         index.partial = row.get(6).startsWith("t");
+         index.scans = Long.parseLong(row.get(7));
+         indexes.add(index);
+      }
+   }//end loadCatalog
+
+   private void reportShapes() {
+      Map<String, String[]> server = serverStatements();
+      System.out.println("Recorded query shapes, by total client time:");
+      System.out.println("calls\ttotal ms\tmean ms\tserver mean ms\tquery");
+      for (QueryRecorder.Shape shape : shapes) {
+         String[] stats = server.get(normalize(shape.sql));
+         System.out.println(shape.getCalls() + "\t" + millis(shape.getTotalNanos()) + "\t\t"
+                            + millis(shape.getTotalNanos() / Math.max(1, shape.getCalls())) + "\t"
+                            + (stats == null ? "-" : stats[1]) + "\t\t" + abbreviate(shape.sql));
+      }
+      System.out.println();
+   }//end reportShapes
+
+   // mean server time per normalized statement from pg_stat_statements, empty if it is not installed
+   private Map<String, String[]> serverStatements() {
+      Map<String, String[]> stats = new HashMap<String, String[]>();
+      // the time columns were renamed in PostgreSQL 13
+      String[] queries = {
+         "SELECT query, calls, round(CAST(mean_exec_time AS numeric), 3) FROM pg_stat_statements " +
+         "WHERE dbid = (SELECT oid FROM pg_database WHERE datname = current_database())",
+         "SELECT query, calls, round(CAST(mean_time AS numeric), 3) FROM pg_stat_statements " +
+         "WHERE dbid = (SELECT oid FROM pg_database WHERE datname = current_database())",
+      };
+      for (String query : queries) {
+         try {
+            for (List<String> row : esql.executeQueryAndReturnResult(query)) {
+               stats.put(normalize(row.get(0)), new String[] { row.get(1), row.get(2) });
+            }
+            return stats;
+         }catch (SQLException e) {
+            // try the other column names
+         }//end try
+      }
+      System.out.println("pg_stat_statements is not available; server times are not shown.");
+      return stats;
+   }//end serverStatements
+
+   private void reportIndexes() {
+      System.out.println("Indexes:");
+      System.out.println("scans\tindex");
+      for (Index index : indexes) {
+         System.out.println((index.scans < 0 ? "-" : String.valueOf(index.scans)) + "\t" + index.definition);
+      }
+      System.out.println();
+      for (Index index : indexes) {
+         if (index.scans == 0 && !index.unique) {
+            System.out.println("Unused since statistics were reset: " + index.name);
+         }
+      }
+   }//end reportIndexes
+
+   // non-unique indexes whose keys lead another index of the same table
+   private List<Change> redundantIndexes() {
+      List<Change> changes = new ArrayList<Change>();
+      Set<Index> dropped = Collections.newSetFromMap(new IdentityHashMap<Index, Boolean>());
+      for (Index index : indexes) {
+         if (index.unique || index.partial) {
+            continue;
+         }
+         for (Index other : indexes) {
+            if (other == index || dropped.contains(other) || other.partial || !other.table.equals(index.table)
+                || !index.isPrefixOf(other)) {
+               continue;
+            }
+            // of two identical non-unique indexes keep the one with more INCLUDE columns
+            if (!other.unique && other.keys.size() == index.keys.size()
+                && other.definition.length() < index.definition.length()) {
+               continue;
+            }
+            changes.add(new Change(index.table, "DROP INDEX IF EXISTS " + index.name + ";",
+                                   "redundant: (" + String.join(", ", index.keys) + ") leads " + other.name));
+            dropped.add(index);
+            break;
+         }
+      }
+      indexes.removeAll(dropped);
+      return changes;
+   }//end redundantIndexes
+
+   private List<Change> unindexedForeignKeys() throws SQLException {
+      List<Change> changes = new ArrayList<Change>();
+      List<List<String>> rows = esql.executeQueryAndReturnResult(
+         "SELECT c.conname, t.relname, ARRAY(SELECT a.attname FROM unnest(c.conkey) WITH ORDINALITY k(attnum, n) " +
+         "JOIN pg_attribute a ON a.attrelid = c.conrelid AND a.attnum = k.attnum ORDER BY k.n) " +
+         "FROM pg_constraint c JOIN pg_class t ON t.oid = c.conrelid JOIN pg_namespace n ON n.oid = t.relnamespace " +
+         "WHERE c.contype = 'f' AND n.nspname = 'public' ORDER BY t.relname, c.conname");
+      for (List<String> row : rows) {
+         List<String> keys = Arrays.asList(row.get(2).replaceAll("[{}\"]", "").split(","));
+         if (!isLed(row.get(1), keys)) {
+            changes.add(create(row.get(1), keys, "foreign key " + row.get(0) + " has no index"));
+         }
+      }
+      return changes;
+   }//end unindexedForeignKeys
+
+   // equality columns of the recorded shapes that EXPLAIN filters with a sequential scan
+   private List<Change> sequentialScans() {
+      List<Change> changes = new ArrayList<Change>();
+      for (QueryRecorder.Shape shape : shapes) {
+         List<String> plan;
+         try {
+            plan = explain(shape, false);
+         }catch (SQLException e) {
+            System.err.println("Cannot explain " + abbreviate(shape.sql) + ": " + e.getMessage());
+            continue;
+         }//end try
+         String table = null;
+         for (String line : plan) {
+            Matcher scan = SEQ_SCAN.matcher(line);
+            if (scan.find()) {
+               table = scan.group(1).toLowerCase(Locale.ROOT);
+               continue;
+            }
+            if (table == null || !line.trim().startsWith("Filter:")) {
+               continue;
+            }
+            List<String> keys = new ArrayList<String>();
+            Matcher equality = EQUALITY.matcher(line);
+            while (equality.find()) {
+               String column = equality.group(1).toLowerCase(Locale.ROOT);
+               if (columns.getOrDefault(table, Collections.<String>emptySet()).contains(column) && !keys.contains(column)) {
+                  keys.add(column);
+               }
+            }
+            if (!keys.isEmpty() && !isLed(table, keys)) {
+               changes.add(create(table, keys, "sequential scan filtering on " + String.join(", ", keys)
+                                  + " in " + abbreviate(shape.sql)));
+            }
+            table = null;
+         }
+      }
+      return changes;
+   }//end sequentialScans
+
+   // true if an index of table starts with exactly these columns, in any order
+   private boolean isLed(String table, List<String> keys) {
+      for (Index index : indexes) {
+         if (index.table.equals(table) && !index.partial && index.keys.size() >= keys.size()
+             && new LinkedHashSet<String>(index.keys.subList(0, keys.size())).equals(new LinkedHashSet<String>(keys))) {
+            return true;
+         }
+      }
+      return false;
+   }//end isLed
+
+   private static Change create(String table, List<String> keys, String reason) {
+      String name = table + "_" + String.join("_", keys);
+      return new Change(table, "CREATE INDEX IF NOT EXISTS " + name + " ON " + table
+                        + " (" + String.join(", ", keys) + ");", reason);
+   }//end create
+
+   /**
+    * Times every recorded shape that mentions the changed table, before and
+    * after the change, inside a transaction that is rolled back.
+    */
+   private void measure(Change change) throws SQLException {
+      List<QueryRecorder.Shape> affected = new ArrayList<QueryRecorder.Shape>();
+      Pattern mentions = Pattern.compile("\\b" + change.table + "\\b", Pattern.CASE_INSENSITIVE);
+      for (QueryRecorder.Shape shape : shapes) {
+         if (mentions.matcher(shape.sql).find()) {
+            affected.add(shape);
+         }
+      }
+      if (affected.isEmpty()) {
+         change.timings.add("no recorded query uses " + change.table);
+         return;
+      }
+
+      Connection conn = esql.borrowConnection();
+      SQLException error = null;
+      try {
+         conn.setAutoCommit(false);
+         double[] before = new double[affected.size()];
+         for (int i = 0; i < before.length; i++) {
+            before[i] = medianMillis(conn, affected.get(i));
+         }
+         try (Statement stmt = conn.createStatement()) {
+            stmt.execute(change.sql);
+            stmt.execute("ANALYZE " + change.table);
+         }
+         for (int i = 0; i < before.length; i++) {
+            double after = medianMillis(conn, affected.get(i));
+            String sql = abbreviate(affected.get(i).sql);
+            if (Double.isNaN(before[i]) || Double.isNaN(after)) {
+               change.timings.add("      not measurable  " + sql);
+            }
+            else {
+               change.timings.add(String.format(Locale.ROOT, "%8.3f ms -> %8.3f ms  %s", before[i], after, sql));
+            }
+         }
+      }catch (SQLException e) {
+         error = e;
+         change.timings.add("not measured: " + e.getMessage());
+      }finally{
+         try {
+            conn.rollback();
+            conn.setAutoCommit(true);
+         }catch (SQLException e) {
+            if (error == null) {
+               error = e;
+            }
+         }//end try
+         esql.releaseConnection(conn, error);
+      }//end try
+   }//end measure
+
+   // median Execution Time of runs EXPLAIN ANALYZE runs, each undone with a savepoint;
+   // NaN if the sampled statement fails, such as an INSERT of a key that now exists
+   private double medianMillis(Connection conn, QueryRecorder.Shape shape) throws SQLException {
+      double[] times = new double[runs];
+      for (int run = -1; run < runs; run++) {
+         double time = Double.NaN;
+         try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SAVEPOINT advisor");
+            try {
+               for (String line : explain(conn, shape, true)) {
+                  Matcher m = EXECUTION_TIME.matcher(line);
+                  if (m.find()) {
+                     time = Double.parseDouble(m.group(1));
+                  }
+               }
+            }catch (SQLException e) {
+               stmt.execute("ROLLBACK TO SAVEPOINT advisor");
+               return Double.NaN;
+            }//end try
+            stmt.execute("ROLLBACK TO SAVEPOINT advisor");
+         }
+         if (run >= 0) {
+            times[run] = time; // run -1 warms the cache
+         }
+      }
+      Arrays.sort(times);
+      return times[runs / 2];
+   }//end medianMillis
+
+   private List<String> explain(QueryRecorder.Shape shape, boolean analyze) throws SQLException {
+      Connection conn = esql.borrowConnection();
+      SQLException error = null;
+      try {
+         return explain(conn, shape, analyze);
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         esql.releaseConnection(conn, error);
+      }//end try
+   }//end explain
+
+   // the plan of a shape bound to its sampled parameters; not through the statement cache
+   private static List<String> explain(Connection conn, QueryRecorder.Shape shape, boolean analyze) throws SQLException {
+      List<String> plan = new ArrayList<String>();
+      try (PreparedStatement stmt = conn.prepareStatement((analyze ? "EXPLAIN ANALYZE " : "EXPLAIN ") + shape.sql)) {
+         Object[] params = shape.getSample();
+         for (int i = 0; i < params.length; i++) {
+            if (params[i] == null) {
+               stmt.setNull(i + 1, Types.VARCHAR);
+            }
+            else {
+               stmt.setObject(i + 1, params[i]);
+            }
+         }
+         try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+               plan.add(rs.getString(1));
+            }
+         }
+      }
+      return plan;
+   }//end explain
+
+   /**
+    * Writes the changes as a migration script, with their reasons and
+    * timings as comments.
+    */
+   public static void writeMigration(List<Change> changes, File file, int runs) throws IOException {
+      try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+         out.println("-- Index changes proposed by IndexAdvisor.");
+         out.println("-- Timings are the median of " + runs + " EXPLAIN ANALYZE runs of each recorded query");
+         out.println("-- on the changed table, before -> after the change.");
+         for (Change change : changes) {
+            out.println();
+            out.println("-- " + change.reason);
+            for (String timing : change.timings) {
+               out.println("--   " + timing);
+            }
+            out.println(change.sql);
+         }
+      }
+   }//end writeMigration
+
+   /**
+    * Runs the changes for real, each in its own transaction.
+    */
+   public void apply(List<Change> changes) throws SQLException {
+      for (Change change : changes) {
+         esql.executeUpdate(change.sql);
+         System.out.println("Applied: " + change.sql);
+      }
+   }//end apply
+
+   // statement text with placeholders, literals and whitespace folded, to match pg_stat_statements
+   static String normalize(String sql) {
+      return sql.replaceAll("\\$\\d+|\\?|'[^']*'|\\b\\d+(\\.\\d+)?\\b", "?")
+                .replaceAll("\\s+", " ").trim().toLowerCase(Locale.ROOT);
+   }//end normalize
+
+   private static String abbreviate(String sql) {
+      String oneLine = sql.replaceAll("\\s+", " ");
+      return oneLine.length() <= 100 ? oneLine : oneLine.substring(0, 97) + "...";
+   }//end abbreviate
+
+   private static String millis(long nanos) {
+      return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+   }//end millis
+
+   public static void main(String[] args) {
+      if (args.length < 3) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            IndexAdvisor.class.getName() +
+            " <dbname> <port> <user> [--log queries.log] [--out migration.sql] [--runs n] [--apply]");
+         return;
+      }
+      File log = new File(QueryRecorder.LOG_FILE != null ? QueryRecorder.LOG_FILE : "queries.log");
+      File out = new File("index_migration.sql");
+      int runs = DEFAULT_RUNS;
+      boolean apply = false;
+      for (int i = 3; i < args.length; i++) {
+         if (args[i].equals("--apply")) {
+            apply = true;
+         }
+         else if (args[i].equals("--log") && i + 1 < args.length) {
+            log = new File(args[++i]);
+         }
+         else if (args[i].equals("--out") && i + 1 < args.length) {
+            out = new File(args[++i]);
+         }
+         else if (args[i].equals("--runs") && i + 1 < args.length) {
+            runs = Math.max(1, Integer.parseInt(args[++i]));
+         }
+         else {
+            System.err.println("Unknown option " + args[i]);
+            return;
+         }
+      }
+
+      GameRental esql = null;
+      try {
+         List<QueryRecorder.Shape> shapes = log.exists()
+            ? QueryRecorder.readLog(log) : Collections.<QueryRecorder.Shape>emptyList();
+         if (shapes.isEmpty()) {
+            System.out.println("No query shapes in " + log + "; run the application with -Dgamerental.queryLog="
+                               + log + " to record them.  Only catalog checks will be made.");
+         }
+         esql = new GameRental(args[0], args[1], args[2], "", 2);
+         IndexAdvisor advisor = new IndexAdvisor(esql, shapes, runs);
+         List<Change> changes = advisor.advise();
+         writeMigration(changes, out, runs);
+         System.out.println(changes.size() + " change(s) written to " + out);
+         for (Change change : changes) {
+            System.out.println("  " + change.sql + "  -- " + change.reason);
+         }
+         if (apply) {
+            advisor.apply(changes);
+         }
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }
+   }//end main
+
+}//end IndexAdvisor
@@ -0,0 +1,104 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with power-of-two buckets split into 16 linear
+ * sub-buckets, giving about 6% precision from 1us to minutes.  Recording
+ * is lock-free and allocation-free, so it can sit on every query.
+ *
+ */
+public class LatencyHistogram {
+
+   private static final int SUB_BUCKETS = 16;
+
+   private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+   private final LongAdder totalNanos = new LongAdder();
+   private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0L);
+
+   /**
+    * Adds one sample.
+    *
+    * @param nanos the measured time
+    */
+   public void record(long nanos) {
+      counts.incrementAndGet(index(Math.max(1, nanos / 1000)));
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+   }//end record
+
+   /**
+    * @return the number of samples
+    */
+   public long count() {
+      long total = 0;
+      for (int i = 0; i < counts.length(); i++) {
+         total += counts.get(i);
+      }
+      return total;
+   }//end count
+
+   /**
+    * @return the sum of all samples in nanoseconds
+    */
+   public long totalNanos() {
+      return totalNanos.sum();
+   }
+
+   /**
+    * @return the largest sample in nanoseconds
+    */
+   public long maxNanos() {
+      return maxNanos.get();
+   }
+
+   /**
+    * @return the mean sample in microseconds
+    */
+   public double meanMicros() {
+      long n = count();
+      return n == 0 ? 0.0 : totalNanos.sum() / 1000.0 / n;
+   }//end meanMicros
+
+   /**
+    * @param q the quantile, from 0 to 1
+    * @return the upper bound in microseconds of the bucket holding quantile q,
+    *         at most the largest sample
+    */
+   public double quantile(double q) {
+      long total = count();
+      if (total == 0) {
+         return 0.0;
+      }
+      long rank = (long) Math.ceil(q * total);
+      long seen = 0;
+      // no bucket bound is reported above the largest sample
+      double max = maxNanos.get() / 1000.0;
+      for (int i = 0; i < counts.length(); i++) {
+         seen += counts.get(i);
+         if (seen >= rank) {
+            return Math.min(upperBound(i), max);
+         }
+      }
+      return max;
+   }//end quantile
+
+   private static int index(long micros) {
+      if (micros < SUB_BUCKETS) {
+         return (int) micros;
+      }
+      int exp = 63 - Long.numberOfLeadingZeros(micros);
+      int sub = (int) ((micros >>> (exp - 4)) & (SUB_BUCKETS - 1));
+      return (exp - 3) * SUB_BUCKETS + sub;
+   }//end index
+
+   private static double upperBound(int index) {
+      if (index < SUB_BUCKETS) {
+         return index;
+      }
+      int exp = index / SUB_BUCKETS + 3;
+      int sub = index % SUB_BUCKETS;
+      return (double) ((long) (SUB_BUCKETS + sub + 1) << (exp - 4));
+   }//end upperBound
+
+}//end LatencyHistogram
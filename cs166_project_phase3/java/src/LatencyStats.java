@@ -0,0 +1,46 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, row and error counts of one SQL shape or one menu action.
+ *
+ */
+public class LatencyStats implements LatencyStatsMBean {
+
+   private final String name;
+   private final LatencyHistogram histogram = new LatencyHistogram();
+   private final LongAdder rows = new LongAdder();
+   private final LongAdder errors = new LongAdder();
+
+   public LatencyStats(String name) {
+      this.name = name;
+   }
+
+   /**
+    * Adds one call.
+    *
+    * @param nanos the time the call took
+    * @param rowCount the rows it read or changed
+    * @param failed true if it ended in an error
+    */
+   public void record(long nanos, long rowCount, boolean failed) {
+      histogram.record(nanos);
+      rows.add(rowCount);
+      if (failed) {
+         errors.increment();
+      }
+   }//end record
+
+   public LatencyHistogram getHistogram() { return histogram; }
+
+   @Override public String getName() { return name; }
+   @Override public long getCount() { return histogram.count(); }
+   @Override public long getErrors() { return errors.sum(); }
+   @Override public long getRows() { return rows.sum(); }
+   @Override public double getTotalMillis() { return histogram.totalNanos() / 1e6; }
+   @Override public double getMeanMicros() { return histogram.meanMicros(); }
+   @Override public double getP50Micros() { return histogram.quantile(0.5); }
+   @Override public double getP90Micros() { return histogram.quantile(0.9); }
+   @Override public double getP99Micros() { return histogram.quantile(0.99); }
+   @Override public double getMaxMicros() { return histogram.maxNanos() / 1000.0; }
+
+}//end LatencyStats
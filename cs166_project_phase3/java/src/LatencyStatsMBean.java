@@ -0,0 +1,27 @@
+/**
+ * JMX view of one LatencyStats.  Times are in microseconds.
+ *
+ */
+public interface LatencyStatsMBean {
+
+   String getName();
+
+   long getCount();
+
+   long getErrors();
+
+   long getRows();
+
+   double getTotalMillis();
+
+   double getMeanMicros();
+
+   double getP50Micros();
+
+   double getP90Micros();
+
+   double getP99Micros();
+
+   double getMaxMicros();
+
+}//end LatencyStatsMBean
@@ -0,0 +1,189 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency, row and error statistics per SQL shape and per menu action.
+ *
+ * The execute methods of GameRental report every statement here, and the
+ * menu loop times every dispatched action.  Action times leave out the time
+ * spent waiting for the user to type (SessionIO.inputWaitNanos), so they
+ * measure the program, and an action counts as failed when any of its
+ * queries failed, as the menu methods only print the message.  Every shape
+ * and action is registered as a LatencyStatsMBean under GameRental:type=Query
+ * and GameRental:type=Action unless -Dgamerental.metrics.jmx=false.  With
+ * -Dgamerental.metrics.report=file (or - for standard error) a report is
+ * written when the GameRental is cleaned up.
+ *
+ */
+public class Metrics {
+
+   public static final boolean JMX = Boolean.parseBoolean(System.getProperty("gamerental.metrics.jmx", "true"));
+   public static final String REPORT = System.getProperty("gamerental.metrics.report");
+
+   // rows and failed statements of the calling thread's queries, for the action around them
+   private static final ThreadLocal<long[]> ACTIVITY = ThreadLocal.withInitial(() -> new long[2]);
+
+   private final QueryRecorder queries;
+   private final ConcurrentHashMap<String, LatencyStats> actions = new ConcurrentHashMap<String, LatencyStats>();
+   private final AtomicInteger shapeIds = new AtomicInteger();
+   private final List<ObjectName> registered = Collections.synchronizedList(new ArrayList<ObjectName>());
+
+   public Metrics(QueryRecorder queries) {
+      this.queries = queries;
+      queries.setNewShapeListener(shape -> register("Query", "q" + shapeIds.incrementAndGet(), shape.stats));
+   }//end Metrics
+
+   /**
+    * Times one menu action of the calling thread.
+    */
+   public final class Timer {
+      private final long start = System.nanoTime();
+      private final long inputWait = SessionIO.inputWaitNanos();
+      private final long rows;
+      private final long errors;
+
+      private Timer() {
+         long[] activity = ACTIVITY.get();
+         rows = activity[0];
+         errors = activity[1];
+      }
+
+      /**
+       * Records the action.
+       *
+       * @param action the name of the action, or null to record nothing
+       */
+      public void stop(String action) {
+         if (action == null) {
+            return;
+         }
+         long nanos = System.nanoTime() - start - (SessionIO.inputWaitNanos() - inputWait);
+         long[] activity = ACTIVITY.get();
+         LatencyStats stats = actions.get(action);
+         if (stats == null) {
+            LatencyStats created = new LatencyStats(action);
+            stats = actions.putIfAbsent(action, created);
+            if (stats == null) {
+               stats = created;
+               register("Action", action, created);
+            }
+         }
+         stats.record(Math.max(0, nanos), activity[0] - rows, activity[1] > errors);
+      }//end stop
+   }//end Timer
+
+   /**
+    * @return a timer for an action starting now on the calling thread
+    */
+   public Timer startAction() {
+      return new Timer();
+   }
+
+   /**
+    * Records one statement.
+    *
+    * @param sql the statement text with ? placeholders
+    * @param params the bound values
+    * @param nanos time spent executing and reading the result
+    * @param rows the rows read or changed
+    * @param failed true if the statement raised an error
+    */
+   public void query(String sql, Object[] params, long nanos, long rows, boolean failed) {
+      queries.record(sql, params, nanos, rows, failed);
+      long[] activity = ACTIVITY.get();
+      activity[0] += rows;
+      if (failed) {
+         activity[1]++;
+      }
+   }//end query
+
+   /**
+    * Prints the actions and the query shapes, by total time.
+    */
+   public void report(PrintStream out) {
+      out.println("Menu actions (excluding time waiting for input):");
+      print(out, actions.values());
+      out.println();
+      out.println("Query shapes:");
+      List<LatencyStats> shapes = new ArrayList<LatencyStats>();
+      for (QueryRecorder.Shape shape : queries.snapshot()) {
+         shapes.add(shape.stats);
+      }
+      print(out, shapes);
+      out.flush();
+   }//end report
+
+   private static void print(PrintStream out, Collection<LatencyStats> all) {
+      List<LatencyStats> sorted = new ArrayList<LatencyStats>(all);
+      Collections.sort(sorted, Comparator.comparingDouble(LatencyStats::getTotalMillis).reversed());
+      out.printf("%8s %7s %9s %10s %9s %9s %9s %9s %10s  %s%n",
+                 "calls", "errors", "rows", "total ms", "mean us", "p50 us", "p90 us", "p99 us", "max us", "name");
+      for (LatencyStats stats : sorted) {
+         if (stats.getCount() == 0) {
+            continue;
+         }
+         String name = stats.getName().replaceAll("\\s+", " ");
+         out.printf("%8d %7d %9d %10.1f %9.0f %9.0f %9.0f %9.0f %10.0f  %s%n",
+                    stats.getCount(), stats.getErrors(), stats.getRows(), stats.getTotalMillis(),
+                    stats.getMeanMicros(), stats.getP50Micros(), stats.getP90Micros(), stats.getP99Micros(),
+                    stats.getMaxMicros(), name.length() <= 120 ? name : name.substring(0, 117) + "...");
+      }
+   }//end print
+
+   /**
+    * Writes the report if one was asked for and unregisters the MBeans.
+    */
+   public void close() {
+      if (REPORT != null) {
+         if (REPORT.equals("-")) {
+            report(SessionIO.logErr());
+         }
+         else {
+            try (PrintStream out = new PrintStream(new FileOutputStream(REPORT), false, "UTF-8")) {
+               report(out);
+            }catch (IOException e) {
+               System.err.println("Cannot write metrics report: " + e.getMessage());
+            }//end try
+         }
+      }
+      if (JMX) {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         synchronized (registered) {
+            for (ObjectName name : registered) {
+               try {
+                  server.unregisterMBean(name);
+               }catch (JMException e) {
+                  // already gone
+               }//end try
+            }
+            registered.clear();
+         }
+      }
+   }//end close
+
+   private void register(String type, String name, LatencyStats stats) {
+      if (!JMX) {
+         return;
+      }
+      try {
+         ObjectName objectName = new ObjectName("GameRental:type=" + type + ",name=" + ObjectName.quote(name));
+         ManagementFactory.getPlatformMBeanServer().registerMBean(stats, objectName);
+         registered.add(objectName);
+      }catch (JMException e) {
+         // another GameRental in this JVM registered the name first; its statistics are shown instead
+      }//end try
+   }//end register
+
+}//end Metrics
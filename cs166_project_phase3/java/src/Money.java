@@ -0,0 +1,49 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money helpers.  Amounts are held as a long number of cents,
+ * matching the decimal(10,2) price columns, so sums are exact.
+ *
+ */
+public final class Money {
+
+   private Money() {
+   }
+
+   /**
+    * @param amount a decimal amount
+    * @return amount in cents, rounded half-up past two decimal places
+    */
+   public static long toCents(BigDecimal amount) {
+      return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+   }//end toCents
+
+   /**
+    * @param cents an amount in cents
+    * @return the amount as a decimal with two decimal places
+    */
+   public static BigDecimal toBigDecimal(long cents) {
+      return BigDecimal.valueOf(cents, 2);
+   }//end toBigDecimal
+
+   /**
+    * Parses a price typed by a user.  Digits past the second decimal place
+    * are truncated, as the catalog menus always did.
+    *
+    * @param amount text accepted by GameRental.validateDouble
+    * @return amount in cents
+    */
+   public static long parseCents(String amount) {
+      return new BigDecimal(amount).setScale(2, RoundingMode.DOWN).unscaledValue().longValueExact();
+   }//end parseCents
+
+   /**
+    * @param cents an amount in cents
+    * @return the amount formatted with two decimal places, e.g. 32.99
+    */
+   public static String format(long cents) {
+      return toBigDecimal(cents).toPlainString();
+   }//end format
+
+}//end Money
@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages through one user's rental orders, newest first.
+ *
+ * Pages are fetched with keyset pagination on (orderTimestamp,
+ * rentalOrderID), which the login_orderTimestamp index stores in display
+ * order under each login, so a page is one index range scan however many
+ * orders the user has.  The index includes noOfGames and totalPrice, and
+ * the status comes from the covering rentalOrderID_Tracking index, so the
+ * page query can be answered by index-only scans.  The start key of every
+ * visited page is kept so previous pages are fetched the same way.
+ *
+ * The order tables are partitioned by month of orderTimestamp.  A page is
+ * first read from the gamerental.orders.recentMonths monthly partitions up
+ * to its start key, which hold the page for all but occasional customers,
+ * and only read from every older partition when they do not.
+ *
+ */
+public class OrderHistory {
+
+   public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("gamerental.orders.pageSize", 10);
+   public static final int RECENT_MONTHS = Integer.getInteger("gamerental.orders.recentMonths", 3);
+
+   private static final String SELECT_PAGE =
+      "SELECT R.rentalOrderID, R.orderTimestamp, R.noOfGames, R.totalPrice, T.status " +
+      "FROM RentalOrder R LEFT JOIN TrackingInfo T ON T.rentalOrderID = R.rentalOrderID AND T.orderTimestamp = R.orderTimestamp " +
+      "WHERE R.login = ?";
+   private static final String ORDER_BY =
+      " ORDER BY R.orderTimestamp DESC, R.rentalOrderID DESC LIMIT ";
+
+   private static final String[] COLUMNS = { "rentalOrderID", "orderTimestamp", "noOfGames", "totalPrice", "status" };
+   private static final boolean[] NUMERIC_COLUMNS = { false, false, true, true, false };
+
+   private final String user;
+   private final int pageSize;
+
+   // pageStarts.get(i) is the (orderTimestamp, rentalOrderID) key page i starts after; null for the first page
+   private final List<Object[]> pageStarts = new ArrayList<Object[]>();
+   private int currentPage = -1;
+   private Object[] nextStart = null;
+   private Integer cachedCount = null;
+
+   public OrderHistory(String user) {
+      this(user, DEFAULT_PAGE_SIZE);
+   }
+
+   public OrderHistory(String user, int pageSize) {
+      this.user = user;
+      this.pageSize = pageSize;
+   }
+
+   /**
+    * Prints the newest page of orders.
+    */
+   public void firstPage(GameRental esql) throws SQLException {
+      pageStarts.clear();
+      pageStarts.add(null);
+      cachedCount = null;
+      showPage(esql, 0, true);
+   }//end firstPage
+
+   /**
+    * Prints only the newest pageSize orders, without paging information.
+    */
+   public void showLatest(GameRental esql) throws SQLException {
+      pageStarts.clear();
+      pageStarts.add(null);
+      showPage(esql, 0, false);
+   }//end showLatest
+
+   /**
+    * Prints the page of older orders after the one last shown.
+    */
+   public void nextPage(GameRental esql) throws SQLException {
+      if (currentPage < 0) {
+         firstPage(esql);
+         return;
+      }
+      if (nextStart == null) {
+         System.out.println("Already on the last page.");
+         return;
+      }
+      if (pageStarts.size() == currentPage + 1) {
+         pageStarts.add(nextStart);
+      }
+      showPage(esql, currentPage + 1, true);
+   }//end nextPage
+
+   /**
+    * Prints the page of newer orders before the one last shown.
+    */
+   public void previousPage(GameRental esql) throws SQLException {
+      if (currentPage <= 0) {
+         System.out.println("Already on the first page.");
+         return;
+      }
+      showPage(esql, currentPage - 1, true);
+   }//end previousPage
+
+   /**
+    * Fetches pageSize + 1 orders after start.  The extra row tells whether
+    * a next page exists.
+    *
+    * @param start the (orderTimestamp, rentalOrderID) key the page starts after, or null
+    * @return the rows of the page
+    */
+   TypedResult fetchPage(GameRental esql, Object[] start) throws SQLException {
+      String query = SELECT_PAGE;
+      List<Object> params = new ArrayList<Object>();
+      params.add(user);
+      Timestamp newest = new Timestamp(System.currentTimeMillis());
+      if (start != null) {
+         // row-value comparison matches the (login, orderTimestamp DESC, rentalOrderID DESC) index order,
+         // and the plain bound lets the planner skip the newer partitions
+         query += " AND (R.orderTimestamp, R.rentalOrderID) < (?, ?) AND R.orderTimestamp <= ?";
+         params.add(start[0]);
+         params.add(start[1]);
+         params.add(start[0]);
+         newest = (Timestamp) start[0];
+      }
+      Timestamp since = Timestamp.valueOf(newest.toLocalDateTime().truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1)
+                                          .minusMonths(Math.max(RECENT_MONTHS, 1) - 1));
+      params.add(since);
+      TypedResult recent = esql.executeQueryTyped(query + " AND R.orderTimestamp >= ?" + ORDER_BY + (pageSize + 1),
+                                                  params.toArray());
+      if (recent.size() > pageSize) {
+         return recent;
+      }
+      params.remove(params.size() - 1);
+      return esql.executeQueryTyped(query + ORDER_BY + (pageSize + 1), params.toArray());
+   }//end fetchPage
+
+   private void showPage(GameRental esql, int page, boolean footer) throws SQLException {
+      TypedResult rows = fetchPage(esql, pageStarts.get(page));
+      int shown = Math.min(rows.size(), pageSize);
+      ResultRenderer renderer = new ResultRenderer(ResultRenderer.DEFAULT_MODE, 0);
+      try {
+         try {
+            renderer.begin(COLUMNS, NUMERIC_COLUMNS);
+            TypedResult.Row row = rows.row(0);
+            for (int i = 0; i < shown; i++) {
+               row.at(i);
+               renderer.row(new String[] { row.getString(0), row.getString(1), Integer.toString(row.getInt(2)),
+                                           Money.format(row.getCents(3)), row.getString(4) });
+            }
+         }finally{
+            renderer.end();
+         }//end try
+      }catch (IOException e) {
+         throw new SQLException(e.getMessage());
+      }//end try
+      if (shown == 0) {
+         System.out.println("No orders found.");
+      }
+      currentPage = page;
+      if (rows.size() > pageSize) {
+         TypedResult.Row last = rows.row(pageSize - 1);
+         nextStart = new Object[] { last.getTimestamp(1), last.getString(0) };
+      }
+      else {
+         nextStart = null;
+      }
+
+      if (!footer) {
+         return;
+      }
+      if (cachedCount == null) {
+         List<List<String>> count = esql.executeQueryAndReturnResult(
+            "SELECT COUNT(*) FROM RentalOrder WHERE login = ?", user);
+         cachedCount = Integer.parseInt(count.get(0).get(0));
+      }
+      int totalPages = Math.max(1, (cachedCount + pageSize - 1) / pageSize);
+      System.out.println("Page " + (page + 1) + " of " + totalPages + ", total order(s): " + cachedCount);
+   }//end showPage
+
+}//end OrderHistory
@@ -0,0 +1,258 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps Users.numOverDueGames current in the background.
+ *
+ * A user's overdue games are the games (noOfGames) of their orders whose
+ * dueDate has passed; there is no return, so an order stays overdue.  The
+ * job walks RentalOrder in (dueDate, rentalOrderID) order through the
+ * dueDate_rentalOrderID index, from the watermark it stored in
+ * MaintenanceWatermark to the current time, and adds the games of every
+ * order it passes to its user with one set-based UPDATE per batch.  Each
+ * run therefore costs one index range scan over the orders that became
+ * overdue since the last run.  A batch and its watermark commit together,
+ * and the watermark row is locked FOR UPDATE SKIP LOCKED, so any number of
+ * clients can run the job and every order is counted exactly once.
+ *
+ * The first run, with no watermark yet, recomputes every user from
+ * scratch.  Sessions of the users whose count changed are invalidated so
+ * viewProfile shows the new count.
+ *
+ */
+public class OverdueMaintainer {
+
+   public static final long INTERVAL_MS = Long.getLong("gamerental.overdue.intervalMs", 60000L);
+   public static final int BATCH_SIZE = Integer.getInteger("gamerental.overdue.batchSize", 1000);
+
+   private static final String JOB = "overdue";
+
+   private static final String LOCK_WATERMARK =
+      "SELECT dueDate, rentalOrderID, LOCALTIMESTAMP FROM MaintenanceWatermark WHERE job = ? FOR UPDATE SKIP LOCKED";
+   private static final String SAVE_WATERMARK =
+      "UPDATE MaintenanceWatermark SET dueDate = ?, rentalOrderID = ?, lastRun = LOCALTIMESTAMP WHERE job = ?";
+
+   // adds the games of the next batch of newly overdue orders; returns one row per user with the batch's last key
+   private static final String APPLY_BATCH =
+      "WITH batch AS (" +
+      "   SELECT rentalOrderID, login, noOfGames, dueDate FROM RentalOrder" +
+      "   WHERE (dueDate, rentalOrderID) > (?, ?) AND dueDate <= ?" +
+      "   ORDER BY dueDate, rentalOrderID LIMIT ?" +
+      "), last AS (" +
+      "   SELECT dueDate, rentalOrderID FROM batch ORDER BY dueDate DESC, rentalOrderID DESC LIMIT 1" +
+      "), games AS (" +
+      "   SELECT login, SUM(noOfGames) AS games, COUNT(*) AS orders FROM batch GROUP BY login" +
+      "), updated AS (" +
+      "   UPDATE Users U SET numOverDueGames = COALESCE(U.numOverDueGames, 0) + g.games" +
+      "   FROM games g WHERE U.login = g.login" +
+      ") " +
+      "SELECT g.login, g.orders, l.dueDate, l.rentalOrderID FROM games g CROSS JOIN last l";
+
+   private static final String RECOMPUTE_ALL =
+      "UPDATE Users U SET numOverDueGames = COALESCE((SELECT SUM(R.noOfGames) FROM RentalOrder R " +
+      "WHERE R.login = U.login AND R.dueDate <= ?), 0)";
+   private static final String LAST_OVERDUE =
+      "SELECT dueDate, rentalOrderID FROM RentalOrder WHERE dueDate <= ? " +
+      "ORDER BY dueDate DESC, rentalOrderID DESC LIMIT 1";
+
+   // the watermark before any order
+   private static final Timestamp START = new Timestamp(0L);
+
+   private final GameRental esql;
+   private ScheduledExecutorService scheduler = null;
+
+   public OverdueMaintainer(GameRental esql) {
+      this.esql = esql;
+   }
+
+   /**
+    * Runs the job every INTERVAL_MS on a daemon thread, starting now.  Does
+    * nothing if INTERVAL_MS is 0 or the job is already scheduled.
+    */
+   public synchronized void start() {
+      if (scheduler != null || INTERVAL_MS <= 0) {
+         return;
+      }
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread thread = new Thread(r, "overdue-maintainer");
+         thread.setDaemon(true);
+         return thread;
+      });
+      scheduler.scheduleWithFixedDelay(() -> {
+         try {
+            runOnce();
+         }catch (SQLException e) {
+            SessionIO.logErr().println("Overdue maintenance failed: " + e.getMessage());
+         }//end try
+      }, 0, INTERVAL_MS, TimeUnit.MILLISECONDS);
+   }//end start
+
+   /**
+    * Stops the schedule, letting a running batch finish.
+    */
+   public synchronized void close() {
+      if (scheduler != null) {
+         scheduler.shutdown();
+         try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+         }catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }//end try
+         scheduler = null;
+      }
+   }//end close
+
+   /**
+    * Brings every user's count up to the current time.
+    *
+    * @return the number of orders that became overdue, or -1 if another
+    *         client holds the watermark
+    */
+   public long runOnce() throws SQLException {
+      long orders = 0;
+      while (true) {
+         long batch = runBatch();
+         if (batch < 0) {
+            return orders == 0 ? -1 : orders;
+         }
+         orders += batch;
+         if (batch < BATCH_SIZE) {
+            return orders;
+         }
+      }
+   }//end runOnce
+
+   // one transaction: lock the watermark, apply one batch, move the watermark;
+   // returns the orders applied, or -1 if the watermark is locked by another client
+   private long runBatch() throws SQLException {
+      Connection conn = esql.borrowConnection();
+      SQLException error = null;
+      List<String> changed = new ArrayList<String>();
+      boolean all = false;
+      long orders = 0;
+      try {
+         conn.setAutoCommit(false);
+         Timestamp due;
+         String orderID;
+         Timestamp now;
+         try (PreparedStatement lock = conn.prepareStatement(LOCK_WATERMARK)) {
+            lock.setString(1, JOB);
+            try (ResultSet rs = lock.executeQuery()) {
+               if (!rs.next()) {
+                  conn.rollback();
+                  return -1;
+               }
+               due = rs.getTimestamp(1);
+               orderID = rs.getString(2);
+               now = rs.getTimestamp(3);
+            }
+         }
+
+         if (due == null) {
+            // never run: recompute everyone, then continue from the last overdue order
+            try (PreparedStatement recompute = conn.prepareStatement(RECOMPUTE_ALL)) {
+               recompute.setTimestamp(1, now);
+               recompute.executeUpdate();
+            }
+            Timestamp lastDue = START;
+            String lastID = "";
+            try (PreparedStatement last = conn.prepareStatement(LAST_OVERDUE)) {
+               last.setTimestamp(1, now);
+               try (ResultSet rs = last.executeQuery()) {
+                  if (rs.next()) {
+                     lastDue = rs.getTimestamp(1);
+                     lastID = rs.getString(2);
+                  }
+               }
+            }
+            saveWatermark(conn, lastDue, lastID);
+            all = true;
+         }
+         else {
+            try (PreparedStatement apply = conn.prepareStatement(APPLY_BATCH)) {
+               apply.setTimestamp(1, due);
+               apply.setString(2, orderID);
+               apply.setTimestamp(3, now);
+               apply.setInt(4, BATCH_SIZE);
+               Timestamp lastDue = null;
+               String lastID = null;
+               try (ResultSet rs = apply.executeQuery()) {
+                  while (rs.next()) {
+                     changed.add(rs.getString(1));
+                     orders += rs.getLong(2);
+                     lastDue = rs.getTimestamp(3);
+                     lastID = rs.getString(4);
+                  }
+               }
+               if (lastDue != null) {
+                  saveWatermark(conn, lastDue, lastID);
+               }
+            }
+         }
+         conn.commit();
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         // the pool rolls back and restores autocommit on release
+         esql.releaseConnection(conn, error);
+      }//end try
+
+      if (all) {
+         esql._sessions.invalidateAll();
+      }
+      for (String login : changed) {
+         esql._sessions.invalidate(login);
+      }
+      return orders;
+   }//end runBatch
+
+   private static void saveWatermark(Connection conn, Timestamp due, String orderID) throws SQLException {
+      try (PreparedStatement save = conn.prepareStatement(SAVE_WATERMARK)) {
+         save.setTimestamp(1, due);
+         save.setString(2, orderID);
+         save.setString(3, JOB);
+         save.executeUpdate();
+      }
+   }//end saveWatermark
+
+   /**
+    * Runs the job once, for use from cron instead of a long-running client.
+    */
+   public static void main(String[] args) {
+      if (args.length != 3) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            OverdueMaintainer.class.getName() +
+            " <dbname> <port> <user>");
+         return;
+      }
+      GameRental esql = null;
+      try {
+         esql = new GameRental(args[0], args[1], args[2], "", 1);
+         long orders = new OverdueMaintainer(esql).runOnce();
+         if (orders < 0) {
+            System.out.println("Another client is running overdue maintenance.");
+         }
+         else {
+            System.out.println(orders + " order(s) became overdue since the last run.");
+         }
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }
+   }//end main
+
+}//end OverdueMaintainer
@@ -0,0 +1,421 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves old months of orders out of the database into compressed files,
+ * and back.
+ *
+ * RentalOrder, TrackingInfo and GamesInOrder are partitioned by month of
+ * orderTimestamp into tables named &lt;table&gt;_YYYY_MM (create_tables.sql).
+ * archive takes every month before the one given: its three partitions
+ * are detached in one short transaction, TrackingInfo and GamesInOrder
+ * first, and their foreign keys to RentalOrder dropped, so the live tables
+ * and their indexes shrink at once.  Each detached table is then written
+ * to &lt;dir&gt;/&lt;partition&gt;.csv.gz in the data/*.csv dialect with a
+ * header row, and dropped only after its three files are complete.  A
+ * month whose export failed stays detached and is exported by the next run.
+ *
+ * restore loads a month's files into new tables and attaches them,
+ * RentalOrder first, which builds their indexes and checks their keys.
+ * When the month is still attached (it was never archived, or extend
+ * recreated it) the files are loaded into a staging table and copied into
+ * its partitions.  The primary keys include orderTimestamp, so before a
+ * month is attached or copied its rentalOrderIDs and trackingIDs are
+ * claimed in OrderIDs, and restore refuses the month if one repeats within
+ * it or belongs to another order.  archive leaves a month's IDs in
+ * OrderIDs, so no new order can take them while it is archived.  extend
+ * creates the partitions of the coming months and list shows every
+ * partition with its bounds, estimated rows and size.
+ *
+ */
+public class PartitionArchiver {
+
+   // parents first; archive detaches and drops in the reverse order
+   static final String[] TABLES = { "rentalorder", "trackinginfo", "gamesinorder" };
+   // parallel to TABLES: finds an ID of the rows of %s that repeats or that OrderIDs holds for
+   // another order; null when the primary key covers the table
+   private static final String[] TAKEN_IDS = {
+      "SELECT R.rentalOrderID FROM %s R JOIN OrderIDs O ON O.rentalOrderID = R.rentalOrderID " +
+      "WHERE O.orderTimestamp <> R.orderTimestamp LIMIT 1",
+      "(SELECT T.trackingID FROM %1$s T JOIN OrderIDs O ON O.trackingID = T.trackingID " +
+      "WHERE O.rentalOrderID <> T.rentalOrderID LIMIT 1) UNION ALL " +
+      "(SELECT T.trackingID FROM %1$s T JOIN OrderIDs O ON O.rentalOrderID = T.rentalOrderID " +
+      "WHERE O.trackingID <> T.trackingID LIMIT 1) UNION ALL " +
+      "(SELECT MIN(trackingID) FROM %1$s GROUP BY rentalOrderID HAVING COUNT(*) > 1 LIMIT 1)",
+      null };
+   // parallel to TABLES: claims the IDs of the rows of %s in OrderIDs; an ID repeated within
+   // them violates a key of OrderIDs
+   private static final String[] CLAIM_IDS = {
+      "INSERT INTO OrderIDs (rentalOrderID, orderTimestamp) SELECT R.rentalOrderID, R.orderTimestamp FROM %s R " +
+      "WHERE NOT EXISTS (SELECT 1 FROM OrderIDs O WHERE O.rentalOrderID = R.rentalOrderID)",
+      "UPDATE OrderIDs O SET trackingID = T.trackingID FROM %s T " +
+      "WHERE O.rentalOrderID = T.rentalOrderID AND O.trackingID IS NULL",
+      null };
+
+   public static final int DEFAULT_EXTEND_MONTHS = 13;
+
+   private static final String SELECT_MONTHS =
+      "SELECT relname FROM pg_class WHERE relname ~ '^rentalorder_[0-9]{4}_[0-9]{2}$' AND relkind = 'r' " +
+      "AND pg_table_is_visible(oid) ORDER BY relname";
+   private static final String SELECT_PARENT =
+      "SELECT P.relname FROM pg_inherits I JOIN pg_class C ON C.oid = I.inhrelid " +
+      "JOIN pg_class P ON P.oid = I.inhparent WHERE C.relname = ? AND pg_table_is_visible(C.oid)";
+   private static final String SELECT_TABLE =
+      "SELECT 1 FROM pg_class WHERE relname = ? AND relkind = 'r' AND pg_table_is_visible(oid)";
+   private static final String SELECT_ORDER_FKS =
+      "SELECT conname FROM pg_constraint WHERE contype = 'f' AND conrelid = CAST(? AS regclass) " +
+      "AND confrelid = CAST('rentalorder' AS regclass)";
+   private static final String SELECT_COLUMNS =
+      "SELECT attname FROM pg_attribute WHERE attrelid = CAST(? AS regclass) AND attnum > 0 AND NOT attisdropped " +
+      "ORDER BY attnum";
+   private static final String LIST =
+      "SELECT P.relname AS parent, C.relname AS partition, pg_get_expr(C.relpartbound, C.oid) AS bounds, " +
+      "CAST(C.reltuples AS bigint) AS rows, pg_size_pretty(pg_total_relation_size(C.oid)) AS size " +
+      "FROM pg_inherits I JOIN pg_class C ON C.oid = I.inhrelid JOIN pg_class P ON P.oid = I.inhparent " +
+      "WHERE P.relname IN ('rentalorder', 'trackinginfo', 'gamesinorder') ORDER BY P.relname, C.relname";
+   private static final String EXTEND =
+      "SELECT create_order_partitions(CAST(date_trunc('month', CURRENT_DATE) AS date), " +
+      "CAST(date_trunc('month', CURRENT_DATE) + ? * interval '1 month' AS date))";
+
+   private final GameRental esql;
+   private final File dir;
+
+   public PartitionArchiver(GameRental esql, File dir) {
+      this.esql = esql;
+      this.dir = dir;
+   }
+
+   /**
+    * Archives every month of orders before before.
+    *
+    * @return the number of months archived
+    */
+   public int archive(YearMonth before) throws SQLException, IOException {
+      List<YearMonth> months = new ArrayList<YearMonth>();
+      for (List<String> row : esql.executeQueryAndReturnResult(SELECT_MONTHS)) {
+         YearMonth month = monthOf(row.get(0));
+         if (month.isBefore(before)) {
+            months.add(month);
+         }
+      }
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+         throw new IOException("Cannot create " + dir);
+      }
+      for (YearMonth month : months) {
+         long start = System.nanoTime();
+         detach(month);
+         long rows = 0;
+         for (String table : TABLES) {
+            rows += export(partition(table, month));
+         }
+         List<String> drops = new ArrayList<String>();
+         for (int t = TABLES.length - 1; t >= 0; t--) {
+            drops.add("DROP TABLE " + partition(TABLES[t], month));
+         }
+         inTransaction(drops);
+         System.out.println(String.format("%s: %,d rows archived in %.1fs", month, rows,
+                                          (System.nanoTime() - start) / 1e9));
+      }
+      return months.size();
+   }//end archive
+
+   /**
+    * Loads an archived month back into the order tables.
+    *
+    * @return the number of rows restored
+    */
+   public long restore(YearMonth month) throws SQLException, IOException {
+      long rows = 0;
+      for (int t = 0; t < TABLES.length; t++) {
+         String table = TABLES[t];
+         String name = partition(table, month);
+         File file = archiveFile(name);
+         if (isPartition(name)) {
+            String staging = name + "_restore";
+            esql.executeUpdate("DROP TABLE IF EXISTS " + staging);
+            esql.executeUpdate("CREATE TABLE " + staging + " (LIKE " + table + " INCLUDING DEFAULTS)");
+            try {
+               rows += load(staging, file);
+               claimIds(esql, t, staging);
+               esql.executeUpdate("INSERT INTO " + name + " SELECT * FROM " + staging);
+            }finally{
+               esql.executeUpdate("DROP TABLE " + staging);
+            }//end try
+            continue;
+         }
+         if (!exists(name)) {
+            esql.executeUpdate("CREATE TABLE " + name + " (LIKE " + table + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            rows += load(name, file);
+         }
+         // a table left detached by a failed archive still holds its rows
+         claimIds(esql, t, name);
+         esql.executeUpdate("ALTER TABLE " + table + " ATTACH PARTITION " + name + " FOR VALUES FROM ('"
+                            + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+      }
+      return rows;
+   }//end restore
+
+   /**
+    * Creates the monthly partitions of the current month and the months
+    * after it that do not exist yet.
+    *
+    * @return the number of partitions created
+    */
+   public int extend(int months) throws SQLException {
+      return Integer.parseInt(esql.executeQueryAndReturnResult(EXTEND, months).get(0).get(0));
+   }//end extend
+
+   /**
+    * Prints every partition of the order tables.
+    */
+   public void list() throws SQLException {
+      esql.executeQueryAndPrintResult(LIST);
+   }//end list
+
+   // detaches the month's partitions that are still attached, children first
+   private void detach(YearMonth month) throws SQLException {
+      Connection conn = esql.borrowConnection();
+      SQLException error = null;
+      try {
+         conn.setAutoCommit(false);
+         try (Statement stmt = conn.createStatement()) {
+            for (int t = TABLES.length - 1; t >= 0; t--) {
+               String name = partition(TABLES[t], month);
+               if (!exists(conn, SELECT_TABLE, name)) {
+                  continue;
+               }
+               if (exists(conn, SELECT_PARENT, name)) {
+                  stmt.executeUpdate("ALTER TABLE " + TABLES[t] + " DETACH PARTITION " + name);
+               }
+               // a detached child keeps its foreign key, which would block detaching its orders
+               for (String fk : strings(conn, SELECT_ORDER_FKS, name)) {
+                  stmt.executeUpdate("ALTER TABLE " + name + " DROP CONSTRAINT " + fk);
+               }
+            }
+         }
+         conn.commit();
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         esql.releaseConnection(conn, error);
+      }//end try
+   }//end detach
+
+   // writes a detached table to its archive file; returns the number of rows
+   private long export(String name) throws SQLException, IOException {
+      final File file = archiveFile(name);
+      File partial = new File(dir, file.getName() + ".part");
+      List<String> columns = new ArrayList<String>();
+      for (List<String> row : esql.executeQueryAndReturnResult(SELECT_COLUMNS, name)) {
+         columns.add(row.get(0));
+      }
+      final long[] rows = { 0 };
+      try (final Writer out = new BufferedWriter(new OutputStreamWriter(
+              new GZIPOutputStream(new FileOutputStream(partial), 1 << 16), StandardCharsets.UTF_8), 1 << 16)) {
+         out.write(String.join(",", columns));
+         out.write('\n');
+         final int width = columns.size();
+         final IOException[] failure = { null };
+         esql.executeQueryStream("SELECT * FROM " + name, GameRental.DEFAULT_FETCH_SIZE, new GameRental.RowHandler() {
+            public boolean handleRow(ResultSet rs) throws SQLException {
+               try {
+                  for (int c = 1; c <= width; c++) {
+                     if (c > 1) {
+                        out.write(',');
+                     }
+                     out.write(CsvReader.quote(rs.getString(c)));
+                  }
+                  out.write('\n');
+                  rows[0]++;
+                  return true;
+               }catch (IOException e) {
+                  failure[0] = e;
+                  return false;
+               }//end try
+            }
+         });
+         if (failure[0] != null) {
+            throw failure[0];
+         }
+      }
+      Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      return rows[0];
+   }//end export
+
+   // streams an archive file into a table through COPY, or batched INSERTs with older drivers
+   private long load(String name, File file) throws SQLException, IOException {
+      if (!file.isFile()) {
+         throw new IOException("No archive file " + file);
+      }
+      Connection conn = esql.borrowConnection();
+      SQLException error = null;
+      try (Reader reader = new BufferedReader(new InputStreamReader(
+              new GZIPInputStream(new FileInputStream(file), 1 << 16), StandardCharsets.UTF_8), 1 << 16)) {
+         Object copyManager = BulkLoader.copyManager(conn);
+         if (copyManager != null) {
+            return BulkLoader.copyIn(copyManager, "COPY " + name + " FROM STDIN WITH DELIMITER ',' CSV HEADER", reader);
+         }
+         return BulkLoader.insertBatches(conn, name, reader);
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         esql.releaseConnection(conn, error);
+      }//end try
+   }//end load
+
+   private void inTransaction(List<String> statements) throws SQLException {
+      Connection conn = esql.borrowConnection();
+      SQLException error = null;
+      try {
+         conn.setAutoCommit(false);
+         try (Statement stmt = conn.createStatement()) {
+            for (String sql : statements) {
+               stmt.executeUpdate(sql);
+            }
+         }
+         conn.commit();
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         esql.releaseConnection(conn, error);
+      }//end try
+   }//end inTransaction
+
+   /**
+    * Claims in OrderIDs the order or tracking IDs of rows headed for one of
+    * the order tables.  IDs already claimed by the same order are kept.
+    *
+    * @param table the index in TABLES of the table the rows belong to
+    * @param name the table holding the rows
+    * @throws SQLException if an ID repeats in the rows or belongs to another order
+    */
+   static void claimIds(GameRental esql, int table, String name) throws SQLException {
+      if (TAKEN_IDS[table] == null) {
+         return;
+      }
+      List<List<String>> taken = esql.executeQueryAndReturnResult(String.format(TAKEN_IDS[table], name));
+      if (!taken.isEmpty()) {
+         throw new SQLException("ID " + taken.get(0).get(0) + " of " + name + " is not unique");
+      }
+      esql.executeUpdate(String.format(CLAIM_IDS[table], name));
+   }//end claimIds
+
+   private boolean isPartition(String name) throws SQLException {
+      return !esql.executeQueryAndReturnResult(SELECT_PARENT, name).isEmpty();
+   }//end isPartition
+
+   private boolean exists(String name) throws SQLException {
+      return !esql.executeQueryAndReturnResult(SELECT_TABLE, name).isEmpty();
+   }//end exists
+
+   private static boolean exists(Connection conn, String query, String name) throws SQLException {
+      return !strings(conn, query, name).isEmpty();
+   }//end exists
+
+   private static List<String> strings(Connection conn, String query, String name) throws SQLException {
+      List<String> values = new ArrayList<String>();
+      try (PreparedStatement stmt = conn.prepareStatement(query)) {
+         stmt.setString(1, name);
+         try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+               values.add(rs.getString(1));
+            }
+         }
+      }
+      return values;
+   }//end strings
+
+   private File archiveFile(String name) {
+      return new File(dir, name + ".csv.gz");
+   }//end archiveFile
+
+   static String partition(String table, YearMonth month) {
+      return String.format("%s_%04d_%02d", table, month.getYear(), month.getMonthValue());
+   }//end partition
+
+   // the month of a partition name <table>_YYYY_MM
+   static YearMonth monthOf(String name) {
+      int end = name.length();
+      return YearMonth.of(Integer.parseInt(name.substring(end - 7, end - 3)), Integer.parseInt(name.substring(end - 2)));
+   }//end monthOf
+
+   /**
+    * The main execution method
+    *
+    * @param args &lt;dbname&gt; &lt;port&gt; &lt;user&gt; list | extend [months]
+    *        | archive &lt;yyyy-mm&gt; [dir] | restore &lt;yyyy-mm&gt; [dir]
+    */
+   public static void main(String[] args) {
+      String command = args.length > 3 ? args[3] : "";
+      boolean valid = (command.equals("list") && args.length == 4)
+                      || (command.equals("extend") && args.length <= 5)
+                      || ((command.equals("archive") || command.equals("restore")) && args.length >= 5 && args.length <= 6);
+      if (!valid) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            PartitionArchiver.class.getName() +
+            " <dbname> <port> <user> list | extend [months] | archive <yyyy-mm> [dir] | restore <yyyy-mm> [dir]");
+         return;
+      }
+      GameRental esql = null;
+      try {
+         File dir = new File(args.length == 6 ? args[5] : "archive");
+         esql = new GameRental(args[0], args[1], args[2], "", 2);
+         PartitionArchiver archiver = new PartitionArchiver(esql, dir);
+         long start = System.nanoTime();
+         if (command.equals("list")) {
+            archiver.list();
+         }
+         else if (command.equals("extend")) {
+            int months = args.length == 5 ? Integer.parseInt(args[4]) : DEFAULT_EXTEND_MONTHS;
+            System.out.println(archiver.extend(months) + " partition(s) created.");
+         }
+         else if (command.equals("archive")) {
+            YearMonth before = YearMonth.parse(args[4]);
+            if (before.isAfter(YearMonth.now())) {
+               System.err.println("The current month and later months cannot be archived.");
+               return;
+            }
+            int months = archiver.archive(before);
+            System.out.println(String.format("%d month(s) archived to %s in %.1fs.", months, dir,
+                                             (System.nanoTime() - start) / 1e9));
+         }
+         else {
+            long rows = archiver.restore(YearMonth.parse(args[4]));
+            System.out.println(String.format("%,d rows restored in %.1fs.", rows, (System.nanoTime() - start) / 1e9));
+         }
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }
+   }//end main
+
+}//end PartitionArchiver
@@ -0,0 +1,225 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Records the query shapes sent through the GameRental execute methods.
+ *
+ * Every statement is parameterized, so its SQL text is its shape.  For each
+ * shape the recorder keeps a latency histogram with row and error counts,
+ * and the parameters of the first call as a sample, so the shape can be
+ * re-run with EXPLAIN ANALYZE later.  With -Dgamerental.queryLog=file the shapes are merged into that
+ * file when the GameRental is cleaned up, which is what IndexAdvisor reads.
+ *
+ */
+public class QueryRecorder {
+
+   public static final String LOG_FILE = System.getProperty("gamerental.queryLog");
+
+   /**
+    * Totals for one query shape.
+    */
+   public static final class Shape {
+      public final String sql;
+      public final LatencyStats stats;
+      // totals read from a log, which keeps no histogram
+      long loggedCalls = 0;
+      long loggedNanos = 0;
+      long loggedMax = 0;
+      final Object[] sample;
+
+      Shape(String sql, Object[] sample) {
+         this.sql = sql;
+         this.stats = new LatencyStats(sql);
+         this.sample = sample;
+      }
+
+      public long getCalls() { return loggedCalls + stats.getCount(); }
+      public long getTotalNanos() { return loggedNanos + stats.getHistogram().totalNanos(); }
+      public long getMaxNanos() { return Math.max(loggedMax, stats.getHistogram().maxNanos()); }
+      public Object[] getSample() { return sample.clone(); }
+   }//end Shape
+
+   private final ConcurrentHashMap<String, Shape> shapes = new ConcurrentHashMap<String, Shape>();
+   private volatile Consumer<Shape> onNewShape = null;
+
+   /**
+    * @param listener called once for every shape seen for the first time
+    */
+   public void setNewShapeListener(Consumer<Shape> listener) {
+      this.onNewShape = listener;
+   }
+
+   /**
+    * Adds one execution of sql.
+    *
+    * @param sql the statement text with ? placeholders
+    * @param params the bound values
+    * @param nanos time spent executing and reading the result
+    * @param rows the rows read or changed
+    * @param failed true if the statement raised an error
+    */
+   public void record(String sql, Object[] params, long nanos, long rows, boolean failed) {
+      Shape shape = shapes.get(sql);
+      if (shape == null) {
+         Shape created = new Shape(sql, params.clone());
+         shape = shapes.putIfAbsent(sql, created);
+         if (shape == null) {
+            shape = created;
+            Consumer<Shape> listener = onNewShape;
+            if (listener != null) {
+               listener.accept(created);
+            }
+         }
+      }
+      shape.stats.record(nanos, rows, failed);
+   }//end record
+
+   /**
+    * @return every shape, by total time descending
+    */
+   public List<Shape> snapshot() {
+      List<Shape> list = new ArrayList<Shape>(shapes.values());
+      Collections.sort(list, Comparator.comparingLong(Shape::getTotalNanos).reversed());
+      return list;
+   }//end snapshot
+
+   /**
+    * Merges the recorded shapes into the log file, adding to the totals
+    * already there.
+    */
+   public synchronized void writeLog(File file) throws IOException {
+      QueryRecorder merged = new QueryRecorder();
+      if (file.exists()) {
+         for (Shape shape : readLog(file)) {
+            merged.add(shape);
+         }
+      }
+      for (Shape shape : snapshot()) {
+         merged.add(shape);
+      }
+      try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+         for (Shape shape : merged.snapshot()) {
+            StringBuilder line = new StringBuilder();
+            line.append(shape.getCalls()).append('\t')
+                .append(shape.getTotalNanos()).append('\t')
+                .append(shape.getMaxNanos()).append('\t')
+                .append(escape(shape.sql));
+            for (Object param : shape.sample) {
+               line.append('\t').append(encode(param));
+            }
+            out.println(line);
+         }
+      }
+   }//end writeLog
+
+   /**
+    * @return the shapes in a log written by writeLog
+    */
+   public static List<Shape> readLog(File file) throws IOException {
+      List<Shape> list = new ArrayList<Shape>();
+      try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+         String line;
+         while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) {
+               continue;
+            }
+            String[] fields = line.split("\t", -1);
+            Object[] sample = new Object[fields.length - 4];
+            for (int i = 0; i < sample.length; i++) {
+               sample[i] = decode(fields[i + 4]);
+            }
+            Shape shape = new Shape(unescape(fields[3]), sample);
+            shape.loggedCalls = Long.parseLong(fields[0]);
+            shape.loggedNanos = Long.parseLong(fields[1]);
+            shape.loggedMax = Long.parseLong(fields[2]);
+            list.add(shape);
+         }
+      }
+      return list;
+   }//end readLog
+
+   // only used on a private recorder while merging into a log
+   private void add(Shape other) {
+      Shape shape = shapes.computeIfAbsent(other.sql, k -> new Shape(k, other.sample));
+      shape.loggedCalls += other.getCalls();
+      shape.loggedNanos += other.getTotalNanos();
+      shape.loggedMax = Math.max(shape.loggedMax, other.getMaxNanos());
+   }//end add
+
+   // parameter values as type-tagged text, so samples re-bind with their original types
+   static String encode(Object value) {
+      if (value == null) {
+         return "-";
+      }
+      if (value instanceof Integer) {
+         return "I:" + value;
+      }
+      if (value instanceof Long) {
+         return "L:" + value;
+      }
+      if (value instanceof BigDecimal) {
+         return "N:" + ((BigDecimal) value).toPlainString();
+      }
+      if (value instanceof Double) {
+         return "D:" + value;
+      }
+      if (value instanceof Boolean) {
+         return "B:" + value;
+      }
+      if (value instanceof Timestamp) {
+         return "T:" + value;
+      }
+      return "S:" + escape(value.toString());
+   }//end encode
+
+   static Object decode(String text) {
+      if (text.equals("-")) {
+         return null;
+      }
+      String value = text.substring(2);
+      switch (text.charAt(0)) {
+         case 'I': return Integer.valueOf(value);
+         case 'L': return Long.valueOf(value);
+         case 'N': return new BigDecimal(value);
+         case 'D': return Double.valueOf(value);
+         case 'B': return Boolean.valueOf(value);
+         case 'T': return Timestamp.valueOf(value);
+         default: return unescape(value);
+      }
+   }//end decode
+
+   private static String escape(String s) {
+      return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+   }
+
+   private static String unescape(String s) {
+      StringBuilder out = new StringBuilder(s.length());
+      for (int i = 0; i < s.length(); i++) {
+         char c = s.charAt(i);
+         if (c == '\\' && i + 1 < s.length()) {
+            char n = s.charAt(++i);
+            out.append(n == 't' ? '\t' : n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+         }
+         else {
+            out.append(c);
+         }
+      }
+      return out.toString();
+   }//end unescape
+
+}//end QueryRecorder
@@ -0,0 +1,479 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * "Customers also rented" recommendations from the games rented together.
+ *
+ * Every rental order, and every user's list of favorite games, is a basket
+ * of games.  Two games in the same basket co-occur once.  The counts of all
+ * game pairs are held in a sparse matrix, counted in parallel over the
+ * baskets with fork/join, and every game keeps its NEIGHBOURS most frequent
+ * partners in flat int arrays, most frequent first.  Recommendations for a
+ * set of games add up the neighbour lists of those games, so a lookup
+ * costs a few dozen array reads whatever the size of the order history.
+ *
+ * The model is built on first use and rebuilt in the background every
+ * TTL_MS, from the orders placed before the rebuild started.  submitOrder
+ * adds each new order to the model as it commits, and an order placed
+ * during a rebuild is added to the new model too.
+ *
+ */
+public class Recommender {
+
+   public static final int NEIGHBOURS = Integer.getInteger("gamerental.recommend.neighbours", 20);
+   public static final int DEFAULT_LIMIT = Integer.getInteger("gamerental.recommend.limit", 5);
+   public static final long TTL_MS = Long.getLong("gamerental.recommend.ttlMs", 3600000L);
+
+   // baskets counted by one fork/join leaf
+   private static final int LEAF_BASKETS = 4096;
+
+   private static final String SELECT_ORDER_GAMES =
+      "SELECT rentalOrderID, gameID FROM GamesInOrder WHERE orderTimestamp < ? ORDER BY rentalOrderID";
+   private static final String SELECT_FAVORITES =
+      "SELECT favGames FROM Users WHERE favGames IS NOT NULL";
+
+   /**
+    * One recommended game.
+    */
+   public static final class Recommendation {
+      public final String gameID;
+      // times the game was rented with the given games
+      public final int score;
+
+      Recommendation(String gameID, int score) {
+         this.gameID = gameID;
+         this.score = score;
+      }
+   }//end Recommendation
+
+   /**
+    * Open addressing map from a game pair to its count, with no boxing.
+    */
+   static final class PairCounts {
+      private static final long EMPTY = -1L;
+
+      long[] keys;
+      int[] counts;
+      int size = 0;
+
+      PairCounts(int capacity) {
+         int n = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+         keys = new long[n];
+         counts = new int[n];
+         Arrays.fill(keys, EMPTY);
+      }
+
+      static long key(int a, int b) {
+         return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+      }
+
+      // adds n to the pair's count and returns the new count
+      int add(long key, int n) {
+         if ((size + 1) * 4 > keys.length * 3) {
+            grow();
+         }
+         int mask = keys.length - 1;
+         int slot = hash(key) & mask;
+         while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+         }
+         if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+         }
+         return counts[slot] += n;
+      }
+
+      void addAll(PairCounts other) {
+         for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+               add(other.keys[i], other.counts[i]);
+            }
+         }
+      }
+
+      private void grow() {
+         long[] oldKeys = keys;
+         int[] oldCounts = counts;
+         keys = new long[oldKeys.length * 2];
+         counts = new int[oldKeys.length * 2];
+         Arrays.fill(keys, EMPTY);
+         size = 0;
+         for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+               add(oldKeys[i], oldCounts[i]);
+            }
+         }
+      }
+
+      private static int hash(long key) {
+         long h = key * 0x9E3779B97F4A7C15L;
+         return (int) (h ^ (h >>> 32));
+      }
+   }//end PairCounts
+
+   /**
+    * Counts the pairs of a range of baskets, splitting large ranges in two.
+    */
+   static final class CountTask extends RecursiveTask<PairCounts> {
+      private static final long serialVersionUID = 1L;
+
+      private final int[][] baskets;
+      private final int from;
+      private final int to;
+
+      CountTask(int[][] baskets, int from, int to) {
+         this.baskets = baskets;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected PairCounts compute() {
+         if (to - from <= LEAF_BASKETS) {
+            PairCounts pairs = new PairCounts(to - from);
+            for (int i = from; i < to; i++) {
+               int[] basket = baskets[i];
+               for (int x = 0; x < basket.length; x++) {
+                  for (int y = x + 1; y < basket.length; y++) {
+                     pairs.add(PairCounts.key(basket[x], basket[y]), 1);
+                  }
+               }
+            }
+            return pairs;
+         }
+         int mid = (from + to) >>> 1;
+         CountTask left = new CountTask(baskets, from, mid);
+         left.fork();
+         PairCounts right = new CountTask(baskets, mid, to).compute();
+         PairCounts merged = left.join();
+         // merge the smaller map into the larger
+         if (merged.size < right.size) {
+            PairCounts swap = merged;
+            merged = right;
+            right = swap;
+         }
+         merged.addAll(right);
+         return merged;
+      }
+   }//end CountTask
+
+   /**
+    * The pair counts and the neighbour lists built from them.  Game i's
+    * neighbours are neighbours[i * NEIGHBOURS ..] with their counts in the
+    * same places of weights, most frequent first.
+    */
+   static final class Model {
+      final HashMap<String, Integer> gameIndex = new HashMap<String, Integer>();
+      String[] gameIDs = new String[64];
+      int games = 0;
+      int[] neighbours = new int[64 * NEIGHBOURS];
+      int[] weights = new int[64 * NEIGHBOURS];
+      int[] neighbourCount = new int[64];
+      PairCounts pairs = new PairCounts(16);
+      // lower-case game name -> gameID, for favGames
+      final HashMap<String, String> gameByName = new HashMap<String, String>();
+      final long builtAt = System.currentTimeMillis();
+
+      int indexOf(String gameID) {
+         Integer index = gameIndex.get(gameID);
+         if (index != null) {
+            return index;
+         }
+         if (games == gameIDs.length) {
+            int capacity = games * 2;
+            gameIDs = Arrays.copyOf(gameIDs, capacity);
+            neighbours = Arrays.copyOf(neighbours, capacity * NEIGHBOURS);
+            weights = Arrays.copyOf(weights, capacity * NEIGHBOURS);
+            neighbourCount = Arrays.copyOf(neighbourCount, capacity);
+         }
+         gameIDs[games] = gameID;
+         gameIndex.put(gameID, games);
+         return games++;
+      }
+
+      // the games of a basket as distinct indexes, adding unseen games
+      int[] basket(Collection<String> basketGameIDs) {
+         int[] basket = new int[basketGameIDs.size()];
+         int n = 0;
+         for (String gameID : basketGameIDs) {
+            basket[n++] = indexOf(gameID);
+         }
+         Arrays.sort(basket);
+         int distinct = 0;
+         for (int i = 0; i < n; i++) {
+            if (distinct == 0 || basket[i] != basket[distinct - 1]) {
+               basket[distinct++] = basket[i];
+            }
+         }
+         return Arrays.copyOf(basket, distinct);
+      }
+
+      // game a was rented with game b count times in all
+      void offer(int a, int b, int count) {
+         int base = a * NEIGHBOURS;
+         int n = neighbourCount[a];
+         int pos = -1;
+         for (int i = 0; i < n; i++) {
+            if (neighbours[base + i] == b) {
+               pos = i;
+               break;
+            }
+         }
+         if (pos < 0) {
+            if (n < NEIGHBOURS) {
+               pos = n;
+               neighbourCount[a] = n + 1;
+            }
+            else if (count > weights[base + n - 1]) {
+               pos = n - 1;
+            }
+            else {
+               return;
+            }
+            neighbours[base + pos] = b;
+         }
+         weights[base + pos] = count;
+         // counts only grow, so the entry can only move up
+         while (pos > 0 && weights[base + pos - 1] < count) {
+            neighbours[base + pos] = neighbours[base + pos - 1];
+            weights[base + pos] = weights[base + pos - 1];
+            pos--;
+            neighbours[base + pos] = b;
+            weights[base + pos] = count;
+         }
+      }
+
+      void addBasket(int[] basket) {
+         for (int x = 0; x < basket.length; x++) {
+            for (int y = x + 1; y < basket.length; y++) {
+               int count = pairs.add(PairCounts.key(basket[x], basket[y]), 1);
+               offer(basket[x], basket[y], count);
+               offer(basket[y], basket[x], count);
+            }
+         }
+      }
+   }//end Model
+
+   private final GameRental esql;
+   private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+   private Model model = null;
+   // set while a rebuild reads the orders placed before it
+   private Timestamp rebuildCutoff = null;
+   // the games of the orders placed since that cutoff
+   private final List<List<String>> pending = new ArrayList<List<String>>();
+
+   public Recommender(GameRental esql) {
+      this.esql = esql;
+   }
+
+   /**
+    * @param gameIDs the games to recommend for
+    * @param limit the most recommendations to return
+    * @return the games most often rented with gameIDs, excluding them, best first
+    */
+   public List<Recommendation> recommend(Collection<String> gameIDs, int limit) throws SQLException {
+      ensureBuilt();
+      lock.readLock().lock();
+      try {
+         HashMap<Integer, Integer> scores = new HashMap<Integer, Integer>();
+         List<Integer> seeds = new ArrayList<Integer>();
+         for (String gameID : gameIDs) {
+            Integer seed = model.gameIndex.get(gameID);
+            if (seed != null) {
+               seeds.add(seed);
+            }
+         }
+         for (int seed : seeds) {
+            int base = seed * NEIGHBOURS;
+            for (int i = 0; i < model.neighbourCount[seed]; i++) {
+               scores.merge(model.neighbours[base + i], model.weights[base + i], Integer::sum);
+            }
+         }
+         scores.keySet().removeAll(seeds);
+         List<Recommendation> result = new ArrayList<Recommendation>(scores.size());
+         for (Map.Entry<Integer, Integer> score : scores.entrySet()) {
+            result.add(new Recommendation(model.gameIDs[score.getKey()], score.getValue()));
+         }
+         result.sort((a, b) -> a.score != b.score ? Integer.compare(b.score, a.score) : a.gameID.compareTo(b.gameID));
+         return result.size() > limit ? new ArrayList<Recommendation>(result.subList(0, limit)) : result;
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+   }//end recommend
+
+   /**
+    * @param favGames a Users.favGames list of game names
+    * @param limit the most recommendations to return
+    * @return the games most often rented with the named games
+    */
+   public List<Recommendation> recommendForFavorites(String favGames, int limit) throws SQLException {
+      ensureBuilt();
+      List<String> gameIDs;
+      lock.readLock().lock();
+      try {
+         gameIDs = favoriteGameIDs(model, favGames);
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+      return recommend(gameIDs, limit);
+   }//end recommendForFavorites
+
+   /**
+    * Adds an order that this process committed.
+    *
+    * @param orderTimestamp the order's orderTimestamp
+    * @param gameIDs the games of the order
+    */
+   public void recordOrder(Timestamp orderTimestamp, Collection<String> gameIDs) {
+      List<String> games = new ArrayList<String>(gameIDs);
+      lock.writeLock().lock();
+      try {
+         if (model != null) {
+            model.addBasket(model.basket(games));
+         }
+         // a running rebuild does not read orders from its cutoff on
+         if (rebuildCutoff != null && !orderTimestamp.before(rebuildCutoff)) {
+            pending.add(games);
+         }
+      }finally{
+         lock.writeLock().unlock();
+      }//end try
+   }//end recordOrder
+
+   // builds on the caller's thread the first time, later in the background after TTL_MS
+   private void ensureBuilt() throws SQLException {
+      lock.readLock().lock();
+      try {
+         if (model != null && (rebuildCutoff != null || System.currentTimeMillis() - model.builtAt < TTL_MS)) {
+            return;
+         }
+      }finally{
+         lock.readLock().unlock();
+      }//end try
+      final Timestamp cutoff;
+      synchronized (this) {
+         boolean first;
+         lock.writeLock().lock();
+         try {
+            if (model != null && (rebuildCutoff != null || System.currentTimeMillis() - model.builtAt < TTL_MS)) {
+               return;
+            }
+            first = model == null;
+            cutoff = new Timestamp(System.currentTimeMillis());
+            rebuildCutoff = cutoff;
+         }finally{
+            lock.writeLock().unlock();
+         }//end try
+         if (first) {
+            // sessions asking meanwhile wait here for the first model
+            rebuild(cutoff);
+            return;
+         }
+      }
+      Thread thread = new Thread(() -> {
+         try {
+            rebuild(cutoff);
+         }catch (SQLException e) {
+            SessionIO.logErr().println("Recommendation rebuild failed: " + e.getMessage());
+         }//end try
+      }, "recommender-rebuild");
+      thread.setDaemon(true);
+      thread.start();
+   }//end ensureBuilt
+
+   // reads the baskets before cutoff, counts the pairs in parallel and swaps the new model in
+   private void rebuild(Timestamp cutoff) throws SQLException {
+      Model next = new Model();
+      boolean built = false;
+      try {
+         for (CatalogCache.Game game : esql._catalog.snapshot()) {
+            next.indexOf(game.gameID);
+            next.gameByName.putIfAbsent(game.gameName.trim().toLowerCase(Locale.ROOT), game.gameID);
+         }
+         final List<int[]> baskets = new ArrayList<int[]>();
+         final List<String> current = new ArrayList<String>();
+         final String[] currentOrder = { null };
+         esql.executeQueryStream(SELECT_ORDER_GAMES, GameRental.DEFAULT_FETCH_SIZE, new GameRental.RowHandler() {
+            public boolean handleRow(ResultSet rs) throws SQLException {
+               String orderID = rs.getString(1);
+               if (!orderID.equals(currentOrder[0])) {
+                  if (current.size() > 1) {
+                     baskets.add(next.basket(current));
+                  }
+                  current.clear();
+                  currentOrder[0] = orderID;
+               }
+               current.add(rs.getString(2));
+               return true;
+            }
+         }, cutoff);
+         if (current.size() > 1) {
+            baskets.add(next.basket(current));
+         }
+         esql.executeQueryStream(SELECT_FAVORITES, GameRental.DEFAULT_FETCH_SIZE, new GameRental.RowHandler() {
+            public boolean handleRow(ResultSet rs) throws SQLException {
+               List<String> favorites = favoriteGameIDs(next, rs.getString(1));
+               if (favorites.size() > 1) {
+                  baskets.add(next.basket(favorites));
+               }
+               return true;
+            }
+         });
+
+         next.pairs = new CountTask(baskets.toArray(new int[0][]), 0, baskets.size()).invoke();
+         PairCounts pairs = next.pairs;
+         for (int i = 0; i < pairs.keys.length; i++) {
+            long key = pairs.keys[i];
+            if (key != PairCounts.EMPTY) {
+               int a = (int) (key >>> 32);
+               int b = (int) key;
+               next.offer(a, b, pairs.counts[i]);
+               next.offer(b, a, pairs.counts[i]);
+            }
+         }
+         built = true;
+      }finally{
+         lock.writeLock().lock();
+         try {
+            if (built) {
+               // orders committed from the cutoff on were not read; add them to the new model
+               for (List<String> order : pending) {
+                  next.addBasket(next.basket(order));
+               }
+               model = next;
+            }
+            pending.clear();
+            rebuildCutoff = null;
+         }finally{
+            lock.writeLock().unlock();
+         }//end try
+      }//end try
+   }//end rebuild
+
+   // the gameIDs of the names in a favGames list that are in the catalog
+   private static List<String> favoriteGameIDs(Model model, String favGames) {
+      List<String> gameIDs = new ArrayList<String>();
+      if (favGames == null) {
+         return gameIDs;
+      }
+      for (String name : favGames.split(",")) {
+         String gameID = model.gameByName.get(name.trim().toLowerCase(Locale.ROOT));
+         if (gameID != null) {
+            gameIDs.add(gameID);
+         }
+      }
+      return gameIDs;
+   }//end favoriteGameIDs
+
+}//end Recommender
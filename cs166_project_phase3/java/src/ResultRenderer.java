@@ -0,0 +1,395 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streams query results to the terminal as an aligned table, CSV or JSON.
+ *
+ * Rows go through one large buffered writer, so printing costs a write
+ * per buffer instead of one per cell.  In PLAIN mode the first SAMPLE_ROWS
+ * rows are held back to work out the column widths, then the table streams
+ * with those widths; cells longer than MAX_WIDTH (typically a description)
+ * are cut short, and numbers are right aligned.  With a page size, row()
+ * refuses the first row past a full page and isPageFull() turns true.  The
+ * caller calls nextPage(), which asks the user to press Enter, or q to stop
+ * the output, and then offers the refused row again.  No more than a page
+ * of rows is ever held.  CSV uses
+ * the COPY dialect of data/*.csv and JSON writes an array of one object
+ * per row; neither is truncated.
+ *
+ * The mode, page size and widths come from gamerental.render.mode (plain,
+ * csv or json), gamerental.render.pageSize (0 for no paging),
+ * gamerental.render.sampleRows and gamerental.render.maxWidth.
+ *
+ */
+public class ResultRenderer {
+
+   public enum Mode { PLAIN, CSV, JSON }
+
+   public static final Mode DEFAULT_MODE =
+      Mode.valueOf(System.getProperty("gamerental.render.mode", "plain").toUpperCase(Locale.ROOT));
+   public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("gamerental.render.pageSize", 0);
+   public static final int SAMPLE_ROWS = Integer.getInteger("gamerental.render.sampleRows", 100);
+   public static final int MAX_WIDTH = Math.max(4, Integer.getInteger("gamerental.render.maxWidth", 60));
+
+   private static final int BUFFER_SIZE = 1 << 16;
+   private static final String SEPARATOR = "  ";
+
+   private final Mode mode;
+   private final int pageSize;
+   private final Writer out;
+
+   private String[] names = null;
+   private boolean[] numeric;
+   private int[] widths = null;
+   // PLAIN rows held back until the widths are known; never more than a page
+   private final List<String[]> sample = new ArrayList<String[]>();
+   private final int sampleRows;
+   private long rowCount = 0;
+   // rows past pageEnd wait for nextPage()
+   private long pageEnd;
+   private boolean pageFull = false;
+   private boolean stopped = false;
+
+   public ResultRenderer() {
+      this(DEFAULT_MODE, DEFAULT_PAGE_SIZE);
+   }
+
+   /**
+    * @param mode the output format
+    * @param pageSize rows per page in PLAIN mode, or 0 to print without stopping
+    */
+   public ResultRenderer(Mode mode, int pageSize) {
+      this.mode = mode;
+      this.pageSize = pageSize;
+      this.sampleRows = pageSize > 0 ? Math.min(SAMPLE_ROWS, pageSize) : SAMPLE_ROWS;
+      this.pageEnd = pageSize > 0 ? pageSize : Long.MAX_VALUE;
+      this.out = new BufferedWriter(new OutputStreamWriter(System.out), BUFFER_SIZE);
+   }//end ResultRenderer
+
+   /**
+    * Starts a result with the given columns.
+    *
+    * @param columnNames the column labels
+    * @param numericColumns true for columns printed as numbers
+    */
+   public void begin(String[] columnNames, boolean[] numericColumns) throws IOException {
+      this.names = columnNames.clone();
+      this.numeric = numericColumns.clone();
+      if (mode == Mode.CSV) {
+         for (int c = 0; c < names.length; c++) {
+            out.write(c == 0 ? "" : ",");
+            out.write(csv(names[c], false));
+         }
+         out.write('\n');
+      }
+      else if (mode == Mode.JSON) {
+         out.write('[');
+      }
+   }//end begin
+
+   /**
+    * Starts a result with the columns of a result set.
+    */
+   public void begin(ResultSetMetaData rsmd) throws SQLException, IOException {
+      int numCol = rsmd.getColumnCount();
+      String[] columnNames = new String[numCol];
+      boolean[] numericColumns = new boolean[numCol];
+      for (int i = 1; i <= numCol; i++) {
+         columnNames[i - 1] = rsmd.getColumnName(i);
+         numericColumns[i - 1] = isNumeric(rsmd.getColumnType(i));
+      }
+      begin(columnNames, numericColumns);
+   }//end begin
+
+   /**
+    * Starts a result with the columns of a typed result.
+    */
+   public void begin(TypedResult result) throws IOException {
+      String[] columnNames = new String[result.columnCount()];
+      boolean[] numericColumns = new boolean[columnNames.length];
+      for (int c = 0; c < columnNames.length; c++) {
+         columnNames[c] = result.columnName(c);
+         TypedResult.Kind kind = result.columnKind(c);
+         numericColumns[c] = kind == TypedResult.Kind.INT || kind == TypedResult.Kind.LONG
+                             || kind == TypedResult.Kind.CENTS || kind == TypedResult.Kind.DECIMAL;
+      }
+      begin(columnNames, numericColumns);
+   }//end begin
+
+   /**
+    * @return true once begin has been called
+    */
+   public boolean hasBegun() {
+      return names != null;
+   }
+
+   /**
+    * Prints one row, or holds it back while the column widths are sampled.
+    *
+    * @param values the cells, null for SQL NULL
+    * @return false when the row was not taken: the page is full or the user
+    *         has stopped paging
+    */
+   public boolean row(String[] values) throws IOException {
+      if (stopped || pageFull) {
+         return false;
+      }
+      switch (mode) {
+         case CSV:
+            for (int c = 0; c < values.length; c++) {
+               out.write(c == 0 ? "" : ",");
+               out.write(csv(values[c], numeric[c]));
+            }
+            out.write('\n');
+            break;
+         case JSON:
+            out.write(rowCount == 0 ? "\n{" : ",\n{");
+            for (int c = 0; c < values.length; c++) {
+               out.write(c == 0 ? "" : ", ");
+               out.write(json(names[c]));
+               out.write(": ");
+               out.write(values[c] == null ? "null" : numeric[c] ? values[c] : json(values[c]));
+            }
+            out.write('}');
+            break;
+         default:
+            if (widths == null) {
+               sample.add(values.clone());
+               if (sample.size() >= sampleRows) {
+                  flushSample();
+               }
+               return true;
+            }
+            return printRow(values.clone());
+      }
+      rowCount++;
+      return true;
+   }//end row
+
+   /**
+    * Prints the current row of a result set.
+    *
+    * @return false when the row was not taken
+    */
+   public boolean row(ResultSet rs) throws SQLException, IOException {
+      String[] values = new String[names.length];
+      for (int c = 0; c < values.length; c++) {
+         values[c] = rs.getString(c + 1);
+      }
+      return row(values);
+   }//end row
+
+   /**
+    * Prints the row a typed result view is positioned on.
+    *
+    * @return false when the row was not taken
+    */
+   public boolean row(TypedResult.Row row) throws IOException {
+      String[] values = new String[names.length];
+      for (int c = 0; c < values.length; c++) {
+         values[c] = row.getString(c);
+      }
+      return row(values);
+   }//end row
+
+   /**
+    * @return true when a page has been printed and row() refuses rows until
+    *         nextPage() is called
+    */
+   public boolean isPageFull() {
+      return pageFull;
+   }
+
+   /**
+    * Asks the user whether to print the next page.
+    *
+    * @return true if the user wants the next page; false stops the output
+    */
+   public boolean nextPage() throws IOException {
+      pageFull = false;
+      if (!more()) {
+         stopped = true;
+         return false;
+      }
+      pageEnd += pageSize;
+      printHeader();
+      return true;
+   }//end nextPage
+
+   /**
+    * Prints any rows still held back, closes the JSON array and flushes the
+    * output.  Call it in a finally block, so a failed query still leaves
+    * well-formed output; a JSON result with no begin() is written as [].
+    *
+    * @return the number of rows printed
+    */
+   public long end() throws IOException {
+      if (mode == Mode.PLAIN && widths == null && !sample.isEmpty()) {
+         flushSample();
+      }
+      if (mode == Mode.JSON) {
+         // an array even when begin was never called, so the output always parses
+         out.write(names == null ? "[]\n" : rowCount == 0 ? "]\n" : "\n]\n");
+      }
+      out.flush();
+      return rowCount;
+   }//end end
+
+   // fixes the PLAIN widths from the rows held back, then prints them
+   private void flushSample() throws IOException {
+      widths = new int[names.length];
+      for (int c = 0; c < names.length; c++) {
+         widths[c] = Math.min(MAX_WIDTH, names[c].length());
+      }
+      for (String[] values : sample) {
+         for (int c = 0; c < values.length; c++) {
+            widths[c] = Math.max(widths[c], plain(values[c]).length());
+         }
+      }
+      printHeader();
+      // the sample is at most a page, so every row fits
+      for (String[] values : sample) {
+         printRow(values);
+      }
+      sample.clear();
+   }//end flushSample
+
+   private void printHeader() throws IOException {
+      StringBuilder rule = new StringBuilder();
+      for (int c = 0; c < names.length; c++) {
+         if (c > 0) {
+            out.write(SEPARATOR);
+            rule.append(SEPARATOR);
+         }
+         cell(names[c].length() > MAX_WIDTH ? truncate(names[c]) : names[c], c, false);
+         for (int i = 0; i < widths[c]; i++) {
+            rule.append('-');
+         }
+      }
+      out.write('\n');
+      out.write(rule.toString());
+      out.write('\n');
+   }//end printHeader
+
+   // false, and the page is full, when the row belongs to the next page
+   private boolean printRow(String[] values) throws IOException {
+      if (rowCount >= pageEnd) {
+         pageFull = true;
+         out.flush();
+         return false;
+      }
+      for (int c = 0; c < values.length; c++) {
+         if (c > 0) {
+            out.write(SEPARATOR);
+         }
+         cell(plain(values[c]), c, numeric[c]);
+      }
+      out.write('\n');
+      rowCount++;
+      return true;
+   }//end printRow
+
+   // pads the last column only when it is right aligned
+   private void cell(String text, int col, boolean right) throws IOException {
+      int pad = widths[col] - text.length();
+      boolean last = col == widths.length - 1;
+      if (right) {
+         spaces(pad);
+      }
+      out.write(text);
+      if (!right && !last) {
+         spaces(pad);
+      }
+   }//end cell
+
+   private void spaces(int n) throws IOException {
+      for (int i = 0; i < n; i++) {
+         out.write(' ');
+      }
+   }//end spaces
+
+   // asks whether to print the next page; false stops the output
+   private boolean more() throws IOException {
+      out.write("-- more: Enter for the next " + pageSize + " rows, q to stop --");
+      out.flush();
+      String answer = GameRental.in.readLine();
+      return answer == null || !answer.trim().equalsIgnoreCase("q");
+   }//end more
+
+   // a cell on one line, cut to MAX_WIDTH
+   private static String plain(String value) {
+      if (value == null) {
+         return "";
+      }
+      String text = value;
+      for (int i = 0; i < text.length(); i++) {
+         char c = text.charAt(i);
+         if (c == '\n' || c == '\r' || c == '\t') {
+            text = text.replace('\n', ' ').replace('\r', ' ').replace('\t', ' ');
+            break;
+         }
+      }
+      return text.length() > MAX_WIDTH ? truncate(text) : text;
+   }//end plain
+
+   private static String truncate(String text) {
+      return text.substring(0, MAX_WIDTH - 3) + "...";
+   }
+
+   // COPY dialect: an unquoted empty field is NULL, so empty strings are quoted
+   private static String csv(String value, boolean number) {
+      if (value == null) {
+         return "";
+      }
+      if (number) {
+         return value;
+      }
+      if (value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+          || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+         return CsvReader.quote(value);
+      }
+      return value;
+   }//end csv
+
+   private static String json(String value) {
+      StringBuilder text = new StringBuilder(value.length() + 2).append('"');
+      for (int i = 0; i < value.length(); i++) {
+         char c = value.charAt(i);
+         switch (c) {
+            case '"': text.append("\\\""); break;
+            case '\\': text.append("\\\\"); break;
+            case '\n': text.append("\\n"); break;
+            case '\r': text.append("\\r"); break;
+            case '\t': text.append("\\t"); break;
+            default:
+               if (c < 0x20) {
+                  text.append(String.format("\\u%04x", (int) c));
+               }
+               else {
+                  text.append(c);
+               }
+         }
+      }
+      return text.append('"').toString();
+   }//end json
+
+   static boolean isNumeric(int sqlType) {
+      switch (sqlType) {
+         case Types.TINYINT: case Types.SMALLINT: case Types.INTEGER: case Types.BIGINT:
+         case Types.REAL: case Types.FLOAT: case Types.DOUBLE: case Types.NUMERIC: case Types.DECIMAL:
+            return true;
+         default:
+            return false;
+      }
+   }//end isNumeric
+
+}//end ResultRenderer
@@ -0,0 +1,469 @@
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the sales summary tables current for the manager reports.
+ *
+ * SalesByGenreDay, SalesByGame and SalesByUser hold the orders, units and
+ * revenue of every order up to the sales watermark, a (orderTimestamp,
+ * rentalOrderID) key in MaintenanceWatermark.  A game's revenue is its
+ * share of the order's totalPrice by list price, so the revenue of the
+ * genres and games of an order adds up to what the customer paid.  The
+ * job adds the orders placed since the watermark with one set-based
+ * upsert per batch, and the batch and its watermark commit together under
+ * a FOR UPDATE SKIP LOCKED lock, like OverdueMaintainer.  Orders younger
+ * than SETTLE_MS are left for the next run, so an order whose transaction
+ * commits after a later one is not skipped.
+ *
+ * The reports add the orders after the watermark to the summaries at query
+ * time, so they are current to the last committed order and read only the
+ * summaries and a short index range of RentalOrder.
+ *
+ * A rebuild, run when the watermark is NULL or from the reports menu,
+ * empties the summaries and fills them again from RentalOrder split into
+ * time ranges summarized on several connections at once.
+ *
+ */
+public class SalesSummarizer {
+
+   public static final long INTERVAL_MS = Long.getLong("gamerental.sales.intervalMs", 60000L);
+   public static final int BATCH_SIZE = Integer.getInteger("gamerental.sales.batchSize", 1000);
+   public static final long SETTLE_MS = Long.getLong("gamerental.sales.settleMs", 60000L);
+   public static final int DEFAULT_THREADS = Integer.getInteger("gamerental.sales.threads", 4);
+
+   private static final String JOB = "sales";
+
+   // time ranges per rebuild thread, so one long range does not hold up the rest
+   private static final int RANGES_PER_THREAD = 4;
+
+   private static final String LOCK_WATERMARK =
+      "SELECT orderTimestamp, rentalOrderID, LOCALTIMESTAMP FROM MaintenanceWatermark WHERE job = ? FOR UPDATE";
+   private static final String SAVE_WATERMARK =
+      "UPDATE MaintenanceWatermark SET orderTimestamp = ?, rentalOrderID = ?, lastRun = LOCALTIMESTAMP WHERE job = ?";
+   private static final String FIRST_ORDER = "SELECT MIN(orderTimestamp) FROM RentalOrder";
+   private static final String[] CLEAR = {
+      "DELETE FROM SalesByGenreDay", "DELETE FROM SalesByGame", "DELETE FROM SalesByUser",
+   };
+
+   // the games of the orders CTE, each with its share of the order's totalPrice
+   private static final String LINES =
+      "lines AS (" +
+      "   SELECT o.rentalOrderID, o.orderTimestamp, G.gameID, C.genre, G.unitsOrdered," +
+      "   o.totalPrice * CASE WHEN SUM(G.unitsOrdered * C.price) OVER w = 0 THEN 1.0 / COUNT(*) OVER w" +
+      "   ELSE G.unitsOrdered * C.price / SUM(G.unitsOrdered * C.price) OVER w END AS revenue" +
+      "   FROM orders o JOIN GamesInOrder G ON G.rentalOrderID = o.rentalOrderID AND G.orderTimestamp = o.orderTimestamp" +
+      "   JOIN Catalog C ON C.gameID = G.gameID" +
+      "   WINDOW w AS (PARTITION BY o.rentalOrderID)" +
+      ")";
+
+   // adds the orders CTE to the summaries, locking rows in key order; returns the last order, if any
+   private static final String APPLY =
+      LINES + ", " +
+      "genres AS (" +
+      "   INSERT INTO SalesByGenreDay (genre, day, orders, units, revenue)" +
+      "   SELECT genre, CAST(orderTimestamp AS date), COUNT(DISTINCT rentalOrderID), SUM(unitsOrdered), SUM(revenue)" +
+      "   FROM lines GROUP BY 1, 2 ORDER BY 1, 2" +
+      "   ON CONFLICT (genre, day) DO UPDATE SET orders = SalesByGenreDay.orders + EXCLUDED.orders," +
+      "   units = SalesByGenreDay.units + EXCLUDED.units, revenue = SalesByGenreDay.revenue + EXCLUDED.revenue" +
+      "), games AS (" +
+      "   INSERT INTO SalesByGame (gameID, orders, units, revenue)" +
+      "   SELECT gameID, COUNT(*), SUM(unitsOrdered), SUM(revenue) FROM lines GROUP BY gameID ORDER BY gameID" +
+      "   ON CONFLICT (gameID) DO UPDATE SET orders = SalesByGame.orders + EXCLUDED.orders," +
+      "   units = SalesByGame.units + EXCLUDED.units, revenue = SalesByGame.revenue + EXCLUDED.revenue" +
+      "), users AS (" +
+      "   INSERT INTO SalesByUser (login, orders, units, revenue)" +
+      "   SELECT login, COUNT(*), SUM(noOfGames), SUM(totalPrice) FROM orders GROUP BY login ORDER BY login" +
+      "   ON CONFLICT (login) DO UPDATE SET orders = SalesByUser.orders + EXCLUDED.orders," +
+      "   units = SalesByUser.units + EXCLUDED.units, revenue = SalesByUser.revenue + EXCLUDED.revenue" +
+      ") " +
+      "SELECT o.orderTimestamp, o.rentalOrderID, (SELECT COUNT(*) FROM orders) FROM orders o " +
+      "ORDER BY o.orderTimestamp DESC, o.rentalOrderID DESC LIMIT 1";
+
+   private static final String ORDER_COLUMNS = "rentalOrderID, login, noOfGames, totalPrice, orderTimestamp";
+
+   // the plain lower bound lets the planner skip the monthly partitions before the watermark
+   private static final String APPLY_BATCH =
+      "WITH orders AS (" +
+      "   SELECT " + ORDER_COLUMNS + " FROM RentalOrder" +
+      "   WHERE (orderTimestamp, rentalOrderID) > (?, ?) AND orderTimestamp >= ? AND orderTimestamp <= ?" +
+      "   ORDER BY orderTimestamp, rentalOrderID LIMIT ?" +
+      "), " + APPLY;
+
+   private static final String APPLY_RANGE =
+      "WITH orders AS (" +
+      "   SELECT " + ORDER_COLUMNS + " FROM RentalOrder WHERE orderTimestamp >= ? AND orderTimestamp < ?" +
+      "), " + APPLY;
+
+   // the orders after the watermark and their lines, added to the summaries by every report;
+   // the watermark is read by subqueries so the executor prunes the partitions before it
+   private static final String RECENT =
+      "WITH orders AS (" +
+      "   SELECT R.rentalOrderID, R.login, R.noOfGames, R.totalPrice, R.orderTimestamp FROM RentalOrder R" +
+      "   WHERE R.orderTimestamp >= (SELECT orderTimestamp FROM MaintenanceWatermark WHERE job = '" + JOB + "')" +
+      "   AND (R.orderTimestamp, R.rentalOrderID) >" +
+      "   (SELECT orderTimestamp, rentalOrderID FROM MaintenanceWatermark WHERE job = '" + JOB + "')" +
+      "), " + LINES + " ";
+
+   // orders, units and revenue per genre between two days; the days are bound twice
+   private static final String GENRE_REPORT =
+      RECENT +
+      "SELECT genre, SUM(orders) AS orders, SUM(units) AS units, ROUND(SUM(revenue), 2) AS revenue FROM (" +
+      "   SELECT genre, orders, units, revenue FROM SalesByGenreDay WHERE day BETWEEN ? AND ?" +
+      "   UNION ALL" +
+      "   SELECT genre, COUNT(DISTINCT rentalOrderID), SUM(unitsOrdered), SUM(revenue) FROM lines" +
+      "   WHERE CAST(orderTimestamp AS date) BETWEEN ? AND ? GROUP BY genre" +
+      ") s GROUP BY genre ORDER BY revenue DESC, genre";
+
+   // units and revenue per month between two days; the days are bound twice
+   private static final String MONTH_REPORT =
+      RECENT +
+      "SELECT to_char(day, 'YYYY-MM') AS month, SUM(units) AS units, ROUND(SUM(revenue), 2) AS revenue FROM (" +
+      "   SELECT day, units, revenue FROM SalesByGenreDay WHERE day BETWEEN ? AND ?" +
+      "   UNION ALL" +
+      "   SELECT CAST(orderTimestamp AS date), unitsOrdered, revenue FROM lines" +
+      "   WHERE CAST(orderTimestamp AS date) BETWEEN ? AND ?" +
+      ") s GROUP BY 1 ORDER BY 1";
+
+   // the games with the most revenue
+   private static final String GAME_REPORT =
+      RECENT +
+      "SELECT s.gameID, C.gameName, SUM(s.orders) AS orders, SUM(s.units) AS units," +
+      " ROUND(SUM(s.revenue), 2) AS revenue FROM (" +
+      "   SELECT gameID, orders, units, revenue FROM SalesByGame" +
+      "   UNION ALL" +
+      "   SELECT gameID, COUNT(*), SUM(unitsOrdered), SUM(revenue) FROM lines GROUP BY gameID" +
+      ") s JOIN Catalog C ON C.gameID = s.gameID GROUP BY s.gameID, C.gameName ORDER BY revenue DESC, s.gameID LIMIT ?";
+
+   // the customers with the most revenue
+   private static final String USER_REPORT =
+      RECENT +
+      "SELECT login, SUM(orders) AS orders, SUM(units) AS units, ROUND(SUM(revenue), 2) AS revenue FROM (" +
+      "   SELECT login, orders, units, revenue FROM SalesByUser" +
+      "   UNION ALL" +
+      "   SELECT login, COUNT(*), SUM(noOfGames), SUM(totalPrice) FROM orders GROUP BY login" +
+      ") s GROUP BY login ORDER BY revenue DESC, login LIMIT ?";
+
+   private final GameRental esql;
+   private ScheduledExecutorService scheduler = null;
+
+   public SalesSummarizer(GameRental esql) {
+      this.esql = esql;
+   }
+
+   /**
+    * Runs the job every INTERVAL_MS on a daemon thread, starting now.  Does
+    * nothing if INTERVAL_MS is 0 or the job is already scheduled.
+    */
+   public synchronized void start() {
+      if (scheduler != null || INTERVAL_MS <= 0) {
+         return;
+      }
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread thread = new Thread(r, "sales-summarizer");
+         thread.setDaemon(true);
+         return thread;
+      });
+      scheduler.scheduleWithFixedDelay(() -> {
+         try {
+            runOnce();
+         }catch (SQLException e) {
+            SessionIO.logErr().println("Sales summary failed: " + e.getMessage());
+         }//end try
+      }, 0, INTERVAL_MS, TimeUnit.MILLISECONDS);
+   }//end start
+
+   /**
+    * Stops the schedule, letting a running batch finish.
+    */
+   public synchronized void close() {
+      if (scheduler != null) {
+         scheduler.shutdown();
+         try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+         }catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }//end try
+         scheduler = null;
+      }
+   }//end close
+
+   /**
+    * Adds the orders placed since the last run, rebuilding the summaries
+    * first if the watermark is NULL.
+    *
+    * @return the number of orders added, or -1 if another client holds the watermark
+    */
+   public long runOnce() throws SQLException {
+      long orders = 0;
+      while (true) {
+         long batch = runBatch();
+         if (batch == -2) {
+            orders += rebuild(DEFAULT_THREADS);
+            continue;
+         }
+         if (batch < 0) {
+            return orders == 0 ? -1 : orders;
+         }
+         orders += batch;
+         if (batch < BATCH_SIZE) {
+            return orders;
+         }
+      }
+   }//end runOnce
+
+   // one transaction: lock the watermark, apply one batch, move the watermark; returns
+   // the orders applied, -1 if another client holds the watermark or -2 if it is NULL
+   private long runBatch() throws SQLException {
+      Connection conn = esql.borrowConnection();
+      SQLException error = null;
+      long orders = 0;
+      try {
+         conn.setAutoCommit(false);
+         Timestamp last;
+         String lastID;
+         Timestamp now;
+         try (PreparedStatement lock = conn.prepareStatement(LOCK_WATERMARK + " SKIP LOCKED")) {
+            lock.setString(1, JOB);
+            try (ResultSet rs = lock.executeQuery()) {
+               if (!rs.next()) {
+                  conn.rollback();
+                  return -1;
+               }
+               last = rs.getTimestamp(1);
+               lastID = rs.getString(2);
+               now = rs.getTimestamp(3);
+            }
+         }
+         if (last == null) {
+            conn.rollback();
+            return -2;
+         }
+         try (PreparedStatement apply = conn.prepareStatement(APPLY_BATCH)) {
+            apply.setTimestamp(1, last);
+            apply.setString(2, lastID);
+            apply.setTimestamp(3, last);
+            apply.setTimestamp(4, new Timestamp(now.getTime() - SETTLE_MS));
+            apply.setInt(5, BATCH_SIZE);
+            try (ResultSet rs = apply.executeQuery()) {
+               if (rs.next()) {
+                  saveWatermark(conn, rs.getTimestamp(1), rs.getString(2));
+                  orders = rs.getLong(3);
+               }
+            }
+         }
+         conn.commit();
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         // the pool rolls back and restores autocommit on release
+         esql.releaseConnection(conn, error);
+      }//end try
+      return orders;
+   }//end runBatch
+
+   /**
+    * Empties the summaries and fills them again from RentalOrder, summarizing
+    * time ranges on up to threads connections at once.  The reports are
+    * incomplete until it returns.
+    *
+    * @return the number of orders summarized
+    */
+   public long rebuild(int threads) throws SQLException {
+      // the NULL watermark is committed first, so a failed rebuild is redone by the next run
+      Connection conn = esql.borrowConnection();
+      SQLException error = null;
+      try {
+         conn.setAutoCommit(false);
+         lockWatermark(conn);
+         saveWatermark(conn, null, null);
+         conn.commit();
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         esql.releaseConnection(conn, error);
+      }//end try
+
+      // the watermark stays locked while the ranges run, so the job and other rebuilds wait
+      conn = esql.borrowConnection();
+      error = null;
+      ExecutorService workers = null;
+      try {
+         conn.setAutoCommit(false);
+         Timestamp[] watermark = lockWatermark(conn);
+         if (watermark[0] != null) {
+            conn.rollback();
+            return 0; // another client rebuilt the summaries meanwhile
+         }
+         Timestamp cutoff = new Timestamp(watermark[1].getTime() - SETTLE_MS);
+         for (String clear : CLEAR) {
+            esql.executeUpdate(clear);
+         }
+
+         long orders = 0;
+         Timestamp firstOrder = null;
+         try (PreparedStatement first = conn.prepareStatement(FIRST_ORDER);
+              ResultSet rs = first.executeQuery()) {
+            if (rs.next()) {
+               firstOrder = rs.getTimestamp(1);
+            }
+         }
+         if (firstOrder != null && firstOrder.before(cutoff)) {
+            long from = firstOrder.getTime();
+            long to = cutoff.getTime();
+            int ranges = Math.max(1, threads * RANGES_PER_THREAD);
+            workers = Executors.newFixedThreadPool(Math.max(1, threads));
+            List<Future<Long>> results = new ArrayList<Future<Long>>();
+            for (int i = 0; i < ranges; i++) {
+               final Timestamp start = new Timestamp(from + (to - from) * i / ranges);
+               final Timestamp end = i == ranges - 1 ? cutoff : new Timestamp(from + (to - from) * (i + 1) / ranges);
+               results.add(workers.submit(() -> applyRange(start, end)));
+            }
+            for (Future<Long> result : results) {
+               orders += result.get();
+            }
+         }
+         // the job continues with the orders from the cutoff on
+         saveWatermark(conn, cutoff, "");
+         conn.commit();
+         return orders;
+      }catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         error = new SQLException("Sales summary rebuild interrupted");
+         throw error;
+      }catch (ExecutionException e) {
+         error = e.getCause() instanceof SQLException ? (SQLException) e.getCause()
+                                                      : new SQLException(e.getCause().getMessage());
+         throw error;
+      }catch (SQLException e) {
+         error = e;
+         throw e;
+      }finally{
+         if (workers != null) {
+            workers.shutdownNow();
+         }
+         esql.releaseConnection(conn, error);
+      }//end try
+   }//end rebuild
+
+   /**
+    * Prints the orders, units and revenue of every genre from first to last,
+    * most revenue first.
+    *
+    * @return the number of genres
+    */
+   public int printGenreReport(Date first, Date last) throws SQLException {
+      return esql.executeQueryAndPrintResult(GENRE_REPORT, first, last, first, last);
+   }
+
+   /**
+    * Prints the units and revenue of every month from first to last.
+    *
+    * @return the number of months
+    */
+   public int printMonthReport(Date first, Date last) throws SQLException {
+      return esql.executeQueryAndPrintResult(MONTH_REPORT, first, last, first, last);
+   }
+
+   /**
+    * Prints the limit games with the most revenue.
+    *
+    * @return the number of games
+    */
+   public int printGameReport(int limit) throws SQLException {
+      return esql.executeQueryAndPrintResult(GAME_REPORT, limit);
+   }
+
+   /**
+    * Prints the limit customers with the most revenue.
+    *
+    * @return the number of customers
+    */
+   public int printUserReport(int limit) throws SQLException {
+      return esql.executeQueryAndPrintResult(USER_REPORT, limit);
+   }
+
+   // one range of orders in its own transaction; returns the orders summarized
+   private long applyRange(Timestamp start, Timestamp end) throws SQLException {
+      List<List<String>> result = esql.executeQueryAndReturnResult(APPLY_RANGE, start, end);
+      return result.isEmpty() ? 0 : Long.parseLong(result.get(0).get(2));
+   }//end applyRange
+
+   // locks the sales watermark, waiting for other clients; returns its orderTimestamp and the current time
+   private static Timestamp[] lockWatermark(Connection conn) throws SQLException {
+      try (PreparedStatement lock = conn.prepareStatement(LOCK_WATERMARK)) {
+         lock.setString(1, JOB);
+         try (ResultSet rs = lock.executeQuery()) {
+            if (!rs.next()) {
+               throw new SQLException("MaintenanceWatermark has no row for job " + JOB);
+            }
+            return new Timestamp[] { rs.getTimestamp(1), rs.getTimestamp(3) };
+         }
+      }
+   }//end lockWatermark
+
+   private static void saveWatermark(Connection conn, Timestamp orderTimestamp, String orderID) throws SQLException {
+      try (PreparedStatement save = conn.prepareStatement(SAVE_WATERMARK)) {
+         save.setTimestamp(1, orderTimestamp);
+         save.setString(2, orderID);
+         save.setString(3, JOB);
+         save.executeUpdate();
+      }
+   }//end saveWatermark
+
+   /**
+    * Brings the summaries up to date once, or rebuilds them with --rebuild,
+    * for use from cron instead of a long-running client.
+    */
+   public static void main(String[] args) {
+      if (args.length < 3 || args.length > 4 || (args.length == 4 && !args[3].equals("--rebuild"))) {
+         System.err.println(
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            SalesSummarizer.class.getName() +
+            " <dbname> <port> <user> [--rebuild]");
+         return;
+      }
+      GameRental esql = null;
+      try {
+         // the rebuild holds one connection while its ranges use the others
+         esql = new GameRental(args[0], args[1], args[2], "", DEFAULT_THREADS + 1);
+         SalesSummarizer summarizer = new SalesSummarizer(esql);
+         long start = System.nanoTime();
+         if (args.length == 4) {
+            long orders = summarizer.rebuild(DEFAULT_THREADS);
+            System.out.println(String.format("Summarized %d order(s) in %.1fs.", orders,
+                                             (System.nanoTime() - start) / 1e9));
+         }
+         else {
+            long orders = summarizer.runOnce();
+            if (orders < 0) {
+               System.out.println("Another client is updating the sales summaries.");
+            }
+            else {
+               System.out.println(orders + " order(s) added to the sales summaries.");
+            }
+         }
+      }catch (Exception e) {
+         System.err.println(e.getMessage());
+      }finally{
+         if (esql != null) {
+            esql.cleanup();
+         }
+      }
+   }//end main
+
+}//end SalesSummarizer
@@ -0,0 +1,219 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Per-session terminal I/O for the menu code.
+ *
+ * The menu methods read from GameRental.in and write to System.out and
+ * System.err.  In the console program those are the process streams.  In
+ * server mode every session thread binds its own socket streams here, and
+ * GameRental.in and System.out/err route each call to the streams bound by
+ * the calling thread, so the existing menu flow runs unchanged for many
+ * sessions at once.  Threads with no session bound use the process streams.
+ *
+ */
+public class SessionIO {
+
+   private static final ThreadLocal<BufferedReader> INPUT = new ThreadLocal<BufferedReader>();
+   private static final ThreadLocal<PrintStream> OUTPUT = new ThreadLocal<PrintStream>();
+   // nanoseconds the thread has spent blocked reading its terminal
+   private static final ThreadLocal<long[]> INPUT_WAIT = ThreadLocal.withInitial(() -> new long[1]);
+
+   private static PrintStream processOut = System.out;
+   private static PrintStream processErr = System.err;
+   private static boolean installed = false;
+
+   /**
+    * Thrown out of a read when the client of the calling session has
+    * disconnected.  It is an Error so the catch (Exception e) blocks of the
+    * menu methods let it through and the session unwinds.
+    */
+   public static final class SessionClosed extends Error {
+      private static final long serialVersionUID = 1L;
+
+      SessionClosed() {
+         super("session closed", null, false, false);
+      }
+   }//end SessionClosed
+
+   /**
+    * The reader behind GameRental.in.  readLine reads from the calling
+    * session, after flushing its pending output so the prompt is shown.
+    * The time spent blocked is added to the thread's inputWaitNanos.
+    */
+   static final class Input extends BufferedReader {
+      private final BufferedReader console;
+
+      Input(Reader console) {
+         super(console, 1);
+         this.console = new BufferedReader(console);
+      }
+
+      @Override
+      public String readLine() throws IOException {
+         BufferedReader session = INPUT.get();
+         long start = System.nanoTime();
+         try {
+            if (session == null) {
+               return console.readLine();
+            }
+            OUTPUT.get().flush();
+            String line;
+            try {
+               line = session.readLine();
+            }catch (IOException e) {
+               // a broken connection ends the session like a clean disconnect
+               throw new SessionClosed();
+            }//end try
+            if (line == null) {
+               throw new SessionClosed();
+            }
+            return line;
+         }finally{
+            INPUT_WAIT.get()[0] += System.nanoTime() - start;
+         }//end try
+      }
+
+      @Override
+      public int read() throws IOException {
+         BufferedReader session = INPUT.get();
+         long start = System.nanoTime();
+         try {
+            return session == null ? console.read() : session.read();
+         }finally{
+            INPUT_WAIT.get()[0] += System.nanoTime() - start;
+         }//end try
+      }
+
+      @Override
+      public int read(char[] buf, int off, int len) throws IOException {
+         BufferedReader session = INPUT.get();
+         long start = System.nanoTime();
+         try {
+            return session == null ? console.read(buf, off, len) : session.read(buf, off, len);
+         }finally{
+            INPUT_WAIT.get()[0] += System.nanoTime() - start;
+         }//end try
+      }
+   }//end Input
+
+   /**
+    * The stream installed as System.out and System.err in server mode.
+    * Every call goes to the calling session's stream, or to the original
+    * process stream when the thread has no session.
+    */
+   static final class Output extends PrintStream {
+      private final PrintStream process;
+
+      Output(PrintStream process) {
+         super(process, true);
+         this.process = process;
+      }
+
+      private PrintStream target() {
+         PrintStream session = OUTPUT.get();
+         return session != null ? session : process;
+      }
+
+      @Override public void write(int b) { target().write(b); }
+      @Override public void write(byte[] buf, int off, int len) { target().write(buf, off, len); }
+      @Override public void flush() { target().flush(); }
+      @Override public void close() { target().flush(); }
+      @Override public boolean checkError() { return target().checkError(); }
+      @Override public void print(boolean b) { target().print(b); }
+      @Override public void print(char c) { target().print(c); }
+      @Override public void print(int i) { target().print(i); }
+      @Override public void print(long l) { target().print(l); }
+      @Override public void print(float f) { target().print(f); }
+      @Override public void print(double d) { target().print(d); }
+      @Override public void print(char[] s) { target().print(s); }
+      @Override public void print(String s) { target().print(s); }
+      @Override public void print(Object obj) { target().print(obj); }
+      @Override public void println() { target().println(); }
+      @Override public void println(boolean x) { target().println(x); }
+      @Override public void println(char x) { target().println(x); }
+      @Override public void println(int x) { target().println(x); }
+      @Override public void println(long x) { target().println(x); }
+      @Override public void println(float x) { target().println(x); }
+      @Override public void println(double x) { target().println(x); }
+      @Override public void println(char[] x) { target().println(x); }
+      @Override public void println(String x) { target().println(x); }
+      @Override public void println(Object x) { target().println(x); }
+      @Override public PrintStream printf(String format, Object... args) { target().printf(format, args); return this; }
+      @Override public PrintStream printf(Locale l, String format, Object... args) { target().printf(l, format, args); return this; }
+      @Override public PrintStream format(String format, Object... args) { target().format(format, args); return this; }
+      @Override public PrintStream format(Locale l, String format, Object... args) { target().format(l, format, args); return this; }
+      @Override public PrintStream append(CharSequence csq) { target().append(csq); return this; }
+      @Override public PrintStream append(CharSequence csq, int start, int end) { target().append(csq, start, end); return this; }
+      @Override public PrintStream append(char c) { target().append(c); return this; }
+   }//end Output
+
+   /**
+    * @return the reader the menu code reads from
+    */
+   static BufferedReader newInput() {
+      return new Input(new InputStreamReader(System.in));
+   }//end newInput
+
+   /**
+    * Routes System.out and System.err through the calling thread's session.
+    * Called once by the server before the first session starts.
+    */
+   public static synchronized void install() {
+      if (!installed) {
+         processOut = System.out;
+         processErr = System.err;
+         System.setOut(new Output(processOut));
+         System.setErr(new Output(processErr));
+         installed = true;
+      }
+   }//end install
+
+   /**
+    * Binds the calling thread to a session's streams.  Menu output and
+    * error messages both go to out.
+    */
+   public static void bind(BufferedReader in, PrintStream out) {
+      INPUT.set(in);
+      OUTPUT.set(out);
+   }//end bind
+
+   /**
+    * Flushes and unbinds the calling thread's session streams.
+    */
+   public static void unbind() {
+      PrintStream out = OUTPUT.get();
+      if (out != null) {
+         out.flush();
+      }
+      INPUT.remove();
+      OUTPUT.remove();
+   }//end unbind
+
+   /**
+    * @return the total time the calling thread has spent waiting for
+    *         terminal input, in nanoseconds
+    */
+   public static long inputWaitNanos() {
+      return INPUT_WAIT.get()[0];
+   }
+
+   /**
+    * @return the process standard output, for server log messages
+    */
+   public static PrintStream log() {
+      return processOut;
+   }
+
+   /**
+    * @return the process standard error, for server log messages
+    */
+   public static PrintStream logErr() {
+      return processErr;
+   }
+
+}//end SessionIO
@@ -0,0 +1,374 @@
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A query result stored column by column in primitive arrays.
+ *
+ * Each column is decoded once, according to its SQL type:
+ * <ul>
+ *   <li>decimal/numeric money columns named in MONEY_COLUMNS: long cents
+ *       (see Money); any other decimal/numeric: BigDecimal, exact</li>
+ *   <li>integer/smallint: int; bigint: long</li>
+ *   <li>timestamp and date: long epoch milliseconds; timestamps also keep
+ *       the nanoseconds below the millisecond, and dates print as dates</li>
+ *   <li>text columns named in DICTIONARY_COLUMNS: int codes into a per-column
+ *       dictionary, so a low-cardinality value is stored once</li>
+ *   <li>any other column: String</li>
+ * </ul>
+ * Rows are read through the Row view, which allocates nothing per cell.
+ *
+ */
+public class TypedResult {
+
+   /**
+    * How a column is stored.
+    */
+   public enum Kind { INT, LONG, CENTS, DECIMAL, MILLIS, DATE, DICT, STRING }
+
+   // decimal columns holding amounts of money (lower case, as Postgres labels them)
+   public static final Set<String> MONEY_COLUMNS = new HashSet<String>(Arrays.asList(
+      "price", "totalprice", "revenue"));
+
+   // low-cardinality text columns worth dictionary encoding (lower case, as Postgres labels them)
+   public static final Set<String> DICTIONARY_COLUMNS = new HashSet<String>(Arrays.asList(
+      "genre", "status", "couriername", "role", "currentlocation"));
+
+   private final String[] names;
+   private final Kind[] kinds;
+   // exactly one of the arrays below is used per column, except that MILLIS
+   // columns keep the nanoseconds below the millisecond in ints
+   private final int[][] ints;
+   private final long[][] longs;
+   private final String[][] strings;
+   private final BigDecimal[][] decimals;
+   private final String[][] dictionaries;
+   private final int[] dictionarySizes;
+   private final HashMap<String, Integer>[] dictionaryCodes;
+   private final BitSet[] nulls;
+   private int rowCount = 0;
+   private int capacity = 16;
+
+   /**
+    * Creates an empty result with the columns of a result set.
+    *
+    * @param rsmd metadata of the result set to be decoded
+    */
+   public TypedResult(ResultSetMetaData rsmd) throws SQLException {
+      this(columnNames(rsmd), columnTypes(rsmd));
+   }//end TypedResult
+
+   @SuppressWarnings({ "unchecked", "rawtypes" })
+   private TypedResult(String[] columnNames, int[] sqlTypes) {
+      int numCol = columnNames.length;
+      names = new String[numCol];
+      kinds = new Kind[numCol];
+      ints = new int[numCol][];
+      longs = new long[numCol][];
+      strings = new String[numCol][];
+      decimals = new BigDecimal[numCol][];
+      dictionaries = new String[numCol][];
+      dictionarySizes = new int[numCol];
+      dictionaryCodes = new HashMap[numCol];
+      nulls = new BitSet[numCol];
+      for (int c = 0; c < numCol; c++) {
+         names[c] = columnNames[c];
+         kinds[c] = kindOf(sqlTypes[c], names[c]);
+         nulls[c] = new BitSet();
+         switch (kinds[c]) {
+            case INT: ints[c] = new int[capacity]; break;
+            case LONG: case CENTS: case DATE: longs[c] = new long[capacity]; break;
+            case MILLIS:
+               longs[c] = new long[capacity];
+               ints[c] = new int[capacity];
+               break;
+            case DECIMAL: decimals[c] = new BigDecimal[capacity]; break;
+            case DICT:
+               ints[c] = new int[capacity];
+               dictionaries[c] = new String[8];
+               dictionaryCodes[c] = new HashMap<String, Integer>();
+               break;
+            default: strings[c] = new String[capacity]; break;
+         }
+      }
+   }//end TypedResult
+
+   /**
+    * @return a result with no columns and no rows
+    */
+   public static TypedResult empty() {
+      return new TypedResult(new String[0], new int[0]);
+   }//end empty
+
+   /**
+    * Reads every remaining row of rs.
+    *
+    * @param rs an open result set
+    * @return the decoded rows
+    */
+   public static TypedResult from(ResultSet rs) throws SQLException {
+      TypedResult result = new TypedResult(rs.getMetaData());
+      while (rs.next()) {
+         result.append(rs);
+      }
+      return result;
+   }//end from
+
+   /**
+    * Decodes the row rs is positioned on and appends it.
+    *
+    * @param rs a result set positioned on a row
+    */
+   public void append(ResultSet rs) throws SQLException {
+      if (rowCount == capacity) {
+         grow();
+      }
+      int r = rowCount;
+      for (int c = 0; c < kinds.length; c++) {
+         int col = c + 1;
+         switch (kinds[c]) {
+            case INT:
+               ints[c][r] = rs.getInt(col);
+               if (rs.wasNull()) nulls[c].set(r);
+               break;
+            case LONG:
+               longs[c][r] = rs.getLong(col);
+               if (rs.wasNull()) nulls[c].set(r);
+               break;
+            case CENTS: {
+               BigDecimal value = rs.getBigDecimal(col);
+               if (value == null) nulls[c].set(r);
+               else longs[c][r] = Money.toCents(value);
+               break;
+            }
+            case DECIMAL:
+               decimals[c][r] = rs.getBigDecimal(col);
+               if (decimals[c][r] == null) nulls[c].set(r);
+               break;
+            case MILLIS: {
+               Timestamp value = rs.getTimestamp(col);
+               if (value == null) nulls[c].set(r);
+               else {
+                  longs[c][r] = value.getTime();
+                  ints[c][r] = value.getNanos() % 1000000;
+               }
+               break;
+            }
+            case DATE: {
+               Date value = rs.getDate(col);
+               if (value == null) nulls[c].set(r);
+               else longs[c][r] = value.getTime();
+               break;
+            }
+            case DICT: {
+               String value = rs.getString(col);
+               if (value == null) nulls[c].set(r);
+               else ints[c][r] = encode(c, value);
+               break;
+            }
+            default:
+               strings[c][r] = rs.getString(col);
+               if (strings[c][r] == null) nulls[c].set(r);
+               break;
+         }
+      }
+      rowCount++;
+   }//end append
+
+   public int size() {
+      return rowCount;
+   }
+
+   public int columnCount() {
+      return kinds.length;
+   }
+
+   public String columnName(int col) {
+      return names[col];
+   }
+
+   public Kind columnKind(int col) {
+      return kinds[col];
+   }
+
+   /**
+    * @param name a column label, case-insensitive
+    * @return its 0-based index, or -1
+    */
+   public int columnIndex(String name) {
+      for (int c = 0; c < names.length; c++) {
+         if (names[c].equalsIgnoreCase(name)) {
+            return c;
+         }
+      }
+      return -1;
+   }//end columnIndex
+
+   public boolean isNull(int row, int col) {
+      return nulls[col].get(row);
+   }
+
+   public int getInt(int row, int col) {
+      return kinds[col] == Kind.INT ? ints[col][row] : (int) longs[col][row];
+   }
+
+   public long getLong(int row, int col) {
+      return kinds[col] == Kind.INT ? ints[col][row] : longs[col][row];
+   }
+
+   public long getCents(int row, int col) {
+      return kinds[col] == Kind.DECIMAL ? Money.toCents(decimals[col][row]) : longs[col][row];
+   }
+
+   /**
+    * @return a decimal or money column as an exact BigDecimal
+    */
+   public BigDecimal getDecimal(int row, int col) {
+      return kinds[col] == Kind.DECIMAL ? decimals[col][row] : Money.toBigDecimal(longs[col][row]);
+   }
+
+   public long getMillis(int row, int col) {
+      return longs[col][row];
+   }
+
+   /**
+    * @return a timestamp column with the precision the driver read it at,
+    *         or null for NULL
+    */
+   public Timestamp getTimestamp(int row, int col) {
+      if (nulls[col].get(row)) {
+         return null;
+      }
+      Timestamp value = new Timestamp(longs[col][row]);
+      if (kinds[col] == Kind.MILLIS) {
+         value.setNanos(value.getNanos() + ints[col][row]);
+      }
+      return value;
+   }//end getTimestamp
+
+   /**
+    * Renders any column as text, e.g. for display.  Cents print with two
+    * decimal places, other decimals with their own scale, timestamps in the
+    * JDBC timestamp format and dates as yyyy-mm-dd.
+    */
+   public String getString(int row, int col) {
+      if (nulls[col].get(row)) {
+         return null;
+      }
+      switch (kinds[col]) {
+         case INT: return Integer.toString(ints[col][row]);
+         case LONG: return Long.toString(longs[col][row]);
+         case CENTS: return Money.format(longs[col][row]);
+         case DECIMAL: return decimals[col][row].toPlainString();
+         case DATE: return new Date(longs[col][row]).toString();
+         case MILLIS: {
+            // same text the driver's getString gives, without a zero fraction
+            String text = getTimestamp(row, col).toString();
+            return text.endsWith(".0") ? text.substring(0, text.length() - 2) : text;
+         }
+         case DICT: return dictionaries[col][ints[col][row]];
+         default: return strings[col][row];
+      }
+   }//end getString
+
+   /**
+    * @return a reusable view of one row
+    */
+   public Row row(int row) {
+      return new Row(row);
+   }
+
+   /**
+    * Accessors for one row of the result.
+    */
+   public final class Row {
+      private int row;
+
+      private Row(int row) {
+         this.row = row;
+      }
+
+      /**
+       * Moves the view to another row, so one view can walk the result.
+       */
+      public Row at(int row) {
+         this.row = row;
+         return this;
+      }
+
+      public int index() { return row; }
+      public boolean isNull(int col) { return TypedResult.this.isNull(row, col); }
+      public int getInt(int col) { return TypedResult.this.getInt(row, col); }
+      public long getLong(int col) { return TypedResult.this.getLong(row, col); }
+      public long getCents(int col) { return TypedResult.this.getCents(row, col); }
+      public BigDecimal getDecimal(int col) { return TypedResult.this.getDecimal(row, col); }
+      public long getMillis(int col) { return TypedResult.this.getMillis(row, col); }
+      public Timestamp getTimestamp(int col) { return TypedResult.this.getTimestamp(row, col); }
+      public String getString(int col) { return TypedResult.this.getString(row, col); }
+   }//end Row
+
+   private static String[] columnNames(ResultSetMetaData rsmd) throws SQLException {
+      String[] columnNames = new String[rsmd.getColumnCount()];
+      for (int c = 0; c < columnNames.length; c++) {
+         columnNames[c] = rsmd.getColumnName(c + 1);
+      }
+      return columnNames;
+   }//end columnNames
+
+   private static int[] columnTypes(ResultSetMetaData rsmd) throws SQLException {
+      int[] sqlTypes = new int[rsmd.getColumnCount()];
+      for (int c = 0; c < sqlTypes.length; c++) {
+         sqlTypes[c] = rsmd.getColumnType(c + 1);
+      }
+      return sqlTypes;
+   }//end columnTypes
+
+   private static Kind kindOf(int sqlType, String name) {
+      switch (sqlType) {
+         case Types.INTEGER: case Types.SMALLINT: case Types.TINYINT: return Kind.INT;
+         case Types.BIGINT: return Kind.LONG;
+         case Types.NUMERIC: case Types.DECIMAL:
+            // aggregates and other decimals keep every digit; only money is rounded to cents
+            return MONEY_COLUMNS.contains(name.toLowerCase()) ? Kind.CENTS : Kind.DECIMAL;
+         case Types.TIMESTAMP: return Kind.MILLIS;
+         case Types.DATE: return Kind.DATE;
+         case Types.CHAR: case Types.VARCHAR: case Types.LONGVARCHAR:
+            return DICTIONARY_COLUMNS.contains(name.toLowerCase()) ? Kind.DICT : Kind.STRING;
+         default: return Kind.STRING;
+      }
+   }//end kindOf
+
+   private int encode(int col, String value) {
+      Integer code = dictionaryCodes[col].get(value);
+      if (code == null) {
+         code = dictionarySizes[col];
+         if (code == dictionaries[col].length) {
+            dictionaries[col] = Arrays.copyOf(dictionaries[col], code * 2);
+         }
+         dictionaries[col][code] = value;
+         dictionarySizes[col]++;
+         dictionaryCodes[col].put(value, code);
+      }
+      return code;
+   }//end encode
+
+   private void grow() {
+      capacity *= 2;
+      for (int c = 0; c < kinds.length; c++) {
+         if (ints[c] != null) ints[c] = Arrays.copyOf(ints[c], capacity);
+         if (longs[c] != null) longs[c] = Arrays.copyOf(longs[c], capacity);
+         if (strings[c] != null) strings[c] = Arrays.copyOf(strings[c], capacity);
+         if (decimals[c] != null) decimals[c] = Arrays.copyOf(decimals[c], capacity);
+      }
+   }//end grow
+
+}//end TypedResult
@@ -0,0 +1,196 @@
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The logged-in user of one terminal session.
+ *
+ * LogIn reads the user's whole Users row once, and the profile and role
+ * checks of the menus are answered from that copy instead of a query each.
+ * Every open session is registered with its GameRental, and the methods
+ * that change a user's row (changePassword, changePhoneNumber,
+ * changeFavoriteGames, changeRole, changeUsername) invalidate the sessions
+ * of that user, which re-read the row on next use.  Rows changed by other
+ * processes are picked up once a profile is older than MAX_AGE_MS.
+ *
+ */
+public class UserSession {
+
+   public static final long MAX_AGE_MS = Long.getLong("gamerental.session.maxAgeMs", 60000L);
+
+   private static final String SELECT_PROFILE =
+      "SELECT role, favGames, phoneNum, numOverDueGames FROM Users WHERE login = ?";
+
+   /**
+    * An immutable copy of a user's Users row.
+    */
+   public static final class Profile {
+      public final String role;
+      public final String favGames;
+      public final String phoneNum;
+      public final int numOverDueGames;
+      final long loadedAt;
+
+      Profile(TypedResult.Row row) {
+         // role is char(20); a cleared role matches no role check
+         this.role = row.isNull(0) ? "" : row.getString(0).trim();
+         this.favGames = row.getString(1);
+         this.phoneNum = row.getString(2);
+         this.numOverDueGames = row.isNull(3) ? 0 : row.getInt(3);
+         this.loadedAt = System.currentTimeMillis();
+      }
+   }//end Profile
+
+   /**
+    * The open sessions of one GameRental, by login.
+    */
+   public static final class Registry {
+      private final ConcurrentHashMap<String, Set<UserSession>> byLogin =
+         new ConcurrentHashMap<String, Set<UserSession>>();
+
+      void register(UserSession session) {
+         byLogin.computeIfAbsent(session.login,
+            k -> Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<UserSession, Boolean>())))
+            .add(session);
+      }
+
+      void unregister(UserSession session) {
+         byLogin.computeIfPresent(session.login, (k, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+         });
+      }
+
+      /**
+       * Makes every session of login re-read its profile on next use.
+       *
+       * @param login the user whose row changed
+       */
+      public void invalidate(String login) {
+         Set<UserSession> sessions = byLogin.get(login);
+         if (sessions != null) {
+            synchronized (sessions) {
+               for (UserSession session : sessions) {
+                  session.profile = null;
+               }
+            }
+         }
+      }//end invalidate
+
+      /**
+       * Makes every open session re-read its profile on next use.
+       */
+      public void invalidateAll() {
+         for (Set<UserSession> sessions : byLogin.values()) {
+            synchronized (sessions) {
+               for (UserSession session : sessions) {
+                  session.profile = null;
+               }
+            }
+         }
+      }//end invalidateAll
+
+      /**
+       * Moves the sessions of a renamed user to the new login.
+       *
+       * @param oldLogin the login before the change
+       * @param newLogin the login after the change
+       */
+      public void rename(String oldLogin, String newLogin) {
+         Set<UserSession> sessions = byLogin.remove(oldLogin);
+         if (sessions == null) {
+            return;
+         }
+         synchronized (sessions) {
+            for (UserSession session : sessions) {
+               session.login = newLogin;
+               session.profile = null;
+            }
+            for (UserSession session : sessions) {
+               register(session);
+            }
+         }
+      }//end rename
+
+      /**
+       * @return the number of open sessions
+       */
+      public int size() {
+         int n = 0;
+         for (Set<UserSession> sessions : byLogin.values()) {
+            n += sessions.size();
+         }
+         return n;
+      }//end size
+   }//end Registry
+
+   private final GameRental esql;
+   private volatile String login;
+   private volatile Profile profile;
+   private boolean closed = false;
+
+   private UserSession(GameRental esql, String login, Profile profile) {
+      this.esql = esql;
+      this.login = login;
+      this.profile = profile;
+   }
+
+   /**
+    * Checks the credentials and opens a session.
+    *
+    * @return the session, or null if the login and password do not match
+    * @throws java.sql.SQLException when the Users table could not be read
+    */
+   public static UserSession logIn(GameRental esql, String login, String password) throws SQLException {
+      TypedResult row = esql.executeQueryTyped(SELECT_PROFILE + " AND password = ?", login, password);
+      if (row.size() != 1) {
+         return null;
+      }
+      UserSession session = new UserSession(esql, login, new Profile(row.row(0)));
+      esql._sessions.register(session);
+      return session;
+   }//end logIn
+
+   /**
+    * @return the current login of the user, which follows renames
+    */
+   public String getLogin() {
+      return login;
+   }
+
+   /**
+    * @return the user's row, re-read if it was invalidated or is older than
+    *         MAX_AGE_MS; null if the user no longer exists
+    */
+   public Profile getProfile() throws SQLException {
+      Profile current = profile;
+      if (current != null && System.currentTimeMillis() - current.loadedAt < MAX_AGE_MS) {
+         return current;
+      }
+      TypedResult row = esql.executeQueryTyped(SELECT_PROFILE, login);
+      current = row.size() == 1 ? new Profile(row.row(0)) : null;
+      profile = current;
+      return current;
+   }//end getProfile
+
+   /**
+    * @return true if the user currently has the given role
+    */
+   public boolean hasRole(String role) throws SQLException {
+      Profile current = getProfile();
+      return current != null && current.role.equals(role);
+   }//end hasRole
+
+   /**
+    * Logs out, removing the session from the registry.
+    */
+   public synchronized void close() {
+      if (!closed) {
+         closed = true;
+         esql._sessions.unregister(this);
+      }
+   }//end close
+
+}//end UserSession
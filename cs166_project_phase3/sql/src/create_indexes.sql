@@ -1,3 +1,5 @@
+-- login, gameID, rentalOrderID_Rental and trackingID duplicated the primary
+-- keys and are no longer built, but are still dropped from older databases.
 DROP INDEX IF EXISTS login;
 DROP INDEX IF EXISTS gameID;
 DROP INDEX IF EXISTS genre;
@@ -5,11 +7,15 @@ DROP INDEX IF EXISTS price;
 DROP INDEX IF EXISTS rentalOrderID_Rental;
 DROP INDEX IF EXISTS trackingID;
 DROP INDEX IF EXISTS rentalOrderID_Tracking;
+DROP INDEX IF EXISTS login_orderTimestamp;
+DROP INDEX IF EXISTS gameID_GamesInOrder;
+DROP INDEX IF EXISTS dueDate_rentalOrderID;
+DROP INDEX IF EXISTS orderTimestamp_rentalOrderID;
 
-CREATE INDEX login ON Users (login);
-CREATE INDEX gameID ON Catalog (gameID);
-CREATE INDEX genre ON Catalog (genre);
-CREATE INDEX price ON Catalog (price);
-CREATE INDEX rentalOrderID_Rental ON RentalOrder (rentalOrderID);
-CREATE INDEX trackingID ON TrackingInfo (trackingID);
-CREATE INDEX rentalOrderID_Tracking ON TrackingInfo (rentalOrderID);
\ No newline at end of file
+CREATE INDEX genre ON Catalog (genre, price, gameID);
+CREATE INDEX price ON Catalog (price, gameID);
+CREATE INDEX rentalOrderID_Tracking ON TrackingInfo (rentalOrderID) INCLUDE (status);
+CREATE INDEX login_orderTimestamp ON RentalOrder (login, orderTimestamp DESC, rentalOrderID DESC) INCLUDE (noOfGames, totalPrice);
+CREATE INDEX gameID_GamesInOrder ON GamesInOrder (gameID);
+CREATE INDEX dueDate_rentalOrderID ON RentalOrder (dueDate, rentalOrderID) INCLUDE (login, noOfGames);
+CREATE INDEX orderTimestamp_rentalOrderID ON RentalOrder (orderTimestamp, rentalOrderID) INCLUDE (login, noOfGames, totalPrice);
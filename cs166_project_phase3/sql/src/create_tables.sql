@@ -3,6 +3,11 @@ DROP TABLE IF EXISTS Catalog CASCADE;
 DROP TABLE IF EXISTS RentalOrder CASCADE;
 DROP TABLE IF EXISTS TrackingInfo CASCADE;
 DROP TABLE IF EXISTS GamesInOrder CASCADE;
+DROP TABLE IF EXISTS OrderIDs CASCADE;
+DROP TABLE IF EXISTS MaintenanceWatermark CASCADE;
+DROP TABLE IF EXISTS SalesByGenreDay CASCADE;
+DROP TABLE IF EXISTS SalesByGame CASCADE;
+DROP TABLE IF EXISTS SalesByUser CASCADE;
 
 CREATE TABLE Users ( login varchar(50) NOT NULL,
                      password varchar(30) NOT NULL,
@@ -22,18 +27,32 @@ CREATE TABLE Catalog ( gameID varchar(50) NOT NULL,
                        PRIMARY KEY(gameID)
 );
 
+-- The order tables are partitioned by the month of orderTimestamp, so the
+-- queries on recent orders read only the last partitions and old months can
+-- be detached and archived whole (see PartitionArchiver).  A partitioned
+-- table's keys must contain the partition key, so TrackingInfo and
+-- GamesInOrder carry their order's orderTimestamp and reference the order by
+-- (rentalOrderID, orderTimestamp).  The primary keys therefore no longer
+-- make rentalOrderID and trackingID unique on their own: they are drawn from
+-- their sequences and claimed in OrderIDs, below.  Rows inserted by hand
+-- are not checked.
+--
+-- Foreign keys referencing a partitioned table need PostgreSQL 12 or later
+-- and the INCLUDE indexes of create_indexes.sql need 11 or later.  The
+-- bundled pg73jdbc3.jar speaks protocol version 2, which PostgreSQL 14
+-- removed, so this schema runs on PostgreSQL 12 and 13 only.
 CREATE TABLE RentalOrder ( rentalOrderID varchar(50) NOT NULL,
                            login varchar(50) NOT NULL,
                            noOfGames integer NOT NULL,
                            totalPrice decimal(10,2) NOT NULL,
                            orderTimestamp timestamp NOT NULL,
                            dueDate timestamp NOT NULL,
-                           PRIMARY KEY(rentalOrderID),
+                           PRIMARY KEY(rentalOrderID, orderTimestamp),
                            FOREIGN KEY(login) REFERENCES Users(login)
                            ON DELETE CASCADE
                            -- Allow for login to be updated by managers
                            ON UPDATE CASCADE
-);
+) PARTITION BY RANGE (orderTimestamp);
 
 CREATE TABLE TrackingInfo ( trackingID varchar(50) NOT NULL,
                            rentalOrderID varchar(50) NOT NULL,
@@ -42,16 +61,174 @@ CREATE TABLE TrackingInfo ( trackingID varchar(50) NOT NULL,
                            courierName varchar(60) NOT NULL,
                            lastUpdateDate timestamp NOT NULL,
                            additionalComments text,
-                           PRIMARY KEY(trackingID),
-                           FOREIGN KEY(rentalOrderID) REFERENCES RentalOrder(rentalOrderID)
+                           orderTimestamp timestamp NOT NULL,
+                           PRIMARY KEY(trackingID, orderTimestamp),
+                           CONSTRAINT TrackingInfo_order_fk
+                           FOREIGN KEY(rentalOrderID, orderTimestamp) REFERENCES RentalOrder(rentalOrderID, orderTimestamp)
                            ON DELETE CASCADE
-);
+) PARTITION BY RANGE (orderTimestamp);
 
 CREATE TABLE GamesInOrder ( rentalOrderID varchar(50) NOT NULL,
                            gameID varchar(50) NOT NULL,
                            unitsOrdered integer NOT NULL,
-                           PRIMARY KEY(rentalOrderID, gameID),
-                           FOREIGN KEY(rentalOrderID) REFERENCES RentalOrder(rentalOrderID) ON DELETE CASCADE,
+                           orderTimestamp timestamp NOT NULL,
+                           PRIMARY KEY(rentalOrderID, gameID, orderTimestamp),
+                           CONSTRAINT GamesInOrder_order_fk
+                           FOREIGN KEY(rentalOrderID, orderTimestamp) REFERENCES RentalOrder(rentalOrderID, orderTimestamp)
+                           ON DELETE CASCADE,
                            FOREIGN KEY(gameID) REFERENCES Catalog(gameID)
                            ON DELETE CASCADE
+) PARTITION BY RANGE (orderTimestamp);
+
+-- Orders outside every monthly partition land here.  Keep it empty by
+-- creating partitions ahead of time: a month cannot be attached while the
+-- default partition holds rows of it.
+CREATE TABLE rentalorder_default PARTITION OF RentalOrder DEFAULT;
+CREATE TABLE trackinginfo_default PARTITION OF TrackingInfo DEFAULT;
+CREATE TABLE gamesinorder_default PARTITION OF GamesInOrder DEFAULT;
+
+-- Creates the monthly partitions <table>_YYYY_MM of the three order tables
+-- for the months from p_from up to but not including p_to, skipping the
+-- ones that exist.  Returns the number of partitions created.
+CREATE OR REPLACE FUNCTION create_order_partitions(p_from date, p_to date)
+RETURNS integer AS $$
+DECLARE
+   v_month date := date_trunc('month', p_from);
+   v_table text;
+   v_name text;
+   v_created integer := 0;
+BEGIN
+   WHILE v_month < p_to LOOP
+      FOREACH v_table IN ARRAY ARRAY['rentalorder', 'trackinginfo', 'gamesinorder'] LOOP
+         v_name := v_table || '_' || to_char(v_month, 'YYYY_MM');
+         IF to_regclass(v_name) IS NULL THEN
+            EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                           v_name, v_table, v_month, v_month + interval '1 month');
+            v_created := v_created + 1;
+         END IF;
+      END LOOP;
+      v_month := v_month + interval '1 month';
+   END LOOP;
+   RETURN v_created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- From the first month of the sample data to a year ahead.
+-- PartitionArchiver extend adds later months.
+SELECT create_order_partitions(DATE '2011-12-01', CAST(date_trunc('month', CURRENT_DATE) + interval '13 months' AS date));
+
+-- Every rentalOrderID and trackingID ever used, with the orderTimestamp of
+-- its order.  It is not partitioned, so its keys are unique across all
+-- months and a new ID is checked with one index probe instead of one per
+-- partition.  place_order, the loaders and PartitionArchiver restore
+-- insert here; deleting or archiving an order leaves its IDs reserved.
+CREATE TABLE OrderIDs ( rentalOrderID varchar(50) NOT NULL,
+                        trackingID varchar(50),
+                        orderTimestamp timestamp NOT NULL,
+                        PRIMARY KEY(rentalOrderID),
+                        UNIQUE(trackingID)
 );
+
+-- Progress of background jobs over RentalOrder: the key of the last order
+-- the job has processed, (dueDate, rentalOrderID) for overdue and
+-- (orderTimestamp, rentalOrderID) for sales.  A NULL key means the job
+-- has not run since the data was loaded and starts with a full recompute.
+CREATE TABLE MaintenanceWatermark ( job varchar(50) NOT NULL,
+                                    dueDate timestamp,
+                                    orderTimestamp timestamp,
+                                    rentalOrderID varchar(50),
+                                    lastRun timestamp,
+                                    PRIMARY KEY(job)
+);
+
+INSERT INTO MaintenanceWatermark (job) VALUES ('overdue');
+INSERT INTO MaintenanceWatermark (job) VALUES ('sales');
+
+-- Orders, units and revenue of the orders up to the sales watermark, kept
+-- by SalesSummarizer.  revenue is each game's share of the order's
+-- totalPrice by list price.
+CREATE TABLE SalesByGenreDay ( genre varchar(30) NOT NULL,
+                               day date NOT NULL,
+                               orders bigint NOT NULL,
+                               units bigint NOT NULL,
+                               revenue decimal(16,4) NOT NULL,
+                               PRIMARY KEY(genre, day)
+);
+
+CREATE TABLE SalesByGame ( gameID varchar(50) NOT NULL,
+                           orders bigint NOT NULL,
+                           units bigint NOT NULL,
+                           revenue decimal(16,4) NOT NULL,
+                           PRIMARY KEY(gameID),
+                           FOREIGN KEY(gameID) REFERENCES Catalog(gameID)
+                           ON DELETE CASCADE
+);
+
+CREATE TABLE SalesByUser ( login varchar(50) NOT NULL,
+                           orders bigint NOT NULL,
+                           units bigint NOT NULL,
+                           revenue decimal(16,4) NOT NULL,
+                           PRIMARY KEY(login),
+                           FOREIGN KEY(login) REFERENCES Users(login)
+                           ON DELETE CASCADE
+                           ON UPDATE CASCADE
+);
+
+-- Blocks of generated IDs for gameID, rentalOrderID and trackingID.
+-- Each nextval reserves INCREMENT BY numbers for one client process, so
+-- INCREMENT BY must match IdAllocator.BLOCK_SIZE in GameRental.
+DROP SEQUENCE IF EXISTS gameID_seq;
+DROP SEQUENCE IF EXISTS rentalOrderID_seq;
+DROP SEQUENCE IF EXISTS trackingID_seq;
+
+CREATE SEQUENCE gameID_seq INCREMENT BY 50 MINVALUE 1;
+CREATE SEQUENCE rentalOrderID_seq INCREMENT BY 50 MINVALUE 1;
+CREATE SEQUENCE trackingID_seq INCREMENT BY 50 MINVALUE 1;
+
+-- Places a rental order in one statement, so the order, its tracking row
+-- and its games are written atomically in a single round trip.
+-- p_gameIDs and p_copies are parallel comma-separated lists.  The total is
+-- computed from the current Catalog prices, read under FOR SHARE so they
+-- cannot change before the order commits; p_totalPrice is the total the
+-- customer confirmed, and the order is refused when the two differ.  An
+-- order or tracking ID already used in any month is refused by the keys
+-- of OrderIDs.
+CREATE OR REPLACE FUNCTION place_order(p_rentalOrderID varchar, p_trackingID varchar, p_login varchar,
+                                       p_gameIDs text, p_copies text, p_totalPrice decimal,
+                                       p_orderTimestamp timestamp, p_dueDate timestamp)
+RETURNS integer AS $$
+DECLARE
+   v_games varchar[] := string_to_array(p_gameIDs, ',');
+   v_copies integer[] := CAST(string_to_array(p_copies, ',') AS integer[]);
+   v_units integer;
+   v_found integer;
+   v_total decimal(10,2);
+BEGIN
+   INSERT INTO OrderIDs VALUES (p_rentalOrderID, p_trackingID, p_orderTimestamp);
+
+   SELECT SUM(c) INTO v_units FROM unnest(v_copies) AS c;
+
+   SELECT COUNT(*), SUM(c.price * g.units) INTO v_found, v_total
+   FROM (SELECT c.gameID, c.price FROM Catalog c
+         WHERE c.gameID = ANY (v_games) FOR SHARE) AS c
+   JOIN unnest(v_games, v_copies) AS g(gameID, units) ON g.gameID = c.gameID;
+   IF v_found < cardinality(v_games) THEN
+      RAISE EXCEPTION 'A game in the order is no longer in the catalog';
+   END IF;
+   IF v_total <> p_totalPrice THEN
+      RAISE EXCEPTION 'Prices have changed; the order total is now %', v_total;
+   END IF;
+
+   INSERT INTO RentalOrder
+   VALUES (p_rentalOrderID, p_login, v_units, v_total, p_orderTimestamp, p_dueDate);
+
+   INSERT INTO TrackingInfo
+   VALUES (p_trackingID, p_rentalOrderID, 'Order Received', 'Los Angeles,CA', 'USPS', p_orderTimestamp, NULL, p_orderTimestamp);
+
+   INSERT INTO GamesInOrder
+   SELECT p_rentalOrderID, g.gameID, g.units, p_orderTimestamp
+   FROM unnest(v_games, v_copies) AS g(gameID, units);
+
+   RETURN v_units;
+END;
+$$ LANGUAGE plpgsql;
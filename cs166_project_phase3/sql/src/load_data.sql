@@ -11,10 +11,33 @@ COPY RentalOrder
 FROM '/home/csgrads/<net_id>/cs166_project_phase3/data/rentalorder.csv'
 WITH DELIMITER ',' CSV HEADER;
 
-COPY TrackingInfo
+/* TrackingInfo and GamesInOrder are partitioned by their order's
+   orderTimestamp, which the files leave out: stage them and take it from
+   RentalOrder */
+CREATE TEMP TABLE load_TrackingInfo (LIKE TrackingInfo);
+ALTER TABLE load_TrackingInfo DROP COLUMN orderTimestamp;
+COPY load_TrackingInfo
 FROM '/home/csgrads/<net_id>/cs166_project_phase3/data/trackinginfo.csv'
 WITH DELIMITER ',' CSV HEADER;
+INSERT INTO TrackingInfo
+SELECT L.*, R.orderTimestamp FROM load_TrackingInfo L JOIN RentalOrder R ON R.rentalOrderID = L.rentalOrderID;
+DROP TABLE load_TrackingInfo;
 
-COPY GamesInOrder
+CREATE TEMP TABLE load_GamesInOrder (LIKE GamesInOrder);
+ALTER TABLE load_GamesInOrder DROP COLUMN orderTimestamp;
+COPY load_GamesInOrder
 FROM '/home/csgrads/<net_id>/cs166_project_phase3/data/gamesinorder.csv'
 WITH DELIMITER ',' CSV HEADER;
+INSERT INTO GamesInOrder
+SELECT L.*, R.orderTimestamp FROM load_GamesInOrder L JOIN RentalOrder R ON R.rentalOrderID = L.rentalOrderID;
+DROP TABLE load_GamesInOrder;
+
+/* Reserve the loaded order and tracking IDs in OrderIDs */
+INSERT INTO OrderIDs
+SELECT R.rentalOrderID, T.trackingID, R.orderTimestamp
+FROM RentalOrder R LEFT JOIN TrackingInfo T ON T.rentalOrderID = R.rentalOrderID AND T.orderTimestamp = R.orderTimestamp;
+
+/* Start the ID sequences after the highest loaded number */
+SELECT setval('gameID_seq', (SELECT COALESCE(MAX(CAST(substring(gameID FROM 5) AS integer)), 0) + 1 FROM Catalog), false);
+SELECT setval('rentalOrderID_seq', (SELECT COALESCE(MAX(CAST(substring(rentalOrderID FROM 16) AS integer)), 0) + 1 FROM RentalOrder), false);
+SELECT setval('trackingID_seq', (SELECT COALESCE(MAX(CAST(substring(trackingID FROM 11) AS integer)), 0) + 1 FROM TrackingInfo), false);